@@ -14,10 +14,17 @@ public interface GPConstants {
 	
 	public static final String ACTION_LOCATION_ADDRESS = "LOCATION_ADDRESS";
 	public static final String ACTION_URL_REQUEST = "URL_REQUEST";
+	public static final String ACTION_SEARCH_REQUEST = "SEARCH_REQUEST";
 	public static final String ACTION_PHOTO_DOWNLOAD = "PHOTO_DOWNLOAD";
 	
 	public static final String URL = PACKAGE_NAME+".URL";
 	public static final String TYPE = PACKAGE_NAME+".TYPE";
+	public static final String LANE = PACKAGE_NAME+".LANE";
+	public static final String STATUS = PACKAGE_NAME+".STATUS";
+	public static final String PAGE_TOKEN = PACKAGE_NAME+".PAGE_TOKEN";
+	public static final String FROM_CACHE = PACKAGE_NAME+".FROM_CACHE";
+	public static final String FRESH = PACKAGE_NAME+".FRESH";
+	public static final String SEQUENCE = PACKAGE_NAME+".SEQUENCE";
 	
 	public static final int SUCCESS = 1;
 	public static final int FAILURE = 0;
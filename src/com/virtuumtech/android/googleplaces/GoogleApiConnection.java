@@ -0,0 +1,236 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * GoogleApiConnection shares one GoogleApiClient with LocationServices API between MyLocation, MyAddress 
+ * & the other consumers. The consumers hold the connection using acquire & release, the tasks submitted 
+ * by execute wait till the client is connected. The client is disconnected once it is not held for the 
+ * idle timeout, hence the consecutive lookups reuse the connection. 
+ * The methods should be called on the main thread, the tasks are run on the main thread.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces;
+
+import java.util.ArrayList;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.GoogleApiClient.ConnectionCallbacks;
+import com.google.android.gms.common.api.GoogleApiClient.OnConnectionFailedListener;
+import com.google.android.gms.location.LocationServices;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+public class GoogleApiConnection implements ConnectionCallbacks, OnConnectionFailedListener {
+
+	private static final String TAG = "GoogleApiConnection";
+
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000; // 30 secs
+
+	/**
+	 * Task run once the client is connected
+	 */
+	public interface Task {
+		/**
+		 * Called on the main thread when the client is connected
+		 * @param client
+		 */
+		void onConnected(GoogleApiClient client);
+
+		/**
+		 * Called on the main thread when the client can not be connected
+		 * @param errorCode - ConnectionResult error code
+		 */
+		void onConnectionFailed(int errorCode);
+	}
+
+	private static GoogleApiConnection sInstance;
+
+	private final GoogleApiClient mGoogleApiClient;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final ArrayList<Task> pendingTasks = new ArrayList<Task>();
+	private int refCount;
+	private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private long connectStartTime;
+
+	private long connectCount;
+	private long reuseCount;
+	private long failureCount;
+	private long lastConnectTime;
+	private long totalConnectTime;
+
+	private final Runnable mIdleDisconnect = new Runnable() {
+		@Override
+		public void run() {
+			if (refCount == 0 && pendingTasks.isEmpty() 
+					&& (mGoogleApiClient.isConnected() || mGoogleApiClient.isConnecting())) {
+				Log.i(TAG,"Disconnecting idle Google Play services connection");
+				mGoogleApiClient.disconnect();
+			}
+		}
+	};
+
+	/**
+	 * Returns the process wide connection
+	 * @param context
+	 * @return
+	 */
+	public static synchronized GoogleApiConnection getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new GoogleApiConnection(context.getApplicationContext());
+		}
+		return sInstance;
+	}
+
+	private GoogleApiConnection(Context context) {
+		mGoogleApiClient = new GoogleApiClient.Builder(context)
+				.addConnectionCallbacks(this)
+				.addOnConnectionFailedListener(this)
+				.addApi(LocationServices.API).build();
+	}
+
+	/**
+	 * Set the time the connection is kept after the last consumer released it
+	 * @param timeout - Time in milliseconds
+	 */
+	public void setIdleTimeout(long timeout) {
+		idleTimeout = timeout;
+	}
+
+	/**
+	 * Hold the connection, it is not disconnected till release is called
+	 */
+	public void acquire() {
+		refCount++;
+		mHandler.removeCallbacks(mIdleDisconnect);
+	}
+
+	/**
+	 * Release the connection held by acquire, it is disconnected after the idle timeout 
+	 * if no consumer holds it.
+	 */
+	public void release() {
+		if (refCount == 0) {
+			Log.e(TAG,"Connection is released more than acquired");
+			return;
+		}
+		if (--refCount == 0) {
+			mHandler.removeCallbacks(mIdleDisconnect);
+			mHandler.postDelayed(mIdleDisconnect, idleTimeout);
+		}
+	}
+
+	/**
+	 * Run the task once the client is connected, at once if it is already connected
+	 * @param task
+	 */
+	public void execute(Task task) {
+		if (mGoogleApiClient.isConnected()) {
+			reuseCount++;
+			task.onConnected(mGoogleApiClient);
+			return;
+		}
+		pendingTasks.add(task);
+		if (!mGoogleApiClient.isConnecting()) {
+			Log.i(TAG,"Connecting Google Play services");
+			connectStartTime = SystemClock.elapsedRealtime();
+			mGoogleApiClient.connect();
+		}
+	}
+
+	/**
+	 * Returns true if the client is connected
+	 * @return
+	 */
+	public boolean isConnected() {
+		return mGoogleApiClient.isConnected();
+	}
+
+	/**
+	 * Returns the number of connections made
+	 * @return
+	 */
+	public long getConnectCount() {
+		return connectCount;
+	}
+
+	/**
+	 * Returns the number of tasks run on an already connected client
+	 * @return
+	 */
+	public long getReuseCount() {
+		return reuseCount;
+	}
+
+	/**
+	 * Returns the number of failed connections
+	 * @return
+	 */
+	public long getFailureCount() {
+		return failureCount;
+	}
+
+	/**
+	 * Returns the time taken by the last connection in milliseconds
+	 * @return
+	 */
+	public long getLastConnectTime() {
+		return lastConnectTime;
+	}
+
+	/**
+	 * Returns the average time taken by the connections in milliseconds
+	 * @return
+	 */
+	public long getAverageConnectTime() {
+		return connectCount == 0 ? 0 : totalConnectTime / connectCount;
+	}
+
+	@Override
+	public void onConnected(Bundle connectionHint) {
+		lastConnectTime = SystemClock.elapsedRealtime() - connectStartTime;
+		totalConnectTime += lastConnectTime;
+		connectCount++;
+		Log.i(TAG,"Google Play services connected in "+lastConnectTime+" ms");
+
+		// Tasks can submit further tasks, they are run at once as the client is connected
+		ArrayList<Task> tasks = new ArrayList<Task>(pendingTasks);
+		pendingTasks.clear();
+		for (Task task : tasks) {
+			task.onConnected(mGoogleApiClient);
+		}
+		if (refCount == 0) {
+			mHandler.removeCallbacks(mIdleDisconnect);
+			mHandler.postDelayed(mIdleDisconnect, idleTimeout);
+		}
+	}
+
+	@Override
+	public void onConnectionSuspended(int cause) {
+		Log.i(TAG,"Google Play services connection suspended, cause "+cause);
+		if (refCount > 0 || !pendingTasks.isEmpty()) {
+			connectStartTime = SystemClock.elapsedRealtime();
+			mGoogleApiClient.connect();
+		}
+	}
+
+	@Override
+	public void onConnectionFailed(ConnectionResult result) {
+		Log.e(TAG,"Connection failed: ConnectionResult.getErrorCode() = "+result.getErrorCode());
+		failureCount++;
+		ArrayList<Task> tasks = new ArrayList<Task>(pendingTasks);
+		pendingTasks.clear();
+		for (Task task : tasks) {
+			task.onConnectionFailed(result.getErrorCode());
+		}
+	}
+}
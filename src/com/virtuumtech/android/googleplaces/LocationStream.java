@@ -0,0 +1,319 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * LocationStream delivers the continuous location updates using the shared Google Play services connection. 
+ * This supports 
+ * 	 - Configurable interval & smallest displacement of the updates
+ * 	 - Batched delivery, the updates are delivered once the batch is full or the max delay is passed
+ * 	 - Adaptive priority, stepped down to balanced & low power accuracy while the device is stationary 
+ * 	   and back to the configured priority when it moves
+ * 	 - Significant movement callback, which can refresh a nearby search at the new location
+ * The methods should be called on the main thread.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.LocationListener;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationServices;
+import com.virtuumtech.android.googleplaces.listener.LocationStreamUpdate;
+import com.virtuumtech.android.googleplaces.search.SearchQuery;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+public class LocationStream implements LocationListener {
+
+	private static final String TAG = "LocationStream";
+
+	public static final long DEFAULT_INTERVAL = 10000; // 10 secs
+	public static final float DEFAULT_SMALLEST_DISPLACEMENT = 10; // meters
+	public static final float DEFAULT_SIGNIFICANT_DISTANCE = 250; // meters
+	public static final float DEFAULT_STATIONARY_RADIUS = 25; // meters
+	public static final long DEFAULT_STATIONARY_TIME = 2 * 60 * 1000; // 2 mins
+
+	//Priorities in the order they are stepped down while stationary
+	private static final int[] PRIORITIES = {LocationRequest.PRIORITY_HIGH_ACCURACY, 
+		LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY, LocationRequest.PRIORITY_LOW_POWER};
+
+	private final GoogleApiConnection mConnection;
+	private final Handler mHandler = new Handler();
+	private LocationStreamUpdate mListener;
+	private GoogleApiClient mGoogleApiClient;
+	private SearchQuery mSearchQuery;
+	private boolean isStarted = false;
+
+	private long interval = DEFAULT_INTERVAL;
+	private float smallestDisplacement = DEFAULT_SMALLEST_DISPLACEMENT;
+	private float significantDistance = DEFAULT_SIGNIFICANT_DISTANCE;
+	private float stationaryRadius = DEFAULT_STATIONARY_RADIUS;
+	private long stationaryTime = DEFAULT_STATIONARY_TIME;
+	private int priority = LocationRequest.PRIORITY_HIGH_ACCURACY;
+	private int batchSize = 1;
+	private long maxBatchDelay = 0;
+
+	//Current step in PRIORITIES, starting from the configured priority
+	private int priorityStep;
+	//Location where the device is seen stationary from & the time
+	private Location mAnchor;
+	private long anchorTime;
+	//Location of the last significant movement
+	private Location mSignificantLocation;
+	private final ArrayList<Location> mBatch = new ArrayList<Location>();
+
+	private final Runnable mFlushBatch = new Runnable() {
+		@Override
+		public void run() {
+			flushBatch();
+		}
+	};
+
+	/**
+	 * Constructor for LocationStream
+	 * @param context
+	 * @param listener - Receives the updates on the main thread
+	 */
+	public LocationStream(Context context, LocationStreamUpdate listener) {
+		mConnection = GoogleApiConnection.getInstance(context);
+		mListener = listener;
+	}
+
+	/**
+	 * Set the interval of the updates, applied on next start
+	 * @param interval - Time in milliseconds
+	 */
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	/**
+	 * Set the min distance between the updates, applied on next start
+	 * @param meters
+	 */
+	public void setSmallestDisplacement(float meters) {
+		smallestDisplacement = meters;
+	}
+
+	/**
+	 * Set the priority used while the device is moving, one of LocationRequest priorities
+	 * @param priority
+	 */
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Set the distance from the first location or the last significant movement, after which 
+	 * onSignificantMovement is called
+	 * @param meters
+	 */
+	public void setSignificantDistance(float meters) {
+		significantDistance = meters;
+	}
+
+	/**
+	 * Set the device is stationary when it stays within the radius for the time, the priority is stepped 
+	 * down after each stationary time.
+	 * @param radius - Radius in meters
+	 * @param time - Time in milliseconds
+	 */
+	public void setStationaryThreshold(float radius, long time) {
+		stationaryRadius = radius;
+		stationaryTime = time;
+	}
+
+	/**
+	 * Set the batching of the updates. The updates are delivered once the batch has the number of 
+	 * locations or the max delay is passed after the first location of the batch.
+	 * @param size - Number of locations, 1 for no batching
+	 * @param maxDelay - Time in milliseconds
+	 */
+	public void setBatching(int size, long maxDelay) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Batch size should be at least 1");
+		}
+		batchSize = size;
+		maxBatchDelay = maxDelay;
+	}
+
+	/**
+	 * Set the search refreshed at the new location on significant movement, null to stop refreshing
+	 * @param searchQuery - NearBySearch or RadarSearch with radius set
+	 */
+	public void setSearchQuery(SearchQuery searchQuery) {
+		mSearchQuery = searchQuery;
+	}
+
+	/**
+	 * Returns the priority in use, one of LocationRequest priorities
+	 * @return
+	 */
+	public int getCurrentPriority() {
+		return getPriority(priorityStep);
+	}
+
+	/**
+	 * Returns true if the updates are started
+	 * @return
+	 */
+	public boolean isStarted() {
+		return isStarted;
+	}
+
+	/**
+	 * Start the location updates
+	 */
+	public void start() {
+		Log.v(TAG,"Inside start");
+		if (isStarted) {
+			return;
+		}
+		isStarted = true;
+		priorityStep = 0;
+		mAnchor = null;
+		mConnection.acquire();
+		mConnection.execute(mConnectionTask);
+	}
+
+	/**
+	 * Stop the location updates, the locations of the pending batch are delivered
+	 */
+	public void stop() {
+		Log.v(TAG,"Inside stop");
+		if (!isStarted) {
+			return;
+		}
+		isStarted = false;
+		if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
+			LocationServices.FusedLocationApi.removeLocationUpdates(mGoogleApiClient, this);
+		}
+		mGoogleApiClient = null;
+		flushBatch();
+		mConnection.release();
+	}
+
+	private final GoogleApiConnection.Task mConnectionTask = new GoogleApiConnection.Task() {
+		@Override
+		public void onConnected(GoogleApiClient client) {
+			if (!isStarted) {
+				return;
+			}
+			mGoogleApiClient = client;
+			requestUpdates();
+		}
+
+		@Override
+		public void onConnectionFailed(int errorCode) {
+			if (!isStarted) {
+				return;
+			}
+			isStarted = false;
+			mConnection.release();
+			mListener.onGooglePlayError(errorCode);
+		}
+	};
+
+	// Request the updates with the priority of the current step, it replaces the earlier request
+	private void requestUpdates() {
+		LocationRequest request = new LocationRequest();
+		request.setPriority(getCurrentPriority());
+		request.setInterval(interval);
+		request.setFastestInterval(interval / 2);
+		request.setSmallestDisplacement(smallestDisplacement);
+		Log.i(TAG,"Requesting location updates with priority "+getCurrentPriority());
+		LocationServices.FusedLocationApi.requestLocationUpdates(mGoogleApiClient, request, this);
+	}
+
+	// Priority of the step, the configured priority is not stepped up
+	private int getPriority(int step) {
+		int start = 0;
+		while (start < PRIORITIES.length - 1 && PRIORITIES[start] != priority) {
+			start++;
+		}
+		if (PRIORITIES[start] != priority) {
+			return priority;
+		}
+		return PRIORITIES[Math.min(start + step, PRIORITIES.length - 1)];
+	}
+
+	@Override
+	public void onLocationChanged(Location location) {
+		if (!isStarted || location == null) {
+			return;
+		}
+		adaptPriority(location);
+		checkSignificantMovement(location);
+
+		mBatch.add(location);
+		if (mBatch.size() >= batchSize) {
+			flushBatch();
+		} else if (mBatch.size() == 1 && maxBatchDelay > 0) {
+			mHandler.postDelayed(mFlushBatch, maxBatchDelay);
+		}
+	}
+
+	// Step down the priority while the device stays within the stationary radius, restore it on movement
+	private void adaptPriority(Location location) {
+		long now = SystemClock.elapsedRealtime();
+		if (mAnchor == null || mAnchor.distanceTo(location) > stationaryRadius) {
+			mAnchor = location;
+			anchorTime = now;
+			if (priorityStep != 0) {
+				Log.i(TAG,"Device is moving");
+				priorityStep = 0;
+				requestUpdates();
+			}
+			return;
+		}
+		long stationaryFor = now - anchorTime;
+		int step = (int) Math.min(stationaryFor / stationaryTime, PRIORITIES.length - 1);
+		if (step != priorityStep && getPriority(step) != getCurrentPriority()) {
+			Log.i(TAG,"Device is stationary for "+stationaryFor+" ms");
+			priorityStep = step;
+			requestUpdates();
+		}
+	}
+
+	// Notify & refresh the search when the device moved the significant distance
+	private void checkSignificantMovement(Location location) {
+		if (location.getAccuracy() > significantDistance) {
+			return;
+		}
+		if (mSignificantLocation != null && mSignificantLocation.distanceTo(location) < significantDistance) {
+			return;
+		}
+		boolean isFirst = mSignificantLocation == null;
+		mSignificantLocation = location;
+		if (isFirst) {
+			return;
+		}
+		Log.i(TAG,"Significant movement");
+		mListener.onSignificantMovement(location);
+		if (mSearchQuery != null) {
+			mSearchQuery.setLocation(location);
+			mSearchQuery.getPlaces();
+		}
+	}
+
+	private void flushBatch() {
+		mHandler.removeCallbacks(mFlushBatch);
+		if (mBatch.isEmpty()) {
+			return;
+		}
+		List<Location> locations = new ArrayList<Location>(mBatch);
+		mBatch.clear();
+		mListener.onLocationsUpdate(locations);
+	}
+}
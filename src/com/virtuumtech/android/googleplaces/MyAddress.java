@@ -4,6 +4,7 @@
 
 /**
  * MyAddress class implements the methods to get the Address details by running as service.  
+ * The addresses are kept in AddressCache, hence the nearby locations are not geocoded again.
  * 
  * @author  
  * @version 1.0
@@ -13,11 +14,8 @@ package com.virtuumtech.android.googleplaces;
 
 import java.util.List;
 
-import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.GoogleApiClient.ConnectionCallbacks;
-import com.google.android.gms.common.api.GoogleApiClient.OnConnectionFailedListener;
-import com.google.android.gms.location.LocationServices;
+import com.virtuumtech.android.googleplaces.cache.AddressCache;
 import com.virtuumtech.android.googleplaces.listener.LocationUpdateListener;
 
 import android.content.Context;
@@ -30,13 +28,13 @@ import android.os.Handler;
 import android.os.ResultReceiver;
 import android.util.Log;
 
-public class MyAddress implements ConnectionCallbacks,
-		OnConnectionFailedListener {
+public class MyAddress {
 	private static final String TAG = "MyAddress";
 	private Location mLocation;
 	private List<Address> mAddressList;
 	private Context mContext;
-	private GoogleApiClient mGoogleApiClient;
+	private GoogleApiConnection mConnection;
+	private boolean isConnectionHeld = false;
 	private LocationUpdateListener addressListener;
 	private Address mAddress;
 	private int maxResults;
@@ -44,23 +42,7 @@ public class MyAddress implements ConnectionCallbacks,
 
 	public MyAddress(Context context) {
 		mContext = context;
-	}
-
-	//Check the locations are equal. 
-	private boolean isLocationEqual(Location location) {
-		Log.v(TAG, "Inside isLocationEqual");
-		if (mLocation == null) {
-			Log.i(TAG, "Cache Location is null");
-			return false;
-		}
-
-		if ((mLocation.getLatitude() == location.getLatitude())
-				&& (mLocation.getLongitude() == location.getLongitude())) {
-			Log.i(TAG, "Cached and passed location are same");
-			return true;
-		}
-
-		return false;
+		mConnection = GoogleApiConnection.getInstance(context);
 	}
 
 	/** getAddressDetails retrieves the address with maxResult as 1
@@ -72,7 +54,7 @@ public class MyAddress implements ConnectionCallbacks,
 	 * @param maxResults Maximum addresses can be retrieved for the given location. Recommended to keep it minimal. 
 	 */
 	public void getAddressDetails(LocationUpdateListener updateListener,
-			Location location, int maxResults) {
+			final Location location, final int maxResults) {
 		Log.v(TAG, "Inside getAddress");
 
 		addressListener = (LocationUpdateListener) updateListener;
@@ -84,13 +66,25 @@ public class MyAddress implements ConnectionCallbacks,
 			return;
 		}
 
-		//If Location is not changed, return the cached address
-		if (isLocationEqual(location) && mAddressList != null) {
-			Log.i(TAG, "Location & Cached Location are same");
-			addressListener.onAddressesUpdate(GPConstants.SUCCESS, mAddressList);
-			return;
-		}
+		//Return the cached address of the nearby location, Google Play Services is connected only on miss
+		AddressCache.getInstance(mContext).lookup(location, maxResults, new AddressCache.Callback() {
+			@Override
+			public void onAddressResult(List<Address> addresses) {
+				if (addresses != null && !addresses.isEmpty()) {
+					Log.i(TAG, "Address of the location is cached");
+					mLocation = location;
+					mAddressList = addresses;
+					mAddress = addresses.get(0);
+					addressListener.onAddressesUpdate(GPConstants.SUCCESS, mAddressList);
+				} else {
+					requestAddress(location, maxResults);
+				}
+			}
+		});
+	}
 
+	// Find the address using Geocoder in NetworkService once Google Play Services is connected
+	private void requestAddress(Location location, int maxResults) {
 		mLocation = location;
 		this.maxResults = maxResults;
 
@@ -105,13 +99,13 @@ public class MyAddress implements ConnectionCallbacks,
 			addressListener.onGeocoderDisabled();
 		}
 
-		// Using Geocoder to get address & defining GoogleApiClient to
-		// connect the Google Play Services
-		mGoogleApiClient = new GoogleApiClient.Builder(mContext)
-				.addConnectionCallbacks(this)
-				.addOnConnectionFailedListener(this)
-				.addApi(LocationServices.API).build();
-		mGoogleApiClient.connect();
+		// Using Geocoder to get address once the shared Google Play Services 
+		// connection is established
+		if (!isConnectionHeld) {
+			isConnectionHeld = true;
+			mConnection.acquire();
+		}
+		mConnection.execute(mConnectionTask);
 	}
 
 	/** getAddressDetails retrieves the address with maxResult as 1
@@ -129,29 +123,31 @@ public class MyAddress implements ConnectionCallbacks,
 
 	}
 
-	//Implementation of ConnectionCallback Inferface abstract method 
-	@Override
-	public void onConnectionFailed(ConnectionResult result) {
-		Log.e(TAG, "Connection failed: ConnectionResult.getErrorCode() = "
-				+ result.getErrorCode());
-		//Return the error to the calling object
-		addressListener.onGooglePlayError(result.getErrorCode());
-	}
+	//Task run on the shared Google Play Services connection
+	private final GoogleApiConnection.Task mConnectionTask = new GoogleApiConnection.Task() {
+		@Override
+		public void onConnected(GoogleApiClient client) {
+			Log.v(TAG, "onConnected");
+			//Start service to get addresses when GooglePlay connection established 
+			startIntentService();
+		}
 
-	//Implementation of ConnectionCallback Inferface abstract method 
-	@Override
-	public void onConnected(Bundle connectionHint) {
-		Log.v(TAG, "onConnected");
-		//Start service to get addresses when GooglePlay connection established 
-		startIntentService();
-	}
+		@Override
+		public void onConnectionFailed(int errorCode) {
+			Log.e(TAG, "Connection failed: ConnectionResult.getErrorCode() = "
+					+ errorCode);
+			releaseConnection();
+			//Return the error to the calling object
+			addressListener.onGooglePlayError(errorCode);
+		}
+	};
 
-	//Implementation of ConnectionCallback Inferface abstract method 
-	@Override
-	public void onConnectionSuspended(int cause) {
-		Log.v(TAG, "onConnectionSuspended");
-		//reconnect on suspended
-		mGoogleApiClient.connect();
+	// Release the shared connection held for the address request
+	private void releaseConnection() {
+		if (isConnectionHeld) {
+			isConnectionHeld = false;
+			mConnection.release();
+		}
 	}
 
 	/** Get status for the error codes
@@ -185,6 +181,7 @@ public class MyAddress implements ConnectionCallbacks,
 		ResultReceiver resultReceiver = new ResultReceiver(new Handler()) {
 			public void onReceiveResult(int resultCode, Bundle resultData) {
 				Log.v(TAG, "onReciveResult");
+				releaseConnection();
 				if (resultCode == GPConstants.SUCCESS) {
 					Log.i(TAG,"Address Request is successful");
 					mAddressList = resultData
@@ -195,6 +192,7 @@ public class MyAddress implements ConnectionCallbacks,
 					} else {
 						// mAddressList = (List) mAddressList;
 						mAddress = mAddressList.get(0);
+						AddressCache.getInstance(mContext).put(mLocation, maxResults, mAddressList);
 					}
 				} else {
 					Log.e(TAG,"Address Request is not successful");
@@ -5,6 +5,8 @@
 /**
  * MyLocation implements an callback program to get current location details using google play services. 
  * Once location is identified, this program invokes LocationUpdateListener.onLocationUpdate(Location location) callback method.
+ * The Google Play services connection is shared with the other consumers using GoogleApiConnection.
+ * Use LocationStream for the continuous updates.
  * 
  * @author  
  * @version 1.0
@@ -15,21 +17,18 @@ package com.virtuumtech.android.googleplaces;
 import android.content.Context;
 import android.location.Location;
 import android.location.LocationManager;
-import android.os.Bundle;
 import android.os.Handler;
 import android.util.Log;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GooglePlayServicesUtil;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.GoogleApiClient.ConnectionCallbacks;
-import com.google.android.gms.common.api.GoogleApiClient.OnConnectionFailedListener;
 import com.google.android.gms.location.LocationListener;
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationServices;
 import com.virtuumtech.android.googleplaces.listener.LocationUpdateListener;
 
-public class MyLocation implements ConnectionCallbacks, OnConnectionFailedListener, LocationListener {
+public class MyLocation implements LocationListener {
 	
 	// Implement to call onChangedLocation on time out  
 	class CloseListener implements Runnable {
@@ -54,6 +53,8 @@ public class MyLocation implements ConnectionCallbacks, OnConnectionFailedListen
 	private Location mLocation;
 	private LocationRequest mLocationReq;
 	private GoogleApiClient mGoogleApiClient;
+	private GoogleApiConnection mConnection;
+	private boolean isConnectionHeld = false;
 	private LocationUpdateListener mLocationListener;
 	private LocationManager mLocationManager;
 	
@@ -75,11 +76,8 @@ public class MyLocation implements ConnectionCallbacks, OnConnectionFailedListen
 		mLocationReq = new LocationRequest();
 		mLocationManager = (LocationManager) mContext.getSystemService(Context.LOCATION_SERVICE);
 
-		// Defining GoogleApiClient to connect the Google Play Services
-		mGoogleApiClient = new GoogleApiClient.Builder(mContext)
-				.addConnectionCallbacks(this)
-				.addOnConnectionFailedListener(this)
-				.addApi(LocationServices.API).build();
+		// Shared connection to the Google Play Services
+		mConnection = GoogleApiConnection.getInstance(mContext);
 	}
 	
 	/**
@@ -133,9 +131,33 @@ public class MyLocation implements ConnectionCallbacks, OnConnectionFailedListen
 		locationUpdateTimeout = timeout;
 	}
 	
-	// This is call back method when Google Play connection is established - Implementation of interface ConnectionCallbacks
-	@Override
-	public void onConnected(Bundle connectionHint) {
+	// Task run when Google Play connection is established
+	private final GoogleApiConnection.Task mConnectionTask = new GoogleApiConnection.Task() {
+		@Override
+		public void onConnected(GoogleApiClient client) {
+			mGoogleApiClient = client;
+			MyLocation.this.onConnected();
+		}
+
+		// Procedure to handle when Google Play connection failed
+		@Override
+		public void onConnectionFailed(int errorCode) {
+			Log.e(TAG, "Connection failed: ConnectionResult.getErrorCode() = " + errorCode);
+			releaseConnection();
+			mLocationListener.onGooglePlayError(errorCode);
+		}
+	};
+
+	// Release the shared connection held for the location update
+	private void releaseConnection() {
+		if (isConnectionHeld) {
+			isConnectionHeld = false;
+			mConnection.release();
+		}
+	}
+
+	// Called when Google Play connection is established
+	private void onConnected() {
 		Log.v(TAG,"In onConnected");
 		boolean isUpdateRequired = false;
 		// Check the last known location and the time when it is cached. 
@@ -156,12 +178,10 @@ public class MyLocation implements ConnectionCallbacks, OnConnectionFailedListen
 				}
 			}
 			
-			// Send the Location update and disconnect the Google Play
+			// Send the Location update and release the Google Play connection
 			if (!isUpdateRequired) {
 				Log.i(TAG,"Using last known location "+mLocation.toString());
-				if (mGoogleApiClient.isConnected()) {
-					mGoogleApiClient.disconnect();
-				}
+				releaseConnection();
 				mLocationListener.onLocationUpdate(mLocation);
 				return;
 			}
@@ -174,19 +194,6 @@ public class MyLocation implements ConnectionCallbacks, OnConnectionFailedListen
 		mHandler.postDelayed(mCloseListener, locationUpdateTimeout);
 	}
 
-	//Callback method when Google Play connection is suspended.  - Implementation of interface ConnectionCallbacks
-	@Override
-	public void onConnectionSuspended(int cause) {
-		mGoogleApiClient.connect();
-	}
-	
-	// Procedure to handle when Google Play connection failed  - Implementation of interface OnConnectionFailedListener
-	@Override
-	public void onConnectionFailed(ConnectionResult result) {
-		Log.e(TAG, "Connection failed: ConnectionResult.getErrorCode() = " + result.getErrorCode());
-		mLocationListener.onGooglePlayError(result.getErrorCode());		
-	}
-
 	//Callback method when location is changed - Implementation of interface LocationListener
 	@Override
 	public void onLocationChanged(Location location) {
@@ -198,12 +205,12 @@ public class MyLocation implements ConnectionCallbacks, OnConnectionFailedListen
 			mHandler.removeCallbacks(mCloseListener);
 		}
 		
-		// Stop the location updates and disconnect the goolge play services
-		LocationServices.FusedLocationApi.removeLocationUpdates(
-				mGoogleApiClient, this);
-		if (mGoogleApiClient.isConnected()) {
-			mGoogleApiClient.disconnect();
+		// Stop the location updates and release the goolge play services
+		if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
+			LocationServices.FusedLocationApi.removeLocationUpdates(
+					mGoogleApiClient, this);
 		}
+		releaseConnection();
 		mLocationListener.onLocationUpdate(location);
 	}
 
@@ -235,7 +242,11 @@ public class MyLocation implements ConnectionCallbacks, OnConnectionFailedListen
 
 	    Log.i(TAG,"Using Google Play services to get location");
 		setLocationRequestValues();
-		mGoogleApiClient.connect();
+		if (!isConnectionHeld) {
+			isConnectionHeld = true;
+			mConnection.acquire();
+		}
+		mConnection.execute(mConnectionTask);
 		return 0;
 	}
 	
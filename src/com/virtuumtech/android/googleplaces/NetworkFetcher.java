@@ -0,0 +1,553 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * NetworkFetcher downloads the GooglePlaces Web API responses & photos using the NetworkService transport 
+ * and the response caches. The requests to network wait for RateLimiter & failed requests are retried as 
+ * per RetryPolicy, the hosts failing constantly are cut off by CircuitBreaker. The retries of the requests 
+ * running on RequestExecutor lanes are rescheduled, the request continues from its attempt when it runs again. It is used by NetworkService 
+ * for the intent requests and by LocalRequest for the in process requests. The expired responses & photos 
+ * having ETag or Last-Modified are revalidated with the conditional request, on 304 Not Modified the cached 
+ * copy is used again. The same request asked by several callers at once is sent only once using SingleFlight, 
+ * the later callers get the result of the request in flight. The methods block, hence they should be called 
+ * on the worker threads.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+
+import com.virtuumtech.android.googleplaces.cache.PhotoDiskCache;
+import com.virtuumtech.android.googleplaces.cache.ResponseCache;
+import com.virtuumtech.android.googleplaces.cache.Validators;
+import com.virtuumtech.android.googleplaces.network.CircuitBreaker;
+import com.virtuumtech.android.googleplaces.network.CircuitOpenException;
+import com.virtuumtech.android.googleplaces.network.HttpResponse;
+import com.virtuumtech.android.googleplaces.network.HttpStatusException;
+import com.virtuumtech.android.googleplaces.network.RateLimitException;
+import com.virtuumtech.android.googleplaces.network.RateLimiter;
+import com.virtuumtech.android.googleplaces.network.RequestExecutor;
+import com.virtuumtech.android.googleplaces.network.RequestKey;
+import com.virtuumtech.android.googleplaces.network.ResponseFormatException;
+import com.virtuumtech.android.googleplaces.network.ResponseParser;
+import com.virtuumtech.android.googleplaces.network.RetryPolicy;
+import com.virtuumtech.android.googleplaces.network.SingleFlight;
+import com.virtuumtech.android.googleplaces.network.TeeInputStream;
+import com.virtuumtech.android.googleplaces.search.RequestStatus;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+public class NetworkFetcher {
+
+	private static final String TAG = "NetworkFetcher";
+	private static final int HTTP_NOT_MODIFIED = 304;
+
+	private NetworkFetcher() {
+	}
+
+	/**
+	 * Download the response of the URL as string, the cached response is used if it exists
+	 * @param context
+	 * @param urlStr
+	 * @return
+	 * @throws IOException
+	 */
+	public static String fetchString(final Context context, final String urlStr) throws IOException {
+		return SingleFlight.getInstance().execute("string:" + RequestKey.canonical(urlStr), new SingleFlight.Call<String>() {
+			@Override
+			public String call() throws IOException {
+				return fetchStringOnce(context, urlStr);
+			}
+		});
+	}
+
+	/**
+	 * Download the response of the URL & parse it while reading from the stream. 
+	 * The cached response is used if it exists. When the same request is in flight its response body 
+	 * is shared & parsed again by the given parser, hence each caller gets its own objects. 
+	 * The body is kept only if it is cached or callers wait for it, otherwise it is parsed without a copy.
+	 * @param context
+	 * @param urlStr
+	 * @param parser
+	 * @return Parsed response
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T fetchParsed(final Context context, final String urlStr, final ResponseParser<T> parser) throws IOException {
+		final String key = "parsed:" + RequestKey.canonical(urlStr);
+		Parsed parsed = SingleFlight.getInstance().execute(key, new SingleFlight.Call<Parsed>() {
+			@Override
+			public Parsed call() throws IOException {
+				return fetchParsedOnce(context, urlStr, parser, key);
+			}
+		});
+		if (parsed.parser == parser) {
+			return (T) parsed.result;
+		}
+		if (parsed.body == null) {
+			// Attached after the body was read without a copy
+			Log.d(TAG,"Response in flight is not kept, downloading it again");
+			return (T) fetchParsedOnce(context, urlStr, parser, key).result;
+		}
+		return parser.read(new ByteArrayInputStream(parsed.body));
+	}
+
+	/**
+	 * Download the photo to PhotoDiskCache, the cached photo is used if it exists. 
+	 * When the cache directory is not available the photo is written to the fallback stream, 
+	 * in that case only the failures before the photo is read are retried.
+	 * When the same photo is in flight the downloaded photo is shared, each caller opens the cached photo.
+	 * The cached photo is opened while holding the cache lock, hence it can be read even if it is evicted meanwhile.
+	 * @param context
+	 * @param urlStr
+	 * @param fallback - Stream to write the photo when it can't be cached
+	 * @return The cached photo, the caller closes it. Null if the photo is written to fallback stream
+	 * @throws IOException
+	 */
+	public static FileInputStream fetchPhoto(final Context context, final String urlStr, OutputStream fallback) throws IOException {
+		final Object owner = new Object();
+		Photo photo = SingleFlight.getInstance().execute("photo:" + RequestKey.canonical(urlStr), new SingleFlight.Call<Photo>() {
+			@Override
+			public Photo call() throws IOException {
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				FileInputStream cached = fetchPhotoOnce(context, urlStr, output);
+				return new Photo(owner, cached, cached == null ? output.toByteArray() : null);
+			}
+		});
+		if (photo.data != null) {
+			fallback.write(photo.data);
+			return null;
+		}
+		if (photo.owner == owner) {
+			return photo.cached;
+		}
+		FileInputStream cached = PhotoDiskCache.getInstance(context).get(urlStr);
+		if (cached != null) {
+			return cached;
+		}
+		// Evicted before this caller opened it
+		Log.d(TAG,"Shared photo is not cached, downloading it again");
+		return fetchPhotoOnce(context, urlStr, fallback);
+	}
+
+	// Download the response of the URL as string, the cached response is used if it exists
+	private static String fetchStringOnce(Context context, String urlStr) throws IOException {
+		// Use the cached response if it exists
+		Log.d(TAG,urlStr);
+		ResponseCache cache = ResponseCache.getInstance();
+		byte[] body = cache.get(urlStr);
+		if (body != null) {
+			Log.i(TAG,"Using cached response");
+			return new String(body, "UTF-8");
+		}
+
+		// Expired response is revalidated if it has validators
+		Validators validators = cache.getValidators(urlStr);
+		RetryPolicy retryPolicy = RetryPolicy.getInstance();
+		for (int attempt = RequestExecutor.getCurrentAttempt(); ; attempt++) {
+			Validators received;
+			try {
+				// Execute the request using the pooled transport
+				HttpResponse response = execute(context, urlStr, getRequestHeaders(validators));
+				try {
+					if (response.getStatusCode() == HTTP_NOT_MODIFIED) {
+						body = cache.refresh(urlStr);
+						if (body != null) {
+							Log.i(TAG,"Cached response is not modified");
+							retryPolicy.recordCompleted();
+							return new String(body, "UTF-8");
+						}
+						// Cached response is removed meanwhile, download it again
+						validators = null;
+						attempt--;
+						continue;
+					}
+					//Read the data using stream
+					body = readStream (response.getInputStream());
+					received = getValidators(response);
+				} finally {
+					// Closing the response releases the connection to the pool
+					response.close();
+				}
+			} catch (IOException e) {
+				if (!retryPolicy.shouldRetry(urlStr, attempt, e)) {
+					throw e;
+				}
+				retryPolicy.backoff(urlStr, attempt);
+				continue;
+			}
+			String status = readStatus(new ByteArrayInputStream(body));
+			if (retryPolicy.shouldRetry(urlStr, attempt, status)) {
+				retryPolicy.backoff(urlStr, attempt);
+				continue;
+			}
+			retryPolicy.recordCompleted();
+			if (isCacheable(status)) {
+				cache.put(urlStr, body, received);
+			}
+			return new String(body, "UTF-8");
+		}
+	}
+
+	// Download the response of the URL & parse it while reading from the stream, 
+	// the cached response is used if it exists. The body is copied only for the cache or the waiting callers.
+	private static <T> Parsed fetchParsedOnce(Context context, String urlStr, ResponseParser<T> parser, String key) throws IOException {
+		// Use the cached response if it exists
+		Log.d(TAG,urlStr);
+		ResponseCache cache = ResponseCache.getInstance();
+		byte[] body = cache.get(urlStr);
+		if (body != null) {
+			Log.i(TAG,"Using cached response");
+			return new Parsed(parser.read(new ByteArrayInputStream(body)), parser, body);
+		}
+
+		// Expired response is revalidated if it has validators
+		Validators validators = cache.getValidators(urlStr);
+		RetryPolicy retryPolicy = RetryPolicy.getInstance();
+		for (int attempt = RequestExecutor.getCurrentAttempt(); ; attempt++) {
+			ByteArrayOutputStream copy = null;
+			TeeInputStream tee = null;
+			Validators received;
+			T result;
+			try {
+				// Execute the request using the pooled transport
+				HttpResponse response = execute(context, urlStr, getRequestHeaders(validators));
+				try {
+					if (response.getStatusCode() == HTTP_NOT_MODIFIED) {
+						body = cache.refresh(urlStr);
+						if (body != null) {
+							Log.i(TAG,"Cached response is not modified");
+							retryPolicy.recordCompleted();
+							return new Parsed(parse(parser, new ByteArrayInputStream(body)), parser, body);
+						}
+						// Cached response is removed meanwhile, download it again
+						validators = null;
+						attempt--;
+						continue;
+					}
+					//Parse the data while reading from the stream, the read bytes are copied for the cache
+					InputStream in = response.getInputStream();
+					if (cache.isEnabled(urlStr) || SingleFlight.getInstance().hasWaiters(key)) {
+						copy = new ByteArrayOutputStream();
+						tee = new TeeInputStream(in, copy, cache.maxSize());
+						in = tee;
+					}
+					result = parse(parser, in);
+					received = getValidators(response);
+				} finally {
+					// Closing the response releases the connection to the pool
+					response.close();
+				}
+			} catch (IOException e) {
+				if (!retryPolicy.shouldRetry(urlStr, attempt, e)) {
+					throw e;
+				}
+				retryPolicy.backoff(urlStr, attempt);
+				continue;
+			}
+			if (retryPolicy.shouldRetry(urlStr, attempt, parser.getStatus())) {
+				retryPolicy.backoff(urlStr, attempt);
+				continue;
+			}
+			retryPolicy.recordCompleted();
+			body = tee != null && !tee.isTruncated() ? copy.toByteArray() : null;
+			if (body != null && isCacheable(parser.getStatus())) {
+				cache.put(urlStr, body, received);
+			}
+			return new Parsed(result, parser, body);
+		}
+	}
+
+	// Download the photo to PhotoDiskCache, the cached photo is used if it exists. 
+	// The photo is written to the fallback stream when the cache directory is not available.
+	private static FileInputStream fetchPhotoOnce(Context context, String urlStr, OutputStream fallback) throws IOException {
+		// Use the cached photo if it exists
+		Log.d(TAG,urlStr);
+		PhotoDiskCache photoCache = PhotoDiskCache.getInstance(context);
+		FileInputStream cached = photoCache.get(urlStr);
+		if (cached != null) {
+			Log.i(TAG,"Using cached photo");
+			return cached;
+		}
+
+		// Expired photo is revalidated if it has validators
+		Validators validators = photoCache.getValidators(urlStr);
+		RetryPolicy retryPolicy = RetryPolicy.getInstance();
+		for (int attempt = RequestExecutor.getCurrentAttempt(); ; attempt++) {
+			HttpResponse response;
+			try {
+				// Execute the request using the pooled transport
+				response = execute(context, urlStr, getRequestHeaders(validators));
+				if (response.getStatusCode() == HTTP_NOT_MODIFIED) {
+					response.close();
+					cached = photoCache.refresh(urlStr);
+					if (cached != null) {
+						Log.i(TAG,"Cached photo is not modified");
+						retryPolicy.recordCompleted();
+						return cached;
+					}
+					// Cached photo is removed meanwhile, download it again
+					validators = null;
+					attempt--;
+					continue;
+				}
+				if (photoCache.isAvailable()) {
+					try {
+						//Stream the data to the cache file, the partial file is deleted on failure
+						cached = photoCache.put(urlStr, response.getInputStream(), getValidators(response));
+					} finally {
+						// Closing the response releases the connection to the pool
+						response.close();
+					}
+					retryPolicy.recordCompleted();
+					return cached;
+				}
+			} catch (IOException e) {
+				if (!retryPolicy.shouldRetry(urlStr, attempt, e)) {
+					throw e;
+				}
+				retryPolicy.backoff(urlStr, attempt);
+				continue;
+			}
+
+			try {
+				//Read the data using stream & write it to fallback stream
+				InputStream input = response.getInputStream();
+				byte[] buffer = new byte[4096];
+				int len = 0;
+				while ((len = input.read(buffer)) != -1) {
+					fallback.write(buffer, 0, len);
+				}
+			} finally {
+				response.close();
+			}
+			retryPolicy.recordCompleted();
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the RequestStatus code for the exception of the request
+	 * @param e
+	 * @return
+	 */
+	public static int getResultCode(Exception e) {
+		if (e instanceof CircuitOpenException) {
+			Log.e(TAG,"Request is not sent, "+e.getMessage());
+			return RequestStatus.ERROR;
+		} else if (e instanceof RateLimitException) {
+			Log.e(TAG,"Request is not sent, "+e.getMessage());
+			return RequestStatus.OVER_QUERY_LIMIT;
+		} else if (e instanceof MalformedURLException) {
+			Log.e(TAG,"Invalid URL passed, MalformedURLException",e);
+			return RequestStatus.INVALID_REQUEST;
+		} else if (e instanceof ResponseFormatException) {
+			Log.e(TAG,"Invalid response, "+e.getMessage());
+			return RequestStatus.ERROR;
+		} else if (e instanceof HttpStatusException) {
+			Log.e(TAG,"Request is not successful, "+e.getMessage());
+			return ((HttpStatusException) e).isTransient() ? RequestStatus.UNKNOWN_ERROR : RequestStatus.INVALID_REQUEST;
+		} else if (e instanceof IOException) {
+			Log.e(TAG,"Issues in downloading content, IOException",e);
+			return RequestStatus.ERROR;
+		}
+		Log.e(TAG,"Exception on downloading URL",e);
+		return RequestStatus.ERROR;
+	}
+
+	// Execute the request using the transport once the circuit breaker & rate limit allow, 
+	// non successful HTTP status is an error. 304 Not Modified is returned for the conditional requests.
+	private static HttpResponse execute(Context context, String urlStr, Map<String, String> headers) throws IOException {
+		boolean interactive = RequestExecutor.getCurrentLane() == RequestExecutor.LANE_INTERACTIVE;
+		CircuitBreaker breaker = CircuitBreaker.forUrl(urlStr);
+		breaker.acquire();
+		try {
+			RateLimiter.getInstance(context).acquire(urlStr, interactive);
+		} catch (IOException e) {
+			breaker.release();
+			throw e;
+		} catch (RequestExecutor.RescheduleException e) {
+			// Waiting for the rate limit on a lane, the request is sent when it runs again
+			breaker.release();
+			throw e;
+		}
+
+		long start = SystemClock.elapsedRealtime();
+		HttpResponse response;
+		try {
+			response = NetworkService.getTransport().execute(urlStr, headers);
+		} catch (IOException e) {
+			if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+				// Cancelled by the caller, not a failure of the host
+				breaker.release();
+			} else {
+				breaker.recordFailure();
+			}
+			throw e;
+		}
+		boolean notModified = headers != null && response.getStatusCode() == HTTP_NOT_MODIFIED;
+		if (!response.isSuccessful() && !notModified) {
+			response.close();
+			HttpStatusException e = new HttpStatusException(response.getStatusCode());
+			if (e.isTransient()) {
+				breaker.recordFailure();
+			} else {
+				breaker.recordSuccess(SystemClock.elapsedRealtime() - start);
+			}
+			throw e;
+		}
+		breaker.recordSuccess(SystemClock.elapsedRealtime() - start);
+		return response;
+	}
+
+	// Parse the response. The failures of the parser not caused by the stream are ResponseFormatException, 
+	// hence the malformed responses are not retried while the network failures during the read are.
+	private static <T> T parse(ResponseParser<T> parser, InputStream in) throws IOException {
+		GuardedInputStream guarded = new GuardedInputStream(in);
+		try {
+			return parser.read(guarded);
+		} catch (IOException e) {
+			if (guarded.failed) {
+				throw e;
+			}
+			throw new ResponseFormatException("Malformed response, "+e.getMessage(), e);
+		} catch (IllegalStateException e) {
+			throw new ResponseFormatException("Malformed response, "+e.getMessage(), e);
+		} catch (NumberFormatException e) {
+			throw new ResponseFormatException("Malformed response, "+e.getMessage(), e);
+		}
+	}
+
+	// Conditional request headers of the validators, null for the unconditional request
+	private static Map<String, String> getRequestHeaders(Validators validators) {
+		return validators != null ? validators.getRequestHeaders() : null;
+	}
+
+	// Validators of the response to store with the cached copy
+	private static Validators getValidators(HttpResponse response) {
+		return new Validators(response.getHeader("ETag"), response.getHeader("Last-Modified"));
+	}
+
+	// Only the successful responses are cached, responses without status (wiki) are successful
+	private static boolean isCacheable(String status) {
+		return status == null || status.equals("OK") || status.equals("ZERO_RESULTS");
+	}
+
+	// Reads the top level status of the json response, null if there is no status
+	private static String readStatus(InputStream in) {
+		try {
+			JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (reader.nextName().equals("status") && reader.peek() == JsonToken.STRING) {
+					return reader.nextString();
+				}
+				reader.skipValue();
+			}
+		} catch (IOException e) {
+			// Not a json object, hence there is no status
+		} catch (IllegalStateException e) {
+			// Not a json object, hence there is no status
+		}
+		return null;
+	}
+
+	// Reading the file/data from the InputStream in buffer method
+	// Returns the downloaded file/content. The stream is closed by the owner of the response.
+	private static byte[] readStream(InputStream in) throws IOException {
+		// Read the data as it is, the caller decodes it
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int len = 0;
+		while ((len = in.read(buffer)) != -1) {
+			data.write(buffer, 0, len);
+		}
+		return data.toByteArray();
+	}
+
+	// Response shared with the callers of the same request. The result is returned only to the caller 
+	// of the parser, the other callers parse the body. The body is null if it is not kept.
+	private static class Parsed {
+		final Object result;
+		final ResponseParser<?> parser;
+		final byte[] body;
+
+		Parsed(Object result, ResponseParser<?> parser, byte[] body) {
+			this.result = result;
+			this.parser = parser;
+			this.body = body;
+		}
+	}
+
+	// Stream remembering whether reading from it failed
+	private static class GuardedInputStream extends FilterInputStream {
+		boolean failed = false;
+
+		GuardedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				return super.read();
+			} catch (IOException e) {
+				failed = true;
+				throw e;
+			}
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			try {
+				return super.read(buffer, offset, count);
+			} catch (IOException e) {
+				failed = true;
+				throw e;
+			}
+		}
+
+		@Override
+		public long skip(long count) throws IOException {
+			try {
+				return super.skip(count);
+			} catch (IOException e) {
+				failed = true;
+				throw e;
+			}
+		}
+	}
+
+	// Downloaded photo shared with the callers of the same photo, data is set only when it is not cached. 
+	// The open cached photo is returned only to its owner, the other callers open the cached photo again.
+	private static class Photo {
+		final Object owner;
+		final FileInputStream cached;
+		final byte[] data;
+
+		Photo(Object owner, FileInputStream cached, byte[] data) {
+			this.owner = owner;
+			this.cached = cached;
+			this.data = data;
+		}
+	}
+}
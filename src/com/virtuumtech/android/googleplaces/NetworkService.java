@@ -4,9 +4,13 @@
 
 /**
  * Network Service implements running the request as service and responds the results using ResultReceiver. 
+ * The requests run in parallel using RequestExecutor, photos and next page requests use the bulk lane. 
  * This supports 
  * 	 - Getting address details using geocoder
  * 	 - Downloading the response for GooglePlaces Web API
+ * 	 - Downloading & parsing the search results as PlacesList
+ * 	 - Caching the successful responses in ResponseCache
+ * The search classes bypass the service & use NetworkFetcher directly when in process delivery is set.
  * 
  * @author  
  * @version 1.0
@@ -14,58 +18,205 @@
 
 package com.virtuumtech.android.googleplaces;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
-import javax.net.ssl.HttpsURLConnection;
-
+import com.virtuumtech.android.googleplaces.network.HedgingTransport;
+import com.virtuumtech.android.googleplaces.network.HttpTransport;
+import com.virtuumtech.android.googleplaces.network.RequestExecutor;
+import com.virtuumtech.android.googleplaces.network.UrlConnectionTransport;
 import com.virtuumtech.android.googleplaces.search.RequestStatus;
+import com.virtuumtech.android.googleplaces.search.SearchResultsReader;
 
-import android.app.IntentService;
+import android.app.Service;
 import android.content.Intent;
 import android.location.Address;
 import android.location.Geocoder;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.os.ResultReceiver;
 import android.util.Log;
 
-public class NetworkService extends IntentService {
+public class NetworkService extends Service {
 	
 
 
 	private static final String TAG = "NetworkService";
 	
-	private ResultReceiver mResultReceiver;
+	//Transport shared by all the requests, hence the connections are reused between requests.
+	//Wikipedia requests are hedged, they don't use the Places quota & only enrich the place details.
+	private static HttpTransport sTransport = createDefaultTransport();
+
+	//Requests made in this process are delivered directly to the callbacks, without Intent & ResultReceiver
+	private static volatile boolean sInProcessDelivery = true;
+
+	//Number of requests submitted and not yet completed, service is stopped when it reaches 0. 
+	//The count & the last start id are updated together under the lock of the service.
+	private int mPendingRequests;
+	private int mLastStartId;
 
 	
+	public NetworkService() {
+		super();
+	}
+
+	/**
+	 * The name is not used, since the service runs the requests on RequestExecutor lanes
+	 * @param name
+	 * @deprecated Use NetworkService()
+	 */
+	@Deprecated
 	public NetworkService(String name) {
-		super(name);
+		this();
 	}
-	
-	public NetworkService() {
-		super(TAG);
+
+	private static HttpTransport createDefaultTransport() {
+		HedgingTransport transport = new HedgingTransport(new UrlConnectionTransport());
+		transport.addHost("en.wikipedia.org");
+		return transport;
 	}
 
-	/** OnHandleIntent is called when StartService(intent) is used.
-	 *  The Intent should have the details required to do the specified service.
+	/**
+	 * Set the transport used to download the URLs & Photos.
+	 * @param transport
+	 */
+	public static void setTransport(HttpTransport transport) {
+		if (transport == null) {
+			throw new IllegalArgumentException("Transport can not be null");
+		}
+		sTransport = transport;
+	}
+
+	/**
+	 * Returns the transport used to download the URLs & Photos.
+	 * @return
 	 */
+	public static HttpTransport getTransport() {
+		return sTransport;
+	}
+
+	/**
+	 * Set whether the requests are run in the calling process using RequestExecutor & the parsed results 
+	 * are delivered directly to the callbacks. When it is not set the requests use the NetworkService 
+	 * intents & ResultReceiver. Default is true.
+	 * @param inProcess
+	 */
+	public static void setInProcessDelivery(boolean inProcess) {
+		sInProcessDelivery = inProcess;
+	}
+
+	/**
+	 * Returns whether the requests are delivered directly to the callbacks in the calling process.
+	 * @return
+	 */
+	public static boolean isInProcessDelivery() {
+		return sInProcessDelivery;
+	}
+
+	//Service is only started, binding is not supported
 	@Override
-	protected void onHandleIntent(Intent intent) {
-		Log.v(TAG,"onHandleIntent");
+	public IBinder onBind(Intent intent) {
+		return null;
+	}
+
+	/** onStartCommand is called when StartService(intent) is used.
+	 *  The request is submitted to the RequestExecutor lane given in the intent. 
+	 */
+	@Override
+	public int onStartCommand(final Intent intent, int flags, int startId) {
+		Log.v(TAG,"onStartCommand");
+		if (intent == null) {
+			startRequest(startId);
+			finishRequest();
+			return START_NOT_STICKY;
+		}
+
+		int lane = intent.getIntExtra(GPConstants.LANE, getDefaultLane(intent));
+		// The request is counted along with its start id, hence a finishing request can't stop the service before it runs
+		startRequest(startId);
+		boolean submitted = RequestExecutor.getInstance().submit(lane, new RequestExecutor.Request() {
+			@Override
+			public void run() {
+				boolean rescheduled = false;
+				try {
+					handleIntent(intent);
+				} catch (RequestExecutor.RescheduleException e) {
+					// Runs again later, hence it is still pending
+					rescheduled = true;
+					throw e;
+				} finally {
+					if (!rescheduled) {
+						finishRequest();
+					}
+				}
+			}
+
+			@Override
+			public void onRejected() {
+				sendRejected(intent);
+				finishRequest();
+			}
+		});
+		if (!submitted) {
+			sendRejected(intent);
+			finishRequest();
+		}
+		return START_NOT_STICKY;
+	}
+
+	// Count the request & publish its start id in one step
+	private synchronized void startRequest(int startId) {
+		mPendingRequests++;
+		mLastStartId = startId;
+	}
+
+	// Photos are downloaded in bulk lane, all other requests are interactive
+	private int getDefaultLane(Intent intent) {
+		if (GPConstants.ACTION_PHOTO_DOWNLOAD.equals(intent.getStringExtra(GPConstants.SERVICE))) {
+			return RequestExecutor.LANE_BULK;
+		}
+		return RequestExecutor.LANE_INTERACTIVE;
+	}
+
+	// Complete the request & stop the service when all the submitted requests are completed. 
+	// A start id published later is not stopped by stopSelfResult, hence the new request keeps the service.
+	private synchronized void finishRequest() {
+		mPendingRequests--;
+		if (mPendingRequests == 0) {
+			stopSelfResult(mLastStartId);
+		}
+	}
+
+	// Respond to the caller when the request can't be queued
+	private void sendRejected(Intent intent) {
+		ResultReceiver resultReceiver = intent.getParcelableExtra(GPConstants.RECEIVER);
+		if (resultReceiver == null) {
+			return;
+		}
+		Bundle resultData = new Bundle();
+		if (GPConstants.ACTION_LOCATION_ADDRESS.equals(intent.getStringExtra(GPConstants.SERVICE))) {
+			resultReceiver.send(GPConstants.NETWORK_ERROR, resultData);
+			return;
+		}
+		resultData.putCharSequence(GPConstants.DATA, "");
+		resultData.putCharSequence(GPConstants.TYPE, intent.getStringExtra(GPConstants.TYPE));
+		resultData.putInt(GPConstants.SEQUENCE, intent.getIntExtra(GPConstants.SEQUENCE, 0));
+		resultReceiver.send(RequestStatus.ERROR, resultData);
+	}
+
+	/** handleIntent runs the request on the RequestExecutor thread.
+	 *  The Intent should have the details required to do the specified service.
+	 */
+	private void handleIntent(Intent intent) {
+		Log.v(TAG,"handleIntent");
 		
 		// Get the SERVICE required in NetworkService
 		String CALLEDSERVICE = intent.getStringExtra(GPConstants.SERVICE);
-		mResultReceiver = intent.getParcelableExtra(GPConstants.RECEIVER);
 		Log.i(TAG,"Called Service is "+CALLEDSERVICE);
 
 		switch (CALLEDSERVICE) {
@@ -79,10 +230,16 @@ public class NetworkService extends IntentService {
 				Log.i(TAG,"Downloading URL request");
 				downloadURL(intent);
 				break;
+			case "SEARCH_REQUEST":
+				// Download & parse the search results while reading from the stream
+				Log.i(TAG,"Downloading search request");
+				downloadSearchResults(intent);
+				break;
 			case "PHOTO_DOWNLOAD":
 				//Download the photo from the given URL
 				Log.i(TAG,"Download the Photo from url");
 				downloadPhoto(intent);
+				break;
 			default :
 				Log.e(TAG,"Invalid Service called in NetworkService: "+GPConstants.SERVICE);
 		}
@@ -95,6 +252,7 @@ public class NetworkService extends IntentService {
 		// Get details specific to Geocoder from Intent object
 		int maxResults = intent.getIntExtra(GPConstants.MAXRESULTS, 1);
 
+		ResultReceiver resultReceiver = intent.getParcelableExtra(GPConstants.RECEIVER);
 		Geocoder geocoder = new Geocoder(this, Locale.getDefault());
 		Bundle resultData = new Bundle();
 		String errorMessage = "";
@@ -112,13 +270,13 @@ public class NetworkService extends IntentService {
 			// Catch the Illegal Longitude or Latitude
 			errorMessage = "Latitude:"+latitude+", Longitude:"+longitude+" values are not correct";
 			Log.e(TAG,errorMessage,illException);
-			mResultReceiver.send(GPConstants.ILLEGAL_LOCATION,resultData);
+			resultReceiver.send(GPConstants.ILLEGAL_LOCATION,resultData);
 			return;
 		} catch (IOException ioException) {
 			// Catch the network issues
 			errorMessage = "Issues with accessing network";
 			Log.e(TAG,errorMessage,ioException);
-			mResultReceiver.send(GPConstants.NETWORK_ERROR,resultData);
+			resultReceiver.send(GPConstants.NETWORK_ERROR,resultData);
 			return;
 		}
 		
@@ -126,125 +284,101 @@ public class NetworkService extends IntentService {
 		if (addresses == null) {
 			errorMessage = "Address returned null for the location "+latitude+" "+longitude;
 			Log.e(TAG,errorMessage);
-			mResultReceiver.send(GPConstants.FAILURE,resultData);
+			resultReceiver.send(GPConstants.FAILURE,resultData);
 			return;
 		} else if (addresses.isEmpty()) {
 			errorMessage = "No address found for the location "+latitude+" "+longitude;
 			Log.e(TAG,errorMessage);
-			mResultReceiver.send(GPConstants.FAILURE,resultData);
+			resultReceiver.send(GPConstants.FAILURE,resultData);
 			return;
 		}
 		
 		resultData.putParcelableArrayList(GPConstants.RESULT_DATA, (ArrayList) addresses);
-		mResultReceiver.send(GPConstants.SUCCESS, resultData);
+		resultReceiver.send(GPConstants.SUCCESS, resultData);
 	}
 	
-	// Downloads the Photo using https connection. 
-	// THe downloaded content will be passed to respective callback using ResultReceiver.
+	// Downloads the Photo using NetworkFetcher. 
+	// The photo is streamed to PhotoDiskCache & the callback opens the cached photo to decode it. 
+	// The photo is passed as byte array only when the cache directory is not available.
 	private void downloadPhoto (Intent intent) {
 		String urlStr = intent.getStringExtra(GPConstants.URL);
 		String actionType = intent.getStringExtra(GPConstants.TYPE);
+		ResultReceiver resultReceiver = intent.getParcelableExtra(GPConstants.RECEIVER);
 		Bundle resultData = new Bundle();
 		ByteArrayOutputStream output = new ByteArrayOutputStream();
 		int resultCode;
+		boolean isCached = false;
 
-		
 		try {
-			// Create URL, establish connection and create buffered stream to read
-			Log.d(TAG,urlStr);
-			URL url = new URL(urlStr);
-			HttpsURLConnection httpsConnection = (HttpsURLConnection) url.openConnection();
-			
-			//Read the data using stream & write it to byte array
-			InputStream input = new BufferedInputStream(httpsConnection.getInputStream());
-			byte[] buffer = new byte[1024];
-			int len = 0;
-			while ((len = input.read(buffer)) != -1) {
-				output.write(buffer);
+			FileInputStream cached = NetworkFetcher.fetchPhoto(this, urlStr, output);
+			if (cached != null) {
+				isCached = true;
+				cached.close();
 			}
-			
-			input.close();
 			resultCode = RequestStatus.OK;
-		} catch (MalformedURLException e) {
-			Log.e(TAG,"Invalid URL passed, MalformedURLException",e);
-			resultCode = RequestStatus.INVALID_REQUEST;
-		} catch (IOException e) {
-			Log.e(TAG,"Issues in downloading content, IOException",e);
-			resultCode = RequestStatus.INVALID_REQUEST;
+		} catch (RequestExecutor.RescheduleException e) {
+			throw e;
 		} catch (Exception e) {
-			Log.e(TAG,"Exception on downloading URL",e);
-			resultCode = RequestStatus.ERROR;
+			resultCode = NetworkFetcher.getResultCode(e);
+		}
+		if (!isCached) {
+			resultData.putByteArray(GPConstants.DATA, output.toByteArray());
 		}
-		resultData.putByteArray(GPConstants.DATA, output.toByteArray());
 		resultData.putCharSequence(GPConstants.TYPE, actionType);
-		mResultReceiver.send(resultCode,resultData);
+		resultReceiver.send(resultCode,resultData);
 	}
 
 	
-	// Downloads the URL using https connection. 
+	// Downloads the URL using NetworkFetcher. 
 	// THe downloaded content will be passed to respective callback using ResultReceiver.
 	private void downloadURL (Intent intent) {
 		String responseData = "";
 		String urlStr = intent.getStringExtra(GPConstants.URL);
 		String actionType = intent.getStringExtra(GPConstants.TYPE);
+		ResultReceiver resultReceiver = intent.getParcelableExtra(GPConstants.RECEIVER);
 		Bundle resultData = new Bundle();
 		int resultCode;
 		
 		try {
-			// Create URL, establish connection and create buffered stream to read
-			Log.d(TAG,urlStr);
-			URL url = new URL(urlStr);
-			HttpsURLConnection httpsConnection = (HttpsURLConnection) url.openConnection();
-			
-			//Read the data using stream
-			InputStream in = new BufferedInputStream(httpsConnection.getInputStream());
-			responseData = readStream (in);
-			if(responseData == null) {
-				Log.d(TAG,"There is no response for the URL request");
-				responseData = "";
-				resultCode = RequestStatus.ERROR;
-			}
+			responseData = NetworkFetcher.fetchString(this, urlStr);
 			//Log.d(TAG,responseData);
 			resultCode = RequestStatus.OK;
-		} catch (MalformedURLException e) {
-			Log.e(TAG,"Invalid URL passed, MalformedURLException",e);
-			resultCode = RequestStatus.INVALID_REQUEST;
-		} catch (IOException e) {
-			Log.e(TAG,"Issues in downloading content, IOException",e);
-			resultCode = RequestStatus.INVALID_REQUEST;
+		} catch (RequestExecutor.RescheduleException e) {
+			throw e;
 		} catch (Exception e) {
-			Log.e(TAG,"Exception on downloading URL",e);
-			resultCode = RequestStatus.ERROR;
+			resultCode = NetworkFetcher.getResultCode(e);
 		}
 		resultData.putCharSequence(GPConstants.DATA, responseData);
 		resultData.putCharSequence(GPConstants.TYPE, actionType);
-		mResultReceiver.send(resultCode,resultData);
+		resultData.putString(GPConstants.URL, urlStr);
+		resultData.putInt(GPConstants.SEQUENCE, intent.getIntExtra(GPConstants.SEQUENCE, 0));
+		resultReceiver.send(resultCode,resultData);
 	}
 
-	// Reading the file/data from the InputStream in buffer method
-	// Returns the downloaded file/content
-	private String readStream(InputStream in) {
-		Log.i(TAG,"inside readStream");
-		
-		// Define the Buffer classes to read the data from input stream
-		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-		StringBuffer data = new StringBuffer("");
-		String line = "";
-		
-		// Read the data
-		try {
-			while ((line = reader.readLine()) != null) {
-				data.append(line);
-			}
-		} catch (IOException ioException) {
-			Log.e(TAG,"IOException on reading from InputStream: ",ioException);
-			data.delete(0,data.length());
-		}
+	// Downloads the search results using NetworkFetcher & parse it while reading from the stream.
+	// The parsed PlacesList, status & next page token will be passed to respective callback using ResultReceiver.
+	private void downloadSearchResults (Intent intent) {
+		String urlStr = intent.getStringExtra(GPConstants.URL);
+		String actionType = intent.getStringExtra(GPConstants.TYPE);
+		ResultReceiver resultReceiver = intent.getParcelableExtra(GPConstants.RECEIVER);
+		SearchResultsReader searchReader = new SearchResultsReader();
+		ArrayList<PlacesList> places = new ArrayList<PlacesList>();
+		Bundle resultData = new Bundle();
+		int resultCode;
+
 		try {
-			reader.close();
-		} catch (IOException ioException) {
-			Log.e(TAG,"IOException on closing the InputStream: ",ioException);
+			places = NetworkFetcher.fetchParsed(this, urlStr, searchReader);
+			resultCode = RequestStatus.OK;
+		} catch (RequestExecutor.RescheduleException e) {
+			throw e;
+		} catch (Exception e) {
+			resultCode = NetworkFetcher.getResultCode(e);
 		}
-		return data.toString();
-	}			
+		resultData.putParcelable(GPConstants.RESULT_DATA, new PlacesList.ParcelableList(places));
+		resultData.putString(GPConstants.STATUS, searchReader.getStatus());
+		resultData.putString(GPConstants.PAGE_TOKEN, searchReader.getNextPageToken());
+		resultData.putCharSequence(GPConstants.TYPE, actionType);
+		resultData.putString(GPConstants.URL, urlStr);
+		resultReceiver.send(resultCode,resultData);
+	}
 }
@@ -1,13 +1,32 @@
 package com.virtuumtech.android.googleplaces;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import android.location.Location;
+import android.os.BadParcelableException;
 import android.os.Parcel;
 import android.os.Parcelable;
 
 //Implements Parcelable, so that this class can be passed between processes and activities. 
+//The parcel holds a header with version & the flags of the non null fields, only those fields are written.
 public class PlaceDetails implements Parcelable {
+
+	// Version of the parcel format, written in the high byte of the header along with the field flags
+	private static final int PARCEL_VERSION = 2;
+	private static final int FLAG_PLACE_ID = 1;
+	private static final int FLAG_NAME = 1 << 1;
+	private static final int FLAG_ADDRESS = 1 << 2;
+	private static final int FLAG_PHONE = 1 << 3;
+	private static final int FLAG_WEBSITE = 1 << 4;
+	private static final int FLAG_GOOGLE_URL = 1 << 5;
+	private static final int FLAG_WIKI_URL = 1 << 6;
+	private static final int FLAG_WIKI_DESC = 1 << 7;
+	private static final int FLAG_RATING = 1 << 8;
+	private static final int FLAG_OPEN_NOW = 1 << 9;
+	private static final int FLAG_OPEN_TIME = 1 << 10;
+	private static final int FLAG_LOCATION = 1 << 11;
+	private static final int FLAG_PHOTOS = 1 << 12;
 	
 	private String placeID = "";
 	private String name    = "";
@@ -22,7 +41,7 @@ public class PlaceDetails implements Parcelable {
 	private String openTime = "";
 	private Location location;
 	
-	private List<String> photoRef;
+	private List<String> photoRef = new ArrayList<String>();
 
 	public PlaceDetails () {
 		super();
@@ -31,19 +50,39 @@ public class PlaceDetails implements Parcelable {
 	//To read from parcel. Reading in the same order the members are written. 
 	public PlaceDetails(Parcel source) {
 		super();
-		placeID = source.readString();
-		name = source.readString();
-		address = source.readString();
-		phone = source.readString();
-		website = source.readString();
-		googleURL = source.readString();
-		wikiURL = source.readString();
-		wikiDesc = source.readString();
-		rating = source.readDouble();
-		openNow = source.readString();
-		openTime = source.readString();
-		location = source.readParcelable(Location.class.getClassLoader());
-		source.readStringList(photoRef);
+		int header = source.readInt();
+		if (header >>> 24 != PARCEL_VERSION) {
+			throw new BadParcelableException("Unknown PlaceDetails parcel version "+(header >>> 24));
+		}
+		placeID = readString(source, header, FLAG_PLACE_ID);
+		name = readString(source, header, FLAG_NAME);
+		address = readString(source, header, FLAG_ADDRESS);
+		phone = readString(source, header, FLAG_PHONE);
+		website = readString(source, header, FLAG_WEBSITE);
+		googleURL = readString(source, header, FLAG_GOOGLE_URL);
+		wikiURL = readString(source, header, FLAG_WIKI_URL);
+		wikiDesc = readString(source, header, FLAG_WIKI_DESC);
+		if ((header & FLAG_RATING) != 0) {
+			rating = source.readDouble();
+		}
+		openNow = readString(source, header, FLAG_OPEN_NOW);
+		openTime = readString(source, header, FLAG_OPEN_TIME);
+		if ((header & FLAG_LOCATION) != 0) {
+			location = new Location("");
+			location.setLatitude(source.readDouble());
+			location.setLongitude(source.readDouble());
+		}
+		if ((header & FLAG_PHOTOS) != 0) {
+			int count = source.readInt();
+			for (int i = 0; i < count; i++) {
+				photoRef.add(source.readString());
+			}
+		}
+	}
+
+	// Read the string if it is flagged in the header, else it is null
+	private static String readString(Parcel source, int header, int flag) {
+		return (header & flag) != 0 ? source.readString() : null;
 	}
 
 	/** 
@@ -270,22 +309,61 @@ public class PlaceDetails implements Parcelable {
 		return 0;
 	}
 
-	// Writing the members of the class to Parcel, which will be read in the same order
+	// Writing the members of the class to Parcel, which will be read in the same order. 
+	// The header flags the non null fields, the location is written as two doubles.
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
-		dest.writeString(placeID);
-		dest.writeString(name);
-		dest.writeString(address);
-		dest.writeString(phone);
-		dest.writeString(website);
-		dest.writeString(googleURL);
-		dest.writeString(wikiURL);
-		dest.writeString(wikiDesc);
-		dest.writeDouble(rating);
-		dest.writeString(openNow);
-		dest.writeString(openTime);
-		dest.writeParcelable(location, 0);
-		dest.writeStringList(photoRef);
+		int header = PARCEL_VERSION << 24;
+		header |= getFlag(placeID, FLAG_PLACE_ID);
+		header |= getFlag(name, FLAG_NAME);
+		header |= getFlag(address, FLAG_ADDRESS);
+		header |= getFlag(phone, FLAG_PHONE);
+		header |= getFlag(website, FLAG_WEBSITE);
+		header |= getFlag(googleURL, FLAG_GOOGLE_URL);
+		header |= getFlag(wikiURL, FLAG_WIKI_URL);
+		header |= getFlag(wikiDesc, FLAG_WIKI_DESC);
+		header |= rating != 0 ? FLAG_RATING : 0;
+		header |= getFlag(openNow, FLAG_OPEN_NOW);
+		header |= getFlag(openTime, FLAG_OPEN_TIME);
+		header |= location != null ? FLAG_LOCATION : 0;
+		header |= !photoRef.isEmpty() ? FLAG_PHOTOS : 0;
+
+		dest.writeInt(header);
+		writeString(dest, header, FLAG_PLACE_ID, placeID);
+		writeString(dest, header, FLAG_NAME, name);
+		writeString(dest, header, FLAG_ADDRESS, address);
+		writeString(dest, header, FLAG_PHONE, phone);
+		writeString(dest, header, FLAG_WEBSITE, website);
+		writeString(dest, header, FLAG_GOOGLE_URL, googleURL);
+		writeString(dest, header, FLAG_WIKI_URL, wikiURL);
+		writeString(dest, header, FLAG_WIKI_DESC, wikiDesc);
+		if ((header & FLAG_RATING) != 0) {
+			dest.writeDouble(rating);
+		}
+		writeString(dest, header, FLAG_OPEN_NOW, openNow);
+		writeString(dest, header, FLAG_OPEN_TIME, openTime);
+		if ((header & FLAG_LOCATION) != 0) {
+			dest.writeDouble(location.getLatitude());
+			dest.writeDouble(location.getLongitude());
+		}
+		if ((header & FLAG_PHOTOS) != 0) {
+			dest.writeInt(photoRef.size());
+			for (String ref : photoRef) {
+				dest.writeString(ref);
+			}
+		}
+	}
+
+	// Returns the flag if the string is present, empty strings are written so they are not read back as null
+	private static int getFlag(String value, int flag) {
+		return value != null ? flag : 0;
+	}
+
+	// Write the string if it is flagged in the header
+	private static void writeString(Parcel dest, int header, int flag, String value) {
+		if ((header & flag) != 0) {
+			dest.writeString(value);
+		}
 	}
 
 	// Mandatory definition on implementing parcelable
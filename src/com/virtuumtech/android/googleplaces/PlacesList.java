@@ -6,19 +6,37 @@
  * PlaceSummary has the details of the place returned by GooglePlaces Search API. Implemented Parcelable to facilitate passing it between activities 
  * Since the google places search returns only overview of the places, this will also has only overview of the classes. 
  * Can be used for showing in the lists as part of places list. Use PlaceDetails for detailed information of places. 
+ * The parcel holds a header with version & the flags of the fields present, the location is written as two doubles. 
+ * Use ParcelableList to pass a list of places, it writes the places one after another without the class name of each.
  * @author  
  * @version 1.0
  */
 
 package com.virtuumtech.android.googleplaces;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import android.location.Location;
+import android.os.BadParcelableException;
 import android.os.Parcel;
 import android.os.Parcelable;
 
 //Implements Parcelable, so that this class can be passed between processes and activities. 
 public class PlacesList implements Parcelable {
 
+	// Version of the parcel format, written in the high byte of the header along with the field flags
+	private static final int PARCEL_VERSION = 2;
+	private static final int FLAG_PLACE_ID = 1;
+	private static final int FLAG_NAME = 1 << 1;
+	private static final int FLAG_ADDRESS = 1 << 2;
+	private static final int FLAG_RATING = 1 << 3;
+	private static final int FLAG_LOCATION = 1 << 4;
+	private static final int FLAG_OPEN_TRUE = 1 << 5;
+	private static final int FLAG_OPEN_FALSE = 1 << 6;
+	private static final int FLAG_OPEN_OTHER = 1 << 7;
+	private static final int FLAG_OPEN_EMPTY = 1 << 8;
+
 	private String placeID;
 	private String name;
 	private String openNow = "";
@@ -34,12 +52,11 @@ public class PlacesList implements Parcelable {
 	//To read from parcel. Reading in the same order the members are written. 
 	public PlacesList(Parcel source) {
 		super();
-		placeID = source.readString();
-		name = source.readString();
-		openNow = source.readString();
-		address = source.readString();
-		rating = source.readDouble();
-		location = source.readParcelable(Location.class.getClassLoader());
+		int header = source.readInt();
+		if (header >>> 24 != PARCEL_VERSION) {
+			throw new BadParcelableException("Unknown PlacesList parcel version "+(header >>> 24));
+		}
+		readFields(source, header);
 	}
 
 	/** 
@@ -145,15 +162,125 @@ public class PlacesList implements Parcelable {
 		return 0;
 	}
 
-	// Writing the members of the class to Parcel, which will be read in the same order
+	// Writing the members of the class to Parcel, which will be read in the same order. 
+	// Only the fields present are written, the getters are used so that the views of PlacesResultSet are written too.
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
-		dest.writeString(placeID);
-		dest.writeString(name);
-		dest.writeString(openNow);
-		dest.writeString(address);
-		dest.writeDouble(rating);
-		dest.writeParcelable(location, 0);
+		String placeID = getPlaceID();
+		String name = getName();
+		String address = getAddress();
+		String openNow = getOpenNow();
+		double rating = getRating();
+		Location location = getLocation();
+
+		int header = PARCEL_VERSION << 24;
+		header |= placeID != null ? FLAG_PLACE_ID : 0;
+		header |= name != null ? FLAG_NAME : 0;
+		header |= address != null ? FLAG_ADDRESS : 0;
+		header |= rating != 0 ? FLAG_RATING : 0;
+		header |= location != null ? FLAG_LOCATION : 0;
+		if ("true".equals(openNow)) {
+			header |= FLAG_OPEN_TRUE;
+		} else if ("false".equals(openNow)) {
+			header |= FLAG_OPEN_FALSE;
+		} else if ("".equals(openNow)) {
+			header |= FLAG_OPEN_EMPTY;
+		} else if (openNow != null) {
+			header |= FLAG_OPEN_OTHER;
+		}
+
+		dest.writeInt(header);
+		if ((header & FLAG_PLACE_ID) != 0) {
+			dest.writeString(placeID);
+		}
+		if ((header & FLAG_NAME) != 0) {
+			dest.writeString(name);
+		}
+		if ((header & FLAG_ADDRESS) != 0) {
+			dest.writeString(address);
+		}
+		if ((header & FLAG_OPEN_OTHER) != 0) {
+			dest.writeString(openNow);
+		}
+		if ((header & FLAG_RATING) != 0) {
+			dest.writeDouble(rating);
+		}
+		if ((header & FLAG_LOCATION) != 0) {
+			dest.writeDouble(location.getLatitude());
+			dest.writeDouble(location.getLongitude());
+		}
+	}
+
+	// Read the fields flagged in the header, the strings not present are null & the numbers are 0
+	private void readFields(Parcel source, int header) {
+		if ((header & FLAG_PLACE_ID) != 0) {
+			placeID = source.readString();
+		}
+		if ((header & FLAG_NAME) != 0) {
+			name = source.readString();
+		}
+		address = (header & FLAG_ADDRESS) != 0 ? source.readString() : null;
+		if ((header & FLAG_OPEN_TRUE) != 0) {
+			openNow = "true";
+		} else if ((header & FLAG_OPEN_FALSE) != 0) {
+			openNow = "false";
+		} else if ((header & FLAG_OPEN_EMPTY) != 0) {
+			openNow = "";
+		} else if ((header & FLAG_OPEN_OTHER) != 0) {
+			openNow = source.readString();
+		} else {
+			openNow = null;
+		}
+		if ((header & FLAG_RATING) != 0) {
+			rating = source.readDouble();
+		}
+		if ((header & FLAG_LOCATION) != 0) {
+			location = new Location("");
+			location.setLatitude(source.readDouble());
+			location.setLongitude(source.readDouble());
+		}
+	}
+
+	/**
+	 * Write the list of places to the parcel, read it back using readList. 
+	 * The places are written one after another without the class name of each place.
+	 * @param dest
+	 * @param places - List of places, can have null places
+	 */
+	public static void writeList(Parcel dest, List<PlacesList> places) {
+		dest.writeInt(places.size());
+		for (PlacesList place : places) {
+			if (place == null) {
+				// Header of a place is never 0, as it has the version
+				dest.writeInt(0);
+			} else {
+				place.writeToParcel(dest, 0);
+			}
+		}
+	}
+
+	/**
+	 * Read the list of places written by writeList
+	 * @param source
+	 * @return
+	 */
+	public static ArrayList<PlacesList> readList(Parcel source) {
+		int size = source.readInt();
+		ArrayList<PlacesList> places = new ArrayList<PlacesList>(size);
+		for (int i = 0; i < size; i++) {
+			int header = source.readInt();
+			if (header == 0) {
+				places.add(null);
+				continue;
+			}
+			if (header >>> 24 != PARCEL_VERSION) {
+				throw new BadParcelableException("Unknown PlacesList parcel version "+(header >>> 24));
+			}
+			PlacesList place = new PlacesList();
+			place.readFields(source, header);
+			places.add(place);
+		}
+		return places;
 	}
 	
 	// Mandatory definition on implementing parcelable
@@ -173,6 +300,57 @@ public class PlacesList implements Parcelable {
 
 	};
  
+	/**
+	 * Parcelable list of places, to pass the search results in Intent or Bundle. 
+	 * It is written using writeList, hence it is smaller & faster than ArrayList of PlacesList.
+	 */
+	public static class ParcelableList implements Parcelable {
+
+		private final ArrayList<PlacesList> places;
+
+		public ParcelableList(List<PlacesList> places) {
+			super();
+			this.places = new ArrayList<PlacesList>(places);
+		}
+
+		//To read from parcel
+		public ParcelableList(Parcel source) {
+			super();
+			places = readList(source);
+		}
+
+		/**
+		 * Returns the places of the list
+		 * @return
+		 */
+		public ArrayList<PlacesList> getPlaces() {
+			return places;
+		}
+
+		@Override
+		public int describeContents() {
+			return 0;
+		}
+
+		@Override
+		public void writeToParcel(Parcel dest, int flags) {
+			writeList(dest, places);
+		}
+
+		public static final Parcelable.Creator<ParcelableList> CREATOR = new Parcelable.Creator<ParcelableList>() {
+
+			@Override
+			public ParcelableList createFromParcel(Parcel source) {
+				return new ParcelableList(source);
+			}
+
+			@Override
+			public ParcelableList[] newArray(int size) {
+				return new ParcelableList[size];
+			}
+		};
+	}
+
 	/**
 	 * Returns the string of PlaceSummary
 	 */
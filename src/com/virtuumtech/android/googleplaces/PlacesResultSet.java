@@ -0,0 +1,584 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PlacesResultSet holds a large number of search results column wise, the location & rating are kept in
+ * primitive arrays and the names, addresses & open now status are stored once in a string pool, hence
+ * thousands of radar/nearby results don't need a PlacesList & Location object each.
+ * The rows are read using the flyweight PlacesList view returned by getView, which reads the columns
+ * of its current row. The results can be sorted by rating or distance & filtered in place over the columns.
+ * Use toList when the results are passed to the APIs using ArrayList of PlacesList.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.virtuumtech.android.googleplaces.cache.GeoHash;
+
+import android.location.Location;
+
+public class PlacesResultSet {
+
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int INSERTION_SORT_SIZE = 16;
+
+	private int size;
+	private String[] placeIDs;
+	private int[] names;
+	private int[] addresses;
+	private int[] openNow;
+	private double[] latitudes;
+	private double[] longitudes;
+	private float[] ratings;
+
+	// String pool shared by the string columns, the columns hold the index in the pool
+	private final ArrayList<String> strings = new ArrayList<String>();
+	private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+
+	public PlacesResultSet() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Create an empty result set for the given number of places
+	 * @param capacity
+	 */
+	public PlacesResultSet(int capacity) {
+		super();
+		allocate(Math.max(capacity, 1));
+	}
+
+	/**
+	 * Create the result set holding the given places
+	 * @param places
+	 */
+	public PlacesResultSet(List<PlacesList> places) {
+		this(places.size());
+		addAll(places);
+	}
+
+	/**
+	 * Add the place at the end of the result set, the place object is not kept
+	 * @param place
+	 */
+	public void add(PlacesList place) {
+		Location location = place.getLocation();
+		add(place.getPlaceID(), place.getName(), place.getAddress(), place.getOpenNow(),
+				location != null ? location.getLatitude() : Double.NaN,
+				location != null ? location.getLongitude() : Double.NaN, place.getRating());
+	}
+
+	/**
+	 * Add the places at the end of the result set
+	 * @param places
+	 */
+	public void addAll(List<PlacesList> places) {
+		ensureCapacity(size + places.size());
+		for (PlacesList place : places) {
+			add(place);
+		}
+	}
+
+	/**
+	 * Add a place using the values of its columns
+	 * @param placeID
+	 * @param name
+	 * @param address
+	 * @param openNowStatus - true/false/empty as given by google places
+	 * @param latitude
+	 * @param longitude
+	 * @param rating
+	 */
+	public void add(String placeID, String name, String address, String openNowStatus,
+			double latitude, double longitude, double rating) {
+		ensureCapacity(size + 1);
+		placeIDs[size] = placeID;
+		names[size] = intern(name);
+		addresses[size] = intern(address);
+		openNow[size] = intern(openNowStatus);
+		latitudes[size] = latitude;
+		longitudes[size] = longitude;
+		ratings[size] = (float) rating;
+		size++;
+	}
+
+	/**
+	 * Returns the number of places
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of distinct strings stored for the names, addresses & open now status
+	 * @return
+	 */
+	public int getStringCount() {
+		return strings.size();
+	}
+
+	/**
+	 * Remove all the places, the allocated columns are kept for reuse
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			placeIDs[i] = null;
+		}
+		size = 0;
+		strings.clear();
+		stringIndex.clear();
+	}
+
+	/**
+	 * Returns the place id of the place at the index
+	 * @param index
+	 * @return
+	 */
+	public String getPlaceID(int index) {
+		checkIndex(index);
+		return placeIDs[index];
+	}
+
+	/**
+	 * Returns the name of the place at the index
+	 * @param index
+	 * @return
+	 */
+	public String getName(int index) {
+		checkIndex(index);
+		return strings.get(names[index]);
+	}
+
+	/**
+	 * Returns the address of the place at the index
+	 * @param index
+	 * @return
+	 */
+	public String getAddress(int index) {
+		checkIndex(index);
+		return strings.get(addresses[index]);
+	}
+
+	/**
+	 * Returns the open now status of the place at the index, true/false/empty
+	 * @param index
+	 * @return
+	 */
+	public String getOpenNow(int index) {
+		checkIndex(index);
+		return strings.get(openNow[index]);
+	}
+
+	/**
+	 * Returns the latitude of the place at the index, NaN if it is not known
+	 * @param index
+	 * @return
+	 */
+	public double getLatitude(int index) {
+		checkIndex(index);
+		return latitudes[index];
+	}
+
+	/**
+	 * Returns the longitude of the place at the index, NaN if it is not known
+	 * @param index
+	 * @return
+	 */
+	public double getLongitude(int index) {
+		checkIndex(index);
+		return longitudes[index];
+	}
+
+	/**
+	 * Returns the rating of the place at the index, kept with float precision
+	 * @param index
+	 * @return
+	 */
+	public double getRating(int index) {
+		checkIndex(index);
+		return ratings[index];
+	}
+
+	/**
+	 * Returns the flyweight view of the place at the index. The view doesn't copy the place,
+	 * hence it shows the place at the same index after the result set is sorted or filtered.
+	 * @param index
+	 * @return
+	 */
+	public PlacesList getView(int index) {
+		return getView(index, null);
+	}
+
+	/**
+	 * Returns the view of the place at the index, reusing the given view of this result set.
+	 * Iterating with one view avoids an object per place.
+	 * @param index
+	 * @param reuse - View returned earlier by this result set, can be null
+	 * @return
+	 */
+	public PlacesList getView(int index, PlacesList reuse) {
+		checkIndex(index);
+		if (reuse instanceof View && ((View) reuse).owner() == this) {
+			((View) reuse).index = index;
+			return reuse;
+		}
+		return new View(index);
+	}
+
+	/**
+	 * Returns the places as new PlacesList objects
+	 * @return
+	 */
+	public ArrayList<PlacesList> toList() {
+		ArrayList<PlacesList> places = new ArrayList<PlacesList>(size);
+		for (int i = 0; i < size; i++) {
+			PlacesList place = new PlacesList();
+			place.setPlaceID(placeIDs[i]);
+			place.setName(strings.get(names[i]));
+			place.setAddress(strings.get(addresses[i]));
+			place.setOpenNow(strings.get(openNow[i]));
+			place.setRating(ratings[i]);
+			place.setLocation(createLocation(i));
+			places.add(place);
+		}
+		return places;
+	}
+
+	/**
+	 * Sort the places by rating, highest rating first
+	 */
+	public void sortByRating() {
+		double[] keys = new double[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = -ratings[i];
+		}
+		sort(keys);
+	}
+
+	/**
+	 * Sort the places by the distance from the location, nearest place first
+	 * @param location
+	 */
+	public void sortByDistance(Location location) {
+		double[] keys = new double[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = GeoHash.getDistance(location.getLatitude(), location.getLongitude(), latitudes[i], longitudes[i]);
+		}
+		sort(keys);
+	}
+
+	/**
+	 * Keep only the places having at least the given rating, the order of the places is kept
+	 * @param minRating
+	 * @return Number of places removed
+	 */
+	public int filterByRating(double minRating) {
+		boolean[] keep = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			keep[i] = ratings[i] >= minRating;
+		}
+		return retain(keep);
+	}
+
+	/**
+	 * Keep only the places within the radius of the location, the order of the places is kept
+	 * @param location
+	 * @param radius - Radius in meters
+	 * @return Number of places removed
+	 */
+	public int filterByDistance(Location location, double radius) {
+		boolean[] keep = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			keep[i] = GeoHash.getDistance(location.getLatitude(), location.getLongitude(), latitudes[i], longitudes[i]) <= radius;
+		}
+		return retain(keep);
+	}
+
+	/**
+	 * Keep only the places open now, the places without open now status are removed
+	 * @return Number of places removed
+	 */
+	public int filterByOpenNow() {
+		Integer open = stringIndex.get("true");
+		boolean[] keep = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			keep[i] = open != null && openNow[i] == open;
+		}
+		return retain(keep);
+	}
+
+	// Returns the pool index of the string, the string is added to the pool if it is new
+	private int intern(String value) {
+		if (value == null) {
+			value = "";
+		}
+		Integer index = stringIndex.get(value);
+		if (index == null) {
+			index = strings.size();
+			strings.add(value);
+			stringIndex.put(value, index);
+		}
+		return index;
+	}
+
+	// Returns null for the place without location, as PlacesList does
+	private Location createLocation(int index) {
+		if (Double.isNaN(latitudes[index]) || Double.isNaN(longitudes[index])) {
+			return null;
+		}
+		Location location = new Location("");
+		location.setLatitude(latitudes[index]);
+		location.setLongitude(longitudes[index]);
+		return location;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		}
+	}
+
+	private void allocate(int capacity) {
+		placeIDs = new String[capacity];
+		names = new int[capacity];
+		addresses = new int[capacity];
+		openNow = new int[capacity];
+		latitudes = new double[capacity];
+		longitudes = new double[capacity];
+		ratings = new float[capacity];
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= placeIDs.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, placeIDs.length * 2);
+		String[] oldPlaceIDs = placeIDs;
+		int[] oldNames = names;
+		int[] oldAddresses = addresses;
+		int[] oldOpenNow = openNow;
+		double[] oldLatitudes = latitudes;
+		double[] oldLongitudes = longitudes;
+		float[] oldRatings = ratings;
+		allocate(newCapacity);
+		System.arraycopy(oldPlaceIDs, 0, placeIDs, 0, size);
+		System.arraycopy(oldNames, 0, names, 0, size);
+		System.arraycopy(oldAddresses, 0, addresses, 0, size);
+		System.arraycopy(oldOpenNow, 0, openNow, 0, size);
+		System.arraycopy(oldLatitudes, 0, latitudes, 0, size);
+		System.arraycopy(oldLongitudes, 0, longitudes, 0, size);
+		System.arraycopy(oldRatings, 0, ratings, 0, size);
+	}
+
+	// Compact the columns to the places marked to keep
+	private int retain(boolean[] keep) {
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			if (!keep[i]) {
+				continue;
+			}
+			placeIDs[kept] = placeIDs[i];
+			names[kept] = names[i];
+			addresses[kept] = addresses[i];
+			openNow[kept] = openNow[i];
+			latitudes[kept] = latitudes[i];
+			longitudes[kept] = longitudes[i];
+			ratings[kept] = ratings[i];
+			kept++;
+		}
+		for (int i = kept; i < size; i++) {
+			placeIDs[i] = null;
+		}
+		int removed = size - kept;
+		size = kept;
+		return removed;
+	}
+
+	// Sort the row numbers by the keys without boxing, then reorder all the columns once
+	private void sort(double[] keys) {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		sort(order, keys, 0, size - 1);
+
+		String[] sortedPlaceIDs = new String[placeIDs.length];
+		int[] sortedNames = new int[names.length];
+		int[] sortedAddresses = new int[addresses.length];
+		int[] sortedOpenNow = new int[openNow.length];
+		double[] sortedLatitudes = new double[latitudes.length];
+		double[] sortedLongitudes = new double[longitudes.length];
+		float[] sortedRatings = new float[ratings.length];
+		for (int i = 0; i < size; i++) {
+			int row = order[i];
+			sortedPlaceIDs[i] = placeIDs[row];
+			sortedNames[i] = names[row];
+			sortedAddresses[i] = addresses[row];
+			sortedOpenNow[i] = openNow[row];
+			sortedLatitudes[i] = latitudes[row];
+			sortedLongitudes[i] = longitudes[row];
+			sortedRatings[i] = ratings[row];
+		}
+		placeIDs = sortedPlaceIDs;
+		names = sortedNames;
+		addresses = sortedAddresses;
+		openNow = sortedOpenNow;
+		latitudes = sortedLatitudes;
+		longitudes = sortedLongitudes;
+		ratings = sortedRatings;
+	}
+
+	// Quick sort of the row numbers by their keys, small ranges use insertion sort.
+	// Rows with equal keys keep no particular order, NaN keys are placed last.
+	private static void sort(int[] order, double[] keys, int low, int high) {
+		while (high - low >= INSERTION_SORT_SIZE) {
+			int middle = (low + high) >>> 1;
+			double pivot = keys[order[middle]];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (compare(keys[order[i]], pivot) < 0) {
+					i++;
+				}
+				while (compare(keys[order[j]], pivot) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					int swap = order[i];
+					order[i] = order[j];
+					order[j] = swap;
+					i++;
+					j--;
+				}
+			}
+			// Recurse in to the smaller part, loop over the larger part
+			if (j - low < high - i) {
+				sort(order, keys, low, j);
+				low = i;
+			} else {
+				sort(order, keys, i, high);
+				high = j;
+			}
+		}
+		for (int i = low + 1; i <= high; i++) {
+			int row = order[i];
+			int j = i - 1;
+			while (j >= low && compare(keys[order[j]], keys[row]) > 0) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = row;
+		}
+	}
+
+	private static int compare(double lhs, double rhs) {
+		return Double.compare(lhs, rhs);
+	}
+
+	// Flyweight PlacesList reading the columns of its current row.
+	// The setters update the columns, the location is created once per row & reused while the row keeps 
+	// the same location. The returned location is never modified, as the caller may keep it. 
+	// Use getLatitude & getLongitude of the result set to read the location without an object.
+	// It is written to parcel as PlacesList, hence it is read back as a separate PlacesList.
+	private class View extends PlacesList {
+		int index;
+		private Location location;
+
+		View(int index) {
+			super();
+			this.index = index;
+		}
+
+		PlacesResultSet owner() {
+			return PlacesResultSet.this;
+		}
+
+		@Override
+		public String getPlaceID() {
+			return PlacesResultSet.this.getPlaceID(index);
+		}
+
+		@Override
+		public void setPlaceID(String placeID) {
+			checkIndex(index);
+			placeIDs[index] = placeID;
+		}
+
+		@Override
+		public String getName() {
+			return PlacesResultSet.this.getName(index);
+		}
+
+		@Override
+		public void setName(String name) {
+			checkIndex(index);
+			names[index] = intern(name);
+		}
+
+		@Override
+		public String getOpenNow() {
+			return PlacesResultSet.this.getOpenNow(index);
+		}
+
+		@Override
+		public void setOpenNow(String openNowStatus) {
+			checkIndex(index);
+			openNow[index] = intern(openNowStatus);
+		}
+
+		@Override
+		public String getAddress() {
+			return PlacesResultSet.this.getAddress(index);
+		}
+
+		@Override
+		public void setAddress(String address) {
+			checkIndex(index);
+			addresses[index] = intern(address);
+		}
+
+		@Override
+		public double getRating() {
+			return PlacesResultSet.this.getRating(index);
+		}
+
+		@Override
+		public void setRating(double rating) {
+			checkIndex(index);
+			ratings[index] = (float) rating;
+		}
+
+		@Override
+		public Location getLocation() {
+			checkIndex(index);
+			if (location == null || location.getLatitude() != latitudes[index] 
+					|| location.getLongitude() != longitudes[index]) {
+				location = createLocation(index);
+			}
+			return location;
+		}
+
+		@Override
+		public void setLocation(Location location) {
+			checkIndex(index);
+			latitudes[index] = location != null ? location.getLatitude() : Double.NaN;
+			longitudes[index] = location != null ? location.getLongitude() : Double.NaN;
+		}
+
+		@Override
+		public String toString() {
+			return "PlaceDetails [placeID=" + getPlaceID() + ", name=" + getName()
+					+ ", openNow=" + getOpenNow() + ", address=" + getAddress() + ", rating="
+					+ getRating() + ", location=" + getLocation() + "]";
+		}
+	}
+}
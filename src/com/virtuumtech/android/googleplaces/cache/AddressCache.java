@@ -0,0 +1,365 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * AddressCache keeps the addresses found by the reverse geocoding of the locations. A lookup returns 
+ * the addresses of the nearest cached location within the distance tolerance, the cached locations 
+ * are kept in geohash cells, hence only the cells around the location are checked. 
+ * The addresses expire after the time to live & the number of locations is bounded, least recently 
+ * used locations are evicted. The cache is stored in DiskCache, hence it is kept across sessions. 
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+import android.location.Address;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+public class AddressCache {
+
+	private static final String TAG = "AddressCache";
+
+	private static final String STORE_KEY = "googleplaces:addresses";
+	private static final int VERSION = 2;
+	private static final int KEY_PRECISION = 9; // Locations within about 5 m share the entry
+	private static final int CELL_PRECISION = 7; // Cells of about 150 x 150 m
+
+	public static final int DEFAULT_MAX_ENTRIES = 64;
+	public static final float DEFAULT_TOLERANCE = 30; // meters
+	public static final long DEFAULT_TIME_TO_LIVE = 24 * 60 * 60 * 1000; // 1 day
+
+	/**
+	 * Callback for lookup, called on the main thread
+	 */
+	public interface Callback {
+		/**
+		 * @param addresses - Cached addresses, null if they are not cached
+		 */
+		void onAddressResult(List<Address> addresses);
+	}
+
+	private static AddressCache sInstance;
+
+	private final DiskCache diskCache;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	//Entries in LRU order keyed by the geohash of the location
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	//Keys of the entries of each cell
+	private final HashMap<String, HashSet<String>> cells = new HashMap<String, HashSet<String>>();
+	//Lookups waiting for the cache to be loaded from disk
+	private final ArrayList<Runnable> pendingLookups = new ArrayList<Runnable>();
+	private boolean loaded = false;
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private float tolerance = DEFAULT_TOLERANCE;
+	private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+	private long hitCount;
+	private long missCount;
+
+	/**
+	 * Returns the process wide address cache, it is loaded from disk in background
+	 * @param context
+	 * @return
+	 */
+	public static synchronized AddressCache getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new AddressCache(DiskCache.getInstance(context));
+			sInstance.load();
+		}
+		return sInstance;
+	}
+
+	private AddressCache(DiskCache diskCache) {
+		this.diskCache = diskCache;
+	}
+
+	/**
+	 * Set the max distance between the location & the cached location to use its addresses
+	 * @param meters
+	 */
+	public synchronized void setTolerance(float meters) {
+		tolerance = meters;
+	}
+
+	/**
+	 * Set the time after which the cached addresses are not used
+	 * @param ttl - Time in milliseconds
+	 */
+	public synchronized void setTimeToLive(long ttl) {
+		timeToLive = ttl;
+	}
+
+	/**
+	 * Set the max number of cached locations, the cache is trimmed if it is above the new size.
+	 * @param maxEntries
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		trimToSize(maxEntries);
+	}
+
+	/**
+	 * Look up the addresses of the location. The callback is called at once if the cache is loaded, 
+	 * otherwise once it is loaded.
+	 * @param location
+	 * @param maxResults - Number of addresses required
+	 * @param callback - Called on the main thread
+	 */
+	public void lookup(final Location location, final int maxResults, final Callback callback) {
+		synchronized (this) {
+			if (!loaded) {
+				pendingLookups.add(new Runnable() {
+					@Override
+					public void run() {
+						callback.onAddressResult(get(location, maxResults));
+					}
+				});
+				return;
+			}
+		}
+		callback.onAddressResult(get(location, maxResults));
+	}
+
+	/**
+	 * Returns the addresses of the nearest cached location within the tolerance, null if there is none.
+	 * @param location
+	 * @param maxResults - Number of addresses required
+	 * @return
+	 */
+	public synchronized List<Address> get(Location location, int maxResults) {
+		double lat = location.getLatitude();
+		double lng = location.getLongitude();
+		long now = System.currentTimeMillis();
+		Entry nearest = null;
+		double nearestDistance = tolerance;
+		for (String cell : GeoHash.getCoveringCells(lat, lng, tolerance, CELL_PRECISION)) {
+			HashSet<String> keys = cells.get(cell);
+			if (keys == null) {
+				continue;
+			}
+			for (String key : keys) {
+				Entry entry = entries.get(key);
+				// Entries having less addresses than requested are complete
+				if (now - entry.time >= timeToLive 
+						|| (entry.maxResults < maxResults && entry.addresses.size() >= entry.maxResults)) {
+					continue;
+				}
+				double distance = GeoHash.getDistance(lat, lng, entry.latitude, entry.longitude);
+				if (distance <= nearestDistance) {
+					nearest = entry;
+					nearestDistance = distance;
+				}
+			}
+		}
+		if (nearest == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		// Access the entry, hence it is moved to the end of LRU order
+		entries.get(nearest.key);
+		Log.d(TAG,"Cached address found at "+Math.round(nearestDistance)+" m");
+		int count = Math.min(maxResults, nearest.addresses.size());
+		return new ArrayList<Address>(nearest.addresses.subList(0, count));
+	}
+
+	/**
+	 * Store the addresses of the location & write the cache to disk
+	 * @param location
+	 * @param maxResults - Number of addresses requested
+	 * @param addresses
+	 */
+	public synchronized void put(Location location, int maxResults, List<Address> addresses) {
+		Entry entry = new Entry(location.getLatitude(), location.getLongitude(), maxResults, 
+				System.currentTimeMillis(), new ArrayList<Address>(addresses));
+		add(entry);
+		trimToSize(maxEntries);
+		diskCache.putAsync(STORE_KEY, encode());
+	}
+
+	/**
+	 * Remove all the cached addresses, also from disk
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		cells.clear();
+		diskCache.putAsync(STORE_KEY, encode());
+	}
+
+	/**
+	 * Returns the number of lookups answered from cache
+	 * @return
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of lookups not answered from cache
+	 * @return
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	// Read the stored entries on the disk thread & run the lookups waiting for them on the main thread
+	private void load() {
+		diskCache.getAsync(STORE_KEY, null, new DiskCache.Callback() {
+			@Override
+			public void onCacheResult(DiskCache.Entry stored) {
+				final ArrayList<Runnable> lookups;
+				synchronized (AddressCache.this) {
+					if (stored != null) {
+						try {
+							decode(stored.getData());
+						} catch (IOException e) {
+							Log.e(TAG,"Unable to read cached addresses",e);
+						}
+					}
+					loaded = true;
+					lookups = new ArrayList<Runnable>(pendingLookups);
+					pendingLookups.clear();
+				}
+				for (Runnable lookup : lookups) {
+					mainHandler.post(lookup);
+				}
+			}
+		});
+	}
+
+	private void add(Entry entry) {
+		Entry previous = entries.put(entry.key, entry);
+		if (previous != null) {
+			return;
+		}
+		String cell = entry.key.substring(0, CELL_PRECISION);
+		HashSet<String> keys = cells.get(cell);
+		if (keys == null) {
+			keys = new HashSet<String>();
+			cells.put(cell, keys);
+		}
+		keys.add(entry.key);
+	}
+
+	private void trimToSize(int size) {
+		Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator();
+		while (entries.size() > size && iter.hasNext()) {
+			String key = iter.next().getKey();
+			iter.remove();
+			String cell = key.substring(0, CELL_PRECISION);
+			HashSet<String> keys = cells.get(cell);
+			keys.remove(key);
+			if (keys.isEmpty()) {
+				cells.remove(cell);
+			}
+		}
+	}
+
+	// Entries are written in LRU order, hence the order is kept when they are read
+	private byte[] encode() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * entries.size() + 8);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(VERSION);
+			long now = System.currentTimeMillis();
+			ArrayList<Entry> live = new ArrayList<Entry>();
+			for (Entry entry : entries.values()) {
+				if (now - entry.time < timeToLive) {
+					live.add(entry);
+				}
+			}
+			out.writeInt(live.size());
+			for (Entry entry : live) {
+				out.writeDouble(entry.latitude);
+				out.writeDouble(entry.longitude);
+				out.writeInt(entry.maxResults);
+				out.writeLong(entry.time);
+				out.writeInt(entry.addresses.size());
+				for (Address address : entry.addresses) {
+					PlaceCodec.writeAddress(out, address);
+				}
+			}
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// Writing to memory doesn't fail
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// Stored entries are added before the entries put while loading, hence the recent ones are kept
+	private void decode(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		int version = in.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported version "+version);
+		}
+		int count = in.readInt();
+		ArrayList<Entry> stored = new ArrayList<Entry>();
+		for (int i = 0; i < count; i++) {
+			double latitude = in.readDouble();
+			double longitude = in.readDouble();
+			int maxResults = in.readInt();
+			long time = in.readLong();
+			int addressCount = in.readInt();
+			if (addressCount < 0) {
+				throw new IOException("Invalid number of addresses "+addressCount);
+			}
+			ArrayList<Address> addresses = new ArrayList<Address>(addressCount);
+			for (int j = 0; j < addressCount; j++) {
+				addresses.add(PlaceCodec.readAddress(in));
+			}
+			stored.add(new Entry(latitude, longitude, maxResults, time, addresses));
+		}
+		ArrayList<Entry> current = new ArrayList<Entry>(entries.values());
+		entries.clear();
+		cells.clear();
+		for (Entry entry : stored) {
+			add(entry);
+		}
+		for (Entry entry : current) {
+			add(entry);
+		}
+		trimToSize(maxEntries);
+		Log.d(TAG,entries.size()+" cached addresses loaded");
+	}
+
+	// Addresses of a location
+	private static class Entry {
+		final String key;
+		final double latitude;
+		final double longitude;
+		final int maxResults;
+		final long time;
+		final ArrayList<Address> addresses;
+
+		Entry(double latitude, double longitude, int maxResults, long time, ArrayList<Address> addresses) {
+			this.key = GeoHash.encode(latitude, longitude, KEY_PRECISION);
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.maxResults = maxResults;
+			this.time = time;
+			this.addresses = addresses;
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * BitmapCache is the in memory LRU cache of decoded photos, keyed by photo reference & requested size. 
+ * Bitmaps in use are reference counted using acquire & release. The bitmaps evicted from the cache
+ * go to the BitmapPool once they are released, hence they are reused for decoding the next photos. 
+ * A bitmap abandoned by a user, who may still show it, is never pooled. 
+ * The bitmaps are tracked weakly, hence a bitmap dropped by its users without release is garbage collected.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.util.WeakHashMap;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+public class BitmapCache {
+
+	private static BitmapCache sInstance;
+
+	private final LruCache<String, Bitmap> cache;
+	private final BitmapPool pool;
+
+	//Number of users of each bitmap, bitmaps in use are not pooled. 
+	//Bitmap doesn't override equals, hence the weak maps compare the bitmaps by identity.
+	private final WeakHashMap<Bitmap, Integer> references = new WeakHashMap<Bitmap, Integer>();
+	//Bitmaps evicted from the cache while they were in use
+	private final WeakHashMap<Bitmap, Boolean> evicted = new WeakHashMap<Bitmap, Boolean>();
+	//Bitmaps abandoned without release, they may still be shown hence they are dropped instead of pooled
+	private final WeakHashMap<Bitmap, Boolean> abandoned = new WeakHashMap<Bitmap, Boolean>();
+
+	/**
+	 * Returns the process wide bitmap cache. Uses 1/8 of the heap for cache and 1/32 for pool.
+	 * @return
+	 */
+	public static synchronized BitmapCache getInstance() {
+		if (sInstance == null) {
+			long maxMemory = Runtime.getRuntime().maxMemory();
+			sInstance = new BitmapCache((int) (maxMemory / 8), (int) (maxMemory / 32));
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Constructor for BitmapCache
+	 * @param maxSize - Max size of cached bitmaps in bytes
+	 * @param poolSize - Max size of pooled bitmaps in bytes
+	 */
+	public BitmapCache(int maxSize, int poolSize) {
+		pool = new BitmapPool(poolSize);
+		cache = new LruCache<String, Bitmap>(maxSize) {
+			@Override
+			protected int sizeOf(String key, Bitmap bitmap) {
+				return bitmap.getByteCount();
+			}
+
+			@Override
+			protected void entryRemoved(boolean isEvicted, String key, Bitmap oldValue, Bitmap newValue) {
+				if (oldValue != newValue) {
+					onRemoved(oldValue);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the cache key of the photo
+	 * @param photoReference
+	 * @param width - Requested width
+	 * @param height - Requested height
+	 * @return
+	 */
+	public static String getKey(String photoReference, int width, int height) {
+		return photoReference+"_"+width+"x"+height;
+	}
+
+	/**
+	 * Returns the cached bitmap and acquires it, null if it is not cached
+	 * @param key
+	 * @return
+	 */
+	public Bitmap get(String key) {
+		synchronized (this) {
+			Bitmap bitmap = cache.get(key);
+			if (bitmap != null) {
+				acquire(bitmap);
+			}
+			return bitmap;
+		}
+	}
+
+	/**
+	 * Cache the bitmap and acquire it
+	 * @param key
+	 * @param bitmap
+	 */
+	public void put(String key, Bitmap bitmap) {
+		synchronized (this) {
+			acquire(bitmap);
+		}
+		cache.put(key, bitmap);
+	}
+
+	/**
+	 * Release the bitmap acquired by get or put. The bitmap should not be used after release.
+	 * @param bitmap
+	 */
+	public void release(Bitmap bitmap) {
+		boolean reusable = false;
+		synchronized (this) {
+			Integer count = references.get(bitmap);
+			if (count == null) {
+				return;
+			}
+			if (count > 1) {
+				references.put(bitmap, count - 1);
+				return;
+			}
+			references.remove(bitmap);
+			reusable = evicted.remove(bitmap) != null;
+			if (reusable && abandoned.remove(bitmap) != null) {
+				reusable = false;
+			}
+		}
+		if (reusable) {
+			pool.put(bitmap);
+		}
+	}
+
+	/**
+	 * Stop using the bitmap acquired by get or put, without giving its memory for reuse. 
+	 * Used when the bitmap may still be shown by someone, it is never pooled.
+	 * @param bitmap
+	 */
+	public void abandon(Bitmap bitmap) {
+		synchronized (this) {
+			Integer count = references.get(bitmap);
+			if (count == null) {
+				return;
+			}
+			if (count > 1) {
+				references.put(bitmap, count - 1);
+				abandoned.put(bitmap, Boolean.TRUE);
+				return;
+			}
+			references.remove(bitmap);
+			if (evicted.remove(bitmap) == null) {
+				// Still cached, it is dropped instead of pooled on eviction
+				abandoned.put(bitmap, Boolean.TRUE);
+			}
+		}
+	}
+
+	/**
+	 * Returns the pool of reusable bitmaps
+	 * @return
+	 */
+	public BitmapPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Remove all the cached bitmaps
+	 */
+	public void clear() {
+		cache.evictAll();
+	}
+
+	/**
+	 * Returns the number of times a cached bitmap was returned
+	 * @return
+	 */
+	public int getHitCount() {
+		return cache.hitCount();
+	}
+
+	/**
+	 * Returns the number of times a bitmap was not cached
+	 * @return
+	 */
+	public int getMissCount() {
+		return cache.missCount();
+	}
+
+	/**
+	 * Returns the number of bitmaps evicted from the cache
+	 * @return
+	 */
+	public int getEvictionCount() {
+		return cache.evictionCount();
+	}
+
+	private void acquire(Bitmap bitmap) {
+		Integer count = references.get(bitmap);
+		references.put(bitmap, count == null ? 1 : count + 1);
+	}
+
+	// Pool the removed bitmap if no one uses it, otherwise pool it on release. Abandoned bitmaps are dropped.
+	private void onRemoved(Bitmap bitmap) {
+		synchronized (this) {
+			if (references.containsKey(bitmap)) {
+				evicted.put(bitmap, Boolean.TRUE);
+				return;
+			}
+			if (abandoned.remove(bitmap) != null) {
+				return;
+			}
+		}
+		pool.put(bitmap);
+	}
+}
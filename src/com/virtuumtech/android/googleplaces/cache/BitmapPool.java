@@ -0,0 +1,134 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * BitmapPool keeps the bitmaps which are no longer used, hence they can be reused by BitmapFactory 
+ * (inBitmap) for decoding the next photos instead of allocating new memory. 
+ * The pool is bounded by size, oldest bitmaps are recycled when the size is exceeded.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+public class BitmapPool {
+
+	private final LinkedList<Bitmap> bitmaps = new LinkedList<Bitmap>();
+	private final int maxSize;
+	private int size;
+
+	private long reuseCount;
+
+	/**
+	 * Constructor for BitmapPool
+	 * @param maxSize - Max size of the pooled bitmaps in bytes
+	 */
+	public BitmapPool(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Add the bitmap to the pool. Bitmap should not be used by the caller after this. 
+	 * @param bitmap
+	 */
+	public synchronized void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+			return;
+		}
+		int bitmapSize = getSize(bitmap);
+		if (bitmapSize > maxSize) {
+			bitmap.recycle();
+			return;
+		}
+		bitmaps.addLast(bitmap);
+		size += bitmapSize;
+		while (size > maxSize) {
+			Bitmap oldest = bitmaps.removeFirst();
+			size -= getSize(oldest);
+			oldest.recycle();
+		}
+	}
+
+	/**
+	 * Get a bitmap which can be used as inBitmap to decode the image of given size.
+	 * @param width - Width of the decoded image
+	 * @param height - Height of the decoded image
+	 * @param sampleSize - inSampleSize used to decode
+	 * @param config - Config of the decoded image
+	 * @return Reusable bitmap removed from the pool, null if there is no reusable bitmap
+	 */
+	public synchronized Bitmap get(int width, int height, int sampleSize, Bitmap.Config config) {
+		Iterator<Bitmap> iterator = bitmaps.iterator();
+		while (iterator.hasNext()) {
+			Bitmap candidate = iterator.next();
+			if (canReuse(candidate, width, height, sampleSize, config)) {
+				iterator.remove();
+				size -= getSize(candidate);
+				reuseCount++;
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the size of pooled bitmaps in bytes
+	 * @return
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bitmaps reused from the pool
+	 * @return
+	 */
+	public synchronized long getReuseCount() {
+		return reuseCount;
+	}
+
+	/**
+	 * Recycle all the pooled bitmaps
+	 */
+	public synchronized void clear() {
+		for (Bitmap bitmap : bitmaps) {
+			bitmap.recycle();
+		}
+		bitmaps.clear();
+		size = 0;
+	}
+
+	// From KitKat any bitmap with enough memory can be reused, before that only same size without sampling
+	private static boolean canReuse(Bitmap candidate, int width, int height, int sampleSize, Bitmap.Config config) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			int sampledWidth = (width + sampleSize - 1) / sampleSize;
+			int sampledHeight = (height + sampleSize - 1) / sampleSize;
+			int required = sampledWidth * sampledHeight * getBytesPerPixel(config);
+			return candidate.getAllocationByteCount() >= required;
+		}
+		return sampleSize == 1 && candidate.getWidth() == width && candidate.getHeight() == height
+				&& candidate.getConfig() == config;
+	}
+
+	private static int getBytesPerPixel(Bitmap.Config config) {
+		if (config == Bitmap.Config.RGB_565) {
+			return 2;
+		}
+		return 4;
+	}
+
+	private static int getSize(Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return bitmap.getAllocationByteCount();
+		}
+		return bitmap.getByteCount();
+	}
+}
@@ -0,0 +1,550 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * DiskCache is the persistent cache of parsed place details and search pages, hence warm restarts 
+ * don't need the network. The entries are stored in an append only log file with binary records 
+ * 	 - PUT record: type, key, stored time, length, crc32 and the data
+ * 	 - REMOVE record: type and key
+ * The index (key to record offset) is kept in memory and rebuilt by scanning the record headers on open. 
+ * When the log exceeds max size, least recently used entries are evicted and the log is compacted. 
+ * Entries larger than the size kept by the compaction are not stored.
+ * 
+ * Disk access should not be done on UI thread, use getAsync & putAsync from UI thread.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+public class DiskCache {
+
+	private static final String TAG = "DiskCache";
+
+	private static final String DIRECTORY = "googleplaces";
+	private static final String LOG_FILE = "places.log";
+	private static final String TEMP_FILE = "places.tmp";
+
+	private static final int MAGIC = 0x47504443; // "GPDC"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+
+	private static final byte RECORD_PUT = 1;
+	private static final byte RECORD_REMOVE = 2;
+
+	public static final long DEFAULT_MAX_SIZE = 4 * 1024 * 1024; // 4 MB log file
+	public static final long DEFAULT_MAX_STALE_TIME = 7L * 24 * 60 * 60 * 1000; // 7 days
+
+	/**
+	 * Callback for getAsync, called on the looper thread of the caller
+	 */
+	public interface Callback {
+		void onCacheResult(Entry entry);
+	}
+
+	/**
+	 * Cached data with the time it was stored
+	 */
+	public static class Entry {
+		private final byte[] data;
+		private final long storedTime;
+
+		Entry(byte[] data, long storedTime) {
+			this.data = data;
+			this.storedTime = storedTime;
+		}
+
+		/**
+		 * Returns the cached data
+		 * @return
+		 */
+		public byte[] getData() {
+			return data;
+		}
+
+		/**
+		 * Returns the time the data was stored, in millisecs since epoch
+		 * @return
+		 */
+		public long getStoredTime() {
+			return storedTime;
+		}
+
+		/**
+		 * Returns the age of the data in millisecs
+		 * @return
+		 */
+		public long getAge() {
+			return System.currentTimeMillis() - storedTime;
+		}
+	}
+
+	private static DiskCache sInstance;
+
+	private final File directory;
+	private final ExecutorService diskExecutor;
+	private final LinkedHashMap<String, IndexEntry> index = new LinkedHashMap<String, IndexEntry>(32, 0.75f, true);
+	private RandomAccessFile logFile;
+	private long logSize;
+	private long liveSize;
+	private long maxSize = DEFAULT_MAX_SIZE;
+	private long maxStaleTime = DEFAULT_MAX_STALE_TIME;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private long rejectedCount;
+
+	/**
+	 * Returns the process wide disk cache, stored in the cache directory of the application
+	 * @param context
+	 * @return
+	 */
+	public static synchronized DiskCache getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new DiskCache(new File(context.getApplicationContext().getCacheDir(), DIRECTORY));
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Constructor for DiskCache. The log is opened on first access.
+	 * @param directory - Directory to store the log file
+	 */
+	public DiskCache(File directory) {
+		this.directory = directory;
+		diskExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				return new Thread(new Runnable() {
+					@Override
+					public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						r.run();
+					}
+				}, "GooglePlaces-disk");
+			}
+		});
+	}
+
+	/**
+	 * Set the max size of the log file, entries are evicted when log exceeds this size
+	 * @param maxSize - size in bytes
+	 */
+	public synchronized void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Set the max age of the entries, older entries are not returned
+	 * @param maxStaleTime - age in millisecs
+	 */
+	public synchronized void setMaxStaleTime(long maxStaleTime) {
+		this.maxStaleTime = maxStaleTime;
+	}
+
+	/**
+	 * Returns the cached entry of the key, null if it doesn't exist or older than max stale time.
+	 * @param key
+	 * @return
+	 */
+	public synchronized Entry get(String key) {
+		try {
+			open();
+			IndexEntry indexEntry = index.get(key);
+			if (indexEntry == null) {
+				missCount++;
+				return null;
+			}
+			if (System.currentTimeMillis() - indexEntry.storedTime > maxStaleTime) {
+				Log.d(TAG,"Cached entry is older than max stale time");
+				removeEntry(key);
+				missCount++;
+				return null;
+			}
+
+			byte[] data = new byte[indexEntry.length];
+			logFile.seek(indexEntry.dataOffset);
+			logFile.readFully(data);
+			if (crc(data) != indexEntry.crc) {
+				Log.e(TAG,"Corrupted cache entry for "+key);
+				removeEntry(key);
+				missCount++;
+				return null;
+			}
+			hitCount++;
+			return new Entry(data, indexEntry.storedTime);
+		} catch (IOException e) {
+			Log.e(TAG,"IOException on reading the cache",e);
+			missCount++;
+			return null;
+		}
+	}
+
+	/**
+	 * Store the data for the key, replaces the existing entry. 
+	 * Data larger than 3/4 of max size is not stored & the existing entry is removed, 
+	 * as the compaction would evict it at once.
+	 * @param key
+	 * @param data
+	 */
+	public synchronized void put(String key, byte[] data) {
+		try {
+			open();
+			if (data.length + key.length() + 32 > compactedSize()) {
+				Log.w(TAG,"Not caching "+data.length+" bytes, larger than the cache");
+				rejectedCount++;
+				if (index.containsKey(key)) {
+					removeEntry(key);
+				}
+				return;
+			}
+			ByteArrayOutputStream record = new ByteArrayOutputStream(data.length + key.length() + 32);
+			DataOutputStream out = new DataOutputStream(record);
+			out.writeByte(RECORD_PUT);
+			out.writeUTF(key);
+			long storedTime = System.currentTimeMillis();
+			out.writeLong(storedTime);
+			out.writeInt(data.length);
+			int crc = crc(data);
+			out.writeInt(crc);
+			int headerLength = out.size();
+			out.write(data);
+			out.flush();
+
+			long offset = logSize;
+			logFile.seek(offset);
+			logFile.write(record.toByteArray());
+			logSize += record.size();
+
+			IndexEntry previous = index.put(key, new IndexEntry(offset, offset + headerLength, data.length,
+					crc, storedTime, record.size()));
+			if (previous != null) {
+				liveSize -= previous.recordSize;
+			}
+			liveSize += record.size();
+
+			if (logSize > maxSize) {
+				compact();
+			}
+		} catch (IOException e) {
+			Log.e(TAG,"IOException on writing the cache",e);
+			close();
+		}
+	}
+
+	/**
+	 * Remove the entry of the key
+	 * @param key
+	 */
+	public synchronized void remove(String key) {
+		try {
+			open();
+			if (index.containsKey(key)) {
+				removeEntry(key);
+			}
+		} catch (IOException e) {
+			Log.e(TAG,"IOException on removing from the cache",e);
+			close();
+		}
+	}
+
+	/**
+	 * Read the entry of the key on the disk thread. The callback is called on the looper of the calling 
+	 * thread, or on the main thread if the calling thread has no looper.
+	 * @param key
+	 * @param callback - Called with the entry, null if it doesn't exist
+	 */
+	public void getAsync(String key, Callback callback) {
+		Looper looper = Looper.myLooper();
+		getAsync(key, new Handler(looper != null ? looper : Looper.getMainLooper()), callback);
+	}
+
+	/**
+	 * Read the entry of the key on the disk thread & call the callback on the thread of the handler
+	 * @param key
+	 * @param handler - Handler to call the callback, null to call it on the disk thread
+	 * @param callback - Called with the entry, null if it doesn't exist
+	 */
+	public void getAsync(final String key, final Handler handler, final Callback callback) {
+		diskExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final Entry entry = get(key);
+				if (handler == null) {
+					callback.onCacheResult(entry);
+					return;
+				}
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						callback.onCacheResult(entry);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Store the data for the key on the disk thread
+	 * @param key
+	 * @param data
+	 */
+	public void putAsync(final String key, final byte[] data) {
+		diskExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				put(key, data);
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of entries in the cache
+	 * @return
+	 */
+	public synchronized int getEntryCount() {
+		return index.size();
+	}
+
+	/**
+	 * Returns the size of the log file in bytes
+	 * @return
+	 */
+	public synchronized long size() {
+		return logSize;
+	}
+
+	/**
+	 * Returns the number of times a cached entry was returned
+	 * @return
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of times an entry was not cached, stale or corrupted
+	 * @return
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of entries evicted to keep the log under max size
+	 * @return
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Returns the number of entries not stored as they are larger than the cache
+	 * @return
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	// Open the log file & build the index by scanning the records 
+	private void open() throws IOException {
+		if (logFile != null) {
+			return;
+		}
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Unable to create cache directory "+directory);
+		}
+		logFile = new RandomAccessFile(new File(directory, LOG_FILE), "rw");
+		index.clear();
+		liveSize = 0;
+		logSize = logFile.length();
+
+		if (logSize < HEADER_SIZE || !readHeader()) {
+			Log.i(TAG,"Creating new cache log");
+			writeHeader();
+			return;
+		}
+
+		long offset = HEADER_SIZE;
+		try {
+			while (offset < logSize) {
+				logFile.seek(offset);
+				byte type = logFile.readByte();
+				String key = logFile.readUTF();
+				if (type == RECORD_REMOVE) {
+					IndexEntry removed = index.remove(key);
+					if (removed != null) {
+						liveSize -= removed.recordSize;
+					}
+				} else if (type == RECORD_PUT) {
+					long storedTime = logFile.readLong();
+					int length = logFile.readInt();
+					int crc = logFile.readInt();
+					long dataOffset = logFile.getFilePointer();
+					if (length < 0 || dataOffset + length > logSize) {
+						throw new EOFException("Truncated record");
+					}
+					int recordSize = (int) (dataOffset + length - offset);
+					IndexEntry previous = index.put(key, new IndexEntry(offset, dataOffset, length, crc, storedTime, recordSize));
+					if (previous != null) {
+						liveSize -= previous.recordSize;
+					}
+					liveSize += recordSize;
+					logFile.seek(dataOffset + length);
+				} else {
+					throw new IOException("Invalid record type "+type);
+				}
+				offset = logFile.getFilePointer();
+			}
+		} catch (IOException e) {
+			// Incomplete record written at the time of crash, drop it
+			Log.e(TAG,"Truncating cache log at "+offset,e);
+			logFile.setLength(offset);
+			logSize = offset;
+		}
+		Log.d(TAG,"Cache log opened with "+index.size()+" entries");
+	}
+
+	private boolean readHeader() throws IOException {
+		logFile.seek(0);
+		return logFile.readInt() == MAGIC && logFile.readInt() == VERSION;
+	}
+
+	private void writeHeader() throws IOException {
+		logFile.setLength(0);
+		logFile.seek(0);
+		logFile.writeInt(MAGIC);
+		logFile.writeInt(VERSION);
+		logSize = HEADER_SIZE;
+	}
+
+	// Append remove record & remove the entry from index
+	private void removeEntry(String key) throws IOException {
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(record);
+		out.writeByte(RECORD_REMOVE);
+		out.writeUTF(key);
+		out.flush();
+		logFile.seek(logSize);
+		logFile.write(record.toByteArray());
+		logSize += record.size();
+
+		IndexEntry removed = index.remove(key);
+		if (removed != null) {
+			liveSize -= removed.recordSize;
+		}
+	}
+
+	// Evict the least recently used entries and rewrite the live entries to new log
+	private void compact() throws IOException {
+		long targetSize = compactedSize();
+		Iterator<Map.Entry<String, IndexEntry>> iterator = index.entrySet().iterator();
+		while (liveSize > targetSize && iterator.hasNext()) {
+			liveSize -= iterator.next().getValue().recordSize;
+			iterator.remove();
+			evictionCount++;
+		}
+
+		File tempFile = new File(directory, TEMP_FILE);
+		RandomAccessFile compacted = new RandomAccessFile(tempFile, "rw");
+		LinkedHashMap<String, IndexEntry> compactedIndex = new LinkedHashMap<String, IndexEntry>(32, 0.75f, true);
+		try {
+			compacted.setLength(0);
+			compacted.writeInt(MAGIC);
+			compacted.writeInt(VERSION);
+			long offset = HEADER_SIZE;
+			// Least recently used entries are written first, hence the order is kept on reopen
+			for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+				IndexEntry indexEntry = entry.getValue();
+				byte[] record = new byte[indexEntry.recordSize];
+				logFile.seek(indexEntry.offset);
+				logFile.readFully(record);
+				compacted.write(record);
+				compactedIndex.put(entry.getKey(), indexEntry.moveTo(offset));
+				offset += record.length;
+			}
+		} finally {
+			compacted.close();
+		}
+
+		logFile.close();
+		logFile = null;
+		if (!tempFile.renameTo(new File(directory, LOG_FILE))) {
+			throw new IOException("Unable to replace cache log");
+		}
+		logFile = new RandomAccessFile(new File(directory, LOG_FILE), "rw");
+		logSize = logFile.length();
+		index.clear();
+		index.putAll(compactedIndex);
+		Log.i(TAG,"Cache log compacted to "+logSize+" bytes, "+index.size()+" entries");
+	}
+
+	// Size of the live entries kept by the compaction
+	private long compactedSize() {
+		return maxSize * 3 / 4;
+	}
+
+	// Close the log, it will be reopened & index rebuilt on next access
+	private void close() {
+		if (logFile != null) {
+			try {
+				logFile.close();
+			} catch (IOException e) {
+				Log.e(TAG,"IOException on closing the cache log",e);
+			}
+			logFile = null;
+		}
+	}
+
+	private static int crc(byte[] data) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(data);
+		return (int) crc32.getValue();
+	}
+
+	// Location of the record in the log file
+	private static class IndexEntry {
+		final long offset;
+		final long dataOffset;
+		final int length;
+		final int crc;
+		final long storedTime;
+		final int recordSize;
+
+		IndexEntry(long offset, long dataOffset, int length, int crc, long storedTime, int recordSize) {
+			this.offset = offset;
+			this.dataOffset = dataOffset;
+			this.length = length;
+			this.crc = crc;
+			this.storedTime = storedTime;
+			this.recordSize = recordSize;
+		}
+
+		IndexEntry moveTo(long newOffset) {
+			return new IndexEntry(newOffset, newOffset + (dataOffset - offset), length, crc, storedTime, recordSize);
+		}
+	}
+}
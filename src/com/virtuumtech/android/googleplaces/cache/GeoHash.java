@@ -0,0 +1,194 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * GeoHash encodes the latitude & longitude into geohash cells. The cells of a precision form a grid, 
+ * hence the nearby locations share the same cell & a circle is covered by a small set of cells.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+public class GeoHash {
+
+	private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+	private static final double METERS_PER_DEGREE = 111320.0;
+
+	private GeoHash() {
+	}
+
+	/**
+	 * Returns the geohash of the cell having the location
+	 * @param latitude
+	 * @param longitude
+	 * @param precision - Number of characters of the geohash, 1 to 12
+	 * @return
+	 */
+	public static String encode(double latitude, double longitude, int precision) {
+		double minLat = -90, maxLat = 90;
+		double minLng = -180, maxLng = 180;
+		longitude = normalizeLongitude(longitude);
+		StringBuilder hash = new StringBuilder(precision);
+		boolean isLng = true;
+		int bit = 0;
+		int ch = 0;
+		while (hash.length() < precision) {
+			if (isLng) {
+				double mid = (minLng + maxLng) / 2;
+				if (longitude >= mid) {
+					ch = (ch << 1) | 1;
+					minLng = mid;
+				} else {
+					ch = ch << 1;
+					maxLng = mid;
+				}
+			} else {
+				double mid = (minLat + maxLat) / 2;
+				if (latitude >= mid) {
+					ch = (ch << 1) | 1;
+					minLat = mid;
+				} else {
+					ch = ch << 1;
+					maxLat = mid;
+				}
+			}
+			isLng = !isLng;
+			if (++bit == 5) {
+				hash.append(BASE32.charAt(ch));
+				bit = 0;
+				ch = 0;
+			}
+		}
+		return hash.toString();
+	}
+
+	/**
+	 * Returns the bounds of the cell as {minLatitude, minLongitude, maxLatitude, maxLongitude}
+	 * @param hash
+	 * @return
+	 */
+	public static double[] getBounds(String hash) {
+		double minLat = -90, maxLat = 90;
+		double minLng = -180, maxLng = 180;
+		boolean isLng = true;
+		for (int i = 0; i < hash.length(); i++) {
+			int ch = BASE32.indexOf(hash.charAt(i));
+			if (ch < 0) {
+				throw new IllegalArgumentException("Invalid geohash "+hash);
+			}
+			for (int mask = 16; mask > 0; mask >>= 1) {
+				if (isLng) {
+					double mid = (minLng + maxLng) / 2;
+					if ((ch & mask) != 0) {
+						minLng = mid;
+					} else {
+						maxLng = mid;
+					}
+				} else {
+					double mid = (minLat + maxLat) / 2;
+					if ((ch & mask) != 0) {
+						minLat = mid;
+					} else {
+						maxLat = mid;
+					}
+				}
+				isLng = !isLng;
+			}
+		}
+		return new double[] {minLat, minLng, maxLat, maxLng};
+	}
+
+	/**
+	 * Returns the height of the cells of the precision in degrees
+	 * @param precision
+	 * @return
+	 */
+	public static double getCellHeight(int precision) {
+		int bits = precision * 5;
+		return 180.0 / (1L << (bits / 2));
+	}
+
+	/**
+	 * Returns the width of the cells of the precision in degrees
+	 * @param precision
+	 * @return
+	 */
+	public static double getCellWidth(int precision) {
+		int bits = precision * 5;
+		return 360.0 / (1L << ((bits + 1) / 2));
+	}
+
+	/**
+	 * Returns the cells of the precision overlapping the circle
+	 * @param latitude - Latitude of the center
+	 * @param longitude - Longitude of the center
+	 * @param radius - Radius in meters
+	 * @param precision
+	 * @return
+	 */
+	public static List<String> getCoveringCells(double latitude, double longitude, double radius, int precision) {
+		double dLat = radius / METERS_PER_DEGREE;
+		double height = getCellHeight(precision);
+		double width = getCellWidth(precision);
+		double minLat = Math.max(latitude - dLat, -90);
+		double maxLat = Math.min(latitude + dLat, 90);
+		// The degrees of longitude are shortest at the poleward edge, all the longitudes if it is the pole
+		double edgeCos = Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+		double dLng = Math.min(radius / (METERS_PER_DEGREE * Math.max(edgeCos, 1e-9)), 180);
+
+		LinkedHashSet<String> cells = new LinkedHashSet<String>();
+		// Step from the south west cell, the cell of the last step is clamped to the bounds
+		double startLat = Math.floor((minLat + 90) / height) * height - 90;
+		double startLng = Math.floor((longitude - dLng + 180) / width) * width - 180;
+		for (double lat = startLat; lat <= maxLat; lat += height) {
+			double cellLat = Math.min(lat + height / 2, 90 - height / 2);
+			for (double lng = startLng; lng <= longitude + dLng; lng += width) {
+				double cellLng = lng + width / 2;
+				if (getDistance(latitude, longitude, cellLat, cellLng, height, width) <= radius) {
+					cells.add(encode(cellLat, cellLng, precision));
+				}
+			}
+		}
+		return new ArrayList<String>(cells);
+	}
+
+	/**
+	 * Returns the approximate distance in meters between two locations, enough for the cell lookup
+	 * @param lat1
+	 * @param lng1
+	 * @param lat2
+	 * @param lng2
+	 * @return
+	 */
+	public static double getDistance(double lat1, double lng1, double lat2, double lng2) {
+		double dLng = normalizeLongitude(lng2 - lng1);
+		double x = Math.toRadians(dLng) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+		double y = Math.toRadians(lat2 - lat1);
+		return Math.sqrt(x * x + y * y) * 6371000;
+	}
+
+	// Distance from the location to the nearest point of the cell centered at cellLat & cellLng
+	private static double getDistance(double lat, double lng, double cellLat, double cellLng, double height, double width) {
+		double nearestLat = Math.max(cellLat - height / 2, Math.min(lat, cellLat + height / 2));
+		double dLng = normalizeLongitude(lng - cellLng);
+		double nearestLng = cellLng + Math.max(-width / 2, Math.min(dLng, width / 2));
+		return getDistance(lat, lng, nearestLat, nearestLng);
+	}
+
+	private static double normalizeLongitude(double longitude) {
+		while (longitude >= 180) {
+			longitude -= 360;
+		}
+		while (longitude < -180) {
+			longitude += 360;
+		}
+		return longitude;
+	}
+}
@@ -0,0 +1,467 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PhotoDiskCache keeps the downloaded photos as files, keyed by the canonical photo request. 
+ * The photo is streamed from the network to a temporary file and renamed on completion, 
+ * hence a partially downloaded photo is never returned. Least recently used photos are 
+ * deleted when the total size exceeds max size. The photos expire after the time to live, the expired 
+ * photos having ETag or Last-Modified are revalidated with the conditional request. The validators & 
+ * the stored time are kept in a small meta file next to the photo. 
+ * The photos are returned as streams opened while holding the lock, hence an open photo can be read even if 
+ * it is evicted meanwhile.
+ * 
+ * Disk access should not be done on UI thread.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.virtuumtech.android.googleplaces.network.RequestKey;
+
+import android.content.Context;
+import android.util.Log;
+
+public class PhotoDiskCache {
+
+	private static final String TAG = "PhotoDiskCache";
+
+	private static final String DIRECTORY = "googleplaces-photos";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String META_SUFFIX = ".meta";
+
+	public static final long DEFAULT_MAX_SIZE = 20 * 1024 * 1024; // 20 MB of photos
+	public static final long DEFAULT_TIME_TO_LIVE = 7L * 24 * 60 * 60 * 1000; // 7 days
+
+	private static PhotoDiskCache sInstance;
+
+	private final File directory;
+	private final LinkedHashMap<String, Long> files = new LinkedHashMap<String, Long>(64, 0.75f, true);
+	private long maxSize = DEFAULT_MAX_SIZE;
+	private long timeToLive = DEFAULT_TIME_TO_LIVE;
+	private long size;
+	private boolean isOpen = false;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private long revalidationCount;
+	private long notModifiedCount;
+
+	/**
+	 * Returns the process wide photo cache, stored in the cache directory of the application
+	 * @param context
+	 * @return
+	 */
+	public static synchronized PhotoDiskCache getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new PhotoDiskCache(new File(context.getApplicationContext().getCacheDir(), DIRECTORY));
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Constructor for PhotoDiskCache
+	 * @param directory - Directory to store the photos
+	 */
+	public PhotoDiskCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Set the max size of the cached photos, least recently used photos are deleted when it is exceeded
+	 * @param maxSize - size in bytes
+	 */
+	public synchronized void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+		trimToSize();
+	}
+
+	/**
+	 * Set the time after which the photos are revalidated or downloaded again
+	 * @param ttl - Time in milliseconds
+	 */
+	public synchronized void setTimeToLive(long ttl) {
+		timeToLive = ttl;
+	}
+
+	/**
+	 * Returns true if the cache directory can be used
+	 * @return
+	 */
+	public synchronized boolean isAvailable() {
+		return open();
+	}
+
+	/**
+	 * Open the cached photo of the URL, null if it is not cached or expired. The caller closes the stream.
+	 * @param url - Photo request URL
+	 * @return
+	 */
+	public synchronized FileInputStream get(String url) {
+		if (!open()) {
+			missCount++;
+			return null;
+		}
+		String name = getFileName(url);
+		File file = new File(directory, name);
+		if (files.get(name) == null || !file.exists()) {
+			removeFile(name);
+			missCount++;
+			return null;
+		}
+		Meta meta = readMeta(name);
+		if (System.currentTimeMillis() - meta.storedTime >= timeToLive) {
+			Log.d(TAG,"Cached photo expired");
+			if (!meta.validators.isValid()) {
+				removeFile(name);
+			}
+			missCount++;
+			return null;
+		}
+		FileInputStream photo = openFile(name);
+		if (photo == null) {
+			missCount++;
+			return null;
+		}
+		// Keep the access order across restarts
+		file.setLastModified(System.currentTimeMillis());
+		hitCount++;
+		return photo;
+	}
+
+	/**
+	 * Returns the validators of the expired photo of the URL, null if it can not be revalidated
+	 * @param url - Photo request URL
+	 * @return
+	 */
+	public synchronized Validators getValidators(String url) {
+		if (!open()) {
+			return null;
+		}
+		String name = getFileName(url);
+		if (files.get(name) == null) {
+			return null;
+		}
+		Validators validators = readMeta(name).validators;
+		if (!validators.isValid()) {
+			return null;
+		}
+		revalidationCount++;
+		return validators;
+	}
+
+	/**
+	 * Refresh the stored time of the photo revalidated by 304 Not Modified & open it
+	 * @param url - Photo request URL
+	 * @return The cached photo, null if it is removed meanwhile
+	 */
+	public synchronized FileInputStream refresh(String url) {
+		String name = getFileName(url);
+		File file = new File(directory, name);
+		if (files.get(name) == null || !file.exists()) {
+			return null;
+		}
+		FileInputStream photo = openFile(name);
+		if (photo == null) {
+			return null;
+		}
+		notModifiedCount++;
+		writeMeta(name, readMeta(name).validators);
+		file.setLastModified(System.currentTimeMillis());
+		return photo;
+	}
+
+	/**
+	 * Stream the photo to the cache file. The file is visible only after the complete photo is written.
+	 * @param url - Photo request URL
+	 * @param in - Photo stream, it is read till end but not closed
+	 * @return The cached photo opened before it can be evicted, the caller closes it
+	 * @throws IOException on network or disk errors
+	 */
+	public FileInputStream put(String url, InputStream in) throws IOException {
+		return put(url, in, null);
+	}
+
+	/**
+	 * Stream the photo to the cache file with its validators. 
+	 * The file is visible only after the complete photo is written.
+	 * @param url - Photo request URL
+	 * @param in - Photo stream, it is read till end but not closed
+	 * @param validators - ETag & Last-Modified of the response, can be null
+	 * @return The cached photo opened before it can be evicted, the caller closes it
+	 * @throws IOException on network or disk errors
+	 */
+	public FileInputStream put(String url, InputStream in, Validators validators) throws IOException {
+		String name = getFileName(url);
+		File tempFile;
+		synchronized (this) {
+			if (!open()) {
+				throw new IOException("Photo cache directory is not available");
+			}
+			tempFile = File.createTempFile(name, TEMP_SUFFIX, directory);
+		}
+
+		// Stream to the temporary file without holding the lock
+		long length = 0;
+		FileOutputStream out = new FileOutputStream(tempFile);
+		try {
+			byte[] buffer = new byte[8192];
+			int len = 0;
+			while ((len = in.read(buffer)) != -1) {
+				out.write(buffer, 0, len);
+				length += len;
+			}
+			out.getFD().sync();
+		} catch (IOException e) {
+			tempFile.delete();
+			throw e;
+		} finally {
+			out.close();
+		}
+
+		synchronized (this) {
+			File file = new File(directory, name);
+			if (!tempFile.renameTo(file)) {
+				tempFile.delete();
+				throw new IOException("Unable to rename the photo file "+file);
+			}
+			FileInputStream photo = new FileInputStream(file);
+			writeMeta(name, validators);
+			Long previous = files.put(name, length);
+			if (previous != null) {
+				size -= previous;
+			}
+			size += length;
+			trimToSize();
+			return photo;
+		}
+	}
+
+	/**
+	 * Returns the size of cached photos in bytes
+	 * @return
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of times a cached photo was returned
+	 * @return
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of times a photo was not cached
+	 * @return
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of conditional requests sent for the expired photos
+	 * @return
+	 */
+	public synchronized long getRevalidationCount() {
+		return revalidationCount;
+	}
+
+	/**
+	 * Returns the number of expired photos revalidated by 304 Not Modified
+	 * @return
+	 */
+	public synchronized long getNotModifiedCount() {
+		return notModifiedCount;
+	}
+
+	/**
+	 * Returns the ratio of the conditional requests answered by 304 Not Modified
+	 * @return
+	 */
+	public synchronized float getRevalidationHitRate() {
+		return revalidationCount == 0 ? 0 : (float) notModifiedCount / revalidationCount;
+	}
+
+	/**
+	 * Returns the number of photos deleted to keep the cache under max size
+	 * @return
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	// Build the index from the files in the directory, least recently used first
+	private boolean open() {
+		if (isOpen) {
+			return true;
+		}
+		if (!directory.exists() && !directory.mkdirs()) {
+			Log.e(TAG,"Unable to create photo cache directory "+directory);
+			return false;
+		}
+		File[] existing = directory.listFiles();
+		if (existing == null) {
+			return false;
+		}
+		Arrays.sort(existing, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long diff = lhs.lastModified() - rhs.lastModified();
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+		for (File file : existing) {
+			if (file.getName().endsWith(TEMP_SUFFIX)) {
+				// Incomplete download from previous run
+				file.delete();
+				continue;
+			}
+			if (file.getName().endsWith(META_SUFFIX)) {
+				if (!new File(directory, file.getName().substring(0, file.getName().length() - META_SUFFIX.length())).exists()) {
+					file.delete();
+				}
+				continue;
+			}
+			files.put(file.getName(), file.length());
+			size += file.length();
+		}
+		isOpen = true;
+		trimToSize();
+		return true;
+	}
+
+	// Open the photo file, the index entry is removed if the file is deleted by someone else
+	private FileInputStream openFile(String name) {
+		try {
+			return new FileInputStream(new File(directory, name));
+		} catch (FileNotFoundException e) {
+			Log.e(TAG,"Cached photo is deleted "+name);
+			removeFile(name);
+			return null;
+		}
+	}
+
+	private void removeFile(String name) {
+		Long length = files.remove(name);
+		if (length != null) {
+			size -= length;
+		}
+		new File(directory, name).delete();
+		new File(directory, name + META_SUFFIX).delete();
+	}
+
+	// Delete least recently used photos till the size is below max size
+	private void trimToSize() {
+		Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+		while (size > maxSize && iterator.hasNext()) {
+			Map.Entry<String, Long> eldest = iterator.next();
+			size -= eldest.getValue();
+			iterator.remove();
+			new File(directory, eldest.getKey()).delete();
+			new File(directory, eldest.getKey() + META_SUFFIX).delete();
+			evictionCount++;
+		}
+	}
+
+	// Read the stored time & validators of the photo. The photos without meta file are stored at their 
+	// last modified time & can not be revalidated.
+	private Meta readMeta(String name) {
+		File metaFile = new File(directory, name + META_SUFFIX);
+		if (metaFile.exists()) {
+			try {
+				DataInputStream in = new DataInputStream(new FileInputStream(metaFile));
+				try {
+					long storedTime = in.readLong();
+					String etag = in.readBoolean() ? in.readUTF() : null;
+					String lastModified = in.readBoolean() ? in.readUTF() : null;
+					return new Meta(storedTime, new Validators(etag, lastModified));
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				Log.e(TAG,"Unable to read photo meta file "+metaFile,e);
+			}
+		}
+		return new Meta(new File(directory, name).lastModified(), new Validators(null, null));
+	}
+
+	// Write the current time as stored time with the validators
+	private void writeMeta(String name, Validators validators) {
+		File metaFile = new File(directory, name + META_SUFFIX);
+		try {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(metaFile));
+			try {
+				out.writeLong(System.currentTimeMillis());
+				String etag = validators != null ? validators.getETag() : null;
+				String lastModified = validators != null ? validators.getLastModified() : null;
+				out.writeBoolean(etag != null);
+				if (etag != null) {
+					out.writeUTF(etag);
+				}
+				out.writeBoolean(lastModified != null);
+				if (lastModified != null) {
+					out.writeUTF(lastModified);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			// The photo is treated as stored at its last modified time
+			Log.e(TAG,"Unable to write photo meta file "+metaFile,e);
+			metaFile.delete();
+		}
+	}
+
+	// File name is the SHA-1 of the canonical request, hence it doesn't have the API key
+	private static String getFileName(String url) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(RequestKey.canonical(url).getBytes("UTF-8"));
+			StringBuilder name = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				name.append(Character.forDigit((b >> 4) & 0xf, 16));
+				name.append(Character.forDigit(b & 0xf, 16));
+			}
+			return name.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// Stored time & validators of a photo
+	private static class Meta {
+		final long storedTime;
+		final Validators validators;
+
+		Meta(long storedTime, Validators validators) {
+			this.storedTime = storedTime;
+			this.validators = validators;
+		}
+	}
+}
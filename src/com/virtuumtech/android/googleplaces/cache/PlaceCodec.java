@@ -0,0 +1,341 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PlaceCodec encodes the PlacesList, PlaceDetails, search pages and addresses to compact binary form for DiskCache.
+ * Parcel is not used, since its format is not stable across platform versions. 
+ * Strings are written as UTF-8 bytes after their length, so their size is not limited to 64 KB as with writeUTF.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import com.virtuumtech.android.googleplaces.PlaceDetails;
+import com.virtuumtech.android.googleplaces.PlacesList;
+
+import android.location.Address;
+import android.location.Location;
+
+public class PlaceCodec {
+
+	private static final int VERSION = 2;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int NULL_LENGTH = -1;
+	private static final int READ_CHUNK_SIZE = 8192;
+
+	private PlaceCodec() {
+	}
+
+	/**
+	 * Encode the place details
+	 * @param details
+	 * @return
+	 */
+	public static byte[] encodePlaceDetails(PlaceDetails details) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(VERSION);
+			writePlaceDetails(out, details);
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// Writing to memory doesn't fail
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Decode the place details encoded by encodePlaceDetails
+	 * @param data
+	 * @return
+	 * @throws IOException if the data is not valid
+	 */
+	public static PlaceDetails decodePlaceDetails(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		checkVersion(in);
+		return readPlaceDetails(in);
+	}
+
+	/**
+	 * Encode a page of search results
+	 * @param status - GOOGLE API status of the page
+	 * @param nextPageToken - Token of the next page
+	 * @param places - Places in the page
+	 * @return
+	 */
+	public static byte[] encodeSearchPage(String status, String nextPageToken, List<PlacesList> places) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + places.size() * 128);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(VERSION);
+			writeString(out, status);
+			writeString(out, nextPageToken);
+			out.writeInt(places.size());
+			for (PlacesList place : places) {
+				writePlacesList(out, place);
+			}
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// Writing to memory doesn't fail
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Decode a page of search results encoded by encodeSearchPage
+	 * @param data
+	 * @return
+	 * @throws IOException if the data is not valid
+	 */
+	public static SearchPage decodeSearchPage(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		checkVersion(in);
+		String status = readString(in);
+		String nextPageToken = readString(in);
+		int count = in.readInt();
+		if (count < 0) {
+			throw new IOException("Invalid number of places "+count);
+		}
+		ArrayList<PlacesList> places = new ArrayList<PlacesList>(count);
+		for (int i = 0; i < count; i++) {
+			places.add(readPlacesList(in));
+		}
+		return new SearchPage(status, nextPageToken, places);
+	}
+
+	/**
+	 * Write the PlacesList to output
+	 * @param out
+	 * @param place
+	 * @throws IOException
+	 */
+	public static void writePlacesList(DataOutput out, PlacesList place) throws IOException {
+		writeString(out, place.getPlaceID());
+		writeString(out, place.getName());
+		writeString(out, place.getOpenNow());
+		writeString(out, place.getAddress());
+		out.writeDouble(place.getRating());
+		writeLocation(out, place.getLocation());
+	}
+
+	/**
+	 * Read the PlacesList written by writePlacesList
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static PlacesList readPlacesList(DataInput in) throws IOException {
+		PlacesList place = new PlacesList();
+		place.setPlaceID(readString(in));
+		place.setName(readString(in));
+		place.setOpenNow(readString(in));
+		place.setAddress(readString(in));
+		place.setRating(in.readDouble());
+		place.setLocation(readLocation(in));
+		return place;
+	}
+
+	/**
+	 * Write the PlaceDetails to output
+	 * @param out
+	 * @param details
+	 * @throws IOException
+	 */
+	public static void writePlaceDetails(DataOutput out, PlaceDetails details) throws IOException {
+		writeString(out, details.getPlaceID());
+		writeString(out, details.getName());
+		writeString(out, details.getAddress());
+		writeString(out, details.getPhone());
+		writeString(out, details.getWeb());
+		writeString(out, details.getGoogleURL());
+		writeString(out, details.getWikiURL());
+		writeString(out, details.getWikiDesc());
+		out.writeDouble(details.getRating());
+		writeString(out, details.getOpenNow());
+		writeString(out, details.getOpenTime());
+		writeLocation(out, details.getLocation());
+		int photos = details.getPhotosCount();
+		out.writeInt(photos);
+		for (int i = 0; i < photos; i++) {
+			writeString(out, details.getPhotoRef(i));
+		}
+	}
+
+	/**
+	 * Read the PlaceDetails written by writePlaceDetails
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static PlaceDetails readPlaceDetails(DataInput in) throws IOException {
+		PlaceDetails details = new PlaceDetails();
+		details.setPlaceID(readString(in));
+		details.setName(readString(in));
+		details.setAddress(readString(in));
+		details.setPhone(readString(in));
+		details.setWeb(readString(in));
+		details.setGoogleURL(readString(in));
+		details.setWikiURL(readString(in));
+		details.setWikiDesc(readString(in));
+		details.setRating(in.readDouble());
+		details.setOpenNow(readString(in));
+		details.setOpenTime(readString(in));
+		details.setLocation(readLocation(in));
+		int photos = in.readInt();
+		if (photos < 0) {
+			throw new IOException("Invalid number of photos "+photos);
+		}
+		for (int i = 0; i < photos; i++) {
+			details.addPhotoRef(readString(in));
+		}
+		return details;
+	}
+
+	/**
+	 * Write the Address to output
+	 * @param out
+	 * @param address
+	 * @throws IOException
+	 */
+	public static void writeAddress(DataOutput out, Address address) throws IOException {
+		Locale locale = address.getLocale();
+		writeString(out, locale != null ? locale.getLanguage() : null);
+		writeString(out, locale != null ? locale.getCountry() : null);
+		int lines = address.getMaxAddressLineIndex() + 1;
+		out.writeInt(lines);
+		for (int i = 0; i < lines; i++) {
+			writeString(out, address.getAddressLine(i));
+		}
+		writeString(out, address.getFeatureName());
+		writeString(out, address.getAdminArea());
+		writeString(out, address.getSubAdminArea());
+		writeString(out, address.getLocality());
+		writeString(out, address.getSubLocality());
+		writeString(out, address.getThoroughfare());
+		writeString(out, address.getSubThoroughfare());
+		writeString(out, address.getPostalCode());
+		writeString(out, address.getCountryCode());
+		writeString(out, address.getCountryName());
+		writeString(out, address.getPhone());
+		writeString(out, address.getUrl());
+		out.writeBoolean(address.hasLatitude() && address.hasLongitude());
+		if (address.hasLatitude() && address.hasLongitude()) {
+			out.writeDouble(address.getLatitude());
+			out.writeDouble(address.getLongitude());
+		}
+	}
+
+	/**
+	 * Read the Address written by writeAddress
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static Address readAddress(DataInput in) throws IOException {
+		String language = readString(in);
+		String country = readString(in);
+		Address address = new Address(language != null 
+				? new Locale(language, country != null ? country : "") : Locale.getDefault());
+		int lines = in.readInt();
+		if (lines < 0) {
+			throw new IOException("Invalid number of address lines "+lines);
+		}
+		for (int i = 0; i < lines; i++) {
+			address.setAddressLine(i, readString(in));
+		}
+		address.setFeatureName(readString(in));
+		address.setAdminArea(readString(in));
+		address.setSubAdminArea(readString(in));
+		address.setLocality(readString(in));
+		address.setSubLocality(readString(in));
+		address.setThoroughfare(readString(in));
+		address.setSubThoroughfare(readString(in));
+		address.setPostalCode(readString(in));
+		address.setCountryCode(readString(in));
+		address.setCountryName(readString(in));
+		address.setPhone(readString(in));
+		address.setUrl(readString(in));
+		if (in.readBoolean()) {
+			address.setLatitude(in.readDouble());
+			address.setLongitude(in.readDouble());
+		}
+		return address;
+	}
+
+	private static void checkVersion(DataInput in) throws IOException {
+		int version = in.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported version "+version);
+		}
+	}
+
+	// Strings can be null, hence null is written as NULL_LENGTH without bytes
+	private static void writeString(DataOutput out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(NULL_LENGTH);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length == NULL_LENGTH) {
+			return null;
+		}
+		if (length < 0) {
+			throw new IOException("Invalid string length "+length);
+		}
+		// Read in chunks, hence a corrupt length fails at the end of the data instead of allocating the length
+		byte[] bytes = new byte[Math.min(length, READ_CHUNK_SIZE)];
+		int read = 0;
+		while (true) {
+			in.readFully(bytes, read, bytes.length - read);
+			read = bytes.length;
+			if (read == length) {
+				break;
+			}
+			bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+		}
+		return new String(bytes, UTF_8);
+	}
+
+	// Only latitude & longitude of the location are kept
+	private static void writeLocation(DataOutput out, Location location) throws IOException {
+		out.writeBoolean(location != null);
+		if (location != null) {
+			out.writeDouble(location.getLatitude());
+			out.writeDouble(location.getLongitude());
+		}
+	}
+
+	private static Location readLocation(DataInput in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		Location location = new Location("");
+		location.setLatitude(in.readDouble());
+		location.setLongitude(in.readDouble());
+		return location;
+	}
+}
@@ -0,0 +1,394 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PlaceIndex is the in memory spatial index of the places received by the searches. The places are kept 
+ * in geohash cells, hence the radius & nearest queries look up only the cells around the location. 
+ * The types of the query returning a place are kept with it, so the queries can be filtered by types 
+ * like SearchQuery.setTypes. A search returning all the places of a circle (no further page) is recorded 
+ * as coverage, isCovered tells whether the places of a circle are known without the remote call. 
+ * Coverage expires after the search time to live of ResponseCache. The number of places is bounded, 
+ * least recently used places are evicted along with the coverage of the circles having them.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.virtuumtech.android.googleplaces.PlacesList;
+
+import android.location.Location;
+import android.os.SystemClock;
+import android.util.Log;
+
+public class PlaceIndex {
+
+	private static final String TAG = "PlaceIndex";
+
+	public static final int DEFAULT_MAX_ENTRIES = 2000;
+	public static final int MAX_RADIUS = 50000; // Max radius of the searches in meters
+
+	private static final int CELL_PRECISION = 6; // Cells of about 1.2 x 0.6 km
+	private static final int MAX_COVERAGE = 64;
+	private static final int INITIAL_NEAREST_RADIUS = 500;
+
+	private static PlaceIndex sInstance;
+
+	//Places in LRU order keyed by place id
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+	//Place ids of each cell
+	private final HashMap<String, HashSet<String>> cells = new HashMap<String, HashSet<String>>();
+	//Circles of which all the places are known, latest last
+	private final ArrayList<Coverage> coverage = new ArrayList<Coverage>();
+	private int maxEntries;
+
+	private long coveredCount;
+	private long notCoveredCount;
+	private long evictionCount;
+
+	/**
+	 * Returns the process wide place index
+	 * @return
+	 */
+	public static synchronized PlaceIndex getInstance() {
+		if (sInstance == null) {
+			sInstance = new PlaceIndex(DEFAULT_MAX_ENTRIES);
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Constructor for PlaceIndex
+	 * @param maxEntries - Max number of places in the index
+	 */
+	public PlaceIndex(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Set the max number of places in the index, the index is trimmed if it is above the new size.
+	 * @param maxEntries
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		trimToSize(maxEntries);
+	}
+
+	/**
+	 * Add the places returned by a search. The places without location are ignored.
+	 * @param places
+	 * @param types - Types of the search as in SearchQuery.setTypes, null if the search has no types
+	 */
+	public synchronized void add(List<PlacesList> places, String types) {
+		String typeKey = getTypeKey(types);
+		for (PlacesList place : places) {
+			if (place.getPlaceID() == null || place.getLocation() == null) {
+				continue;
+			}
+			Location location = place.getLocation();
+			String cell = GeoHash.encode(location.getLatitude(), location.getLongitude(), CELL_PRECISION);
+			Entry entry = entries.get(place.getPlaceID());
+			if (entry == null) {
+				entry = new Entry();
+				entries.put(place.getPlaceID(), entry);
+			} else if (!entry.cell.equals(cell)) {
+				removeFromCell(entry.cell, place.getPlaceID());
+			}
+			entry.place = place;
+			entry.cell = cell;
+			if (typeKey != null) {
+				entry.types.add(typeKey);
+			}
+			HashSet<String> ids = cells.get(cell);
+			if (ids == null) {
+				ids = new HashSet<String>();
+				cells.put(cell, ids);
+			}
+			ids.add(place.getPlaceID());
+		}
+		trimToSize(maxEntries);
+	}
+
+	/**
+	 * Record that all the places of the circle matching the types are added
+	 * @param location - Center of the circle as in SearchQuery.setLocation
+	 * @param radius - Radius in meters as in SearchQuery.setRadius
+	 * @param types - Types as in SearchQuery.setTypes, null if the search has no types
+	 */
+	public synchronized void addCoverage(Location location, int radius, String types) {
+		Coverage area = new Coverage(location.getLatitude(), location.getLongitude(), radius, getTypeKey(types));
+		// Drop the circles within the new one
+		Iterator<Coverage> iter = coverage.iterator();
+		while (iter.hasNext()) {
+			if (area.contains(iter.next())) {
+				iter.remove();
+			}
+		}
+		coverage.add(area);
+		if (coverage.size() > MAX_COVERAGE) {
+			coverage.remove(0);
+		}
+	}
+
+	/**
+	 * Returns true if all the places of the circle matching the types are known & not expired, 
+	 * hence the query can be answered locally without the remote call.
+	 * @param location
+	 * @param radius - Radius in meters
+	 * @param types - Types as in SearchQuery.setTypes, null for all types
+	 * @return
+	 */
+	public synchronized boolean isCovered(Location location, int radius, String types) {
+		Coverage area = new Coverage(location.getLatitude(), location.getLongitude(), radius, getTypeKey(types));
+		long ttl = ResponseCache.getInstance().getTimeToLive(ResponseCache.ENDPOINT_SEARCH);
+		long now = SystemClock.elapsedRealtime();
+		Iterator<Coverage> iter = coverage.iterator();
+		while (iter.hasNext()) {
+			Coverage covered = iter.next();
+			if (now - covered.time >= ttl) {
+				iter.remove();
+			} else if (covered.contains(area)) {
+				coveredCount++;
+				return true;
+			}
+		}
+		notCoveredCount++;
+		return false;
+	}
+
+	/**
+	 * Returns the places within the circle matching the types, nearest first
+	 * @param location
+	 * @param radius - Radius in meters
+	 * @param types - Types as in SearchQuery.setTypes, null for all types
+	 * @return
+	 */
+	public synchronized ArrayList<PlacesList> query(Location location, int radius, String types) {
+		final double lat = location.getLatitude();
+		final double lng = location.getLongitude();
+		HashSet<String> typeSet = getTypeSet(types);
+		final HashMap<PlacesList, Double> distances = new HashMap<PlacesList, Double>();
+
+		List<String> cellList = GeoHash.getCoveringCells(lat, lng, radius, CELL_PRECISION);
+		if (cellList.size() > entries.size()) {
+			// Scanning all the places is cheaper than looking up the cells
+			for (Entry entry : entries.values()) {
+				addIfWithin(entry, lat, lng, radius, typeSet, distances);
+			}
+		} else {
+			for (String cell : cellList) {
+				HashSet<String> ids = cells.get(cell);
+				if (ids == null) {
+					continue;
+				}
+				for (String id : ids) {
+					addIfWithin(entries.get(id), lat, lng, radius, typeSet, distances);
+				}
+			}
+		}
+
+		ArrayList<PlacesList> result = new ArrayList<PlacesList>(distances.keySet());
+		Collections.sort(result, new Comparator<PlacesList>() {
+			@Override
+			public int compare(PlacesList lhs, PlacesList rhs) {
+				return Double.compare(distances.get(lhs), distances.get(rhs));
+			}
+		});
+		Log.d(TAG,result.size()+" places within "+radius+" m");
+		return result;
+	}
+
+	/**
+	 * Returns the k nearest places matching the types within the max search radius, nearest first
+	 * @param location
+	 * @param k - Number of places
+	 * @param types - Types as in SearchQuery.setTypes, null for all types
+	 * @return
+	 */
+	public synchronized ArrayList<PlacesList> nearest(Location location, int k, String types) {
+		// Grow the circle till it has k places, the places within the circle are nearer than the others
+		int radius = INITIAL_NEAREST_RADIUS;
+		ArrayList<PlacesList> result = query(location, radius, types);
+		while (result.size() < k && radius < MAX_RADIUS) {
+			radius = Math.min(radius * 4, MAX_RADIUS);
+			result = query(location, radius, types);
+		}
+		if (result.size() > k) {
+			return new ArrayList<PlacesList>(result.subList(0, k));
+		}
+		return result;
+	}
+
+	/**
+	 * Remove all the places & coverage
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		cells.clear();
+		coverage.clear();
+	}
+
+	/**
+	 * Returns the number of places in the index
+	 * @return
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of isCovered checks answered locally
+	 * @return
+	 */
+	public synchronized long getCoveredCount() {
+		return coveredCount;
+	}
+
+	/**
+	 * Returns the number of isCovered checks requiring the remote call
+	 * @return
+	 */
+	public synchronized long getNotCoveredCount() {
+		return notCoveredCount;
+	}
+
+	/**
+	 * Returns the number of places evicted to keep the index in size
+	 * @return
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	private void addIfWithin(Entry entry, double lat, double lng, int radius, 
+			HashSet<String> typeSet, HashMap<PlacesList, Double> distances) {
+		if (typeSet != null && !entry.matches(typeSet)) {
+			return;
+		}
+		Location location = entry.place.getLocation();
+		double distance = GeoHash.getDistance(lat, lng, location.getLatitude(), location.getLongitude());
+		if (distance <= radius) {
+			distances.put(entry.place, distance);
+		}
+	}
+
+	private void removeFromCell(String cell, String placeID) {
+		HashSet<String> ids = cells.get(cell);
+		if (ids != null) {
+			ids.remove(placeID);
+			if (ids.isEmpty()) {
+				cells.remove(cell);
+			}
+		}
+	}
+
+	// Remove the least recently used places till the index is within the size
+	private void trimToSize(int size) {
+		Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator();
+		while (entries.size() > size && iter.hasNext()) {
+			Map.Entry<String, Entry> eldest = iter.next();
+			removeFromCell(eldest.getValue().cell, eldest.getKey());
+			removeCoverage(eldest.getValue().place.getLocation());
+			iter.remove();
+			evictionCount++;
+		}
+	}
+
+	// Remove the coverage of the circles having the evicted place, as their places are no longer all known
+	private void removeCoverage(Location location) {
+		Iterator<Coverage> iter = coverage.iterator();
+		while (iter.hasNext()) {
+			Coverage covered = iter.next();
+			if (GeoHash.getDistance(covered.lat, covered.lng, location.getLatitude(), location.getLongitude()) 
+					<= covered.radius) {
+				Log.d(TAG,"Coverage is removed with the evicted place");
+				iter.remove();
+			}
+		}
+	}
+
+	// Types in sorted order, hence "bar|cafe" & "cafe|bar" are the same. Null if there is no type.
+	private static String getTypeKey(String types) {
+		HashSet<String> typeSet = getTypeSet(types);
+		if (typeSet == null) {
+			return null;
+		}
+		String[] sorted = typeSet.toArray(new String[typeSet.size()]);
+		Arrays.sort(sorted);
+		StringBuilder key = new StringBuilder();
+		for (String type : sorted) {
+			if (key.length() > 0) {
+				key.append('|');
+			}
+			key.append(type);
+		}
+		return key.toString();
+	}
+
+	private static HashSet<String> getTypeSet(String types) {
+		if (types == null || types.trim().isEmpty()) {
+			return null;
+		}
+		HashSet<String> typeSet = new HashSet<String>();
+		for (String type : types.split("\\|")) {
+			if (!type.trim().isEmpty()) {
+				typeSet.add(type.trim());
+			}
+		}
+		return typeSet.isEmpty() ? null : typeSet;
+	}
+
+	// Place with the types of the searches returning it
+	private static class Entry {
+		PlacesList place;
+		String cell;
+		final HashSet<String> types = new HashSet<String>();
+
+		// A place returned for "bar|cafe" is either of them, hence it matches only the queries having both
+		boolean matches(HashSet<String> typeSet) {
+			for (String key : types) {
+				if (typeSet.containsAll(Arrays.asList(key.split("\\|")))) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	// Circle of which all the places matching the types are known
+	private static class Coverage {
+		final double lat;
+		final double lng;
+		final int radius;
+		final String types;
+		final long time = SystemClock.elapsedRealtime();
+
+		Coverage(double lat, double lng, int radius, String types) {
+			this.lat = lat;
+			this.lng = lng;
+			this.radius = radius;
+			this.types = types;
+		}
+
+		// Same types & the other circle is within this one
+		boolean contains(Coverage other) {
+			if (types == null ? other.types != null : !types.equals(other.types)) {
+				return false;
+			}
+			return GeoHash.getDistance(lat, lng, other.lat, other.lng) + other.radius <= radius;
+		}
+	}
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PredictionCache is the in memory prefix trie of autocomplete predictions (description & place id). 
+ * The predictions are kept per scope (types, location & radius of the query) and expire after the 
+ * autocomplete time to live of ResponseCache. By default only the inputs queried before are answered. 
+ * 
+ * Prefix filtering can be enabled to answer longer inputs locally: a response with less than 5 predictions 
+ * is treated as complete & the predictions of longer inputs are filtered from it by word prefix. It is a 
+ * heuristic, the server matches the input fuzzily (spelling, abbreviations, terms inside words), hence the 
+ * filtered predictions can miss the places the server would return for the longer input. 
+ * The number of cached inputs is bounded, least recently used inputs are evicted.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+public class PredictionCache {
+
+	private static final String TAG = "PredictionCache";
+
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+	public static final int MAX_PREDICTIONS = 5; // Max predictions returned by autocomplete
+
+	private static PredictionCache sInstance;
+
+	//Trie root of each scope
+	private final HashMap<String, Node> roots = new HashMap<String, Node>();
+	//Nodes having predictions in LRU order, keyed by scope & input
+	private final LinkedHashMap<String, Node> entries = new LinkedHashMap<String, Node>(32, 0.75f, true);
+	private int maxEntries;
+	private boolean prefixFiltering = false;
+
+	private long hitCount;
+	private long prefixHitCount;
+	private long missCount;
+	private long evictionCount;
+
+	/**
+	 * Returns the process wide prediction cache
+	 * @return
+	 */
+	public static synchronized PredictionCache getInstance() {
+		if (sInstance == null) {
+			sInstance = new PredictionCache(DEFAULT_MAX_ENTRIES);
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Constructor for PredictionCache
+	 * @param maxEntries - Max number of inputs having cached predictions
+	 */
+	public PredictionCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Set the max number of inputs having cached predictions, the cache is trimmed if it is above the new size.
+	 * @param maxEntries
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		trimToSize(maxEntries);
+	}
+
+	/**
+	 * Enable answering the inputs from the complete predictions of a shorter prefix. Disabled by default, 
+	 * the filtered predictions can miss the fuzzy matches of the server.
+	 * @param enable
+	 */
+	public synchronized void setPrefixFiltering(boolean enable) {
+		prefixFiltering = enable;
+	}
+
+	/**
+	 * Returns the predictions of the input, cached for the input or, if prefix filtering is enabled, 
+	 * filtered from the complete predictions of a shorter prefix. 
+	 * @param scope - Types, location & radius of the query
+	 * @param input - Input of the query
+	 * @return null if the predictions are not known
+	 */
+	public synchronized Predictions get(String scope, String input) {
+		String key = normalize(input);
+		Node node = roots.get(scope);
+		Node completePrefix = null;
+		long now = SystemClock.elapsedRealtime();
+		long ttl = ResponseCache.getInstance().getTimeToLive(ResponseCache.ENDPOINT_AUTOCOMPLETE);
+
+		//Walk the input, remembering the longest prefix with complete predictions
+		for (int i = 0; node != null && i < key.length(); i++) {
+			if (prefixFiltering && isFresh(node, now, ttl) && node.predictions.complete) {
+				completePrefix = node;
+			}
+			node = node.children == null ? null : node.children.get(key.charAt(i));
+		}
+
+		if (node != null && isFresh(node, now, ttl)) {
+			entries.get(entryKey(scope, key));
+			hitCount++;
+			return node.predictions;
+		}
+		if (completePrefix != null) {
+			entries.get(entryKey(scope, completePrefix.input));
+			Predictions predictions = completePrefix.predictions.filter(key);
+			Log.d(TAG,"Predictions filtered from prefix '"+completePrefix.input+"'");
+			putPredictions(scope, key, predictions, completePrefix.storedTime);
+			hitCount++;
+			prefixHitCount++;
+			return predictions;
+		}
+		missCount++;
+		return null;
+	}
+
+	/**
+	 * Cache the predictions of the input
+	 * @param scope - Types, location & radius of the query
+	 * @param input - Input of the query
+	 * @param descriptions - Description of the predictions
+	 * @param placeIDs - Place ids of the predictions, in the same order as descriptions
+	 */
+	public synchronized void put(String scope, String input, List<String> descriptions, List<String> placeIDs) {
+		String key = normalize(input);
+		if (key.isEmpty() || maxEntries <= 0) {
+			return;
+		}
+		boolean complete = descriptions.size() < MAX_PREDICTIONS;
+		putPredictions(scope, key, new Predictions(descriptions, placeIDs, complete), SystemClock.elapsedRealtime());
+	}
+
+	/**
+	 * Remove all the cached predictions
+	 */
+	public synchronized void clear() {
+		roots.clear();
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of inputs having cached predictions
+	 * @return
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of times the predictions were answered from cache, including prefix hits
+	 * @return
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of times the predictions were filtered from a shorter prefix
+	 * @return
+	 */
+	public synchronized long getPrefixHitCount() {
+		return prefixHitCount;
+	}
+
+	/**
+	 * Returns the number of times the predictions were not known
+	 * @return
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the ratio of the lookups answered from cache, 0 if there is no lookup
+	 * @return
+	 */
+	public synchronized float getHitRate() {
+		long total = hitCount + missCount;
+		return total == 0 ? 0 : (float) hitCount / total;
+	}
+
+	/**
+	 * Returns the number of inputs evicted to keep the cache under max entries
+	 * @return
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	// The filtered predictions keep the stored time of the prefix, hence they expire together
+	private void putPredictions(String scope, String key, Predictions predictions, long storedTime) {
+		Node node = roots.get(scope);
+		if (node == null) {
+			node = new Node(null, "");
+			roots.put(scope, node);
+		}
+		for (int i = 0; i < key.length(); i++) {
+			if (node.children == null) {
+				node.children = new HashMap<Character, Node>();
+			}
+			Node child = node.children.get(key.charAt(i));
+			if (child == null) {
+				child = new Node(node, key.substring(0, i + 1));
+				node.children.put(key.charAt(i), child);
+			}
+			node = child;
+		}
+		node.predictions = predictions;
+		node.storedTime = storedTime;
+		entries.put(entryKey(scope, key), node);
+		trimToSize(maxEntries);
+	}
+
+	private boolean isFresh(Node node, long now, long ttl) {
+		return node.predictions != null && now - node.storedTime < ttl;
+	}
+
+	// Evict the least recently used inputs till the number of inputs is below max entries
+	private void trimToSize(int max) {
+		Iterator<Map.Entry<String, Node>> iterator = entries.entrySet().iterator();
+		while (entries.size() > max && iterator.hasNext()) {
+			Map.Entry<String, Node> eldest = iterator.next();
+			iterator.remove();
+			removePredictions(eldest.getKey(), eldest.getValue());
+			evictionCount++;
+		}
+	}
+
+	// Clear the predictions of the node & remove the empty nodes up to the scope root
+	private void removePredictions(String entryKey, Node node) {
+		node.predictions = null;
+		while (node.parent != null && node.predictions == null
+				&& (node.children == null || node.children.isEmpty())) {
+			node.parent.children.remove(node.input.charAt(node.input.length() - 1));
+			node = node.parent;
+		}
+		if (node.parent == null && (node.children == null || node.children.isEmpty())) {
+			roots.remove(entryKey.substring(0, entryKey.indexOf('\n')));
+		}
+	}
+
+	private static String entryKey(String scope, String key) {
+		return scope+"\n"+key;
+	}
+
+	private static String normalize(String input) {
+		return input.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Predictions of an input
+	 */
+	public static class Predictions {
+		private final ArrayList<String> descriptions;
+		private final ArrayList<String> placeIDs;
+		private final boolean complete;
+
+		Predictions(List<String> descriptions, List<String> placeIDs, boolean complete) {
+			this.descriptions = new ArrayList<String>(descriptions);
+			this.placeIDs = new ArrayList<String>(placeIDs);
+			this.complete = complete;
+		}
+
+		/**
+		 * Returns the description of the predictions
+		 * @return
+		 */
+		public List<String> getDescriptions() {
+			return descriptions;
+		}
+
+		/**
+		 * Returns the place ids of the predictions, in the same order as descriptions
+		 * @return
+		 */
+		public List<String> getPlaceIDs() {
+			return placeIDs;
+		}
+
+		// Predictions matching the longer input, each term of input should start a word of the description
+		Predictions filter(String input) {
+			String[] terms = input.trim().split("\\s+");
+			ArrayList<String> matchedDescriptions = new ArrayList<String>();
+			ArrayList<String> matchedIDs = new ArrayList<String>();
+			for (int i = 0; i < descriptions.size(); i++) {
+				String text = normalize(descriptions.get(i));
+				boolean matched = true;
+				for (String term : terms) {
+					if (!startsWord(text, term)) {
+						matched = false;
+						break;
+					}
+				}
+				if (matched) {
+					matchedDescriptions.add(descriptions.get(i));
+					matchedIDs.add(placeIDs.get(i));
+				}
+			}
+			return new Predictions(matchedDescriptions, matchedIDs, true);
+		}
+
+		private static boolean startsWord(String text, String term) {
+			int index = text.indexOf(term);
+			while (index >= 0) {
+				if (index == 0 || !Character.isLetterOrDigit(text.charAt(index - 1))) {
+					return true;
+				}
+				index = text.indexOf(term, index + 1);
+			}
+			return false;
+		}
+	}
+
+	// Trie node, the input is the prefix up to this node
+	private static class Node {
+		final Node parent;
+		final String input;
+		HashMap<Character, Node> children;
+		Predictions predictions;
+		long storedTime;
+
+		Node(Node parent, String input) {
+			this.parent = parent;
+			this.input = input;
+		}
+	}
+}
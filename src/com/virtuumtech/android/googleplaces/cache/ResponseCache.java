@@ -0,0 +1,339 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * ResponseCache is the in memory cache of Google Places web API responses. 
+ * The responses are cached using the canonical request (RequestKey) and evicted in LRU order once 
+ * the total size of the cached bodies exceeds the max size. Each entry expires after the 
+ * time to live of its endpoint, open now searches have short time to live & place details have long.
+ * The expired responses having ETag or Last-Modified are kept for the conditional request, a 304 
+ * response refreshes their time to live without the body transfer.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.virtuumtech.android.googleplaces.network.RequestKey;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+public class ResponseCache {
+
+	private static final String TAG = "ResponseCache";
+
+	public static final int ENDPOINT_SEARCH = 0;
+	public static final int ENDPOINT_OPEN_NOW_SEARCH = 1;
+	public static final int ENDPOINT_DETAILS = 2;
+	public static final int ENDPOINT_AUTOCOMPLETE = 3;
+	public static final int ENDPOINT_OTHER = 4;
+
+	public static final int DEFAULT_MAX_SIZE = 2 * 1024 * 1024; // 2 MB of response bodies
+
+	private static final long MINUTE = 60 * 1000;
+
+	private static ResponseCache sInstance;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(32, 0.75f, true);
+	private final long[] timeToLive = new long[ENDPOINT_OTHER + 1];
+	private int maxSize;
+	private int size;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private long expiredCount;
+	private long revalidationCount;
+	private long notModifiedCount;
+
+	/**
+	 * Returns the process wide response cache
+	 * @return
+	 */
+	public static synchronized ResponseCache getInstance() {
+		if (sInstance == null) {
+			sInstance = new ResponseCache(DEFAULT_MAX_SIZE);
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Constructor for ResponseCache
+	 * @param maxSize - Max size of the cached bodies in bytes
+	 */
+	public ResponseCache(int maxSize) {
+		this.maxSize = maxSize;
+		timeToLive[ENDPOINT_SEARCH] = 5 * MINUTE;
+		timeToLive[ENDPOINT_OPEN_NOW_SEARCH] = MINUTE;
+		timeToLive[ENDPOINT_DETAILS] = 60 * MINUTE;
+		timeToLive[ENDPOINT_AUTOCOMPLETE] = 10 * MINUTE;
+		timeToLive[ENDPOINT_OTHER] = 30 * MINUTE;
+	}
+
+	/**
+	 * Set the time to live of the responses of the given endpoint. 0 disables caching of the endpoint.
+	 * @param endpoint - One of ENDPOINT_ constants
+	 * @param ttl - time to live in millisecs
+	 */
+	public synchronized void setTimeToLive(int endpoint, long ttl) {
+		timeToLive[endpoint] = ttl;
+	}
+
+	/**
+	 * Returns the time to live of the responses of the given endpoint in millisecs
+	 * @param endpoint - One of ENDPOINT_ constants
+	 * @return
+	 */
+	public synchronized long getTimeToLive(int endpoint) {
+		return timeToLive[endpoint];
+	}
+
+	/**
+	 * Returns true if the responses of the URL are cached, i.e. the time to live of its endpoint is not 0
+	 * @param url - Request URL
+	 * @return
+	 */
+	public synchronized boolean isEnabled(String url) {
+		return timeToLive[getEndpoint(url)] > 0;
+	}
+
+	/**
+	 * Set the max size of the cached bodies, the cache is trimmed if it is above the new size.
+	 * @param maxSize - size in bytes
+	 */
+	public synchronized void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		trimToSize(maxSize);
+	}
+
+	/**
+	 * Returns the cached response of the URL, null if it is not cached or expired
+	 * @param url - Request URL
+	 * @return
+	 */
+	public synchronized byte[] get(String url) {
+		String key = RequestKey.canonical(url);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		if (entry.expiresAt <= SystemClock.elapsedRealtime()) {
+			Log.d(TAG,"Cached response expired");
+			if (!entry.validators.isValid()) {
+				removeEntry(key);
+			}
+			expiredCount++;
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.body;
+	}
+
+	/**
+	 * Returns the validators of the expired response of the URL, null if it can not be revalidated
+	 * @param url - Request URL
+	 * @return
+	 */
+	public synchronized Validators getValidators(String url) {
+		Entry entry = entries.get(RequestKey.canonical(url));
+		if (entry == null || !entry.validators.isValid()) {
+			return null;
+		}
+		revalidationCount++;
+		return entry.validators;
+	}
+
+	/**
+	 * Refresh the time to live of the response revalidated by 304 Not Modified
+	 * @param url - Request URL
+	 * @return The cached response, null if it is removed meanwhile
+	 */
+	public synchronized byte[] refresh(String url) {
+		String key = RequestKey.canonical(url);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		notModifiedCount++;
+		long ttl = timeToLive[getEndpoint(url)];
+		entries.put(key, new Entry(entry.body, SystemClock.elapsedRealtime() + ttl, entry.validators));
+		return entry.body;
+	}
+
+	/**
+	 * Cache the response of the URL
+	 * @param url - Request URL
+	 * @param body - Response body
+	 */
+	public synchronized void put(String url, byte[] body) {
+		put(url, body, null);
+	}
+
+	/**
+	 * Cache the response of the URL with its validators
+	 * @param url - Request URL
+	 * @param body - Response body
+	 * @param validators - ETag & Last-Modified of the response, can be null
+	 */
+	public synchronized void put(String url, byte[] body, Validators validators) {
+		long ttl = timeToLive[getEndpoint(url)];
+		int entrySize = body.length;
+		if (ttl <= 0 || entrySize > maxSize) {
+			return;
+		}
+		String key = RequestKey.canonical(url);
+		removeEntry(key);
+		entries.put(key, new Entry(body, SystemClock.elapsedRealtime() + ttl, 
+				validators != null ? validators : new Validators(null, null)));
+		size += entrySize;
+		trimToSize(maxSize);
+	}
+
+	/**
+	 * Remove the cached response of the URL
+	 * @param url - Request URL
+	 */
+	public synchronized void remove(String url) {
+		removeEntry(RequestKey.canonical(url));
+	}
+
+	/**
+	 * Remove all the cached responses
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Returns the total size of cached bodies in bytes
+	 * @return
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the max size of cached bodies in bytes
+	 * @return
+	 */
+	public synchronized int maxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the number of times a cached response was returned
+	 * @return
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of times a response was not cached or expired
+	 * @return
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of responses evicted to keep the cache under max size
+	 * @return
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Returns the number of responses removed since the time to live expired
+	 * @return
+	 */
+	public synchronized long getExpiredCount() {
+		return expiredCount;
+	}
+
+	/**
+	 * Returns the number of conditional requests sent for the expired responses
+	 * @return
+	 */
+	public synchronized long getRevalidationCount() {
+		return revalidationCount;
+	}
+
+	/**
+	 * Returns the number of expired responses revalidated by 304 Not Modified
+	 * @return
+	 */
+	public synchronized long getNotModifiedCount() {
+		return notModifiedCount;
+	}
+
+	/**
+	 * Returns the ratio of the conditional requests answered by 304 Not Modified
+	 * @return
+	 */
+	public synchronized float getRevalidationHitRate() {
+		return revalidationCount == 0 ? 0 : (float) notModifiedCount / revalidationCount;
+	}
+
+	/**
+	 * Returns the endpoint of the URL, used to find the time to live
+	 * @param url
+	 * @return One of ENDPOINT_ constants
+	 */
+	public static int getEndpoint(String url) {
+		if (url.contains("/place/details/")) {
+			return ENDPOINT_DETAILS;
+		} else if (url.contains("/place/autocomplete/")) {
+			return ENDPOINT_AUTOCOMPLETE;
+		} else if (url.contains("/place/nearbysearch/") || url.contains("/place/textsearch/")
+				|| url.contains("/place/radarsearch/")) {
+			if (RequestKey.getParameter(url, "opennow") != null) {
+				return ENDPOINT_OPEN_NOW_SEARCH;
+			}
+			return ENDPOINT_SEARCH;
+		}
+		return ENDPOINT_OTHER;
+	}
+
+	private void removeEntry(String key) {
+		Entry previous = entries.remove(key);
+		if (previous != null) {
+			size -= previous.body.length;
+		}
+	}
+
+	// Evict the least recently used responses till the size is below max size
+	private void trimToSize(int max) {
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (size > max && iterator.hasNext()) {
+			Map.Entry<String, Entry> eldest = iterator.next();
+			size -= eldest.getValue().body.length;
+			iterator.remove();
+			evictionCount++;
+		}
+	}
+
+	// Cached response body, its expiry time & validators
+	private static class Entry {
+		final byte[] body;
+		final long expiresAt;
+		final Validators validators;
+
+		Entry(byte[] body, long expiresAt, Validators validators) {
+			this.body = body;
+			this.expiresAt = expiresAt;
+			this.validators = validators;
+		}
+	}
+}
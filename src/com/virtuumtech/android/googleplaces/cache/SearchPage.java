@@ -0,0 +1,53 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * SearchPage holds one page of search results read from the cache.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.util.ArrayList;
+
+import com.virtuumtech.android.googleplaces.PlacesList;
+
+public class SearchPage {
+
+	private final String status;
+	private final String nextPageToken;
+	private final ArrayList<PlacesList> places;
+
+	public SearchPage(String status, String nextPageToken, ArrayList<PlacesList> places) {
+		this.status = status;
+		this.nextPageToken = nextPageToken;
+		this.places = places;
+	}
+
+	/**
+	 * Returns the GOOGLE API status of the page
+	 * @return
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the token of the next page, empty if there is no further data
+	 * @return
+	 */
+	public String getNextPageToken() {
+		return nextPageToken;
+	}
+
+	/**
+	 * Returns the places in the page
+	 * @return
+	 */
+	public ArrayList<PlacesList> getPlaces() {
+		return places;
+	}
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * TileCache keeps the search results of geohash tiles. The circle of a nearby or radar search is covered 
+ * by the tiles of the grid, each tile is searched with its own center & radius, hence the small moves of 
+ * the user give the same tile searches & the cached tiles are reused. 
+ * The staleness policy decides the use of a cached tile, 
+ * 	 - Fresh tiles are used as they are
+ * 	 - Stale tiles are used & refreshed in background
+ * 	 - Tiles older than the max stale time are searched again
+ * The number of cached tiles is bounded, least recently used tiles are evicted.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.virtuumtech.android.googleplaces.PlacesList;
+
+import android.os.SystemClock;
+
+public class TileCache {
+
+	private static final long MINUTE = 60 * 1000;
+
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+	public static final int DEFAULT_PRECISION = 6; // Tiles of about 1.2 x 0.6 km
+	public static final long DEFAULT_FRESH_TIME = 10 * MINUTE;
+	public static final long DEFAULT_MAX_STALE_TIME = 60 * MINUTE;
+
+	private static TileCache sInstance;
+
+	//Tiles in LRU order, keyed by the canonical URL of the tile search
+	private final LinkedHashMap<String, Tile> tiles = new LinkedHashMap<String, Tile>(32, 0.75f, true);
+	private final HashSet<String> refreshing = new HashSet<String>();
+	private int maxEntries;
+	private int precision = DEFAULT_PRECISION;
+	private long freshTime = DEFAULT_FRESH_TIME;
+	private long maxStaleTime = DEFAULT_MAX_STALE_TIME;
+
+	private long hitCount;
+	private long staleHitCount;
+	private long missCount;
+	private long evictionCount;
+
+	/**
+	 * Returns the process wide tile cache
+	 * @return
+	 */
+	public static synchronized TileCache getInstance() {
+		if (sInstance == null) {
+			sInstance = new TileCache(DEFAULT_MAX_ENTRIES);
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Constructor for TileCache
+	 * @param maxEntries - Max number of cached tiles
+	 */
+	public TileCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Set the max number of cached tiles, the cache is trimmed if it is above the new size.
+	 * @param maxEntries
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		trimToSize(maxEntries);
+	}
+
+	/**
+	 * Set the geohash precision of the tiles. Larger tiles need less searches, but a search returns 
+	 * at most one page of results for a tile.
+	 * @param precision - 5 for tiles of about 4.9 x 4.9 km, 6 for 1.2 x 0.6 km, 7 for 153 x 153 m
+	 */
+	public synchronized void setPrecision(int precision) {
+		if (precision < 1 || precision > 12) {
+			throw new IllegalArgumentException("Precision should be between 1 and 12");
+		}
+		this.precision = precision;
+	}
+
+	/**
+	 * Set the staleness policy of the cached tiles
+	 * @param freshTime - Age in milliseconds up to which the tile is used without refresh
+	 * @param maxStaleTime - Age in milliseconds up to which the tile is used & refreshed in background
+	 */
+	public synchronized void setStalenessPolicy(long freshTime, long maxStaleTime) {
+		if (maxStaleTime < freshTime) {
+			throw new IllegalArgumentException("Max stale time should not be less than fresh time");
+		}
+		this.freshTime = freshTime;
+		this.maxStaleTime = maxStaleTime;
+	}
+
+	/**
+	 * Returns the tiles covering the circle
+	 * @param latitude
+	 * @param longitude
+	 * @param radius - Radius in meters
+	 * @return Geohash of the tiles
+	 */
+	public synchronized List<String> getCoveringTiles(double latitude, double longitude, double radius) {
+		return GeoHash.getCoveringCells(latitude, longitude, radius, precision);
+	}
+
+	/**
+	 * Returns the center of the tile as {latitude, longitude}
+	 * @param tile
+	 * @return
+	 */
+	public static double[] getCenter(String tile) {
+		double[] bounds = GeoHash.getBounds(tile);
+		return new double[] {(bounds[0] + bounds[2]) / 2, (bounds[1] + bounds[3]) / 2};
+	}
+
+	/**
+	 * Returns the radius in meters of the circle covering the tile
+	 * @param tile
+	 * @return
+	 */
+	public static int getRadius(String tile) {
+		double[] bounds = GeoHash.getBounds(tile);
+		double[] center = getCenter(tile);
+		// The corner nearer to the equator is the farthest from center
+		double cornerLat = Math.abs(bounds[0]) < Math.abs(bounds[2]) ? bounds[0] : bounds[2];
+		return (int) Math.ceil(GeoHash.getDistance(center[0], center[1], cornerLat, bounds[3]));
+	}
+
+	/**
+	 * Returns the cached tile, null if it is not cached or older than the max stale time
+	 * @param key - Canonical URL of the tile search
+	 * @return
+	 */
+	public synchronized Tile get(String key) {
+		Tile tile = tiles.get(key);
+		if (tile == null) {
+			missCount++;
+			return null;
+		}
+		long age = tile.getAge();
+		if (age >= maxStaleTime) {
+			tiles.remove(key);
+			missCount++;
+			return null;
+		}
+		if (age < freshTime) {
+			hitCount++;
+		} else {
+			tile.stale = true;
+			staleHitCount++;
+		}
+		return tile;
+	}
+
+	/**
+	 * Store the results of the tile search
+	 * @param key - Canonical URL of the tile search
+	 * @param status - GOOGLE API status of the search
+	 * @param places
+	 */
+	public synchronized void put(String key, String status, ArrayList<PlacesList> places) {
+		tiles.put(key, new Tile(status, places));
+		refreshing.remove(key);
+		trimToSize(maxEntries);
+	}
+
+	/**
+	 * Mark the stale tile as being refreshed
+	 * @param key
+	 * @return false if the tile is already being refreshed
+	 */
+	public synchronized boolean startRefresh(String key) {
+		return refreshing.add(key);
+	}
+
+	/**
+	 * Clear the refresh mark of the tile, when the refresh is failed
+	 * @param key
+	 */
+	public synchronized void cancelRefresh(String key) {
+		refreshing.remove(key);
+	}
+
+	/**
+	 * Remove all the tiles
+	 */
+	public synchronized void clear() {
+		tiles.clear();
+	}
+
+	/**
+	 * Returns the number of cached tiles
+	 * @return
+	 */
+	public synchronized int size() {
+		return tiles.size();
+	}
+
+	/**
+	 * Returns the number of fresh tiles used
+	 * @return
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of stale tiles used
+	 * @return
+	 */
+	public synchronized long getStaleHitCount() {
+		return staleHitCount;
+	}
+
+	/**
+	 * Returns the number of tiles searched as they are not cached or too old
+	 * @return
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of tiles evicted to keep the cache in size
+	 * @return
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	private void trimToSize(int size) {
+		Iterator<Tile> iter = tiles.values().iterator();
+		while (tiles.size() > size && iter.hasNext()) {
+			iter.next();
+			iter.remove();
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * Tile holds the search results of one tile
+	 */
+	public static class Tile {
+		private final String status;
+		private final ArrayList<PlacesList> places;
+		private final long time = SystemClock.elapsedRealtime();
+		private boolean stale;
+
+		Tile(String status, ArrayList<PlacesList> places) {
+			this.status = status;
+			this.places = places;
+		}
+
+		/**
+		 * Returns the GOOGLE API status of the tile search
+		 * @return
+		 */
+		public String getStatus() {
+			return status;
+		}
+
+		/**
+		 * Returns the places of the tile search
+		 * @return
+		 */
+		public ArrayList<PlacesList> getPlaces() {
+			return places;
+		}
+
+		/**
+		 * Returns the time since the tile is searched in milliseconds
+		 * @return
+		 */
+		public long getAge() {
+			return SystemClock.elapsedRealtime() - time;
+		}
+
+		/**
+		 * Returns true if the tile is used after the fresh time, hence it should be refreshed
+		 * @return
+		 */
+		public boolean isStale() {
+			return stale;
+		}
+	}
+}
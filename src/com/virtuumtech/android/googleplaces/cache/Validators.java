@@ -0,0 +1,71 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * Validators holds the ETag & Last-Modified of a cached response. They are sent in the conditional request 
+ * when the cached response expires, the server replies 304 Not Modified without body if it is not changed.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class Validators {
+
+	private final String etag;
+	private final String lastModified;
+
+	/**
+	 * Constructor for Validators
+	 * @param etag - ETag header of the response, can be null
+	 * @param lastModified - Last-Modified header of the response, can be null
+	 */
+	public Validators(String etag, String lastModified) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Returns the ETag, null if the response has no ETag
+	 * @return
+	 */
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * Returns the Last-Modified date, null if the response has no Last-Modified
+	 * @return
+	 */
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Returns true if the response can be revalidated
+	 * @return
+	 */
+	public boolean isValid() {
+		return etag != null || lastModified != null;
+	}
+
+	/**
+	 * Returns the headers of the conditional request
+	 * @return
+	 */
+	public Map<String, String> getRequestHeaders() {
+		HashMap<String, String> headers = new HashMap<String, String>();
+		if (etag != null) {
+			headers.put("If-None-Match", etag);
+		}
+		if (lastModified != null) {
+			headers.put("If-Modified-Since", lastModified);
+		}
+		return headers;
+	}
+}
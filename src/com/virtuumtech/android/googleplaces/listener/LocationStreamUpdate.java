@@ -0,0 +1,11 @@
+package com.virtuumtech.android.googleplaces.listener;
+
+import java.util.List;
+
+import android.location.Location;
+
+public interface LocationStreamUpdate {
+	void onLocationsUpdate(List<Location> locations);
+	void onSignificantMovement(Location location);
+	void onGooglePlayError(int errorCode);
+}
@@ -0,0 +1,7 @@
+package com.virtuumtech.android.googleplaces.listener;
+
+import com.virtuumtech.android.googleplaces.PlaceDetails;
+
+public interface PlaceDetailsBatchUpdate {
+	void onPlaceDetailsBatchUpdate(int statusCode, String placeID, PlaceDetails details);
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * CircuitBreaker stops sending the requests to a host after sustained failures, hence the requests fail 
+ * at once instead of waiting for the timeouts. The outcome of the recent requests is kept, when at least 
+ * half of them failed or were slower than the slow call time the circuit opens. After the open time 
+ * one trial request is allowed, its success closes the circuit & its failure opens it again.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.util.HashMap;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+public class CircuitBreaker {
+
+	private static final String TAG = "CircuitBreaker";
+
+	public static final int STATE_CLOSED = 0;
+	public static final int STATE_OPEN = 1;
+	public static final int STATE_HALF_OPEN = 2;
+
+	public static final long DEFAULT_OPEN_TIME = 30000; // 30 secs
+	public static final long DEFAULT_SLOW_CALL_TIME = 5000; // 5 secs
+
+	private static final int WINDOW_SIZE = 20; // Number of recent requests considered
+	private static final int MIN_CALLS = 5; // Requests required before the circuit can open
+	private static final float FAILURE_RATE = 0.5f;
+
+	private static final HashMap<String, CircuitBreaker> sBreakers = new HashMap<String, CircuitBreaker>();
+
+	private final String host;
+	private final boolean[] outcomes = new boolean[WINDOW_SIZE]; // true for failure
+	private int callCount;
+	private int failureCount;
+	private int nextIndex;
+
+	private int state = STATE_CLOSED;
+	private long openedAt;
+	private boolean trialInFlight;
+	private long openTime = DEFAULT_OPEN_TIME;
+	private long slowCallTime = DEFAULT_SLOW_CALL_TIME;
+
+	private long openCount;
+	private long rejectedCount;
+
+	/**
+	 * Returns the circuit breaker of the host
+	 * @param host
+	 * @return
+	 */
+	public static CircuitBreaker forHost(String host) {
+		synchronized (sBreakers) {
+			CircuitBreaker breaker = sBreakers.get(host);
+			if (breaker == null) {
+				breaker = new CircuitBreaker(host);
+				sBreakers.put(host, breaker);
+			}
+			return breaker;
+		}
+	}
+
+	/**
+	 * Returns the circuit breaker of the host of URL
+	 * @param url
+	 * @return
+	 */
+	public static CircuitBreaker forUrl(String url) {
+		return forHost(RequestKey.getHost(url));
+	}
+
+	private CircuitBreaker(String host) {
+		this.host = host;
+	}
+
+	/**
+	 * Set the time the circuit stays open before a trial request is allowed
+	 * @param openTime - Time in milliseconds
+	 */
+	public synchronized void setOpenTime(long openTime) {
+		this.openTime = openTime;
+	}
+
+	/**
+	 * Set the response time above which a successful request is counted as failure
+	 * @param slowCallTime - Time in milliseconds
+	 */
+	public synchronized void setSlowCallTime(long slowCallTime) {
+		this.slowCallTime = slowCallTime;
+	}
+
+	/**
+	 * Returns the state of the circuit, one of STATE_ constants
+	 * @return
+	 */
+	public synchronized int getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the number of times the circuit opened
+	 * @return
+	 */
+	public synchronized long getOpenCount() {
+		return openCount;
+	}
+
+	/**
+	 * Returns the number of requests failed at once since the circuit was open
+	 * @return
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * Check the request can be sent, it should be followed by recordSuccess, recordFailure or release.
+	 * @throws CircuitOpenException if the circuit is open
+	 */
+	public synchronized void acquire() throws CircuitOpenException {
+		if (state == STATE_OPEN) {
+			if (SystemClock.elapsedRealtime() - openedAt < openTime) {
+				rejectedCount++;
+				throw new CircuitOpenException("Circuit is open for "+host);
+			}
+			Log.i(TAG,"Trial request for "+host);
+			state = STATE_HALF_OPEN;
+			trialInFlight = false;
+		}
+		if (state == STATE_HALF_OPEN) {
+			if (trialInFlight) {
+				rejectedCount++;
+				throw new CircuitOpenException("Circuit is half open for "+host);
+			}
+			trialInFlight = true;
+		}
+	}
+
+	/**
+	 * Release the acquired request which is not sent
+	 */
+	public synchronized void release() {
+		if (state == STATE_HALF_OPEN) {
+			trialInFlight = false;
+		}
+	}
+
+	/**
+	 * Record the response time of a successful request, slow responses are counted as failures
+	 * @param responseTime - Time in milliseconds
+	 */
+	public synchronized void recordSuccess(long responseTime) {
+		record(responseTime > slowCallTime);
+	}
+
+	/**
+	 * Record a failed request
+	 */
+	public synchronized void recordFailure() {
+		record(true);
+	}
+
+	private void record(boolean failed) {
+		if (state == STATE_HALF_OPEN) {
+			if (failed) {
+				open();
+			} else {
+				Log.i(TAG,"Circuit is closed for "+host);
+				state = STATE_CLOSED;
+				resetWindow();
+			}
+			return;
+		} else if (state == STATE_OPEN) {
+			// Requests sent before the circuit opened
+			return;
+		}
+
+		if (callCount == WINDOW_SIZE && outcomes[nextIndex]) {
+			failureCount--;
+		}
+		outcomes[nextIndex] = failed;
+		nextIndex = (nextIndex + 1) % WINDOW_SIZE;
+		callCount = Math.min(callCount + 1, WINDOW_SIZE);
+		if (failed) {
+			failureCount++;
+		}
+		if (callCount >= MIN_CALLS && failureCount >= callCount * FAILURE_RATE) {
+			open();
+		}
+	}
+
+	private void open() {
+		Log.e(TAG,"Circuit is open for "+host+", "+failureCount+" of "+callCount+" requests failed");
+		state = STATE_OPEN;
+		openedAt = SystemClock.elapsedRealtime();
+		openCount++;
+		resetWindow();
+	}
+
+	private void resetWindow() {
+		callCount = 0;
+		failureCount = 0;
+		nextIndex = 0;
+	}
+}
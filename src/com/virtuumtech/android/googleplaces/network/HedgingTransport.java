@@ -0,0 +1,259 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * HedgingTransport decorates another HttpTransport and sends a second (hedged) request when the first one
+ * is slower than the 95th percentile of the recent response times of its host. The first response is used 
+ * and the other one is closed in background, hence a slow connection doesn't hold the caller. 
+ * Each hedge is an extra request, hence only the hosts added by addHost are hedged. 
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+public class HedgingTransport implements HttpTransport {
+
+	private static final String TAG = "HedgingTransport";
+
+	private static final int MAX_THREADS = 8;
+	private static final int SAMPLE_SIZE = 64; // Recent response times kept per host
+	private static final int MIN_SAMPLES = 10; // Response times required before hedging
+	private static final long MIN_HEDGE_DELAY = 50; // millisecs
+	private static final float PERCENTILE = 0.95f;
+
+	private final HttpTransport transport;
+	private final ThreadPoolExecutor executor;
+	private final HashSet<String> hosts = new HashSet<String>();
+	private final HashMap<String, Latency> latencies = new HashMap<String, Latency>();
+	private long hedgeCount;
+
+	/**
+	 * Constructor for HedgingTransport
+	 * @param transport - Transport which executes the requests
+	 */
+	public HedgingTransport(HttpTransport transport) {
+		if (transport == null) {
+			throw new IllegalArgumentException("Transport can not be null");
+		}
+		this.transport = transport;
+		executor = new ThreadPoolExecutor(0, MAX_THREADS, 30, TimeUnit.SECONDS, 
+				new SynchronousQueue<Runnable>());
+	}
+
+	/**
+	 * Hedge the requests to the host
+	 * @param host - Host name, like en.wikipedia.org
+	 */
+	public synchronized void addHost(String host) {
+		hosts.add(host);
+	}
+
+	/**
+	 * Stop hedging the requests to the host
+	 * @param host
+	 */
+	public synchronized void removeHost(String host) {
+		hosts.remove(host);
+	}
+
+	/**
+	 * Returns the number of hedged requests sent
+	 * @return
+	 */
+	public synchronized long getHedgeCount() {
+		return hedgeCount;
+	}
+
+	@Override
+	public HttpResponse execute(String url, Map<String, String> headers) throws IOException {
+		String host = RequestKey.getHost(url);
+		long delay = getHedgeDelay(host);
+		Attempt primary = new Attempt(url, headers, host);
+		if (delay < 0) {
+			return primary.run();
+		}
+
+		CompletionService<HttpResponse> service = new ExecutorCompletionService<HttpResponse>(executor);
+		Future<HttpResponse> primaryFuture;
+		try {
+			primaryFuture = service.submit(primary);
+		} catch (RejectedExecutionException e) {
+			// All the threads are busy, send the request without hedge
+			return primary.run();
+		}
+
+		Attempt hedge = null;
+		try {
+			Future<HttpResponse> done = service.poll(delay, TimeUnit.MILLISECONDS);
+			if (done == null) {
+				try {
+					hedge = new Attempt(url, headers, host);
+					service.submit(hedge);
+					synchronized (this) {
+						hedgeCount++;
+					}
+					Log.v(TAG,"Hedged request to "+host+" after "+delay+" ms");
+				} catch (RejectedExecutionException e) {
+					hedge = null;
+				}
+				done = service.take();
+			}
+
+			Attempt loser = (done == primaryFuture) ? hedge : primary;
+			try {
+				HttpResponse response = done.get();
+				if (loser != null) {
+					loser.abandon();
+				}
+				return response;
+			} catch (ExecutionException e) {
+				if (loser == null) {
+					throw unwrap(e);
+				}
+				Log.v(TAG,"First of the hedged requests to "+host+" failed, waiting for the other");
+				return service.take().get();
+			}
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		} catch (InterruptedException e) {
+			primary.abandon();
+			if (hedge != null) {
+				hedge.abandon();
+			}
+			throw new InterruptedIOException("Interrupted while waiting for the response");
+		}
+	}
+
+	// Returns the time to wait before hedging the request to host, -1 if the request is not hedged
+	private synchronized long getHedgeDelay(String host) {
+		if (!hosts.contains(host)) {
+			return -1;
+		}
+		Latency latency = latencies.get(host);
+		if (latency == null || latency.count < MIN_SAMPLES) {
+			return -1;
+		}
+		return Math.max(latency.getPercentile(PERCENTILE), MIN_HEDGE_DELAY);
+	}
+
+	private synchronized void recordLatency(String host, long time) {
+		if (!hosts.contains(host)) {
+			return;
+		}
+		Latency latency = latencies.get(host);
+		if (latency == null) {
+			latency = new Latency();
+			latencies.put(host, latency);
+		}
+		latency.add(time);
+	}
+
+	private IOException unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof IOException) {
+			return (IOException) cause;
+		} else if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		} else if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new IOException(cause);
+	}
+
+	// Close the response in background, closing drains the unread body
+	private void closeLater(final HttpResponse response) {
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					response.close();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			response.close();
+		}
+	}
+
+	// Response times of the recent requests to a host
+	private static class Latency {
+		private final long[] samples = new long[SAMPLE_SIZE];
+		private int count;
+		private int next;
+
+		void add(long time) {
+			samples[next] = time;
+			next = (next + 1) % SAMPLE_SIZE;
+			count = Math.min(count + 1, SAMPLE_SIZE);
+		}
+
+		long getPercentile(float percentile) {
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			return sorted[Math.min((int) (count * percentile), count - 1)];
+		}
+	}
+
+	// One of the requests sent for a call, the response of an abandoned request is closed
+	private class Attempt implements Callable<HttpResponse> {
+		private final String url;
+		private final Map<String, String> headers;
+		private final String host;
+		private HttpResponse response;
+		private boolean abandoned;
+
+		Attempt(String url, Map<String, String> headers, String host) {
+			this.url = url;
+			this.headers = headers;
+			this.host = host;
+		}
+
+		@Override
+		public HttpResponse call() throws IOException {
+			return run();
+		}
+
+		HttpResponse run() throws IOException {
+			long start = SystemClock.elapsedRealtime();
+			HttpResponse result = transport.execute(url, headers);
+			recordLatency(host, SystemClock.elapsedRealtime() - start);
+			synchronized (this) {
+				if (abandoned) {
+					result.close();
+					return null;
+				}
+				response = result;
+			}
+			return result;
+		}
+
+		synchronized void abandon() {
+			abandoned = true;
+			if (response != null) {
+				closeLater(response);
+				response = null;
+			}
+		}
+	}
+}
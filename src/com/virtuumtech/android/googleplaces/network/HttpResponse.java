@@ -0,0 +1,108 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * HttpResponse holds the status, headers and body stream of a request executed by HttpTransport.
+ * Closing the response drains the unread body, hence the underlying connection can go back to the pool.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class HttpResponse implements Closeable {
+
+	private final int statusCode;
+	private final Map<String, List<String>> headers;
+	private final InputStream body;
+	private final Runnable releaser;
+	private boolean closed = false;
+
+	/**
+	 * Constructor for HttpResponse
+	 * @param statusCode - HTTP status code of the response
+	 * @param headers - Response headers, can be null
+	 * @param body - Body stream of the response
+	 * @param releaser - Called once when the response is closed, can be null
+	 */
+	public HttpResponse(int statusCode, Map<String, List<String>> headers, InputStream body, Runnable releaser) {
+		this.statusCode = statusCode;
+		this.headers = headers != null ? headers : Collections.<String, List<String>>emptyMap();
+		this.body = body;
+		this.releaser = releaser;
+	}
+
+	/**
+	 * Returns the HTTP status code
+	 * @return
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Returns true for 2xx status codes
+	 * @return
+	 */
+	public boolean isSuccessful() {
+		return statusCode >= 200 && statusCode < 300;
+	}
+
+	/**
+	 * Returns the first value of the given header, null if the header doesn't exist
+	 * @param name - Header name, case insensitive
+	 * @return
+	 */
+	public String getHeader(String name) {
+		for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+			if (entry.getKey() != null && entry.getKey().equalsIgnoreCase(name)
+					&& !entry.getValue().isEmpty()) {
+				return entry.getValue().get(0);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the body stream of the response. Can be null when there is no body. 
+	 * @return
+	 */
+	public InputStream getInputStream() {
+		return body;
+	}
+
+	/**
+	 * Drain the unread body and release the connection. 
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (body != null) {
+				byte[] buffer = new byte[1024];
+				while (body.read(buffer) != -1) {
+					// Drain the stream, so that the connection can be reused
+				}
+				body.close();
+			}
+		} catch (IOException e) {
+			// The stream is already closed or broken, the connection will not be reused
+		} finally {
+			if (releaser != null) {
+				releaser.run();
+			}
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * HttpStatusException is thrown when the server responds with non successful HTTP status.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.IOException;
+
+public class HttpStatusException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+
+	public HttpStatusException(int statusCode) {
+		super("HTTP status "+statusCode);
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * Returns the HTTP status code of the response
+	 * @return
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Returns true for server errors & too many requests, the request may succeed if it is sent again
+	 * @return
+	 */
+	public boolean isTransient() {
+		return statusCode >= 500 || statusCode == 429;
+	}
+}
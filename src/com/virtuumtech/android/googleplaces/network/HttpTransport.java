@@ -0,0 +1,29 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * HttpTransport is the pluggable transport used by NetworkService to talk to the Google Places web API.
+ * Implementations are expected to reuse connections between requests wherever possible.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.IOException;
+import java.util.Map;
+
+public interface HttpTransport {
+
+	/**
+	 * Execute a GET request for the given URL. 
+	 * The caller must close the returned response, so that the connection can be reused.
+	 * @param url - URL to request
+	 * @param headers - Additional request headers, can be null
+	 * @return HttpResponse holding the status and the body stream
+	 * @throws IOException
+	 */
+	HttpResponse execute(String url, Map<String, String> headers) throws IOException;
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * LocalRequest runs a request in this process using RequestExecutor and delivers the parsed result 
+ * directly to the main thread, without Intent, ResultReceiver or Bundle marshalling. 
+ * Used by the search classes when NetworkService.isInProcessDelivery() is set. 
+ * A request can be cancelled until it is started, running requests complete & the caller drops stale results.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.virtuumtech.android.googleplaces.NetworkFetcher;
+import com.virtuumtech.android.googleplaces.search.RequestStatus;
+
+import android.os.Handler;
+import android.os.Looper;
+
+public abstract class LocalRequest<T> implements RequestExecutor.Request {
+
+	private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+	private static final int STATE_PENDING = 0;
+	private static final int STATE_RUNNING = 1;
+	private static final int STATE_CANCELLED = 2;
+
+	private final AtomicInteger mState = new AtomicInteger(STATE_PENDING);
+
+	/**
+	 * Runs the request on the RequestExecutor thread
+	 * @return Parsed result of the request
+	 * @throws Exception on failure, mapped to RequestStatus code
+	 */
+	protected abstract T execute() throws Exception;
+
+	/**
+	 * Called on the main thread with the result
+	 * @param resultCode - RequestStatus code
+	 * @param result - Parsed result, null if the request is failed
+	 */
+	protected abstract void onResult(int resultCode, T result);
+
+	/**
+	 * Submit the request to the given RequestExecutor lane
+	 * @param lane - RequestExecutor.LANE_INTERACTIVE, RequestExecutor.LANE_BULK or RequestExecutor.LANE_BATCH
+	 */
+	public void submit(int lane) {
+		if (!RequestExecutor.getInstance().submit(lane, this) && !isCancelled()) {
+			deliver(RequestStatus.ERROR, null);
+		}
+	}
+
+	/**
+	 * Cancel the request if it is not yet started. The cancelled request is not run & its result is not delivered.
+	 * @return true if the request is cancelled, false if it is already started
+	 */
+	public boolean cancel() {
+		return mState.compareAndSet(STATE_PENDING, STATE_CANCELLED);
+	}
+
+	/**
+	 * Returns true if the request is cancelled before it is started
+	 * @return
+	 */
+	public boolean isCancelled() {
+		return mState.get() == STATE_CANCELLED;
+	}
+
+	@Override
+	public final void run() {
+		if (!mState.compareAndSet(STATE_PENDING, STATE_RUNNING)) {
+			return;
+		}
+		T result = null;
+		int resultCode;
+		try {
+			result = execute();
+			resultCode = RequestStatus.OK;
+		} catch (RequestExecutor.RescheduleException e) {
+			// Runs again later, it can be cancelled till then
+			mState.set(STATE_PENDING);
+			throw e;
+		} catch (Exception e) {
+			resultCode = NetworkFetcher.getResultCode(e);
+		}
+		deliver(resultCode, result);
+	}
+
+	// The rescheduled request is not queued again, its failure is delivered unless it is cancelled meanwhile
+	@Override
+	public void onRejected() {
+		if (mState.compareAndSet(STATE_PENDING, STATE_RUNNING)) {
+			deliver(RequestStatus.ERROR, null);
+		}
+	}
+
+	private void deliver(final int resultCode, final T result) {
+		sMainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				onResult(resultCode, result);
+			}
+		});
+	}
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * RateLimitException is thrown when a request is not sent since the rate limit or the daily quota 
+ * of its endpoint is exceeded. The request is reported as RequestStatus.OVER_QUERY_LIMIT.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.IOException;
+
+public class RateLimitException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RateLimitException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,387 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * RateLimiter throttles the requests to Google Places web API before they are sent. 
+ * Each endpoint & API key has a token bucket refilled at the rate of the endpoint, a request waits 
+ * for a token up to the max wait time. A share of each bucket is reserved for interactive requests 
+ * & bulk requests yield to the waiting interactive requests, hence photo downloads can't starve autocomplete. 
+ * The requests of each API key are counted per day (Pacific Time, as Google resets the quota) and persisted, 
+ * when the daily quota is set the requests above it are not sent. Bulk requests can use only 90% of the quota. 
+ * A request running on a lane of RequestExecutor doesn't wait on the lane thread, it is postponed till the 
+ * bucket is refilled & its wait is counted from the first run.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+public class RateLimiter {
+
+	private static final String TAG = "RateLimiter";
+
+	public static final int ENDPOINT_NONE = -1; // Not a Places request, not limited
+	public static final int ENDPOINT_SEARCH = 0;
+	public static final int ENDPOINT_DETAILS = 1;
+	public static final int ENDPOINT_AUTOCOMPLETE = 2;
+	public static final int ENDPOINT_PHOTO = 3;
+
+	public static final long DEFAULT_MAX_WAIT = 10000; // 10 secs
+
+	private static final String PLACES_HOST = "maps.googleapis.com";
+	private static final float INTERACTIVE_RESERVE = 0.25f; // Share of bucket bulk requests can't use
+	private static final float BULK_QUOTA_SHARE = 0.9f; // Share of daily quota bulk requests can use
+	private static final String PREFS_NAME = "googleplaces_quota";
+	private static final String PREF_DAY = "day";
+	private static final String PREF_COUNT = "count_";
+
+	private static RateLimiter sInstance;
+
+	private final SharedPreferences prefs;
+	private final double[] rates = new double[ENDPOINT_PHOTO + 1];
+	private final int[] bursts = new int[ENDPOINT_PHOTO + 1];
+	private final HashMap<String, Bucket> buckets = new HashMap<String, Bucket>();
+	private final HashMap<String, Long> usage = new HashMap<String, Long>();
+	private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd", Locale.US);
+	private String quotaDay;
+	private long dailyQuota = 0;
+	private long maxWait = DEFAULT_MAX_WAIT;
+
+	private long throttledCount;
+	private long rejectedCount;
+
+	/**
+	 * Returns the process wide rate limiter
+	 * @param context
+	 * @return
+	 */
+	public static synchronized RateLimiter getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new RateLimiter(context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Constructor for RateLimiter
+	 * @param prefs - Preferences to persist the daily usage
+	 */
+	public RateLimiter(SharedPreferences prefs) {
+		this.prefs = prefs;
+		dayFormat.setTimeZone(TimeZone.getTimeZone("America/Los_Angeles"));
+		quotaDay = prefs.getString(PREF_DAY, "");
+		setRate(ENDPOINT_SEARCH, 5, 5);
+		setRate(ENDPOINT_DETAILS, 10, 10);
+		setRate(ENDPOINT_AUTOCOMPLETE, 10, 10);
+		setRate(ENDPOINT_PHOTO, 5, 10);
+	}
+
+	/**
+	 * Set the rate of the endpoint, applied to each API key
+	 * @param endpoint - One of ENDPOINT_ constants
+	 * @param permitsPerSecond - Requests allowed per second
+	 * @param burst - Requests allowed at once after idle time
+	 */
+	public synchronized void setRate(int endpoint, double permitsPerSecond, int burst) {
+		if (permitsPerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("Rate & burst should be positive");
+		}
+		rates[endpoint] = permitsPerSecond;
+		bursts[endpoint] = burst;
+		//Buckets of the endpoint are created again with the new rate
+		buckets.keySet().removeAll(keysOf(endpoint));
+	}
+
+	/**
+	 * Set the daily quota of each API key, 0 only counts the requests. Default is 0.
+	 * @param quota - Requests allowed per day
+	 */
+	public synchronized void setDailyQuota(long quota) {
+		dailyQuota = quota;
+	}
+
+	/**
+	 * Returns the daily quota of each API key, 0 if it is not set
+	 * @return
+	 */
+	public synchronized long getDailyQuota() {
+		return dailyQuota;
+	}
+
+	/**
+	 * Returns the number of requests sent today using the API key
+	 * @param apiKey
+	 * @return
+	 */
+	public synchronized long getDailyUsage(String apiKey) {
+		checkDay();
+		return getUsage(apiKey);
+	}
+
+	/**
+	 * Set the max time a request waits for the rate limit, the request fails after it
+	 * @param maxWait - Time in milliseconds
+	 */
+	public synchronized void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Returns the number of requests which waited for the rate limit
+	 * @return
+	 */
+	public synchronized long getThrottledCount() {
+		return throttledCount;
+	}
+
+	/**
+	 * Returns the number of requests not sent as the rate limit or daily quota is exceeded
+	 * @return
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * Wait till the request of URL can be sent & count it in the daily usage. 
+	 * On a lane of RequestExecutor the request is postponed instead of waiting.
+	 * @param url - Request URL
+	 * @param interactive - true for the requests the user waits for
+	 * @throws RateLimitException if the daily quota is used or the wait exceeds max wait time
+	 * @throws InterruptedIOException if the thread is interrupted while waiting
+	 * @throws RequestExecutor.RescheduleException to run the request again once the bucket is refilled
+	 */
+	public void acquire(String url, boolean interactive) throws IOException {
+		int endpoint = getEndpoint(url);
+		if (endpoint == ENDPOINT_NONE) {
+			return;
+		}
+		String apiKey = RequestKey.getParameter(url, "key");
+		if (apiKey == null) {
+			apiKey = "";
+		}
+
+		Bucket bucket;
+		long wait;
+		synchronized (this) {
+			checkQuota(apiKey, interactive);
+			String bucketKey = endpoint+"|"+apiKey;
+			bucket = buckets.get(bucketKey);
+			if (bucket == null) {
+				bucket = new Bucket(rates[endpoint], bursts[endpoint]);
+				buckets.put(bucketKey, bucket);
+			}
+			wait = maxWait;
+		}
+
+		long waited;
+		if (RequestExecutor.canReschedule()) {
+			waited = takeOnLane(bucket, interactive, wait);
+		} else {
+			waited = bucket.take(interactive, wait);
+		}
+		if (waited < 0) {
+			synchronized (this) {
+				rejectedCount++;
+			}
+			throw new RateLimitException("Rate limit wait exceeded for "+url);
+		}
+
+		synchronized (this) {
+			if (waited > 0) {
+				throttledCount++;
+			}
+			checkQuota(apiKey, interactive);
+			long count = getUsage(apiKey) + 1;
+			usage.put(apiKey, count);
+			prefs.edit().putLong(PREF_COUNT+apiKey, count).apply();
+		}
+	}
+
+	/**
+	 * Returns the rate limited endpoint of the URL
+	 * @param url
+	 * @return One of ENDPOINT_ constants, ENDPOINT_NONE if the URL is not a Places request
+	 */
+	public static int getEndpoint(String url) {
+		if (!url.contains(PLACES_HOST)) {
+			return ENDPOINT_NONE;
+		} else if (url.contains("/place/details/")) {
+			return ENDPOINT_DETAILS;
+		} else if (url.contains("/place/autocomplete/")) {
+			return ENDPOINT_AUTOCOMPLETE;
+		} else if (url.contains("/place/photo")) {
+			return ENDPOINT_PHOTO;
+		}
+		return ENDPOINT_SEARCH;
+	}
+
+	// Throw if the daily quota of the API key is used, bulk requests can use only part of it
+	private void checkQuota(String apiKey, boolean interactive) throws RateLimitException {
+		checkDay();
+		if (dailyQuota <= 0) {
+			return;
+		}
+		long limit = interactive ? dailyQuota : (long) (dailyQuota * BULK_QUOTA_SHARE);
+		if (getUsage(apiKey) >= limit) {
+			rejectedCount++;
+			Log.e(TAG,"Daily quota is used: "+getUsage(apiKey)+"/"+dailyQuota);
+			throw new RateLimitException("Daily quota exceeded");
+		}
+	}
+
+	// Reset the daily usage when the day is changed
+	private void checkDay() {
+		String today = dayFormat.format(new Date());
+		if (!today.equals(quotaDay)) {
+			Log.d(TAG,"Daily usage is reset for "+today);
+			quotaDay = today;
+			usage.clear();
+			prefs.edit().clear().putString(PREF_DAY, today).apply();
+		}
+	}
+
+	private long getUsage(String apiKey) {
+		Long count = usage.get(apiKey);
+		if (count == null) {
+			count = prefs.getLong(PREF_COUNT+apiKey, 0);
+			usage.put(apiKey, count);
+		}
+		return count;
+	}
+
+	// Take a token without waiting on the lane thread, the request is postponed by the time till the token 
+	// is available. Returns the time waited since the first run, -1 if the token is not available within maxWait.
+	private static long takeOnLane(Bucket bucket, boolean interactive, long maxWait) {
+		long now = SystemClock.elapsedRealtime();
+		long start = now;
+		Object state = RequestExecutor.takeResumeState();
+		if (state instanceof Throttled && ((Throttled) state).bucket == bucket) {
+			start = ((Throttled) state).start;
+		} else if (state != null) {
+			RequestExecutor.setResumeState(state);
+		}
+
+		long wait = bucket.tryTake(interactive, now);
+		if (wait == 0) {
+			return now - start;
+		}
+		if (now + wait > start + maxWait) {
+			return -1;
+		}
+		Log.d(TAG,"Rate limited, request postponed by "+wait+" ms");
+		RequestExecutor.setResumeState(new Throttled(bucket, start));
+		throw RequestExecutor.postpone(wait);
+	}
+
+	private List<String> keysOf(int endpoint) {
+		ArrayList<String> keys = new ArrayList<String>();
+		for (String key : buckets.keySet()) {
+			if (key.startsWith(endpoint+"|")) {
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+
+	// Token bucket of an endpoint & API key
+	private static class Bucket {
+		private final double rate; // tokens per millisecond
+		private final int burst;
+		private double tokens;
+		private long lastRefill;
+		private int interactiveWaiting;
+		//Bulk requests yield till the postponed interactive requests run again
+		private long interactiveReservedUntil;
+
+		Bucket(double permitsPerSecond, int burst) {
+			this.rate = permitsPerSecond / 1000;
+			this.burst = burst;
+			this.tokens = burst;
+			this.lastRefill = SystemClock.elapsedRealtime();
+		}
+
+		// Take a token, waiting up to maxWait. Bulk requests leave the reserve & yield to interactive requests.
+		// Returns the time waited for the token, -1 if the token is not available within maxWait.
+		synchronized long take(boolean interactive, long maxWait) throws InterruptedIOException {
+			long start = SystemClock.elapsedRealtime();
+			long deadline = start + maxWait;
+			if (interactive) {
+				interactiveWaiting++;
+			}
+			try {
+				while (true) {
+					long now = SystemClock.elapsedRealtime();
+					long wait = tryTake(interactive, now);
+					if (wait == 0) {
+						return now - start;
+					}
+					if (now + wait > deadline) {
+						return -1;
+					}
+					wait(wait);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for rate limit");
+			} finally {
+				if (interactive) {
+					interactiveWaiting--;
+					notifyAll();
+				}
+			}
+		}
+
+		// Take a token if it is available, otherwise returns the time in milliseconds till it can be available. 
+		// The interactive request not taking a token reserves the bucket for the bulk requests till that time.
+		synchronized long tryTake(boolean interactive, long now) {
+			refill(now);
+			double floor = interactive ? 0 : burst * INTERACTIVE_RESERVE;
+			boolean yielding = !interactive && (interactiveWaiting > 0 || now < interactiveReservedUntil);
+			if (tokens - floor >= 1 && !yielding) {
+				tokens -= 1;
+				return 0;
+			}
+			long wait = Math.max(1, (long) Math.ceil((1 + floor - tokens) / rate));
+			if (interactive) {
+				interactiveReservedUntil = Math.max(interactiveReservedUntil, now + wait);
+			} else if (now < interactiveReservedUntil) {
+				wait = Math.max(wait, interactiveReservedUntil - now);
+			}
+			return wait;
+		}
+
+		private void refill(long now) {
+			tokens = Math.min(burst, tokens + (now - lastRefill) * rate);
+			lastRefill = now;
+		}
+	}
+
+	// Resume state of the request postponed by the rate limit
+	private static class Throttled {
+		final Bucket bucket;
+		final long start;
+
+		Throttled(Bucket bucket, long start) {
+			this.bucket = bucket;
+			this.start = start;
+		}
+	}
+}
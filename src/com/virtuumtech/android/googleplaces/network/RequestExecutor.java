@@ -0,0 +1,418 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * RequestExecutor runs the network requests in parallel using bounded thread pools. 
+ * The requests are separated in lanes, hence slow bulk downloads can't stall the interactive requests
+ * 	 - LANE_INTERACTIVE for autocomplete, place details, searches and address lookup
+ * 	 - LANE_BULK for photos and next page requests, runs with background thread priority
+ * 	 - LANE_BATCH for PlaceDetailsBatch, runs with background thread priority without competing with photos
+ * Each lane keeps queue depth and wait time metrics. 
+ * A Request can be rescheduled by throwing the RescheduleException from reschedule() or postpone(), it is submitted 
+ * again to its lane after the delay or the trigger, hence waiting requests like retries don't hold the lane threads.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+public class RequestExecutor {
+
+	private static final String TAG = "RequestExecutor";
+
+	public static final int LANE_INTERACTIVE = 0;
+	public static final int LANE_BULK = 1;
+	public static final int LANE_BATCH = 2;
+
+	private static final int INTERACTIVE_THREADS = 4;
+	private static final int INTERACTIVE_QUEUE_SIZE = 64;
+	private static final int BULK_THREADS = 2;
+	private static final int BULK_QUEUE_SIZE = 128;
+	/** Number of threads of LANE_BATCH, shared by all the batches */
+	public static final int BATCH_THREADS = 4;
+	private static final int BATCH_QUEUE_SIZE = 128;
+	private static final long KEEP_ALIVE_TIME = 30; //Idle threads are released after 30 secs
+
+	private static RequestExecutor sInstance;
+
+	//Lane of the current thread, set for the lane threads
+	private static final ThreadLocal<Integer> sCurrentLane = new ThreadLocal<Integer>();
+	//Request running on the current lane thread
+	private static final ThreadLocal<Job> sCurrentJob = new ThreadLocal<Job>();
+
+	private final Lane[] lanes;
+	//Submits the rescheduled requests back to their lane once their delay is over
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	/**
+	 * Request which can be rescheduled, it is run again from the start hence it should be safe to repeat
+	 */
+	public interface Request extends Runnable {
+		/**
+		 * Called when the rescheduled request can't be submitted again since its lane queue is full
+		 */
+		void onRejected();
+	}
+
+	/**
+	 * Event which runs a rescheduled request again
+	 */
+	public interface Trigger {
+		/**
+		 * Run the listener once the event happens, right away if it already happened
+		 * @param listener
+		 */
+		void setListener(Runnable listener);
+	}
+
+	/**
+	 * Thrown by a Request to run it again later, created by reschedule()
+	 */
+	public static class RescheduleException extends RuntimeException {
+		private final long delay;
+		private final Trigger trigger;
+		private final boolean isRetry;
+
+		private RescheduleException(long delay, Trigger trigger, boolean isRetry) {
+			super("Request is rescheduled");
+			this.delay = delay;
+			this.trigger = trigger;
+			this.isRetry = isRetry;
+		}
+
+		// Used for flow control, hence the stack trace is not needed
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+
+	/**
+	 * Returns the process wide executor
+	 * @return
+	 */
+	public static synchronized RequestExecutor getInstance() {
+		if (sInstance == null) {
+			sInstance = new RequestExecutor();
+		}
+		return sInstance;
+	}
+
+	private RequestExecutor() {
+		scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "GooglePlaces-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		lanes = new Lane[3];
+		lanes[LANE_INTERACTIVE] = new Lane(LANE_INTERACTIVE, "interactive", INTERACTIVE_THREADS, INTERACTIVE_QUEUE_SIZE,
+				Process.THREAD_PRIORITY_DEFAULT, scheduler);
+		lanes[LANE_BULK] = new Lane(LANE_BULK, "bulk", BULK_THREADS, BULK_QUEUE_SIZE,
+				Process.THREAD_PRIORITY_BACKGROUND, scheduler);
+		lanes[LANE_BATCH] = new Lane(LANE_BATCH, "batch", BATCH_THREADS, BATCH_QUEUE_SIZE,
+				Process.THREAD_PRIORITY_BACKGROUND, scheduler);
+	}
+
+	/**
+	 * Submit the request to the given lane. 
+	 * @param lane - LANE_INTERACTIVE, LANE_BULK or LANE_BATCH
+	 * @param request - The request to run
+	 * @return false if the lane queue is full and the request is rejected
+	 */
+	public boolean submit(int lane, Runnable request) {
+		Lane l = getLane(lane);
+		return l.submit(new Job(l, request));
+	}
+
+	/**
+	 * Returns the number of requests waiting in the lane queue
+	 * @param lane
+	 * @return
+	 */
+	public int getQueueDepth(int lane) {
+		return getLane(lane).executor.getQueue().size();
+	}
+
+	/**
+	 * Returns the number of requests running in the lane
+	 * @param lane
+	 * @return
+	 */
+	public int getActiveCount(int lane) {
+		return getLane(lane).running.get();
+	}
+
+	/**
+	 * Returns the number of requests completed in the lane
+	 * @param lane
+	 * @return
+	 */
+	public long getCompletedCount(int lane) {
+		return getLane(lane).completed.get();
+	}
+
+	/**
+	 * Returns the number of times the requests of the lane were rescheduled
+	 * @param lane
+	 * @return
+	 */
+	public long getRescheduledCount(int lane) {
+		return getLane(lane).rescheduled.get();
+	}
+
+	/**
+	 * Returns the number of requests rejected since the lane queue was full
+	 * @param lane
+	 * @return
+	 */
+	public long getRejectedCount(int lane) {
+		return getLane(lane).rejected.get();
+	}
+
+	/**
+	 * Returns the average time the requests waited in the lane queue before running
+	 * @param lane
+	 * @return wait time in millisecs
+	 */
+	public long getAverageWaitTime(int lane) {
+		Lane l = getLane(lane);
+		long started = l.started.get();
+		return started == 0 ? 0 : l.totalWaitTime.get() / started;
+	}
+
+	/**
+	 * Returns the maximum time a request waited in the lane queue before running
+	 * @param lane
+	 * @return wait time in millisecs
+	 */
+	public long getMaxWaitTime(int lane) {
+		return getLane(lane).maxWaitTime.get();
+	}
+
+	/**
+	 * Returns the lane of the current thread, LANE_INTERACTIVE if it is not a lane thread
+	 * @return
+	 */
+	public static int getCurrentLane() {
+		Integer lane = sCurrentLane.get();
+		return lane == null ? LANE_INTERACTIVE : lane;
+	}
+
+	/**
+	 * Returns true if the current thread runs a Request, which can be rescheduled
+	 * @return
+	 */
+	public static boolean canReschedule() {
+		Job job = sCurrentJob.get();
+		return job != null && job.request instanceof Request;
+	}
+
+	/**
+	 * Returns the exception to throw from the current Request to run it again after the delay. 
+	 * The attempt of the request is incremented.
+	 * @param delay - Time in milliseconds
+	 * @return
+	 */
+	public static RescheduleException reschedule(long delay) {
+		return new RescheduleException(delay, null, true);
+	}
+
+	/**
+	 * Returns the exception to throw from the current Request to run it again after the delay, 
+	 * without incrementing the attempt. Used to wait for a resource instead of retrying a failure.
+	 * @param delay - Time in milliseconds
+	 * @return
+	 */
+	public static RescheduleException postpone(long delay) {
+		return new RescheduleException(delay, null, false);
+	}
+
+	/**
+	 * Returns the exception to throw from the current Request to run it again once the trigger happens
+	 * @param trigger
+	 * @return
+	 */
+	public static RescheduleException reschedule(Trigger trigger) {
+		return new RescheduleException(0, trigger, false);
+	}
+
+	/**
+	 * Returns the attempt of the current request, incremented each time it is rescheduled by reschedule(delay). 
+	 * 1 if the request is not rescheduled or the thread is not a lane thread.
+	 * @return
+	 */
+	public static int getCurrentAttempt() {
+		Job job = sCurrentJob.get();
+		return job == null ? 1 : job.attempt;
+	}
+
+	/**
+	 * Keep the state for the current request till it runs again, returned by takeResumeState
+	 * @param state
+	 */
+	public static void setResumeState(Object state) {
+		Job job = sCurrentJob.get();
+		if (job != null) {
+			job.resumeState = state;
+		}
+	}
+
+	/**
+	 * Returns & clears the state kept by setResumeState before the current request was rescheduled
+	 * @return
+	 */
+	public static Object takeResumeState() {
+		Job job = sCurrentJob.get();
+		if (job == null) {
+			return null;
+		}
+		Object state = job.resumeState;
+		job.resumeState = null;
+		return state;
+	}
+
+	private Lane getLane(int lane) {
+		if (lane < 0 || lane >= lanes.length) {
+			throw new IllegalArgumentException("Invalid lane: "+lane);
+		}
+		return lanes[lane];
+	}
+
+	// Submitted request with its lane & the state kept between its runs
+	private static class Job {
+		final Lane lane;
+		final Runnable request;
+		volatile int attempt = 1;
+		volatile Object resumeState;
+
+		Job(Lane lane, Runnable request) {
+			this.lane = lane;
+			this.request = request;
+		}
+	}
+
+	// Thread pool and metrics of a lane
+	private static class Lane {
+		private final String name;
+		private final ThreadPoolExecutor executor;
+		private final ScheduledThreadPoolExecutor scheduler;
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicLong started = new AtomicLong();
+		private final AtomicLong completed = new AtomicLong();
+		private final AtomicLong rescheduled = new AtomicLong();
+		private final AtomicLong rejected = new AtomicLong();
+		private final AtomicLong totalWaitTime = new AtomicLong();
+		private final AtomicLong maxWaitTime = new AtomicLong();
+
+		Lane(final int id, final String name, int threads, int queueSize, final int threadPriority,
+				ScheduledThreadPoolExecutor scheduler) {
+			this.name = name;
+			this.scheduler = scheduler;
+			ThreadFactory factory = new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(final Runnable r) {
+					return new Thread(new Runnable() {
+						@Override
+						public void run() {
+							Process.setThreadPriority(threadPriority);
+							sCurrentLane.set(id);
+							r.run();
+						}
+					}, "GooglePlaces-"+name+"-"+count.incrementAndGet());
+				}
+			};
+			executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(queueSize), factory);
+			executor.allowCoreThreadTimeOut(true);
+		}
+
+		boolean submit(final Job job) {
+			final long queuedTime = SystemClock.elapsedRealtime();
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						recordWaitTime(SystemClock.elapsedRealtime() - queuedTime);
+						running.incrementAndGet();
+						sCurrentJob.set(job);
+						RescheduleException rescheduleException = null;
+						try {
+							job.request.run();
+						} catch (RescheduleException e) {
+							rescheduleException = e;
+						} finally {
+							sCurrentJob.remove();
+							running.decrementAndGet();
+						}
+						if (rescheduleException != null) {
+							reschedule(job, rescheduleException);
+						} else {
+							completed.incrementAndGet();
+						}
+					}
+				});
+				return true;
+			} catch (RejectedExecutionException e) {
+				Log.e(TAG,"Request rejected, "+name+" lane queue is full");
+				rejected.incrementAndGet();
+				return false;
+			}
+		}
+
+		// Submit the request again after the delay or the trigger. The request is rescheduled only after 
+		// its run is over, hence it never runs on two threads at once.
+		private void reschedule(final Job job, RescheduleException e) {
+			if (!(job.request instanceof Request)) {
+				Log.e(TAG,"Request can't be rescheduled, it is dropped");
+				completed.incrementAndGet();
+				return;
+			}
+			rescheduled.incrementAndGet();
+			Runnable resubmit = new Runnable() {
+				@Override
+				public void run() {
+					if (!submit(job)) {
+						((Request) job.request).onRejected();
+					}
+				}
+			};
+			if (e.trigger != null) {
+				e.trigger.setListener(resubmit);
+			} else {
+				if (e.isRetry) {
+					job.attempt++;
+				}
+				scheduler.schedule(resubmit, e.delay, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		private void recordWaitTime(long waitTime) {
+			started.incrementAndGet();
+			totalWaitTime.addAndGet(waitTime);
+			long max = maxWaitTime.get();
+			while (waitTime > max && !maxWaitTime.compareAndSet(max, waitTime)) {
+				max = maxWaitTime.get();
+			}
+		}
+	}
+}
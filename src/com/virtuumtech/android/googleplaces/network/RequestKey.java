@@ -0,0 +1,97 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * RequestKey builds the canonical form of a request URL, used to identify the same request in caches.
+ * The API key is stripped and the query parameters are sorted, hence the same query 
+ * built with different parameter order or different API keys gives the same key.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class RequestKey {
+
+	private static final String API_KEY_PARAMETER = "key";
+
+	private RequestKey() {
+	}
+
+	/**
+	 * Returns the canonical key of the given URL
+	 * @param url
+	 * @return
+	 */
+	public static String canonical(String url) {
+		int queryStart = url.indexOf('?');
+		if (queryStart < 0) {
+			return url;
+		}
+
+		List<String> parameters = new ArrayList<String>();
+		for (String parameter : url.substring(queryStart + 1).split("&")) {
+			if (parameter.isEmpty()) {
+				continue;
+			}
+			int nameEnd = parameter.indexOf('=');
+			String name = nameEnd < 0 ? parameter : parameter.substring(0, nameEnd);
+			if (!name.equals(API_KEY_PARAMETER)) {
+				parameters.add(parameter);
+			}
+		}
+		Collections.sort(parameters);
+
+		StringBuilder key = new StringBuilder(url.length());
+		key.append(url, 0, queryStart + 1);
+		for (int i = 0; i < parameters.size(); i++) {
+			if (i > 0) {
+				key.append('&');
+			}
+			key.append(parameters.get(i));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the value of the given query parameter in the URL, null if it doesn't exist
+	 * @param url
+	 * @param name - Name of the query parameter
+	 * @return
+	 */
+	public static String getParameter(String url, String name) {
+		int queryStart = url.indexOf('?');
+		if (queryStart < 0) {
+			return null;
+		}
+		for (String parameter : url.substring(queryStart + 1).split("&")) {
+			int nameEnd = parameter.indexOf('=');
+			String paramName = nameEnd < 0 ? parameter : parameter.substring(0, nameEnd);
+			if (paramName.equals(name)) {
+				return nameEnd < 0 ? "" : parameter.substring(nameEnd + 1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the host of the URL, empty if the URL has no host
+	 * @param url
+	 * @return
+	 */
+	public static String getHost(String url) {
+		int start = url.indexOf("://");
+		start = start < 0 ? 0 : start + 3;
+		int end = start;
+		while (end < url.length() && "/?#:".indexOf(url.charAt(end)) < 0) {
+			end++;
+		}
+		return url.substring(start, end);
+	}
+}
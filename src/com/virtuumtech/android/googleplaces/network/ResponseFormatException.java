@@ -0,0 +1,24 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * ResponseFormatException is thrown when the response is received but can not be parsed, like malformed json. 
+ * Sending the request again returns the same response, hence it is not retried.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.IOException;
+
+public class ResponseFormatException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ResponseFormatException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
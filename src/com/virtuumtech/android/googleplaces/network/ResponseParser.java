@@ -0,0 +1,32 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * ResponseParser parses the response of Google Places web API while it is read from the stream.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface ResponseParser<T> {
+
+	/**
+	 * Parse the response from the stream. The stream is not closed.
+	 * @param in - Stream of the response
+	 * @return Parsed response
+	 * @throws IOException on network or json syntax errors
+	 */
+	T read(InputStream in) throws IOException;
+
+	/**
+	 * Returns the GOOGLE API status of the last parsed response
+	 * @return
+	 */
+	String getStatus();
+}
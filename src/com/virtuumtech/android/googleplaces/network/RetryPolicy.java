@@ -0,0 +1,211 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * RetryPolicy decides whether a failed request is sent again & how long to wait before it. 
+ * Network failures, server errors and the UNKNOWN_ERROR & OVER_QUERY_LIMIT statuses are retried with 
+ * exponential backoff & full jitter. A request with page token is retried on INVALID_REQUEST too, 
+ * as the token is not valid for a short time after it is issued. The requests are plain GETs, hence 
+ * sending them again has no side effect other than the quota.
+ * Retries are limited by a budget refilled by the completed requests, hence retries can't multiply 
+ * the load when the server is failing.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+import android.util.Log;
+
+public class RetryPolicy {
+
+	private static final String TAG = "RetryPolicy";
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_BASE_DELAY = 500;
+	public static final long DEFAULT_MAX_DELAY = 8000;
+
+	private static final long PAGE_TOKEN_DELAY = 2000; // Time for the page token to become valid
+	private static final double BUDGET_MAX = 10; // Retries allowed at once
+	private static final double BUDGET_RATIO = 0.1; // Retries allowed per completed request
+
+	private static RetryPolicy sInstance;
+
+	private final Random random = new Random();
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private long baseDelay = DEFAULT_BASE_DELAY;
+	private long maxDelay = DEFAULT_MAX_DELAY;
+	private double budget = BUDGET_MAX;
+
+	private long retryCount;
+	private long budgetExhaustedCount;
+
+	/**
+	 * Returns the process wide retry policy
+	 * @return
+	 */
+	public static synchronized RetryPolicy getInstance() {
+		if (sInstance == null) {
+			sInstance = new RetryPolicy();
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Set the max number of attempts of a request including the first one, 1 disables retry
+	 * @param maxAttempts
+	 */
+	public synchronized void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Max attempts should be at least 1");
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Set the delay before the first retry, the delay is doubled for each retry up to max delay
+	 * @param baseDelay - Time in milliseconds
+	 * @param maxDelay - Time in milliseconds
+	 */
+	public synchronized void setDelay(long baseDelay, long maxDelay) {
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * Returns the number of retries sent
+	 * @return
+	 */
+	public synchronized long getRetryCount() {
+		return retryCount;
+	}
+
+	/**
+	 * Returns the number of retries not sent since the retry budget is used
+	 * @return
+	 */
+	public synchronized long getBudgetExhaustedCount() {
+		return budgetExhaustedCount;
+	}
+
+	/**
+	 * Returns true if the request failed with the exception should be sent again
+	 * @param url - Request URL
+	 * @param attempt - Number of attempts done, starting with 1
+	 * @param e - Failure of the attempt
+	 * @return
+	 */
+	public boolean shouldRetry(String url, int attempt, IOException e) {
+		return isRetryable(e) && allowRetry(url, attempt, e.toString());
+	}
+
+	/**
+	 * Returns true if the request responded with the GOOGLE API status should be sent again
+	 * @param url - Request URL
+	 * @param attempt - Number of attempts done, starting with 1
+	 * @param status - GOOGLE API status of the response, null if there is no status
+	 * @return
+	 */
+	public boolean shouldRetry(String url, int attempt, String status) {
+		return isRetryable(url, status) && allowRetry(url, attempt, status);
+	}
+
+	/**
+	 * Wait before the next attempt of the request. A RequestExecutor.Request is rescheduled after the delay 
+	 * instead of waiting, hence the lane thread runs other requests meanwhile. Other threads sleep.
+	 * @param url - Request URL
+	 * @param attempt - Number of attempts done, starting with 1
+	 * @throws InterruptedIOException if the thread is interrupted
+	 * @throws RequestExecutor.RescheduleException when the request is rescheduled, it should not be caught
+	 */
+	public void backoff(String url, int attempt) throws InterruptedIOException {
+		long delay = getDelay(url, attempt);
+		if (RequestExecutor.canReschedule()) {
+			Log.d(TAG,"Retry "+attempt+" rescheduled after "+delay+" ms");
+			throw RequestExecutor.reschedule(delay);
+		}
+		Log.d(TAG,"Retry "+attempt+" after "+delay+" ms");
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry");
+		}
+	}
+
+	/**
+	 * Record a completed request, it refills the retry budget
+	 */
+	public synchronized void recordCompleted() {
+		budget = Math.min(BUDGET_MAX, budget + BUDGET_RATIO);
+	}
+
+	/**
+	 * Returns the delay before the next attempt, random between 0 & the exponential delay of the attempt. 
+	 * Requests with page token wait at least till the token is valid.
+	 * @param url - Request URL
+	 * @param attempt - Number of attempts done, starting with 1
+	 * @return Time in milliseconds
+	 */
+	public synchronized long getDelay(String url, int attempt) {
+		long delay = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 16));
+		delay = (long) (random.nextDouble() * delay);
+		if (isPageTokenRequest(url)) {
+			delay = Math.max(delay, PAGE_TOKEN_DELAY);
+		}
+		return delay;
+	}
+
+	// Network failures & transient HTTP status are retried. Invalid URL, unknown host, interrupt, rate limit, 
+	// open circuit & malformed response are not.
+	private boolean isRetryable(IOException e) {
+		if (e instanceof HttpStatusException) {
+			return ((HttpStatusException) e).isTransient();
+		} else if (e instanceof RateLimitException || e instanceof CircuitOpenException || e instanceof MalformedURLException
+				|| e instanceof UnknownHostException || e instanceof ResponseFormatException) {
+			return false;
+		} else if (e instanceof InterruptedIOException) {
+			return e instanceof SocketTimeoutException;
+		}
+		return true;
+	}
+
+	private boolean isRetryable(String url, String status) {
+		if (status == null) {
+			return false;
+		} else if (status.equals("UNKNOWN_ERROR") || status.equals("OVER_QUERY_LIMIT")) {
+			return true;
+		}
+		// Page token is not valid for a short time after it is issued
+		return status.equals("INVALID_REQUEST") && isPageTokenRequest(url);
+	}
+
+	// Check the attempts & take a retry from the budget
+	private synchronized boolean allowRetry(String url, int attempt, String reason) {
+		if (attempt >= maxAttempts) {
+			return false;
+		}
+		if (budget < 1) {
+			Log.e(TAG,"Retry budget is used, not retrying: "+reason);
+			budgetExhaustedCount++;
+			return false;
+		}
+		budget -= 1;
+		retryCount++;
+		Log.i(TAG,"Retrying the request: "+reason);
+		return true;
+	}
+
+	private static boolean isPageTokenRequest(String url) {
+		return RequestKey.getParameter(url, "pagetoken") != null;
+	}
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * SingleFlight runs only one request at a time for the same key in this process. The callers asking for
+ * a request already in flight get the same result or failure, hence two list rows with the same photo 
+ * or two screens with the same place send only one request. The shared result should not be modified, 
+ * the callers make their own copy of a mutable result. The key is built by the caller, usually from 
+ * RequestKey.canonical(). 
+ * The callers running a RequestExecutor.Request don't block the lane while waiting, the request is 
+ * rescheduled till the request in flight is done. When the request in flight is interrupted, the 
+ * waiting callers run it again instead of sharing the interruption.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import android.util.Log;
+
+public class SingleFlight {
+
+	private static final String TAG = "SingleFlight";
+
+	private static SingleFlight sInstance;
+
+	private final Map<String, Flight<?>> flights = new HashMap<String, Flight<?>>();
+
+	private long executedCount;
+	private long sharedCount;
+
+	/**
+	 * Request run by the first caller of a key
+	 */
+	public interface Call<T> {
+		T call() throws IOException;
+	}
+
+	/**
+	 * Returns the process wide single flight
+	 * @return
+	 */
+	public static synchronized SingleFlight getInstance() {
+		if (sInstance == null) {
+			sInstance = new SingleFlight();
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Run the call if no request of the key is in flight, else wait for the request in flight &
+	 * return its result. The callers of the same key should expect the same result type. 
+	 * A caller running a RequestExecutor.Request is rescheduled instead of waiting, hence it should not 
+	 * catch RequestExecutor.RescheduleException.
+	 * @param key - Key of the request
+	 * @param call - Request to run
+	 * @return Result of the call
+	 * @throws IOException failure of the call, shared by all the callers
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String key, Call<T> call) throws IOException {
+		// The rescheduled caller continues with the request it waited for
+		Flight<T> flight = (Flight<T>) takeWaitedFlight(key);
+		while (true) {
+			if (flight == null) {
+				boolean leader = false;
+				synchronized (this) {
+					flight = (Flight<T>) flights.get(key);
+					if (flight == null) {
+						flight = new Flight<T>();
+						flights.put(key, flight);
+						executedCount++;
+						leader = true;
+					} else {
+						flight.waiters++;
+					}
+				}
+				if (leader) {
+					return run(key, flight, call);
+				}
+				Log.d(TAG,"Attached to the request in flight");
+			}
+
+			if (!flight.isDone() && RequestExecutor.canReschedule()) {
+				RequestExecutor.setResumeState(new Waiting(key, flight));
+				throw RequestExecutor.reschedule(flight);
+			}
+			flight.await();
+
+			Throwable failure = flight.failure;
+			if (failure instanceof RequestExecutor.RescheduleException && RequestExecutor.canReschedule()) {
+				// Retry after the same delay as the request in flight
+				throw (RequestExecutor.RescheduleException) failure;
+			}
+			if (failure instanceof RequestExecutor.RescheduleException || isInterrupted(failure)) {
+				Log.d(TAG,"Request in flight is not completed, running it again");
+				flight = null;
+				continue;
+			}
+			synchronized (this) {
+				sharedCount++;
+			}
+			return flight.get();
+		}
+	}
+
+	/**
+	 * Returns true if other callers wait for the request of the key in flight. 
+	 * Used by the call to keep the data needed only by the waiting callers.
+	 * @param key
+	 * @return
+	 */
+	public synchronized boolean hasWaiters(String key) {
+		Flight<?> flight = flights.get(key);
+		return flight != null && flight.waiters > 0;
+	}
+
+	/**
+	 * Returns the number of requests in flight
+	 * @return
+	 */
+	public synchronized int getInFlightCount() {
+		return flights.size();
+	}
+
+	/**
+	 * Returns the number of requests sent
+	 * @return
+	 */
+	public synchronized long getExecutedCount() {
+		return executedCount;
+	}
+
+	/**
+	 * Returns the number of requests saved by attaching the callers to the request in flight
+	 * @return
+	 */
+	public synchronized long getSavedCount() {
+		return sharedCount;
+	}
+
+	// Run the call as the first caller & complete the flight for the waiting callers
+	private <T> T run(String key, Flight<T> flight, Call<T> call) throws IOException {
+		try {
+			T result = call.call();
+			flight.result = result;
+			return result;
+		} catch (IOException e) {
+			flight.failure = e;
+			throw e;
+		} catch (RuntimeException e) {
+			flight.failure = e;
+			throw e;
+		} catch (Error e) {
+			flight.failure = e;
+			throw e;
+		} finally {
+			synchronized (this) {
+				flights.remove(key);
+			}
+			flight.complete();
+		}
+	}
+
+	// Returns the flight waited by the rescheduled request, null if it didn't wait for the key
+	private static Flight<?> takeWaitedFlight(String key) {
+		Object state = RequestExecutor.takeResumeState();
+		if (state instanceof Waiting && ((Waiting) state).key.equals(key)) {
+			return ((Waiting) state).flight;
+		}
+		if (state != null) {
+			RequestExecutor.setResumeState(state);
+		}
+		return null;
+	}
+
+	// Interrupted or cancelled request, unlike the socket timeout it is not a failure of the request
+	private static boolean isInterrupted(Throwable failure) {
+		return failure instanceof InterruptedIOException && !(failure instanceof SocketTimeoutException);
+	}
+
+	// Flight waited by a rescheduled request
+	private static class Waiting {
+		final String key;
+		final Flight<?> flight;
+
+		Waiting(String key, Flight<?> flight) {
+			this.key = key;
+			this.flight = flight;
+		}
+	}
+
+	// Request in flight, completed once by the first caller. It triggers the rescheduled callers when done.
+	private static class Flight<T> implements RequestExecutor.Trigger {
+		final CountDownLatch done = new CountDownLatch(1);
+		final ArrayList<Runnable> listeners = new ArrayList<Runnable>();
+		//Number of callers attached, guarded by SingleFlight
+		int waiters;
+		volatile T result;
+		volatile Throwable failure;
+
+		void complete() {
+			ArrayList<Runnable> waiting;
+			synchronized (this) {
+				done.countDown();
+				waiting = new ArrayList<Runnable>(listeners);
+				listeners.clear();
+			}
+			for (Runnable listener : waiting) {
+				listener.run();
+			}
+		}
+
+		boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		@Override
+		public void setListener(Runnable listener) {
+			synchronized (this) {
+				if (!isDone()) {
+					listeners.add(listener);
+					return;
+				}
+			}
+			listener.run();
+		}
+
+		void await() throws InterruptedIOException {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the request in flight");
+			}
+		}
+
+		T get() throws IOException {
+			if (failure instanceof IOException) {
+				throw (IOException) failure;
+			} else if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			} else if (failure instanceof Error) {
+				throw (Error) failure;
+			}
+			return result;
+		}
+	}
+}
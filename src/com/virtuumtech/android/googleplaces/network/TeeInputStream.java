@@ -0,0 +1,102 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * TeeInputStream copies the bytes to the given OutputStream as they are read from the wrapped stream. 
+ * Used to keep a copy of the response for caching while it is parsed from the stream. The copy stops at 
+ * the limit, a truncated copy should be discarded.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public class TeeInputStream extends FilterInputStream {
+
+	private final OutputStream copy;
+	private final long limit;
+	private long copied;
+	private boolean truncated;
+
+	public TeeInputStream(InputStream in, OutputStream copy) {
+		this(in, copy, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Constructor for TeeInputStream
+	 * @param in - Stream to read
+	 * @param copy - Stream to write the copy
+	 * @param limit - Max number of bytes copied, the copy is truncated after it
+	 */
+	public TeeInputStream(InputStream in, OutputStream copy, long limit) {
+		super(in);
+		this.copy = copy;
+		this.limit = limit;
+	}
+
+	/**
+	 * Returns true if the stream had more bytes than the limit, hence the copy is not complete
+	 * @return
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int count) throws IOException {
+		int len = super.read(buffer, offset, count);
+		if (len > 0) {
+			write(buffer, offset, len);
+		}
+		return len;
+	}
+
+	// Copy the bytes till the limit
+	private void write(byte[] buffer, int offset, int len) throws IOException {
+		if (truncated) {
+			return;
+		}
+		if (copied + len > limit) {
+			truncated = true;
+			return;
+		}
+		copy.write(buffer, offset, len);
+		copied += len;
+	}
+
+	// Skipped bytes can't be copied, hence they are read
+	@Override
+	public long skip(long count) throws IOException {
+		byte[] buffer = new byte[1024];
+		long skipped = 0;
+		while (skipped < count) {
+			int len = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+			if (len == -1) {
+				break;
+			}
+			skipped += len;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * TransferStats keeps the bytes received on the wire & the bytes after decoding for each endpoint, 
+ * hence the savings of the compressed transfer can be seen. The endpoint is the host & path of the URL.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import android.util.Log;
+
+public class TransferStats {
+
+	private static final String TAG = "TransferStats";
+
+	private static TransferStats sInstance;
+
+	//Bytes of each endpoint as {responses, wire bytes, decoded bytes}
+	private final TreeMap<String, long[]> endpoints = new TreeMap<String, long[]>();
+
+	/**
+	 * Returns the process wide transfer stats
+	 * @return
+	 */
+	public static synchronized TransferStats getInstance() {
+		if (sInstance == null) {
+			sInstance = new TransferStats();
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Record a response received
+	 * @param url - URL of the request
+	 * @param wireBytes - Bytes received on the wire
+	 * @param decodedBytes - Bytes after decoding the content encoding
+	 */
+	public synchronized void record(String url, long wireBytes, long decodedBytes) {
+		String endpoint = getEndpoint(url);
+		long[] bytes = endpoints.get(endpoint);
+		if (bytes == null) {
+			bytes = new long[3];
+			endpoints.put(endpoint, bytes);
+		}
+		bytes[0]++;
+		bytes[1] += wireBytes;
+		bytes[2] += decodedBytes;
+	}
+
+	/**
+	 * Returns the endpoints having responses
+	 * @return
+	 */
+	public synchronized List<String> getEndpoints() {
+		return new ArrayList<String>(endpoints.keySet());
+	}
+
+	/**
+	 * Returns the number of responses of the endpoint
+	 * @param endpoint
+	 * @return
+	 */
+	public synchronized long getResponseCount(String endpoint) {
+		long[] bytes = endpoints.get(endpoint);
+		return bytes != null ? bytes[0] : 0;
+	}
+
+	/**
+	 * Returns the bytes received on the wire for the endpoint
+	 * @param endpoint
+	 * @return
+	 */
+	public synchronized long getWireBytes(String endpoint) {
+		long[] bytes = endpoints.get(endpoint);
+		return bytes != null ? bytes[1] : 0;
+	}
+
+	/**
+	 * Returns the bytes after decoding for the endpoint
+	 * @param endpoint
+	 * @return
+	 */
+	public synchronized long getDecodedBytes(String endpoint) {
+		long[] bytes = endpoints.get(endpoint);
+		return bytes != null ? bytes[2] : 0;
+	}
+
+	/**
+	 * Returns the bytes received on the wire for all the endpoints
+	 * @return
+	 */
+	public synchronized long getTotalWireBytes() {
+		long total = 0;
+		for (long[] bytes : endpoints.values()) {
+			total += bytes[1];
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the bytes after decoding for all the endpoints
+	 * @return
+	 */
+	public synchronized long getTotalDecodedBytes() {
+		long total = 0;
+		for (long[] bytes : endpoints.values()) {
+			total += bytes[2];
+		}
+		return total;
+	}
+
+	/**
+	 * Write the stats of each endpoint to the log
+	 */
+	public synchronized void log() {
+		for (String endpoint : endpoints.keySet()) {
+			long[] bytes = endpoints.get(endpoint);
+			long saved = bytes[2] > 0 ? (bytes[2] - bytes[1]) * 100 / bytes[2] : 0;
+			Log.i(TAG,endpoint+": "+bytes[0]+" responses, "+bytes[1]+" bytes on wire, "
+					+bytes[2]+" bytes decoded, "+saved+"% saved");
+		}
+	}
+
+	/**
+	 * Clear the stats
+	 */
+	public synchronized void reset() {
+		endpoints.clear();
+	}
+
+	// Host & path of the URL
+	private static String getEndpoint(String url) {
+		int start = url.indexOf("://");
+		start = start < 0 ? 0 : start + 3;
+		int end = url.indexOf('?', start);
+		return url.substring(start, end < 0 ? url.length() : end);
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * UrlConnectionTransport implements HttpTransport using HttpURLConnection. 
+ * The platform keeps the connections alive and pools them as long as each response body is fully read and closed. 
+ * The process wide http.* system properties are left to the app, the per host cap is enforced by this transport.
+ * This supports 
+ * 	 - Configurable connect & read timeouts
+ * 	 - Cap on the number of concurrent requests to the same host
+ * 	 - Compressed transfer, gzip & deflate bodies are decoded while they are read by the parser
+ * The bytes on the wire & the decoded bytes of each response are recorded in TransferStats.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import android.util.Log;
+
+public class UrlConnectionTransport implements HttpTransport {
+
+	private static final String TAG = "UrlConnectionTransport";
+
+	public static final int DEFAULT_CONNECT_TIMEOUT = 15000;
+	public static final int DEFAULT_READ_TIMEOUT = 20000;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private int readTimeout = DEFAULT_READ_TIMEOUT;
+	private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private boolean compression = true;
+
+	//Permits per host to limit the concurrent requests
+	private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+
+	/**
+	 * Set the timeout to establish the connection
+	 * @param timeout - timeout in millisecs
+	 */
+	public void setConnectTimeout(int timeout) {
+		connectTimeout = timeout;
+	}
+
+	/**
+	 * Returns the connect timeout in millisecs
+	 * @return
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Set the timeout to read the data from established connection
+	 * @param timeout - timeout in millisecs
+	 */
+	public void setReadTimeout(int timeout) {
+		readTimeout = timeout;
+	}
+
+	/**
+	 * Returns the read timeout in millisecs
+	 * @return
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Set the maximum number of requests running at the same time to the same host. 
+	 * Should be set before the first request to the host, the permits of a host are created once.
+	 * @param max
+	 */
+	public void setMaxConnectionsPerHost(int max) {
+		if (max < 1) {
+			throw new IllegalArgumentException("Max connections per host should be at least 1");
+		}
+		maxConnectionsPerHost = max;
+	}
+
+	/**
+	 * Returns the maximum number of concurrent requests to the same host
+	 * @return
+	 */
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * Set whether gzip & deflate content encoding is requested. Default is true.
+	 * @param compression
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	@Override
+	public HttpResponse execute(final String urlStr, Map<String, String> headers) throws IOException {
+		URL url = new URL(urlStr);
+		final Semaphore permit = getPermit(url.getHost());
+		try {
+			permit.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for connection to "+url.getHost());
+		}
+
+		try {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+			connection.setUseCaches(false);
+			connection.setRequestProperty("Connection", "keep-alive");
+			if (compression) {
+				// Setting the header disables the transparent gzip, hence the body is decoded here
+				connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+			}
+			if (headers != null) {
+				for (Map.Entry<String, String> entry : headers.entrySet()) {
+					connection.setRequestProperty(entry.getKey(), entry.getValue());
+				}
+			}
+
+			int statusCode = connection.getResponseCode();
+			InputStream body;
+			if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+				body = connection.getErrorStream();
+			} else {
+				body = connection.getInputStream();
+			}
+			final CountingInputStream wire = body != null ? new CountingInputStream(body) : null;
+			final CountingInputStream decoded = wire != null 
+					? new CountingInputStream(decode(new BufferedInputStream(wire), connection)) : null;
+			return new HttpResponse(statusCode, connection.getHeaderFields(), decoded, new Runnable() {
+				@Override
+				public void run() {
+					permit.release();
+					if (wire != null) {
+						TransferStats.getInstance().record(urlStr, wire.getCount(), decoded.getCount());
+					}
+				}
+			});
+		} catch (IOException e) {
+			permit.release();
+			throw e;
+		} catch (RuntimeException e) {
+			permit.release();
+			throw e;
+		}
+	}
+
+	// Decode the content encoding of the body as it is read
+	private InputStream decode(BufferedInputStream body, HttpURLConnection connection) throws IOException {
+		String encoding = connection.getContentEncoding();
+		int statusCode = connection.getResponseCode();
+		if (encoding == null || connection.getContentLength() == 0 
+				|| statusCode == HttpURLConnection.HTTP_NO_CONTENT || statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			return body;
+		}
+		encoding = encoding.trim().toLowerCase(Locale.US);
+		if (encoding.equals("gzip")) {
+			return new GZIPInputStream(body, BUFFER_SIZE);
+		} else if (encoding.equals("deflate")) {
+			// Deflate should be zlib wrapped, but some servers send the raw deflate data
+			body.mark(2);
+			int cmf = body.read();
+			int flg = body.read();
+			body.reset();
+			boolean zlib = cmf != -1 && flg != -1 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+			final Inflater inflater = new Inflater(!zlib);
+			return new InflaterInputStream(body, inflater, BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					// The inflater passed to the stream is not released by it
+					super.close();
+					inflater.end();
+				}
+			};
+		}
+		return body;
+	}
+
+	// Get the permits of the host, create if it doesn't exist
+	private Semaphore getPermit(String host) {
+		Semaphore permit = hostPermits.get(host);
+		if (permit == null) {
+			Semaphore newPermit = new Semaphore(maxConnectionsPerHost, true);
+			permit = hostPermits.putIfAbsent(host, newPermit);
+			if (permit == null) {
+				Log.d(TAG,"Created connection permits for "+host);
+				permit = newPermit;
+			}
+		}
+		return permit;
+	}
+}
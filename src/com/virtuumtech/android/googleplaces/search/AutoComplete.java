@@ -28,18 +28,25 @@ package com.virtuumtech.android.googleplaces.search;
  */
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.virtuumtech.android.googleplaces.GPConstants;
+import com.virtuumtech.android.googleplaces.NetworkFetcher;
 import com.virtuumtech.android.googleplaces.NetworkService;
 import com.virtuumtech.android.googleplaces.PlaceDetails;
 import com.virtuumtech.android.googleplaces.PlacesList;
+import com.virtuumtech.android.googleplaces.cache.PredictionCache;
 import com.virtuumtech.android.googleplaces.listener.AutoCompleteUpdate;
 import com.virtuumtech.android.googleplaces.listener.PlaceDetailsUpdate;
+import com.virtuumtech.android.googleplaces.network.LocalRequest;
+import com.virtuumtech.android.googleplaces.network.RequestExecutor;
 
 import android.content.Context;
 import android.content.Intent;
@@ -53,6 +60,7 @@ public class AutoComplete extends ResultReceiver {
 
 	private static final String TAG = "AutoComplete";
 	private static final String queryUrl = "https://maps.googleapis.com/maps/api/place/autocomplete/json?";
+	private static final long DEFAULT_DEBOUNCE_DELAY = 300; //Wait time after the last keystroke
 
 	
 	private int statusCode ;
@@ -63,8 +71,19 @@ public class AutoComplete extends ResultReceiver {
 	private int radius  = 0;
 	private Location location;
 
-	private List<String> predictions;
-	private List<String> placeIDs;
+	private List<String> predictions = new ArrayList<String>();
+	private List<String> placeIDs = new ArrayList<String>();
+
+	private final Handler mHandler = new Handler();
+	private long debounceDelay = DEFAULT_DEBOUNCE_DELAY;
+	private Runnable mPendingQuery;
+	//Sequence of the latest query, only the response of the latest query is delivered
+	private int mSequence = 0;
+	//Requests running in this process by URL, identical queries are coalesced
+	private final HashMap<String, PredictionRequest> mInFlight = new HashMap<String, PredictionRequest>();
+	//Keyword & scope of the latest query, its predictions are stored in PredictionCache
+	private String mKeyword;
+	private String mScope;
 	
 	private AutoCompleteUpdate mUpdateListener;
 	
@@ -111,8 +130,30 @@ public class AutoComplete extends ResultReceiver {
 		this.radius = radius;
 	}
 	
+	/**
+	 * Set the time to wait after the last keyword before the predictions are requested. 
+	 * The keywords given within this time replace the previous keyword. Default is 300 ms, 0 requests at once.
+	 * @param delay - Time in milliseconds
+	 */
+	public void setDebounceDelay(long delay) {
+		if (delay < 0) {
+			throw new IllegalArgumentException("Debounce delay can not be negative");
+		}
+		debounceDelay = delay;
+	}
+
+	/**
+	 * Returns the time to wait after the last keyword before the predictions are requested
+	 * @return Time in milliseconds
+	 */
+	public long getDebounceDelay() {
+		return debounceDelay;
+	}
+
 	/**
 	 * Request the POI details using google places web API. 
+	 * The request is sent after the debounce delay, it supersedes the previous requests. 
+	 * Only the predictions of the latest keyword are delivered.
 	 */
 	public void getAutocompletePredictions (String keyword) {
 		String url = queryUrl+"input="+keyword+"&key="+mApiKey;
@@ -126,7 +167,92 @@ public class AutoComplete extends ResultReceiver {
 			url = url+"&radius="+radius;
 		}
 		
-		startService(url,"AUTOCOMPLETE");
+		final String queryUrlStr = url;
+		final int sequence = ++mSequence;
+		cancelPendingQuery();
+		mKeyword = keyword;
+		mScope = getScope();
+
+		//Answer from the cached predictions of the keyword, or of its prefix if PredictionCache filters prefixes
+		final PredictionCache.Predictions cached = PredictionCache.getInstance().get(mScope, keyword);
+		if (cached != null) {
+			Log.i(TAG,"Using cached predictions");
+			cancelSupersededRequests(null);
+			mHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					if (sequence == mSequence) {
+						//Cached predictions are not stored again
+						mKeyword = null;
+						String status = cached.getDescriptions().isEmpty() ? 
+								RequestStatus.getStatusValue(RequestStatus.ZERO_RESULTS) : RequestStatus.getStatusValue(RequestStatus.OK);
+						deliverPredictions(RequestStatus.OK, status, cached.getDescriptions(), cached.getPlaceIDs());
+					}
+				}
+			});
+			return;
+		}
+
+		if (debounceDelay == 0) {
+			startService(queryUrlStr, "AUTOCOMPLETE", sequence);
+			return;
+		}
+		mPendingQuery = new Runnable() {
+			@Override
+			public void run() {
+				mPendingQuery = null;
+				startService(queryUrlStr, "AUTOCOMPLETE", sequence);
+			}
+		};
+		mHandler.postDelayed(mPendingQuery, debounceDelay);
+	}
+
+	// Types, location & radius of the query, the cached predictions are valid only for the same scope
+	private String getScope() {
+		String scope = types+"|";
+		if (location != null) {
+			scope = scope+location.getLatitude()+","+location.getLongitude();
+		}
+		return scope+"|"+radius;
+	}
+
+	// Store the predictions of the latest keyword in PredictionCache
+	private void storePredictions() {
+		int code = getStatusCode();
+		if (mKeyword != null && (code == RequestStatus.OK || code == RequestStatus.ZERO_RESULTS)) {
+			PredictionCache.getInstance().put(mScope, mKeyword, predictions, placeIDs);
+		}
+	}
+
+	/**
+	 * Cancel the pending & running requests, their predictions are not delivered.
+	 */
+	public void cancel() {
+		Log.v(TAG,"Inside cancel");
+		mSequence++;
+		cancelPendingQuery();
+		cancelSupersededRequests(null);
+	}
+
+	// Remove the query waiting for debounce delay
+	private void cancelPendingQuery() {
+		if (mPendingQuery != null) {
+			mHandler.removeCallbacks(mPendingQuery);
+			mPendingQuery = null;
+		}
+	}
+
+	// Cancel the requests not yet started other than the given URL. 
+	// Started requests complete & are dropped on delivery, they can be reused by identical queries.
+	private void cancelSupersededRequests(String urlStr) {
+		Iterator<Map.Entry<String, PredictionRequest>> it = mInFlight.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, PredictionRequest> entry = it.next();
+			if (!entry.getKey().equals(urlStr) && entry.getValue().cancel()) {
+				Log.d(TAG,"Cancelled superseded request");
+				it.remove();
+			}
+		}
 	}
 	
 	/**
@@ -191,15 +317,88 @@ public class AutoComplete extends ResultReceiver {
 	 * @param urlStr
 	 */
 	protected void startService (String urlStr, String actionType) {
+		mKeyword = null;
+		startService(urlStr, actionType, ++mSequence);
+	}
+
+	// Download the data for the given URL, the response is delivered only if the sequence is still the latest
+	private void startService (String urlStr, String actionType, int sequence) {
 		Log.v(TAG,"Inside StartService");
+		if (NetworkService.isInProcessDelivery()) {
+			startInProcess(urlStr, sequence);
+			return;
+		}
 		Intent intent = new Intent(mContext, NetworkService.class);
 		intent.putExtra(GPConstants.SERVICE, GPConstants.ACTION_URL_REQUEST);
 		intent.putExtra(GPConstants.URL, urlStr);
 		intent.putExtra(GPConstants.TYPE, actionType);
+		intent.putExtra(GPConstants.SEQUENCE, sequence);
 		intent.putExtra(GPConstants.RECEIVER, this);
 		mContext.startService(intent);
 	}
 	
+	// Download & parse the predictions in this process, the parsed predictions are delivered on the main thread. 
+	// The running request for the same URL is reused.
+	private void startInProcess (String urlStr, int sequence) {
+		cancelSupersededRequests(urlStr);
+		PredictionRequest request = mInFlight.get(urlStr);
+		if (request != null) {
+			Log.d(TAG,"Coalescing with the running request");
+			request.sequence = sequence;
+			return;
+		}
+		request = new PredictionRequest(urlStr, sequence);
+		mInFlight.put(urlStr, request);
+		request.submit(RequestExecutor.LANE_INTERACTIVE);
+	}
+
+	// Deliver the predictions to the listener
+	private void deliverPredictions (int resultCode, String status, List<String> descriptions, List<String> ids) {
+		predictions.clear();
+		placeIDs.clear();
+		if (resultCode != RequestStatus.OK) {
+			Log.e(TAG,"Google Query is not successful: "+RequestStatus.getStatusValue(resultCode));
+			setStatusCode(resultCode);
+		} else {
+			Log.i(TAG,"Google Query is successful");
+			setStatusCode(status);
+			predictions.addAll(descriptions);
+			placeIDs.addAll(ids);
+			storePredictions();
+		}
+		mUpdateListener.onAutoCompleteUpdate(getStatusCode());
+	}
+
+	// Predictions request run in this process, tagged with the sequence of the latest query using it
+	private class PredictionRequest extends LocalRequest<ArrayList<String>> {
+		private final String urlStr;
+		private final AutoCompleteReader autoCompleteReader = new AutoCompleteReader();
+		private int sequence;
+
+		PredictionRequest(String urlStr, int sequence) {
+			this.urlStr = urlStr;
+			this.sequence = sequence;
+		}
+
+		@Override
+		protected ArrayList<String> execute() throws Exception {
+			return NetworkFetcher.fetchParsed(mContext, urlStr, autoCompleteReader);
+		}
+
+		@Override
+		protected void onResult(int resultCode, ArrayList<String> result) {
+			Log.d(TAG,"Result Code:"+resultCode+" - "+RequestStatus.getStatusValue(resultCode));
+			if (mInFlight.get(urlStr) == this) {
+				mInFlight.remove(urlStr);
+			}
+			if (sequence != mSequence) {
+				Log.d(TAG,"Dropping the predictions of superseded query");
+				return;
+			}
+			deliverPredictions(resultCode, autoCompleteReader.getStatus(), result, autoCompleteReader.getPlaceIDs());
+		}
+	}
+
 	/**
 	 * Result receiver for the search quries. The result file will be received using Bundle 
 	 */
@@ -210,6 +409,11 @@ public class AutoComplete extends ResultReceiver {
 		String data = bundle.getCharSequence(GPConstants.DATA).toString();
 		Log.d(TAG,data);
 
+		if (bundle.getInt(GPConstants.SEQUENCE) != mSequence) {
+			Log.d(TAG,"Dropping the predictions of superseded query");
+			return;
+		}
+
 		predictions.clear();
 		placeIDs.clear();
 		if (resultCode != RequestStatus.OK) {
@@ -220,6 +424,7 @@ public class AutoComplete extends ResultReceiver {
 			//Parse the data if query is successful.
 			Log.i(TAG,"Google Query is successful");
 			parseJsonFile(data);
+			storePredictions();
 		}
 		
 		mUpdateListener.onAutoCompleteUpdate(getStatusCode());
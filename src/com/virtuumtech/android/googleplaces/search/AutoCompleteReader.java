@@ -0,0 +1,110 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * AutoCompleteReader is a streaming parser for the result of place autocomplete request. 
+ * Reads the description & place id of the predictions directly from the InputStream using JsonReader.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+import com.virtuumtech.android.googleplaces.network.ResponseParser;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+public class AutoCompleteReader implements ResponseParser<ArrayList<String>> {
+
+	private String status = "";
+	private ArrayList<String> placeIDs = new ArrayList<String>();
+
+	/**
+	 * Returns the GOOGLE API status of the last read response
+	 * @return
+	 */
+	@Override
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the place ids of the last read predictions, in the same order as the predictions
+	 * @return
+	 */
+	public ArrayList<String> getPlaceIDs() {
+		return placeIDs;
+	}
+
+	/**
+	 * Read the autocomplete response from the stream. The stream is not closed.
+	 * @param in - Stream of the autocomplete response
+	 * @return Description of the predictions
+	 * @throws IOException on network or json syntax errors
+	 */
+	@Override
+	public ArrayList<String> read(InputStream in) throws IOException {
+		ArrayList<String> predictions = new ArrayList<String>();
+		placeIDs = new ArrayList<String>();
+		status = "";
+
+		JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("status")) {
+				status = nextString(reader, "");
+			} else if (name.equals("predictions") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					readPrediction(reader, predictions);
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return predictions;
+	}
+
+	// Read one element of predictions array
+	private void readPrediction(JsonReader reader, ArrayList<String> predictions) throws IOException {
+		String description = "";
+		String placeID = "";
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("description")) {
+				description = nextString(reader, "");
+			} else if (name.equals("place_id")) {
+				placeID = nextString(reader, "");
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		predictions.add(description);
+		placeIDs.add(placeID);
+	}
+
+	// Read the value as string, booleans & numbers are converted to string
+	private static String nextString(JsonReader reader, String defValue) throws IOException {
+		JsonToken token = reader.peek();
+		if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+			return reader.nextString();
+		} else if (token == JsonToken.BOOLEAN) {
+			return String.valueOf(reader.nextBoolean());
+		}
+		reader.skipValue();
+		return defValue;
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * BitmapDecoder decodes the downloaded photos to the requested size. 
+ * The bounds are decoded first to find the sample size, hence the full size image is never allocated. 
+ * The memory of unused bitmaps from BitmapPool is reused for decoding. 
+ * Cached photos are decoded using the file descriptor, without copying the file to heap.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.search;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import com.virtuumtech.android.googleplaces.cache.BitmapPool;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+public class BitmapDecoder {
+
+	private static final String TAG = "BitmapDecoder";
+
+	private BitmapDecoder() {
+	}
+
+	/**
+	 * Decode the image to the requested size
+	 * @param data - Encoded image
+	 * @param width - Requested width, 0 to keep the image width
+	 * @param height - Requested height, 0 to keep the image height
+	 * @param pool - Pool of reusable bitmaps, can be null
+	 * @return Decoded bitmap, null if the data can't be decoded
+	 */
+	public static Bitmap decode(byte[] data, int width, int height, BitmapPool pool) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(data, 0, data.length, options);
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			Log.e(TAG,"Unable to decode the image bounds");
+			return null;
+		}
+
+		prepareOptions(options, width, height, pool);
+		try {
+			return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+		} catch (IllegalArgumentException e) {
+			// The pooled bitmap can't be reused for this image
+			Log.d(TAG,"Unable to reuse the bitmap, decoding without reuse");
+			options.inBitmap = null;
+			return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+		}
+	}
+
+	/**
+	 * Decode the open image file to the requested size using its file descriptor. The stream is not closed.
+	 * @param in - Encoded image file
+	 * @param width - Requested width, 0 to keep the image width
+	 * @param height - Requested height, 0 to keep the image height
+	 * @param pool - Pool of reusable bitmaps, can be null
+	 * @return Decoded bitmap, null if the file can't be read or decoded
+	 */
+	public static Bitmap decode(FileInputStream in, int width, int height, BitmapPool pool) {
+		try {
+			// Position of the descriptor is not changed by decoding, hence it is used for both bounds & image
+			FileDescriptor fd = in.getFD();
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inJustDecodeBounds = true;
+			BitmapFactory.decodeFileDescriptor(fd, null, options);
+			if (options.outWidth <= 0 || options.outHeight <= 0) {
+				Log.e(TAG,"Unable to decode the image bounds");
+				return null;
+			}
+
+			prepareOptions(options, width, height, pool);
+			try {
+				return BitmapFactory.decodeFileDescriptor(fd, null, options);
+			} catch (IllegalArgumentException e) {
+				// The pooled bitmap can't be reused for this image
+				Log.d(TAG,"Unable to reuse the bitmap, decoding without reuse");
+				options.inBitmap = null;
+				return BitmapFactory.decodeFileDescriptor(fd, null, options);
+			}
+		} catch (IOException e) {
+			Log.e(TAG,"Unable to read the image",e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the largest power of 2 sample size which keeps the image larger than requested size
+	 * @param imageWidth
+	 * @param imageHeight
+	 * @param width - Requested width, 0 to keep the image width
+	 * @param height - Requested height, 0 to keep the image height
+	 * @return
+	 */
+	public static int calculateSampleSize(int imageWidth, int imageHeight, int width, int height) {
+		int sampleSize = 1;
+		if (width <= 0 && height <= 0) {
+			return sampleSize;
+		}
+		while (true) {
+			int next = sampleSize * 2;
+			boolean isWidthLarger = width <= 0 || imageWidth / next >= width;
+			boolean isHeightLarger = height <= 0 || imageHeight / next >= height;
+			if (!isWidthLarger || !isHeightLarger) {
+				break;
+			}
+			sampleSize = next;
+		}
+		return sampleSize;
+	}
+
+	// Set the sample size & reusable bitmap once the bounds are decoded
+	static void prepareOptions(BitmapFactory.Options options, int width, int height, BitmapPool pool) {
+		options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, width, height);
+		options.inJustDecodeBounds = false;
+		options.inMutable = true;
+		options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+		if (pool != null) {
+			options.inBitmap = pool.get(options.outWidth, options.outHeight, options.inSampleSize,
+					options.inPreferredConfig);
+		}
+	}
+}
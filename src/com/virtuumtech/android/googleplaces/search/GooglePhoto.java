@@ -11,14 +11,21 @@
 
 package com.virtuumtech.android.googleplaces.search;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+
 import com.virtuumtech.android.googleplaces.GPConstants;
+import com.virtuumtech.android.googleplaces.NetworkFetcher;
 import com.virtuumtech.android.googleplaces.NetworkService;
+import com.virtuumtech.android.googleplaces.cache.BitmapCache;
 import com.virtuumtech.android.googleplaces.listener.PhotoUpdate;
+import com.virtuumtech.android.googleplaces.network.LocalRequest;
+import com.virtuumtech.android.googleplaces.network.RequestExecutor;
 
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.location.Location;
 import android.os.Bundle;
 import android.os.Handler;
@@ -39,6 +46,7 @@ public class GooglePhoto extends ResultReceiver implements Parcelable {
 	private int height;
 	private int width;
 	private String ref;
+	private String url;
 	private Bitmap bitmap;
 
 	
@@ -56,16 +64,56 @@ public class GooglePhoto extends ResultReceiver implements Parcelable {
 	
 	/**
 	 * Request to download the Photo. On completion it will call the call back function.  
+	 * The photo is decoded to the requested size & cached in memory, the cached photo is delivered without download.
+	 * The previously downloaded bitmap stays valid, it is not reused for other photos unless releaseBitmap was called.
 	 */
 	public void downloadPhoto (String ref, int height, int width) {
+		abandonBitmap();
 		this.ref = ref;
 		this.height = height;
 		this.width = width;
+
+		//Use the cached photo if it exists
+		bitmap = BitmapCache.getInstance().get(BitmapCache.getKey(ref, width, height));
+		if (bitmap != null) {
+			Log.i(TAG,"Using cached photo");
+			Bundle resultData = new Bundle();
+			resultData.putBoolean(GPConstants.FROM_CACHE, true);
+			send(RequestStatus.OK, resultData);
+			return;
+		}
 		
-		String url = photoUrl+"maxwidth="+width+"&maxheight="+height+"&key="+mApiKey+"&photoreference="+ref;
+		url = photoUrl+"maxwidth="+width+"&maxheight="+height+"&key="+mApiKey+"&photoreference="+ref;
 		startService(url,"PHOTODOWNLOAD");
 	}
 
+	/**
+	 * Returns the downloaded photo, null if it is not downloaded
+	 * @return
+	 */
+	public Bitmap getBitmap() {
+		return bitmap;
+	}
+
+	/**
+	 * Release the downloaded photo, hence its memory can be reused for next photos once it is evicted from cache.
+	 * Call it only when the bitmap is no longer shown, the bitmap should not be used after release.
+	 */
+	public void releaseBitmap() {
+		if (bitmap != null) {
+			BitmapCache.getInstance().release(bitmap);
+			bitmap = null;
+		}
+	}
+
+	// Stop tracking the bitmap handed to the caller without release, the caller may still show it
+	private void abandonBitmap() {
+		if (bitmap != null) {
+			BitmapCache.getInstance().abandon(bitmap);
+			bitmap = null;
+		}
+	}
+
 	/**
 	 * Get the status code of the search request result
 	 * @return
@@ -97,6 +145,10 @@ public class GooglePhoto extends ResultReceiver implements Parcelable {
 	 */
 	protected void startService (String urlStr, String actionType) {
 		Log.v(TAG,"Inside StartService");
+		if (NetworkService.isInProcessDelivery()) {
+			startInProcess(urlStr);
+			return;
+		}
 		Intent intent = new Intent(mContext, NetworkService.class);
 		intent.putExtra(GPConstants.SERVICE, GPConstants.ACTION_PHOTO_DOWNLOAD);
 		intent.putExtra(GPConstants.URL, urlStr);
@@ -105,22 +157,117 @@ public class GooglePhoto extends ResultReceiver implements Parcelable {
 		mContext.startService(intent);
 	}
 	
+	// Download & decode the photo in this process, the decoded bitmap is delivered on the main thread. 
+	// The photo downloaded by NetworkService is opened from the cache.
+	private void startInProcess (final String urlStr) {
+		final String key = BitmapCache.getKey(ref, width, height);
+		final int reqWidth = width;
+		final int reqHeight = height;
+		new LocalRequest<Bitmap>() {
+			@Override
+			protected Bitmap execute() throws Exception {
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				FileInputStream cached = NetworkFetcher.fetchPhoto(mContext, urlStr, output);
+				return decodePhoto(key, cached, cached == null ? output.toByteArray() : null, reqWidth, reqHeight);
+			}
+
+			@Override
+			protected void onResult(int resultCode, Bitmap decoded) {
+				Log.d(TAG,"Result Code:"+resultCode+" - "+RequestStatus.getStatusValue(resultCode));
+				onPhotoResult(key, resultCode, decoded);
+			}
+		}.submit(RequestExecutor.LANE_BULK);
+	}
+
+	// Decode the photo received from NetworkService on the bulk lane, the decoded bitmap is delivered on the main thread
+	private void decodeInBackground (final byte[] data) {
+		final String key = BitmapCache.getKey(ref, width, height);
+		final int reqWidth = width;
+		final int reqHeight = height;
+		new LocalRequest<Bitmap>() {
+			@Override
+			protected Bitmap execute() throws Exception {
+				return decodePhoto(key, null, data, reqWidth, reqHeight);
+			}
+
+			@Override
+			protected void onResult(int resultCode, Bitmap decoded) {
+				onPhotoResult(key, resultCode, decoded);
+			}
+		}.submit(RequestExecutor.LANE_BULK);
+	}
+
+	// Decode the open cached photo or byte array to bitmap of requested size reusing the pooled bitmaps, & cache it. 
+	// The cached photo is closed. Runs on the lane thread.
+	private static Bitmap decodePhoto (String key, FileInputStream cached, byte[] data, int reqWidth, int reqHeight) throws IOException {
+		BitmapCache cache = BitmapCache.getInstance();
+		Bitmap decoded;
+		if (cached != null) {
+			try {
+				decoded = BitmapDecoder.decode(cached, reqWidth, reqHeight, cache.getPool());
+			} finally {
+				cached.close();
+			}
+		} else if (data != null) {
+			decoded = BitmapDecoder.decode(data, reqWidth, reqHeight, cache.getPool());
+		} else {
+			decoded = null;
+		}
+		if (decoded != null) {
+			cache.put(key, decoded);
+		}
+		return decoded;
+	}
+
+	// Deliver the decoded photo to the listener, dropping it if another photo is requested meanwhile
+	private void onPhotoResult (String key, int resultCode, Bitmap decoded) {
+		//Another photo is requested after this request
+		if (!key.equals(BitmapCache.getKey(ref, width, height))) {
+			if (decoded != null) {
+				BitmapCache.getInstance().release(decoded);
+			}
+			return;
+		}
+		if (resultCode != RequestStatus.OK) {
+			Log.e(TAG,"Google Photo Query is not successful: "+RequestStatus.getStatusValue(resultCode));
+			setStatusCode(resultCode);
+		} else if (decoded != null) {
+			bitmap = decoded;
+			setStatusCode(RequestStatus.OK);
+		} else {
+			Log.e(TAG,"Unable to decode the photo");
+			setStatusCode(RequestStatus.ERROR);
+		}
+		mUpdateListener.onPhotoDownload(getStatusCode());
+	}
+
 	/**
 	 * Result receiver for the search quries. The result file will be received using Bundle 
 	 */
 	public void onReceiveResult(int resultCode, Bundle bundle) {
 		Log.v(TAG,"Inside onReceiveResult");
 		Log.d(TAG,"Result Code:"+resultCode+" - "+RequestStatus.getStatusValue(resultCode));
+
+		//The cached photo is already set
+		if (bundle.getBoolean(GPConstants.FROM_CACHE)) {
+			setStatusCode(RequestStatus.OK);
+			mUpdateListener.onPhotoDownload(getStatusCode());
+			return;
+		}
 		
-		byte[] byteArray = bundle.getByteArray(GPConstants.DATA);
 		if (resultCode != RequestStatus.OK) {
 			//Check the query is not successful for main request
 			Log.e(TAG,"Google Photo Query is not successful: "+RequestStatus.getStatusValue(resultCode));
 			setStatusCode(resultCode);
+			mUpdateListener.onPhotoDownload(getStatusCode());
+			return;
+		}
+		//Decode the cached photo or byte array on the bulk lane, the listener is called once it is decoded
+		byte[] data = bundle.getByteArray(GPConstants.DATA);
+		if (data != null) {
+			decodeInBackground(data);
 		} else {
-			//Convert the byte array to bitmap
-			bitmap = BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length);
+			startInProcess(url);
 		}
-		mUpdateListener.onPhotoDownload(getStatusCode());
 	}
 }
\ No newline at end of file
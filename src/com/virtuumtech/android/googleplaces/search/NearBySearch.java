@@ -28,6 +28,7 @@ public class NearBySearch extends SearchQuery {
 		super(context, apikey, queryUrl);
 		Log.v(TAG,"NearBySearch Constructor");
 		addParameter("key", apikey);
+		setUseLocalIndex(true);
 	}
 	
 	/**
@@ -0,0 +1,337 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PlaceDetailsBatch gets the details of a collection of places with bounded number of parallel requests. 
+ * The details are read from the disk cache if they are fresh, places requested by other batches are not 
+ * requested again. The result of each place is delivered to PlaceDetailsBatchUpdate as it is received. 
+ * The requests run on the batch lane of RequestExecutor, hence they don't compete with the photo downloads. 
+ * Each batch waiting for a place gets its own copy of the details, decoded from the encoded details.
+ * Wiki data is not downloaded, Places can be used for the place the user opens.
+ * The methods should be called on the main thread.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import com.virtuumtech.android.googleplaces.NetworkFetcher;
+import com.virtuumtech.android.googleplaces.PlaceDetails;
+import com.virtuumtech.android.googleplaces.cache.DiskCache;
+import com.virtuumtech.android.googleplaces.cache.PlaceCodec;
+import com.virtuumtech.android.googleplaces.cache.ResponseCache;
+import com.virtuumtech.android.googleplaces.listener.PlaceDetailsBatchUpdate;
+import com.virtuumtech.android.googleplaces.network.LocalRequest;
+import com.virtuumtech.android.googleplaces.network.RequestExecutor;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+public class PlaceDetailsBatch {
+
+	private static final String TAG = "PlaceDetailsBatch";
+	private static final String queryUrl = "https://maps.googleapis.com/maps/api/place/details/json?";
+
+	public static final int DEFAULT_MAX_CONCURRENCY = RequestExecutor.BATCH_THREADS;
+
+	//Batches waiting for the place being requested, accessed only on the main thread
+	private static final HashMap<String, ArrayList<PlaceDetailsBatch>> sInFlight = new HashMap<String, ArrayList<PlaceDetailsBatch>>();
+
+	private String mApiKey;
+	private Context mContext;
+	private PlaceDetailsBatchUpdate mUpdateListener;
+	private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+	//Places to be requested by this batch & places not yet delivered to this batch
+	private final LinkedList<String> mQueue = new LinkedList<String>();
+	private final HashSet<String> mPending = new HashSet<String>();
+	private int mRunning;
+
+	private int requestedCount;
+	private int completedCount;
+	private int failedCount;
+	private int cachedCount;
+	private int coalescedCount;
+	private int fetchCount;
+	private long totalFetchTime;
+	private long maxFetchTime;
+	private long startTime;
+	private long endTime;
+
+	public PlaceDetailsBatch(Context context, String apikey) {
+		Log.v(TAG,"PlaceDetailsBatch Constructor");
+		mApiKey = apikey;
+		mContext = context;
+		mUpdateListener = (PlaceDetailsBatchUpdate) context;
+	}
+
+	/**
+	 * Set the max number of details requests run in parallel by this batch. Default is 4, the number of threads
+	 * of the batch lane. The lane is shared by all the batches, hence a larger value only queues more requests.
+	 * @param maxConcurrency
+	 */
+	public void setMaxConcurrency(int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("Max concurrency should be at least 1");
+		}
+		this.maxConcurrency = maxConcurrency;
+		startNext();
+	}
+
+	/**
+	 * Request the details of the places. The places already pending in this batch are ignored. 
+	 * @param placeIDs
+	 */
+	public void requestPlaceDetails(Collection<String> placeIDs) {
+		Log.v(TAG,"Inside requestPlaceDetails");
+		if (mPending.isEmpty()) {
+			startTime = SystemClock.elapsedRealtime();
+			endTime = 0;
+		}
+		for (String placeID : placeIDs) {
+			if (placeID == null || placeID.isEmpty() || !mPending.add(placeID)) {
+				continue;
+			}
+			requestedCount++;
+			ArrayList<PlaceDetailsBatch> waiters = sInFlight.get(placeID);
+			if (waiters != null) {
+				//Place is already requested, wait for its result
+				coalescedCount++;
+				waiters.add(this);
+				continue;
+			}
+			waiters = new ArrayList<PlaceDetailsBatch>();
+			waiters.add(this);
+			sInFlight.put(placeID, waiters);
+			mQueue.add(placeID);
+		}
+		startNext();
+	}
+
+	/**
+	 * Cancel the pending places of this batch, their details are not delivered. 
+	 * The places requested by other batches are still requested.
+	 */
+	public void cancel() {
+		Log.v(TAG,"Inside cancel");
+		for (String placeID : mPending) {
+			ArrayList<PlaceDetailsBatch> waiters = sInFlight.get(placeID);
+			if (waiters != null) {
+				waiters.remove(this);
+			}
+		}
+		Iterator<String> it = mQueue.iterator();
+		while (it.hasNext()) {
+			String placeID = it.next();
+			ArrayList<PlaceDetailsBatch> waiters = sInFlight.get(placeID);
+			if (waiters == null || waiters.isEmpty()) {
+				sInFlight.remove(placeID);
+				it.remove();
+			}
+		}
+		mPending.clear();
+	}
+
+	/**
+	 * Returns the number of places not yet delivered
+	 * @return
+	 */
+	public int getPendingCount() {
+		return mPending.size();
+	}
+
+	/**
+	 * Returns the number of places requested, duplicates are not counted
+	 * @return
+	 */
+	public int getRequestedCount() {
+		return requestedCount;
+	}
+
+	/**
+	 * Returns the number of places delivered with details
+	 * @return
+	 */
+	public int getCompletedCount() {
+		return completedCount;
+	}
+
+	/**
+	 * Returns the number of places delivered without details
+	 * @return
+	 */
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+	/**
+	 * Returns the number of places read from disk cache by this batch
+	 * @return
+	 */
+	public int getCachedCount() {
+		return cachedCount;
+	}
+
+	/**
+	 * Returns the number of places which were already requested by another batch
+	 * @return
+	 */
+	public int getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * Returns the average time of the details requests of this batch in milliseconds. The time is measured 
+	 * from the submission of the request, hence it includes the wait in the lane & the delays of rescheduled retries.
+	 * @return
+	 */
+	public long getAverageFetchTime() {
+		return fetchCount == 0 ? 0 : totalFetchTime / fetchCount;
+	}
+
+	/**
+	 * Returns the max time of the details requests of this batch in milliseconds, measured from the submission
+	 * @return
+	 */
+	public long getMaxFetchTime() {
+		return maxFetchTime;
+	}
+
+	/**
+	 * Returns the time from the first request till all the places are delivered in milliseconds, 
+	 * till now if places are pending.
+	 * @return
+	 */
+	public long getElapsedTime() {
+		if (startTime == 0) {
+			return 0;
+		}
+		return (endTime != 0 ? endTime : SystemClock.elapsedRealtime()) - startTime;
+	}
+
+	// Start the queued requests up to max concurrency
+	private void startNext() {
+		while (mRunning < maxConcurrency && !mQueue.isEmpty()) {
+			mRunning++;
+			new DetailsRequest(mQueue.poll()).submit(RequestExecutor.LANE_BATCH);
+		}
+	}
+
+	// Deliver the result of the place if it is pending in this batch
+	private void deliver(int statusCode, String placeID, PlaceDetails details) {
+		if (!mPending.remove(placeID)) {
+			return;
+		}
+		if (statusCode == RequestStatus.OK) {
+			completedCount++;
+		} else {
+			failedCount++;
+		}
+		if (mPending.isEmpty()) {
+			endTime = SystemClock.elapsedRealtime();
+		}
+		mUpdateListener.onPlaceDetailsBatchUpdate(statusCode, placeID, details);
+	}
+
+	// Details request of one place, fresh cached details are used without download
+	private class DetailsRequest extends LocalRequest<PlaceDetails> {
+		private final String placeID;
+		private final PlaceDetailsReader detailsReader = new PlaceDetailsReader();
+		//Time of the first submission, the rescheduled runs are counted from it
+		private final long submitTime = SystemClock.elapsedRealtime();
+		private boolean fromCache = false;
+		private long fetchTime;
+		//Encoded details, decoded for each additional batch waiting for the place
+		private byte[] encoded;
+
+		DetailsRequest(String placeID) {
+			this.placeID = placeID;
+		}
+
+		@Override
+		protected PlaceDetails execute() throws Exception {
+			try {
+				DiskCache diskCache = DiskCache.getInstance(mContext);
+				String key = Places.getCacheKey(placeID);
+				DiskCache.Entry entry = diskCache.get(key);
+				long freshTime = ResponseCache.getInstance().getTimeToLive(ResponseCache.ENDPOINT_DETAILS);
+				if (entry != null && entry.getAge() < freshTime) {
+					try {
+						PlaceDetails details = PlaceCodec.decodePlaceDetails(entry.getData());
+						encoded = entry.getData();
+						fromCache = true;
+						return details;
+					} catch (IOException e) {
+						Log.e(TAG,"Unable to read cached place details",e);
+					}
+				}
+				PlaceDetails details = NetworkFetcher.fetchParsed(mContext, queryUrl+"placeid="+placeID+"&key="+mApiKey, detailsReader);
+				if (details != null && RequestStatus.getStatusCode(detailsReader.getStatus()) == RequestStatus.OK) {
+					encoded = PlaceCodec.encodePlaceDetails(details);
+					diskCache.putAsync(key, encoded);
+				}
+				return details;
+			} finally {
+				fetchTime = SystemClock.elapsedRealtime() - submitTime;
+			}
+		}
+
+		// Details for the batch, the first batch gets the parsed details & the others their own copies
+		private PlaceDetails copyFor(int index, PlaceDetails details) {
+			if (index == 0 || details == null || encoded == null) {
+				return details;
+			}
+			try {
+				return PlaceCodec.decodePlaceDetails(encoded);
+			} catch (IOException e) {
+				Log.e(TAG,"Unable to copy the place details",e);
+				return null;
+			}
+		}
+
+		@Override
+		protected void onResult(int resultCode, PlaceDetails details) {
+			mRunning--;
+			fetchCount++;
+			totalFetchTime += fetchTime;
+			maxFetchTime = Math.max(maxFetchTime, fetchTime);
+
+			int statusCode = resultCode;
+			if (fromCache) {
+				cachedCount++;
+			} else if (resultCode == RequestStatus.OK) {
+				statusCode = RequestStatus.getStatusCode(detailsReader.getStatus());
+				if (statusCode == RequestStatus.OK && details == null) {
+					statusCode = RequestStatus.ERROR;
+				}
+			}
+			if (statusCode != RequestStatus.OK) {
+				Log.e(TAG,"Details of "+placeID+" is not successful: "+RequestStatus.getStatusValue(statusCode));
+			}
+
+			ArrayList<PlaceDetailsBatch> waiters = sInFlight.remove(placeID);
+			if (waiters != null) {
+				for (int i = 0; i < waiters.size(); i++) {
+					if (statusCode != RequestStatus.OK) {
+						waiters.get(i).deliver(statusCode, placeID, null);
+						continue;
+					}
+					PlaceDetails copy = copyFor(i, details);
+					waiters.get(i).deliver(copy != null ? statusCode : RequestStatus.ERROR, placeID, copy);
+				}
+			}
+			startNext();
+		}
+	}
+}
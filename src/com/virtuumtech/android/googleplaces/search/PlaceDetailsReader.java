@@ -0,0 +1,221 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PlaceDetailsReader is a streaming parser for the result of place details request. 
+ * Reads the response directly from the InputStream into PlaceDetails object using pull based JsonReader.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import org.json.JSONObject;
+
+import com.virtuumtech.android.googleplaces.PlaceDetails;
+import com.virtuumtech.android.googleplaces.network.ResponseParser;
+
+import android.location.Location;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+public class PlaceDetailsReader implements ResponseParser<PlaceDetails> {
+
+	private String status = "";
+
+	/**
+	 * Returns the GOOGLE API status of the last read response
+	 * @return
+	 */
+	@Override
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * Read the details response from the stream and parse it as PlaceDetails object.
+	 * The stream is not closed.
+	 * @param in - Stream of the details response
+	 * @return Details of the place, null if there is no result in the response
+	 * @throws IOException on network or json syntax errors
+	 */
+	@Override
+	public PlaceDetails read(InputStream in) throws IOException {
+		PlaceDetails details = null;
+		status = "";
+
+		JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("status")) {
+				status = nextString(reader, "");
+			} else if (name.equals("result") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+				details = readDetails(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return details;
+	}
+
+	// Read the result object
+	private PlaceDetails readDetails(JsonReader reader) throws IOException {
+		PlaceDetails details = new PlaceDetails();
+		String vicinity = null;
+		String formattedAddress = null;
+		String internationalPhone = null;
+		String formattedPhone = null;
+		Location loc = new Location("");
+
+		details.setPlaceID("");
+		details.setName("");
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("place_id")) {
+				details.setPlaceID(nextString(reader, ""));
+			} else if (name.equals("name")) {
+				details.setName(nextString(reader, ""));
+			} else if (name.equals("rating")) {
+				details.setRating(nextDouble(reader, 0.0));
+			} else if (name.equals("vicinity")) {
+				vicinity = nextString(reader, "");
+			} else if (name.equals("formatted_address")) {
+				formattedAddress = nextString(reader, "");
+			} else if (name.equals("international_phone_number")) {
+				internationalPhone = nextString(reader, "");
+			} else if (name.equals("formatted_phone_number")) {
+				formattedPhone = nextString(reader, "");
+			} else if (name.equals("website")) {
+				details.setWeb(nextString(reader, ""));
+			} else if (name.equals("url")) {
+				details.setGoogleURL(nextString(reader, ""));
+			} else if (name.equals("opening_hours") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+				readOpeningHours(reader, details);
+			} else if (name.equals("geometry") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+				readGeometry(reader, loc);
+			} else if (name.equals("photos") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+				readPhotos(reader, details);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		//Text Search address is preferred over Nearby Search address
+		if (formattedAddress != null) {
+			details.setAddress(formattedAddress);
+		} else if (vicinity != null) {
+			details.setAddress(vicinity);
+		}
+		//International phone number is preferred over local number
+		if (internationalPhone != null) {
+			details.setPhone(internationalPhone);
+		} else if (formattedPhone != null) {
+			details.setPhone(formattedPhone);
+		}
+		details.setLocation(loc);
+		return details;
+	}
+
+	// Read open_now & weekday_text from opening_hours object
+	// weekday_text is kept as comma separated quoted strings, same as the json array without brackets
+	private void readOpeningHours(JsonReader reader, PlaceDetails details) throws IOException {
+		details.setOpenNow("");
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("open_now")) {
+				details.setOpenNow(nextString(reader, ""));
+			} else if (name.equals("weekday_text") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+				StringBuilder openTime = new StringBuilder();
+				reader.beginArray();
+				while (reader.hasNext()) {
+					if (openTime.length() > 0) {
+						openTime.append(',');
+					}
+					openTime.append(JSONObject.quote(nextString(reader, "")));
+				}
+				reader.endArray();
+				details.setOpenTime(openTime.toString());
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	// Read photo_reference of each photo
+	private void readPhotos(JsonReader reader, PlaceDetails details) throws IOException {
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				reader.skipValue();
+				continue;
+			}
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (reader.nextName().equals("photo_reference")) {
+					details.addPhotoRef(nextString(reader, ""));
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		}
+		reader.endArray();
+	}
+
+	// Read geometry.location in to the given location
+	private void readGeometry(JsonReader reader, Location loc) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (reader.nextName().equals("location") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String name = reader.nextName();
+					if (name.equals("lat")) {
+						loc.setLatitude(nextDouble(reader, Double.NaN));
+					} else if (name.equals("lng")) {
+						loc.setLongitude(nextDouble(reader, Double.NaN));
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	// Read the value as string, booleans & numbers are converted to string
+	private static String nextString(JsonReader reader, String defValue) throws IOException {
+		JsonToken token = reader.peek();
+		if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+			return reader.nextString();
+		} else if (token == JsonToken.BOOLEAN) {
+			return String.valueOf(reader.nextBoolean());
+		}
+		reader.skipValue();
+		return defValue;
+	}
+
+	// Read the value as double, default value is returned if it is not a number
+	private static double nextDouble(JsonReader reader, double defValue) throws IOException {
+		if (reader.peek() == JsonToken.NUMBER) {
+			return reader.nextDouble();
+		}
+		reader.skipValue();
+		return defValue;
+	}
+}
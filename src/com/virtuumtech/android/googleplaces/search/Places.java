@@ -4,6 +4,8 @@
 
 /**
  * Places is the class to get the places details from Google Places API search. 
+ * When the wiki data is required, the details are delivered at once & the listener is updated again if 
+ * the wiki data is downloaded within the wiki timeout.
  * 
  * @author  
  * @version 1.0
@@ -11,14 +13,23 @@
 
 package com.virtuumtech.android.googleplaces.search;
 
+import java.io.IOException;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.virtuumtech.android.googleplaces.GPConstants;
+import com.virtuumtech.android.googleplaces.NetworkFetcher;
 import com.virtuumtech.android.googleplaces.NetworkService;
 import com.virtuumtech.android.googleplaces.PlaceDetails;
+import com.virtuumtech.android.googleplaces.cache.DiskCache;
+import com.virtuumtech.android.googleplaces.cache.PlaceCodec;
+import com.virtuumtech.android.googleplaces.cache.ResponseCache;
 import com.virtuumtech.android.googleplaces.listener.PlaceDetailsUpdate;
+import com.virtuumtech.android.googleplaces.network.LocalRequest;
+import com.virtuumtech.android.googleplaces.network.RequestExecutor;
+import com.virtuumtech.android.googleplaces.network.RequestKey;
 
 import android.content.Context;
 import android.content.Intent;
@@ -34,7 +45,14 @@ public class Places extends ResultReceiver {
 	private static final String queryUrl = "https://maps.googleapis.com/maps/api/place/details/json?";
 	private static final String wikiUrl  = "https://en.wikipedia.org/w/api.php?action=query&prop=coordinates|extracts&exsectionformat=plain&explaintext&exintro&exsentences=3&format=json&titles=";
 	
+	public static final long DEFAULT_WIKI_TIMEOUT = 3000; // 3 secs
+
 	private boolean isWikiData = false;
+	private boolean isWikiPending = false;
+	private long mWikiTimeout = DEFAULT_WIKI_TIMEOUT;
+	private final Handler mHandler = new Handler();
+	private boolean cachedResult = false;
+	private boolean isRevalidating = false;
 	private int statusCode ;
 	private String mPlaceID;
 	private String mApiKey;
@@ -72,10 +90,64 @@ public class Places extends ResultReceiver {
 	
 	/**
 	 * Request the POI details using google places web API. 
+	 * The cached details are delivered at once, if they are stale the details are requested again in background. 
 	 */
 	public void requestPlaceDetails () {
-		String url = queryUrl+"placeid="+mPlaceID+"&key="+mApiKey;
-		startService(url,"PLACEDETAILS");
+		final String url = queryUrl+"placeid="+mPlaceID+"&key="+mApiKey;
+		DiskCache.getInstance(mContext).getAsync(RequestKey.canonical(url), new DiskCache.Callback() {
+			@Override
+			public void onCacheResult(DiskCache.Entry entry) {
+				if (entry != null) {
+					long freshTime = ResponseCache.getInstance().getTimeToLive(ResponseCache.ENDPOINT_DETAILS);
+					boolean isFresh = entry.getAge() < freshTime;
+					if (deliverCachedDetails(entry, isFresh)) {
+						if (isFresh) {
+							Log.d(TAG,"Cached place details are fresh");
+							return;
+						}
+						Log.d(TAG,"Revalidating cached place details");
+					}
+				}
+				startService(url,"PLACEDETAILS");
+			}
+		});
+	}
+
+	/**
+	 * Returns true if the last delivered details are read from the disk cache. 
+	 * Stale cached details are followed by the details from network.
+	 * @return
+	 */
+	public boolean isCachedResult() {
+		return cachedResult;
+	}
+
+	// Deliver the cached details using ResultReceiver, hence it is received on the handler thread
+	private boolean deliverCachedDetails(DiskCache.Entry entry, boolean isFresh) {
+		PlaceDetails details;
+		try {
+			details = PlaceCodec.decodePlaceDetails(entry.getData());
+		} catch (IOException e) {
+			Log.e(TAG,"Unable to read cached place details",e);
+			return false;
+		}
+		Bundle resultData = new Bundle();
+		resultData.putParcelable(GPConstants.RESULT_DATA, details);
+		resultData.putCharSequence(GPConstants.TYPE, "PLACEDETAILS");
+		resultData.putBoolean(GPConstants.FROM_CACHE, true);
+		resultData.putBoolean(GPConstants.FRESH, isFresh);
+		send(RequestStatus.OK, resultData);
+		return true;
+	}
+
+	// Store the details in disk cache, keyed by the details request
+	private void storeInDiskCache() {
+		DiskCache.getInstance(mContext).putAsync(getCacheKey(mPlaceDetails.getPlaceID()), PlaceCodec.encodePlaceDetails(mPlaceDetails));
+	}
+
+	// Disk cache key of the place details, same as the canonical details request
+	static String getCacheKey(String placeID) {
+		return RequestKey.canonical(queryUrl+"placeid="+placeID);
 	}
 
 	/**
@@ -102,6 +174,15 @@ public class Places extends ResultReceiver {
 		isWikiData=isWikiDataRequired;
 	}
 	
+	/**
+	 * Set the time to wait for the wiki data after delivering the details. The listener is updated again 
+	 * only if the wiki data is downloaded in time, the late wiki data is ignored.
+	 * @param timeout - Time in milliseconds
+	 */
+	public void setWikiTimeout (long timeout) {
+		mWikiTimeout = timeout;
+	}
+	
 	/**
 	 * Set the search code of search request result using GOOGLE API Status code
 	 * @param status
@@ -124,6 +205,14 @@ public class Places extends ResultReceiver {
 	 */
 	protected void startService (String urlStr, String actionType) {
 		Log.v(TAG,"Inside StartService");
+		if (NetworkService.isInProcessDelivery()) {
+			if (actionType.equals("PLACEDETAILS")) {
+				requestDetailsInProcess(urlStr);
+			} else {
+				requestWikiInProcess(urlStr);
+			}
+			return;
+		}
 		Intent intent = new Intent(mContext, NetworkService.class);
 		intent.putExtra(GPConstants.SERVICE, GPConstants.ACTION_URL_REQUEST);
 		intent.putExtra(GPConstants.URL, urlStr);
@@ -132,9 +221,108 @@ public class Places extends ResultReceiver {
 		mContext.startService(intent);
 	}
 	
+	// Download & parse the details in this process, the parsed details are delivered on the main thread
+	private void requestDetailsInProcess (final String urlStr) {
+		final PlaceDetailsReader detailsReader = new PlaceDetailsReader();
+		new LocalRequest<PlaceDetails>() {
+			@Override
+			protected PlaceDetails execute() throws Exception {
+				return NetworkFetcher.fetchParsed(mContext, urlStr, detailsReader);
+			}
+
+			@Override
+			protected void onResult(int resultCode, PlaceDetails details) {
+				Log.d(TAG,"Result Code:"+resultCode+" - "+RequestStatus.getStatusValue(resultCode));
+				if (!isDetailsResultAccepted(resultCode)) {
+					return;
+				}
+				if (resultCode != RequestStatus.OK) {
+					Log.e(TAG,"Google Query is not successful: "+RequestStatus.getStatusValue(resultCode));
+					setStatusCode(resultCode);
+				} else {
+					Log.i(TAG,"Google Query is successful");
+					setStatusCode(detailsReader.getStatus());
+					mPlaceDetails = details;
+					if (mPlaceDetails == null) {
+						Log.d(TAG,"Place details is null");
+					} else {
+						processPlaceDetails();
+					}
+				}
+				mUpdateListener.onPlaceDetailsUpdate(getStatusCode());
+			}
+		}.submit(RequestExecutor.LANE_INTERACTIVE);
+	}
+
+	// Download the wiki data in this process, it is parsed on the main thread as it updates the details
+	private void requestWikiInProcess (final String urlStr) {
+		new LocalRequest<String>() {
+			@Override
+			protected String execute() throws Exception {
+				return NetworkFetcher.fetchString(mContext, urlStr);
+			}
+
+			@Override
+			protected void onResult(int resultCode, String data) {
+				onWikiResult(resultCode, data);
+			}
+		}.submit(RequestExecutor.LANE_BULK);
+	}
+
+	// The wiki data only enriches the delivered details, hence the listener is updated only when it is 
+	// downloaded in time
+	private void onWikiResult (int resultCode, String data) {
+		if (!isWikiPending) {
+			Log.d(TAG,"Wiki data is received after the timeout, it is ignored");
+			return;
+		}
+		isWikiPending = false;
+		mHandler.removeCallbacks(mWikiTimeoutTask);
+		if (resultCode != RequestStatus.OK) {
+			Log.i(TAG,"Wiki request is not successful: "+RequestStatus.getStatusValue(resultCode));
+			return;
+		}
+		Log.i(TAG,"Wiki request is successful");
+		processResult(data,"WIKIDOWNLOAD");
+		mUpdateListener.onPlaceDetailsUpdate(getStatusCode());
+	}
+
+	// Stop waiting for the wiki data, the details are already delivered without it
+	private final Runnable mWikiTimeoutTask = new Runnable() {
+		@Override
+		public void run() {
+			if (isWikiPending) {
+				Log.i(TAG,"Wiki request is timed out");
+				isWikiPending = false;
+			}
+		}
+	};
+
+	// Returns false if the failed details from network should not replace the cached details
+	private boolean isDetailsResultAccepted (int resultCode) {
+		//Keep the cached details if revalidation is failed
+		if (resultCode != RequestStatus.OK && isRevalidating) {
+			Log.e(TAG,"Revalidation of cached details is not successful: "+RequestStatus.getStatusValue(resultCode));
+			isRevalidating = false;
+			return false;
+		}
+		isRevalidating = false;
+		cachedResult = false;
+		return true;
+	}
+
+	// Returns true if the details already have the wiki description
+	private boolean hasWikiData () {
+		String wikiDesc = mPlaceDetails.getWikiDesc();
+		return wikiDesc != null && !wikiDesc.isEmpty();
+	}
+
 	private void downloadWikiData () {
 		String name = mPlaceDetails.getName().replace(" ", "_");
 		String url = wikiUrl+name;
+		isWikiPending = true;
+		mHandler.removeCallbacks(mWikiTimeoutTask);
+		mHandler.postDelayed(mWikiTimeoutTask, mWikiTimeout);
 		startService(url,"WIKIDOWNLOAD");
 	}
 	
@@ -146,6 +334,21 @@ public class Places extends ResultReceiver {
 	public void onReceiveResult(int resultCode, Bundle bundle) {
 		Log.v(TAG,"Inside onReceiveResult");
 		Log.d(TAG,"Result Code:"+resultCode+" - "+RequestStatus.getStatusValue(resultCode));
+
+		//Deliver the cached details, the details from network may follow
+		if (bundle.getBoolean(GPConstants.FROM_CACHE)) {
+			Log.i(TAG,"Place details from cache");
+			cachedResult = true;
+			isRevalidating = true;
+			mPlaceDetails = bundle.getParcelable(GPConstants.RESULT_DATA);
+			setStatusCode(RequestStatus.OK);
+			mUpdateListener.onPlaceDetailsUpdate(getStatusCode());
+			//Fresh details are not requested again, hence the missing wiki data is requested here
+			if (bundle.getBoolean(GPConstants.FRESH) && isWikiData && !hasWikiData()) {
+				downloadWikiData();
+			}
+			return;
+		}
 		
 		String data = bundle.getCharSequence(GPConstants.DATA).toString();
 		String action = bundle.getCharSequence(GPConstants.TYPE).toString();
@@ -154,6 +357,9 @@ public class Places extends ResultReceiver {
 
 		// Check the request for google place details
 		if (action.equals("PLACEDETAILS")) {
+			if (!isDetailsResultAccepted(resultCode)) {
+				return;
+			}
 			if (resultCode != RequestStatus.OK) {
 				//Check the query is not successful for main request
 				Log.e(TAG,"Google Query is not successful: "+RequestStatus.getStatusValue(resultCode));
@@ -168,21 +374,11 @@ public class Places extends ResultReceiver {
 		
 		// Check the request for Wikidownload
 		if (action.equals("WIKIDOWNLOAD")) {
-			if (resultCode != RequestStatus.OK) {
-				Log.i(TAG,"Wiki request is not successful");
-				//// Set wiki page doesn't exist
-			} else {
-				//Parse the data if request is successful.
-				Log.i(TAG,"Wiki request is successful");
-				processResult(data,action);				
-			}
+			onWikiResult(resultCode, data);
+			return;
 		}
 		
-		if (action.equals("PLACEDETAILS") && isWikiData == false) {
-			mUpdateListener.onPlaceDetailsUpdate(getStatusCode());
-		} else {
-			mUpdateListener.onPlaceDetailsUpdate(getStatusCode());
-		}
+		mUpdateListener.onPlaceDetailsUpdate(getStatusCode());
 	}
 
 	// Process the downloaded data to structure format. 
@@ -197,6 +393,21 @@ public class Places extends ResultReceiver {
 				mUpdateListener.onPlaceDetailsUpdate(getStatusCode());
 				return;
 			}
+			processPlaceDetails();
+		} else if (action.equals("WIKIDOWNLOAD")){
+			Log.d(TAG,"Wikipage downloaded");
+			readWikiData(data);
+			if (mPlaceDetails != null && getStatusCode() == RequestStatus.OK) {
+				storeInDiskCache();
+			}
+		}
+	}
+
+	// Store the parsed details & request the wiki data if it is required
+	private void processPlaceDetails() {
+		if (getStatusCode() == RequestStatus.OK) {
+			storeInDiskCache();
+		}
 			
 /*			if (mPlaceDetails.getGoogleURL().isEmpty()) {
 				Log.d(TAG,"Google Plus URL is empty");
@@ -204,12 +415,8 @@ public class Places extends ResultReceiver {
 				return;
 			}
 			//startService(mPlaceDetails.getGoogleURL(),"GOOGLEPLUS");
-*/			if (isWikiData) {
-				downloadWikiData();
-			}
-		} else if (action.equals("WIKIDOWNLOAD")){
-			Log.d(TAG,"Wikipage downloaded");
-			readWikiData(data);
+*/		if (isWikiData) {
+			downloadWikiData();
 		}
 	}
 	
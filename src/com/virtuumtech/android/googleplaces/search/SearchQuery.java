@@ -11,8 +11,12 @@
 
 package com.virtuumtech.android.googleplaces.search;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import org.json.JSONArray;
@@ -20,9 +24,21 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.virtuumtech.android.googleplaces.GPConstants;
+import com.virtuumtech.android.googleplaces.NetworkFetcher;
 import com.virtuumtech.android.googleplaces.NetworkService;
 import com.virtuumtech.android.googleplaces.PlacesList;
+import com.virtuumtech.android.googleplaces.PlacesResultSet;
+import com.virtuumtech.android.googleplaces.cache.DiskCache;
+import com.virtuumtech.android.googleplaces.cache.GeoHash;
+import com.virtuumtech.android.googleplaces.cache.PlaceCodec;
+import com.virtuumtech.android.googleplaces.cache.PlaceIndex;
+import com.virtuumtech.android.googleplaces.cache.ResponseCache;
+import com.virtuumtech.android.googleplaces.cache.SearchPage;
+import com.virtuumtech.android.googleplaces.cache.TileCache;
 import com.virtuumtech.android.googleplaces.listener.SearchResultsUpdate;
+import com.virtuumtech.android.googleplaces.network.LocalRequest;
+import com.virtuumtech.android.googleplaces.network.RequestExecutor;
+import com.virtuumtech.android.googleplaces.network.RequestKey;
 
 import android.content.Context;
 import android.content.Intent;
@@ -37,6 +53,11 @@ public abstract class SearchQuery extends ResultReceiver {
 
 	private static final String TAG = "SearchQuery";
 	private static final long QUERY_INTERNVAL = 3000; //Query internal for next page token
+	private static final int MAX_RESULTS = 60; //Max results of all pages of a search
+	//Parameters of the searches which can be answered by PlaceIndex
+	private static final String[] INDEX_PARAMETERS = {"key", "location", "radius", "types", "pagetoken"};
+	private static final int MAX_TILES = 12; //Searches covering more tiles are not split into tiles
+	private static final int MAX_RADAR_RESULTS = 200; //Radar search returns at most 200 places without a next page
 
 	private String openNow = "";
 	private String urlQuery = "";
@@ -44,6 +65,24 @@ public abstract class SearchQuery extends ResultReceiver {
 	private int statusCode ;
 	private Context mContext;
 	private long lastQueryTime = 0;
+	private boolean cachedResult = false;
+	private String revalidatingUrl = "";
+	private boolean cachedPageFresh = false;
+	//True while all the pages of the search are indexed from network or fresh cache, hence the area can be covered
+	private boolean allPagesIndexed = false;
+	private boolean useLocalIndex = false;
+	private boolean useTileCache = false;
+	private TileSearch mTileSearch;
+	private final Handler mHandler = new Handler();
+
+	//Pagination state, when prefetch is set the next page is fetched ahead at the earliest time allowed for the page token
+	private boolean prefetchNextPage = false;
+	private boolean streamAllPages = false;
+	private String nextPageUrl;
+	private boolean nextPageRequested = false;
+	private Runnable nextPageTask;
+	private PageResult prefetchedPage;
+	private ArrayList<PlacesList> allResults = new ArrayList<PlacesList>();
 	private SearchResultsUpdate mUpdateListener;
 	
 	//To store the list of parameters required for google search
@@ -86,19 +125,56 @@ public abstract class SearchQuery extends ResultReceiver {
 	 * Set the last query time, which used to check the time diff before submitting next query
 	 */
 	private void setLastQueryTime() {
-		lastQueryTime = System.currentTimeMillis();
+		lastQueryTime = SystemClock.elapsedRealtime();
 	}
 	
 	/**
-	 * Wait for next time interval to submit next query using page token
+	 * Returns the time to wait before the next query using page token can be submitted
+	 * @return Time in milliseconds, 0 if the query can be submitted now
 	 */
-	protected void waitForQueryInterval() {
-		long timeDiff = System.currentTimeMillis() - lastQueryTime;
+	protected long getQueryIntervalDelay() {
+		long timeDiff = SystemClock.elapsedRealtime() - lastQueryTime;
 		if (timeDiff < QUERY_INTERNVAL) {
-			SystemClock.sleep(QUERY_INTERNVAL - timeDiff);
+			return QUERY_INTERNVAL - timeDiff;
+		}
+		return 0;
+	}
+
+	/**
+	 * Set whether the next page is fetched in background once a page is received. 
+	 * The prefetched page is delivered when getNextPlaces is called. Default is false. 
+	 * Each prefetch is a billed search request counted against the daily quota of the API key, 
+	 * it is wasted if the user doesn't ask for the next page. Enable it only when most users page through the results.
+	 * @param prefetch
+	 */
+	public void setPrefetchNextPage(boolean prefetch) {
+		prefetchNextPage = prefetch;
+		if (!prefetch && !nextPageRequested) {
+			cancelNextPage();
 		}
 	}
 
+	/**
+	 * Set whether the places are added to PlaceIndex & the searches covered by it are answered locally, 
+	 * without the remote call. Only the searches having location, radius & types are answered locally, 
+	 * the local results are ordered by distance & have no next page.
+	 * @param useIndex
+	 */
+	public void setUseLocalIndex(boolean useIndex) {
+		useLocalIndex = useIndex;
+	}
+
+	/**
+	 * Set whether the search circle is split into the tiles of TileCache, it is off by default. The cached 
+	 * tiles are reused & only the missing tiles are searched. The results of the tiles are interleaved in 
+	 * the order returned by the API & have no next page. When a tile has more places than one response, 
+	 * the whole circle is searched instead. The searches without radius, with open now or rankby are not split.
+	 * @param useTiles
+	 */
+	public void setUseTileCache(boolean useTiles) {
+		useTileCache = useTiles;
+	}
+
 	/**
 	 * Set location for the query
 	 * @param location
@@ -176,15 +252,20 @@ public abstract class SearchQuery extends ResultReceiver {
 	 */
 	protected String getUrlString () {
 		Log.v(TAG,"Inside getURLString");
+		return getUrlString(searchParameters);
+	}
+
+	// Construct the search query using the given parameters
+	private String getUrlString (Map<String, String> parameters) {
 		StringBuffer strBuffer = new StringBuffer("");
 		//Get the parameters from the hash and construct the query
-		for (Map.Entry<String, String> entry : searchParameters.entrySet()){
+		for (Map.Entry<String, String> entry : parameters.entrySet()){
 			strBuffer.append(entry.getKey()+"="+entry.getValue()+"&");
 		}
 		//Add the open now parameter
 		String urlStr = urlQuery+strBuffer.toString();
-		if (openNow != "") {
-			urlStr = strBuffer.toString()+openNow+"&";
+		if (!openNow.isEmpty()) {
+			urlStr = urlStr+openNow+"&";
 		}
 		
 		Log.d(TAG,urlStr);
@@ -217,10 +298,318 @@ public abstract class SearchQuery extends ResultReceiver {
 	}
 	
 	/**
-	 * Get the POIs based on the defined search parameters using service
+	 * Returns true if the last delivered results are read from the disk cache. 
+	 * Stale cached results are followed by the results from network.
+	 * @return
+	 */
+	public boolean isCachedResult() {
+		return cachedResult;
+	}
+
+	/**
+	 * Get the POIs based on the defined search parameters using service. 
+	 * The cached results are delivered at once, if they are stale the search is done again in background. 
 	 */
 	public void getPlaces() {
-		startService(getUrlString());
+		final String urlStr = getUrlString();
+		streamAllPages = false;
+		cancelNextPage();
+		allResults.clear();
+		mTileSearch = null;
+		if (useLocalIndex && deliverLocalResults(urlStr)) {
+			return;
+		}
+		if (useTileCache && startTileSearch(urlStr)) {
+			return;
+		}
+		DiskCache.getInstance(mContext).getAsync(RequestKey.canonical(urlStr), new DiskCache.Callback() {
+			@Override
+			public void onCacheResult(DiskCache.Entry entry) {
+				long freshTime = ResponseCache.getInstance().getTimeToLive(ResponseCache.getEndpoint(urlStr));
+				cachedPageFresh = entry != null && entry.getAge() < freshTime;
+				if (entry != null && deliverCachedPage(urlStr, entry)) {
+					if (cachedPageFresh) {
+						Log.d(TAG,"Cached search results are fresh");
+						return;
+					}
+					Log.d(TAG,"Revalidating cached search results");
+				}
+				startService(urlStr);
+			}
+		});
+	}
+
+	/**
+	 * Get the POIs of all the pages as one incremental stream. Each page is delivered to the listener 
+	 * as it is received & the next page is requested at the earliest time allowed for its page token. 
+	 * The results received so far are returned by getAllResults.
+	 */
+	public void getAllPlaces() {
+		getPlaces();
+		streamAllPages = true;
+	}
+
+	/**
+	 * Returns the results of all the pages delivered since the last getPlaces or getAllPlaces
+	 * @return
+	 */
+	public ArrayList<PlacesList> getAllResults() {
+		return allResults;
+	}
+
+	/**
+	 * Returns the results of all the pages as PlacesResultSet, which holds the results column wise. 
+	 * Use it instead of getAllResults when thousands of results are kept or sorted & filtered often.
+	 * @return New result set, later pages are not added to it
+	 */
+	public PlacesResultSet getAllResultSet() {
+		return new PlacesResultSet(allResults);
+	}
+
+	// Deliver the places of PlaceIndex if it has all the places of the search area
+	private boolean deliverLocalResults(String urlStr) {
+		final Location location = getIndexLocation(urlStr);
+		if (location == null) {
+			return false;
+		}
+		final int radius = Integer.parseInt(RequestKey.getParameter(urlStr, "radius"));
+		final String types = RequestKey.getParameter(urlStr, "types");
+		if (!PlaceIndex.getInstance().isCovered(location, radius, types)) {
+			return false;
+		}
+		Log.d(TAG,"Search area is covered by the local index");
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				ArrayList<PlacesList> places = PlaceIndex.getInstance().query(location, radius, types);
+				cachedResult = true;
+				removePageToken();
+				setStatusCode(places.isEmpty() ? RequestStatus.ZERO_RESULTS : RequestStatus.OK);
+				allResults.clear();
+				allResults.addAll(places);
+				mUpdateListener.onSearchResultsUpdate(getStatusCode(),places);
+			}
+		});
+		return true;
+	}
+
+	// Returns the location of the search if it can be answered by PlaceIndex, otherwise null
+	private Location getIndexLocation(String urlStr) {
+		String location = RequestKey.getParameter(urlStr, "location");
+		String radius = RequestKey.getParameter(urlStr, "radius");
+		if (location == null || radius == null) {
+			return null;
+		}
+		for (String parameter : urlStr.substring(urlStr.indexOf('?') + 1).split("&")) {
+			int nameEnd = parameter.indexOf('=');
+			String name = nameEnd < 0 ? parameter : parameter.substring(0, nameEnd);
+			if (!name.isEmpty() && !Arrays.asList(INDEX_PARAMETERS).contains(name)) {
+				return null;
+			}
+		}
+		try {
+			String[] latLng = location.split(",");
+			Integer.parseInt(radius);
+			Location loc = new Location("");
+			loc.setLatitude(Double.parseDouble(latLng[0]));
+			loc.setLongitude(Double.parseDouble(latLng[1]));
+			return loc;
+		} catch (NumberFormatException e) {
+			return null;
+		} catch (ArrayIndexOutOfBoundsException e) {
+			return null;
+		}
+	}
+
+	// Add the places to PlaceIndex, the area is covered once all the pages are received & indexed. 
+	// The places of a stale cached page are indexed, but the area is not covered till the page is revalidated.
+	private void indexPlaces(String urlStr, ArrayList<PlacesList> places, boolean fresh) {
+		if (!useLocalIndex || urlStr == null
+				|| (getStatusCode() != RequestStatus.OK && getStatusCode() != RequestStatus.ZERO_RESULTS)) {
+			allPagesIndexed = false;
+			return;
+		}
+		if (RequestKey.getParameter(urlStr, "pagetoken") == null) {
+			allPagesIndexed = fresh;
+		} else if (!fresh) {
+			allPagesIndexed = false;
+		}
+		String types = RequestKey.getParameter(urlStr, "types");
+		PlaceIndex index = PlaceIndex.getInstance();
+		index.add(places, types);
+		Location location = getIndexLocation(urlStr);
+		if (allPagesIndexed && location != null && pageToken.isEmpty() && allResults.size() < MAX_RESULTS) {
+			index.addCoverage(location, Integer.parseInt(RequestKey.getParameter(urlStr, "radius")), types);
+		}
+	}
+
+	// Assemble the results of the search circle from the tiles, only the missing tiles are searched
+	private boolean startTileSearch(String urlStr) {
+		String location = RequestKey.getParameter(urlStr, "location");
+		String radiusStr = RequestKey.getParameter(urlStr, "radius");
+		if (location == null || radiusStr == null || !openNow.isEmpty()
+				|| RequestKey.getParameter(urlStr, "rankby") != null) {
+			return false;
+		}
+		double lat, lng;
+		int radius;
+		try {
+			String[] latLng = location.split(",");
+			lat = Double.parseDouble(latLng[0]);
+			lng = Double.parseDouble(latLng[1]);
+			radius = Integer.parseInt(radiusStr);
+		} catch (NumberFormatException e) {
+			return false;
+		} catch (ArrayIndexOutOfBoundsException e) {
+			return false;
+		}
+		TileCache tileCache = TileCache.getInstance();
+		List<String> tiles = tileCache.getCoveringTiles(lat, lng, radius);
+		if (tiles.size() > MAX_TILES) {
+			Log.d(TAG,"Search circle covers "+tiles.size()+" tiles, searching it at once");
+			return false;
+		}
+
+		final TileSearch tileSearch = new TileSearch(urlStr, lat, lng, radius);
+		mTileSearch = tileSearch;
+		HashMap<String, String> parameters = new HashMap<String, String>(searchParameters);
+		for (int i = 0; i < tiles.size(); i++) {
+			String tile = tiles.get(i);
+			tileSearch.tilePlaces.add(null);
+			double[] center = TileCache.getCenter(tile);
+			parameters.put("location", center[0]+","+center[1]);
+			parameters.put("radius", String.valueOf(TileCache.getRadius(tile)));
+			String tileUrl = getUrlString(parameters);
+			String key = RequestKey.canonical(tileUrl);
+			TileCache.Tile cached = tileCache.get(key);
+			if (cached != null) {
+				tileSearch.tilePlaces.set(i, cached.getPlaces());
+				if (cached.isStale() && tileCache.startRefresh(key)) {
+					Log.d(TAG,"Refreshing stale tile "+tile);
+					searchTile(tileUrl, key, null, i);
+				}
+			} else {
+				tileSearch.pending++;
+				searchTile(tileUrl, key, tileSearch, i);
+			}
+		}
+		Log.d(TAG,tiles.size()+" tiles cover the search, "+tileSearch.pending+" tiles are searched");
+		tileSearch.fromCache = tileSearch.pending == 0;
+		if (tileSearch.pending == 0) {
+			mHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					deliverTileSearch(tileSearch);
+				}
+			});
+		}
+		return true;
+	}
+
+	// Search the tile & store it in TileCache. The stale tiles are refreshed without a TileSearch. 
+	// A tile having a next page is truncated, hence it is not cached & the whole circle is searched.
+	private void searchTile(final String tileUrl, final String key, final TileSearch tileSearch, final int tileIndex) {
+		final SearchResultsReader searchReader = new SearchResultsReader();
+		new LocalRequest<ArrayList<PlacesList>>() {
+			@Override
+			protected ArrayList<PlacesList> execute() throws Exception {
+				return NetworkFetcher.fetchParsed(mContext, tileUrl, searchReader);
+			}
+
+			@Override
+			protected void onResult(int resultCode, ArrayList<PlacesList> places) {
+				String status = searchReader.getStatus();
+				String token = searchReader.getNextPageToken();
+				boolean success = resultCode == RequestStatus.OK 
+						&& ("OK".equals(status) || "ZERO_RESULTS".equals(status));
+				if (success && ((token != null && !token.isEmpty()) || places.size() >= MAX_RADAR_RESULTS)) {
+					Log.d(TAG,"Tile has more places than one response");
+					success = false;
+				}
+				if (success) {
+					TileCache.getInstance().put(key, status, places);
+				} else {
+					TileCache.getInstance().cancelRefresh(key);
+				}
+				if (tileSearch == null) {
+					return;
+				}
+				if (success) {
+					tileSearch.tilePlaces.set(tileIndex, places);
+				} else {
+					tileSearch.failed = true;
+				}
+				if (--tileSearch.pending == 0 && tileSearch == mTileSearch) {
+					deliverTileSearch(tileSearch);
+				}
+			}
+		}.submit(tileSearch != null ? RequestExecutor.LANE_INTERACTIVE : RequestExecutor.LANE_BULK);
+	}
+
+	// Deliver the places of the tiles within the search circle, the whole circle is searched if a tile is failed. 
+	// The tiles are interleaved, hence the places keep the prominence order of the API within each tile.
+	private void deliverTileSearch(TileSearch tileSearch) {
+		if (tileSearch != mTileSearch) {
+			return;
+		}
+		mTileSearch = null;
+		if (tileSearch.failed) {
+			Log.e(TAG,"Tile search is not successful, searching the circle");
+			startService(tileSearch.urlStr);
+			return;
+		}
+
+		ArrayList<PlacesList> places = new ArrayList<PlacesList>();
+		HashSet<String> placeIDs = new HashSet<String>();
+		boolean added = true;
+		for (int rank = 0; added; rank++) {
+			added = false;
+			for (ArrayList<PlacesList> tile : tileSearch.tilePlaces) {
+				if (rank >= tile.size()) {
+					continue;
+				}
+				added = true;
+				PlacesList place = tile.get(rank);
+				Location loc = place.getLocation();
+				if (loc == null || !placeIDs.add(place.getPlaceID())) {
+					continue;
+				}
+				if (GeoHash.getDistance(tileSearch.lat, tileSearch.lng, loc.getLatitude(), loc.getLongitude()) 
+						<= tileSearch.radius) {
+					places.add(place);
+				}
+			}
+		}
+
+		//All the tiles are complete, hence the merged results have no next page
+		cachedResult = tileSearch.fromCache;
+		removePageToken();
+		setStatusCode(places.isEmpty() ? RequestStatus.ZERO_RESULTS : RequestStatus.OK);
+		allResults.clear();
+		allResults.addAll(places);
+		if (useLocalIndex) {
+			PlaceIndex.getInstance().add(places, RequestKey.getParameter(tileSearch.urlStr, "types"));
+		}
+		mUpdateListener.onSearchResultsUpdate(getStatusCode(),places);
+	}
+
+	// Deliver the cached page using ResultReceiver, hence it is received on the handler thread
+	private boolean deliverCachedPage(String urlStr, DiskCache.Entry entry) {
+		SearchPage page;
+		try {
+			page = PlaceCodec.decodeSearchPage(entry.getData());
+		} catch (IOException e) {
+			Log.e(TAG,"Unable to read cached search results",e);
+			return false;
+		}
+		Bundle resultData = new Bundle();
+		resultData.putParcelable(GPConstants.RESULT_DATA, new PlacesList.ParcelableList(page.getPlaces()));
+		resultData.putString(GPConstants.STATUS, page.getStatus());
+		resultData.putString(GPConstants.PAGE_TOKEN, page.getNextPageToken());
+		resultData.putString(GPConstants.URL, urlStr);
+		resultData.putBoolean(GPConstants.FROM_CACHE, true);
+		send(RequestStatus.OK, resultData);
+		return true;
 	}
 	
 	/**
@@ -231,14 +620,69 @@ public abstract class SearchQuery extends ResultReceiver {
 		Log.v(TAG,"Inside getNextPlace");
 		if(isNext() == true) {
 			String urlStr = getUrlString()+"pagetoken"+"="+pageToken;
-			//wait till QUERY_INTERNVAL from last query
-			waitForQueryInterval();
-			startService(urlStr);
+			if (prefetchedPage != null && urlStr.equals(prefetchedPage.urlStr)) {
+				//Deliver the prefetched page, it is held till delivery so repeated calls are not fetched again
+				Log.d(TAG,"Using prefetched page");
+				final PageResult page = prefetchedPage;
+				prefetchedPage = null;
+				nextPageUrl = urlStr;
+				nextPageRequested = true;
+				mHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (page.urlStr.equals(nextPageUrl)) {
+							nextPageUrl = null;
+							deliverSearchResults(page.resultCode, page.urlStr, page.places, page.status, page.token);
+						}
+					}
+				});
+			} else if (urlStr.equals(nextPageUrl)) {
+				//The page is already scheduled or being downloaded
+				nextPageRequested = true;
+			} else {
+				scheduleNextPage(true);
+			}
 			return RequestStatus.OK;
 		} else {
 			return RequestStatus.INVALID_REQUEST;
 		}
 	}
+
+	// Schedule the next page request at the earliest time allowed for the page token, without blocking the thread
+	private void scheduleNextPage(boolean requested) {
+		cancelNextPage();
+		final String urlStr = getUrlString()+"pagetoken"+"="+pageToken;
+		nextPageUrl = urlStr;
+		nextPageRequested = requested;
+		nextPageTask = new Runnable() {
+			@Override
+			public void run() {
+				nextPageTask = null;
+				startService(urlStr, RequestExecutor.LANE_BULK);
+			}
+		};
+		long delay = getQueryIntervalDelay();
+		Log.d(TAG,"Next page is scheduled after "+delay+" ms");
+		mHandler.postDelayed(nextPageTask, delay);
+	}
+
+	// Fetch the next page ahead if prefetch or stream of all pages is set
+	private void fetchNextPageAhead() {
+		if ((prefetchNextPage || streamAllPages) && isNext()) {
+			scheduleNextPage(streamAllPages);
+		}
+	}
+
+	// Cancel the scheduled next page & drop the prefetched page. The running request is ignored on arrival.
+	private void cancelNextPage() {
+		if (nextPageTask != null) {
+			mHandler.removeCallbacks(nextPageTask);
+			nextPageTask = null;
+		}
+		nextPageUrl = null;
+		nextPageRequested = false;
+		prefetchedPage = null;
+	}
 	
 	/**
 	 * Download the data for the given URL using NetworkService
@@ -246,14 +690,45 @@ public abstract class SearchQuery extends ResultReceiver {
 	 * @param urlStr
 	 */
 	protected void startService (String urlStr) {
+		startService(urlStr, RequestExecutor.LANE_INTERACTIVE);
+	}
+
+	/**
+	 * Download the data for the given URL using NetworkService in the given RequestExecutor lane
+	 * @param urlStr
+	 * @param lane - RequestExecutor.LANE_INTERACTIVE or RequestExecutor.LANE_BULK
+	 */
+	protected void startService (String urlStr, int lane) {
 		Log.v(TAG,"Inside StartService");
+		if (NetworkService.isInProcessDelivery()) {
+			startInProcess(urlStr, lane);
+			return;
+		}
 		Intent intent = new Intent(mContext, NetworkService.class);
-		intent.putExtra(GPConstants.SERVICE, GPConstants.ACTION_URL_REQUEST);
+		intent.putExtra(GPConstants.SERVICE, GPConstants.ACTION_SEARCH_REQUEST);
 		intent.putExtra(GPConstants.URL, urlStr);
+		intent.putExtra(GPConstants.LANE, lane);
 		intent.putExtra(GPConstants.RECEIVER, this);
 		mContext.startService(intent);
 	}
 	
+	// Download & parse the results in this process, the parsed results are delivered on the main thread
+	private void startInProcess (final String urlStr, int lane) {
+		final SearchResultsReader searchReader = new SearchResultsReader();
+		new LocalRequest<ArrayList<PlacesList>>() {
+			@Override
+			protected ArrayList<PlacesList> execute() throws Exception {
+				return NetworkFetcher.fetchParsed(mContext, urlStr, searchReader);
+			}
+
+			@Override
+			protected void onResult(int resultCode, ArrayList<PlacesList> places) {
+				Log.d(TAG,"Result Code:"+resultCode+" - "+RequestStatus.getStatusValue(resultCode));
+				onSearchResults(resultCode, urlStr, places, searchReader.getStatus(), searchReader.getNextPageToken());
+			}
+		}.submit(lane);
+	}
+
 	/**
 	 * Read the result (json file) and parse it as PlaceSummary object. 
 	 * The results will be stored in ArrayList.
@@ -297,9 +772,10 @@ public abstract class SearchQuery extends ResultReceiver {
 					} else {
 						placeDetails.setOpenNow("");
 					}
+					JSONObject jsonLoc = jsonObj.getJSONObject("geometry").getJSONObject("location");
 					Location loc = new Location ("");
-					loc.setLatitude(jsonObj.getJSONObject("geometry").getJSONObject("location").optDouble("lat"));
-					loc.setLongitude(jsonObj.getJSONObject("geometry").getJSONObject("location").optDouble("lng"));
+					loc.setLatitude(jsonLoc.optDouble("lat"));
+					loc.setLongitude(jsonLoc.optDouble("lng"));
 					placeDetails.setLocation(loc);
 					arrayPOI.add(placeDetails);
 				}
@@ -314,16 +790,82 @@ public abstract class SearchQuery extends ResultReceiver {
 	}
 	
 	/**
-	 * Result receiver for the search quries. The result file will be received using Bundle 
+	 * Result receiver for the search quries. The parsed results will be received using Bundle. 
+	 * The result file will be parsed if it is received instead of parsed results. 
 	 */
 	public void onReceiveResult(int resultCode, Bundle bundle) {
 		Log.v(TAG,"Inside onReceiveResult");
 		Log.d(TAG,"Result Code:"+resultCode+" - "+RequestStatus.getStatusValue(resultCode));
-		ArrayList<PlacesList> pDetails;
-		String data = bundle.getCharSequence(GPConstants.DATA).toString();
-		Log.d(TAG,data);
+		PlacesList.ParcelableList resultList = bundle.getParcelable(GPConstants.RESULT_DATA);
+		ArrayList<PlacesList> parsedResults = resultList != null ? resultList.getPlaces() : null;
+		String urlStr = bundle.getString(GPConstants.URL);
+
+		//Deliver the cached results, the results from network may follow
+		if (bundle.getBoolean(GPConstants.FROM_CACHE)) {
+			Log.i(TAG,"Search results from cache");
+			cachedResult = true;
+			revalidatingUrl = urlStr;
+			setPageToken(bundle.getString(GPConstants.PAGE_TOKEN));
+			setStatusCode(bundle.getString(GPConstants.STATUS));
+			allResults.clear();
+			allResults.addAll(parsedResults);
+			indexPlaces(urlStr, parsedResults, cachedPageFresh);
+			mUpdateListener.onSearchResultsUpdate(getStatusCode(),parsedResults);
+			//Fresh cached results are not revalidated, hence the next page can be fetched
+			if (cachedPageFresh) {
+				revalidatingUrl = "";
+				fetchNextPageAhead();
+			}
+			return;
+		}
+
+		String status = bundle.getString(GPConstants.STATUS);
+		String token = bundle.getString(GPConstants.PAGE_TOKEN);
+		if (resultCode == RequestStatus.OK && parsedResults == null) {
+			//Parse the result file if it is received instead of parsed results
+			parsedResults = readJsonFileForPlacesDetails(bundle.getCharSequence(GPConstants.DATA).toString());
+			status = RequestStatus.getStatusValue(getStatusCode());
+			token = pageToken;
+		}
+		onSearchResults(resultCode, urlStr, parsedResults, status, token);
+	}
+
+	// Handle the parsed results from network, the prefetched page is held till it is requested
+	private void onSearchResults(int resultCode, String urlStr, ArrayList<PlacesList> parsedResults, String status, String token) {
 		//Set the query time, hence next query time can be calculated
 		setLastQueryTime();
+
+		boolean isNextPage = urlStr != null && urlStr.equals(nextPageUrl);
+		if (!isNextPage && urlStr != null && RequestKey.getParameter(urlStr, "pagetoken") != null) {
+			Log.d(TAG,"Dropping the page of cancelled request");
+			return;
+		}
+		if (isNextPage) {
+			nextPageUrl = null;
+			if (!nextPageRequested) {
+				if (resultCode == RequestStatus.OK) {
+					Log.d(TAG,"Holding the prefetched page till it is requested");
+					prefetchedPage = new PageResult(resultCode, urlStr, parsedResults, status, token);
+				}
+				return;
+			}
+			nextPageRequested = false;
+		}
+		deliverSearchResults(resultCode, urlStr, parsedResults, status, token);
+	}
+
+	// Deliver the parsed results to the listener, store the first page in disk cache & fetch the next page ahead
+	private void deliverSearchResults(int resultCode, String urlStr, ArrayList<PlacesList> parsedResults, String status, String token) {
+		ArrayList<PlacesList> pDetails;
+
+		//Keep the cached results if revalidation is failed
+		boolean isRevalidation = urlStr != null && urlStr.equals(revalidatingUrl);
+		revalidatingUrl = "";
+		if (resultCode != RequestStatus.OK && isRevalidation) {
+			Log.e(TAG,"Revalidation of cached results is not successful: "+RequestStatus.getStatusValue(resultCode));
+			return;
+		}
+		cachedResult = false;
 		
 		//Check the query is successful
 		if (resultCode != RequestStatus.OK) {
@@ -333,8 +875,62 @@ public abstract class SearchQuery extends ResultReceiver {
 			pDetails.clear();
 		} else {
 			Log.i(TAG,"Search Query is successful");
-			pDetails = readJsonFileForPlacesDetails(data);
+			setPageToken(token);
+			setStatusCode(status);
+			pDetails = parsedResults;
+			//Store the first page in disk cache, next pages are not looked up as page tokens are not reused
+			if (getStatusCode() == RequestStatus.OK && urlStr != null
+					&& RequestKey.getParameter(urlStr, "pagetoken") == null) {
+				DiskCache.getInstance(mContext).putAsync(RequestKey.canonical(urlStr),
+						PlaceCodec.encodeSearchPage(RequestStatus.getStatusValue(getStatusCode()), pageToken, pDetails));
+			}
+			//The first page replaces the results of all pages, next pages are appended
+			if (urlStr == null || RequestKey.getParameter(urlStr, "pagetoken") == null) {
+				allResults.clear();
+			}
+			allResults.addAll(pDetails);
+			indexPlaces(urlStr, pDetails, true);
 		}
 		mUpdateListener.onSearchResultsUpdate(getStatusCode(),pDetails);
+		if (resultCode == RequestStatus.OK) {
+			fetchNextPageAhead();
+		}
+	}
+
+	// Search circle assembled from the tiles
+	private static class TileSearch {
+		final String urlStr;
+		final double lat;
+		final double lng;
+		final int radius;
+		//Places of each tile in the order returned by the API
+		final ArrayList<ArrayList<PlacesList>> tilePlaces = new ArrayList<ArrayList<PlacesList>>();
+		int pending;
+		boolean failed;
+		boolean fromCache;
+
+		TileSearch(String urlStr, double lat, double lng, int radius) {
+			this.urlStr = urlStr;
+			this.lat = lat;
+			this.lng = lng;
+			this.radius = radius;
+		}
+	}
+
+	// Page received ahead of the request
+	private static class PageResult {
+		final int resultCode;
+		final String urlStr;
+		final ArrayList<PlacesList> places;
+		final String status;
+		final String token;
+
+		PageResult(int resultCode, String urlStr, ArrayList<PlacesList> places, String status, String token) {
+			this.resultCode = resultCode;
+			this.urlStr = urlStr;
+			this.places = places;
+			this.status = status;
+			this.token = token;
+		}
 	}
 }
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * SearchResultsReader is a streaming parser for the results of nearby, text & radar search. 
+ * Reads the response directly from the InputStream into PlacesList objects using pull based JsonReader, 
+ * hence neither the response body nor the json tree is held in memory.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+import com.virtuumtech.android.googleplaces.PlacesList;
+import com.virtuumtech.android.googleplaces.network.ResponseParser;
+
+import android.location.Location;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+public class SearchResultsReader implements ResponseParser<ArrayList<PlacesList>> {
+
+	private String status = "";
+	private String nextPageToken = "";
+
+	/**
+	 * Returns the GOOGLE API status of the last read response
+	 * @return
+	 */
+	@Override
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the next page token of the last read response, empty if there is no further data
+	 * @return
+	 */
+	public String getNextPageToken() {
+		return nextPageToken;
+	}
+
+	/**
+	 * Read the search response from the stream and parse it as PlacesList objects.
+	 * The stream is not closed.
+	 * @param in - Stream of the search response
+	 * @return List of places in the response
+	 * @throws IOException on network or json syntax errors
+	 */
+	@Override
+	public ArrayList<PlacesList> read(InputStream in) throws IOException {
+		ArrayList<PlacesList> arrayPOI = new ArrayList<PlacesList>();
+		status = "";
+		nextPageToken = "";
+
+		JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("status")) {
+				status = nextString(reader, "");
+			} else if (name.equals("next_page_token")) {
+				nextPageToken = nextString(reader, "");
+			} else if (name.equals("results") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					arrayPOI.add(readPlace(reader));
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return arrayPOI;
+	}
+
+	// Read one element of results array
+	private PlacesList readPlace(JsonReader reader) throws IOException {
+		PlacesList place = new PlacesList();
+		String vicinity = null;
+		String formattedAddress = null;
+		Location loc = new Location("");
+
+		place.setPlaceID("");
+		place.setName("");
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("place_id")) {
+				place.setPlaceID(nextString(reader, ""));
+			} else if (name.equals("name")) {
+				place.setName(nextString(reader, ""));
+			} else if (name.equals("rating")) {
+				place.setRating(nextDouble(reader, 0.0));
+			} else if (name.equals("vicinity")) {
+				vicinity = nextString(reader, "");
+			} else if (name.equals("formatted_address")) {
+				formattedAddress = nextString(reader, "");
+			} else if (name.equals("opening_hours") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+				place.setOpenNow(readOpenNow(reader));
+			} else if (name.equals("geometry") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+				readGeometry(reader, loc);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		//Text Search address is preferred over Nearby Search address
+		if (formattedAddress != null) {
+			place.setAddress(formattedAddress);
+		} else if (vicinity != null) {
+			place.setAddress(vicinity);
+		}
+		place.setLocation(loc);
+		return place;
+	}
+
+	// Read open_now from opening_hours object
+	private String readOpenNow(JsonReader reader) throws IOException {
+		String openNow = "";
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (reader.nextName().equals("open_now")) {
+				openNow = nextString(reader, "");
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return openNow;
+	}
+
+	// Read geometry.location in to the given location
+	private void readGeometry(JsonReader reader, Location loc) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (reader.nextName().equals("location") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String name = reader.nextName();
+					if (name.equals("lat")) {
+						loc.setLatitude(nextDouble(reader, Double.NaN));
+					} else if (name.equals("lng")) {
+						loc.setLongitude(nextDouble(reader, Double.NaN));
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	// Read the value as string, booleans & numbers are converted to string
+	private static String nextString(JsonReader reader, String defValue) throws IOException {
+		JsonToken token = reader.peek();
+		if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+			return reader.nextString();
+		} else if (token == JsonToken.BOOLEAN) {
+			return String.valueOf(reader.nextBoolean());
+		}
+		reader.skipValue();
+		return defValue;
+	}
+
+	// Read the value as double, default value is returned if it is not a number
+	private static double nextDouble(JsonReader reader, double defValue) throws IOException {
+		if (reader.peek() == JsonToken.NUMBER) {
+			return reader.nextDouble();
+		}
+		reader.skipValue();
+		return defValue;
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * NetworkFetcherTest injects network failures, server errors & malformed responses using 
+ * FaultInjectingTransport & checks the number of attempts, the backoff between them & the 
+ * rescheduling of the retries on a lane of RequestExecutor.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.virtuumtech.android.googleplaces.network.FaultInjectingTransport;
+import com.virtuumtech.android.googleplaces.network.HttpStatusException;
+import com.virtuumtech.android.googleplaces.network.HttpTransport;
+import com.virtuumtech.android.googleplaces.network.RequestExecutor;
+import com.virtuumtech.android.googleplaces.network.ResponseFormatException;
+import com.virtuumtech.android.googleplaces.network.RetryPolicy;
+import com.virtuumtech.android.googleplaces.search.SearchResultsReader;
+
+import android.test.AndroidTestCase;
+
+public class NetworkFetcherTest extends AndroidTestCase {
+
+	private static final String BODY = "{\"status\":\"OK\",\"results\":[{\"place_id\":\"p1\",\"name\":\"Place 1\"}]}";
+	private static final long BASE_DELAY = 20;
+	private static final long MAX_DELAY = 80;
+
+	private static int sRequestNumber = 0;
+
+	private HttpTransport previousTransport;
+	private FaultInjectingTransport transport;
+	private String url;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		previousTransport = NetworkService.getTransport();
+		transport = new FaultInjectingTransport(BODY);
+		NetworkService.setTransport(transport);
+		RetryPolicy retryPolicy = RetryPolicy.getInstance();
+		retryPolicy.setMaxAttempts(RetryPolicy.DEFAULT_MAX_ATTEMPTS);
+		retryPolicy.setDelay(BASE_DELAY, MAX_DELAY);
+		// Refill the retry budget used by the previous tests
+		for (int i = 0; i < 100; i++) {
+			retryPolicy.recordCompleted();
+		}
+		// Each test uses its own host & URL, hence the circuit breaker & response cache of other tests don't apply
+		sRequestNumber++;
+		url = "http://fault"+sRequestNumber+".test/maps/api/place/nearbysearch/json?location=1,2&request="+sRequestNumber;
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		NetworkService.setTransport(previousTransport);
+		RetryPolicy.getInstance().setDelay(RetryPolicy.DEFAULT_BASE_DELAY, RetryPolicy.DEFAULT_MAX_DELAY);
+		super.tearDown();
+	}
+
+	public void testSuccessIsNotRetried() throws IOException {
+		assertEquals(1, fetch().size());
+		assertEquals(1, transport.getRequestCount());
+	}
+
+	public void testNetworkFailureIsRetried() throws IOException {
+		transport.thenThrow(new SocketException("Connection reset")).thenThrow(new SocketException("Connection reset"));
+		assertEquals(1, fetch().size());
+		assertEquals(3, transport.getRequestCount());
+		assertBackoff(transport.getRequestTimes());
+	}
+
+	public void testServerErrorIsRetriedUpToMaxAttempts() {
+		transport.thenStatus(503).thenStatus(500).thenStatus(502);
+		try {
+			fetch();
+			fail("Server error should be thrown after the last attempt");
+		} catch (IOException e) {
+			assertTrue(e instanceof HttpStatusException);
+			assertEquals(502, ((HttpStatusException) e).getStatusCode());
+		}
+		assertEquals(RetryPolicy.DEFAULT_MAX_ATTEMPTS, transport.getRequestCount());
+		assertBackoff(transport.getRequestTimes());
+	}
+
+	public void testTooManyRequestsIsRetried() throws IOException {
+		transport.thenStatus(429);
+		assertEquals(1, fetch().size());
+		assertEquals(2, transport.getRequestCount());
+	}
+
+	public void testClientErrorIsNotRetried() {
+		transport.thenStatus(404);
+		try {
+			fetch();
+			fail("Client error should be thrown");
+		} catch (IOException e) {
+			assertEquals(404, ((HttpStatusException) e).getStatusCode());
+		}
+		assertEquals(1, transport.getRequestCount());
+	}
+
+	public void testMalformedResponseIsNotRetried() {
+		transport.setBody("{\"status\":\"OK\",\"results\":[{\"place_id\":");
+		try {
+			fetch();
+			fail("Malformed response should be thrown");
+		} catch (IOException e) {
+			assertTrue(e.toString(), e instanceof ResponseFormatException);
+		}
+		assertEquals(1, transport.getRequestCount());
+	}
+
+	public void testRetryIsRescheduledOnLane() throws InterruptedException {
+		transport.thenThrow(new SocketException("Connection reset")).thenStatus(503);
+		RequestExecutor executor = RequestExecutor.getInstance();
+		long rescheduled = executor.getRescheduledCount(RequestExecutor.LANE_BATCH);
+		final CountDownLatch done = new CountDownLatch(1);
+		final ArrayList<Object> outcome = new ArrayList<Object>();
+		final ArrayList<Integer> attempts = new ArrayList<Integer>();
+
+		executor.submit(RequestExecutor.LANE_BATCH, new RequestExecutor.Request() {
+			@Override
+			public void run() {
+				// The RescheduleException of the retries is not caught, the lane runs the request again
+				attempts.add(RequestExecutor.getCurrentAttempt());
+				try {
+					outcome.add(fetch());
+				} catch (IOException e) {
+					outcome.add(e);
+				}
+				done.countDown();
+			}
+
+			@Override
+			public void onRejected() {
+				done.countDown();
+			}
+		});
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(1, outcome.size());
+		assertTrue(String.valueOf(outcome.get(0)), outcome.get(0) instanceof ArrayList);
+		assertEquals(3, transport.getRequestCount());
+		assertEquals(2, executor.getRescheduledCount(RequestExecutor.LANE_BATCH) - rescheduled);
+		// Each run continues with the attempt after the failed one
+		assertEquals("[1, 2, 3]", attempts.toString());
+		assertBackoff(transport.getRequestTimes());
+	}
+
+	private ArrayList<PlacesList> fetch() throws IOException {
+		return NetworkFetcher.fetchParsed(getContext(), url, new SearchResultsReader());
+	}
+
+	// The wait before each retry is at most the exponential delay of the attempt, with some scheduling slack
+	private static void assertBackoff(List<Long> requestTimes) {
+		for (int i = 1; i < requestTimes.size(); i++) {
+			long wait = requestTimes.get(i) - requestTimes.get(i - 1);
+			long maxWait = Math.min(MAX_DELAY, BASE_DELAY << (i - 1));
+			assertTrue("Wait before attempt "+(i + 1)+" is "+wait+" ms", wait >= 0 && wait <= maxWait + 50);
+		}
+	}
+}
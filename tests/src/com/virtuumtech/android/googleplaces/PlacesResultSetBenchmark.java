@@ -0,0 +1,272 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PlacesResultSetBenchmark compares PlacesResultSet with ArrayList<PlacesList> holding the same places. 
+ * The footprint is the heap retained by each after a garbage collection, the iteration, sort & filter are 
+ * measured by the median time & the bytes allocated by the thread. The places are synthetic results around 
+ * a location, the strings are created per place as the parser does & the names repeat as chains do. 
+ * The results are logged with the tag of the benchmark.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.virtuumtech.android.googleplaces.cache.GeoHash;
+
+import android.location.Location;
+import android.os.Debug;
+import android.util.Log;
+
+public class PlacesResultSetBenchmark extends TestCase {
+
+	private static final String TAG = "PlacesResultSetBenchmark";
+	private static final int PLACES = 5000;
+	private static final int DISTINCT_NAMES = 400;
+	private static final int RUNS = 100;
+	private static final int WARMUP_RUNS = 50;
+	private static final double LAT = 9.925201;
+	private static final double LNG = 78.119774;
+
+	private Location center;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		center = new Location("");
+		center.setLatitude(LAT);
+		center.setLongitude(LNG);
+	}
+
+	public void testFootprint() {
+		long list = getRetainedHeap(false);
+		long resultSet = getRetainedHeap(true);
+		Log.i(TAG,PLACES+" places, ArrayList<PlacesList>: "+list+" bytes, "+(list / PLACES)+" bytes per place");
+		Log.i(TAG,PLACES+" places, PlacesResultSet: "+resultSet+" bytes, "+(resultSet / PLACES)+" bytes per place");
+	}
+
+	public void testIteration() {
+		final ArrayList<PlacesList> list = createList();
+		final PlacesResultSet resultSet = new PlacesResultSet(list);
+		final double expected = sumRatings(list);
+
+		measure("Iterate ArrayList<PlacesList>", new Task() {
+			@Override
+			void run() {
+				assertEquals(expected, sumRatings(list), 1e-6);
+			}
+		});
+		measure("Iterate PlacesResultSet views", new Task() {
+			@Override
+			void run() {
+				double sum = 0;
+				PlacesList view = null;
+				for (int i = 0; i < resultSet.size(); i++) {
+					view = resultSet.getView(i, view);
+					sum += view.getRating() + view.getLocation().getLatitude();
+				}
+				assertEquals(expected, sum, 1e-6);
+			}
+		});
+		measure("Iterate PlacesResultSet columns", new Task() {
+			@Override
+			void run() {
+				double sum = 0;
+				for (int i = 0; i < resultSet.size(); i++) {
+					sum += resultSet.getRating(i) + resultSet.getLatitude(i);
+				}
+				assertEquals(expected, sum, 1e-6);
+			}
+		});
+	}
+
+	public void testSortByDistance() {
+		final ArrayList<PlacesList> source = createList();
+		measure("Sort ArrayList<PlacesList> by distance", new Task() {
+			private ArrayList<PlacesList> list;
+
+			@Override
+			void prepare() {
+				list = new ArrayList<PlacesList>(source);
+			}
+
+			@Override
+			void run() {
+				Collections.sort(list, new Comparator<PlacesList>() {
+					@Override
+					public int compare(PlacesList lhs, PlacesList rhs) {
+						return Double.compare(getDistance(lhs), getDistance(rhs));
+					}
+				});
+				assertTrue(getDistance(list.get(0)) <= getDistance(list.get(list.size() - 1)));
+			}
+		});
+		final PlacesResultSet sourceSet = new PlacesResultSet(source);
+		measure("Sort PlacesResultSet by distance", new Task() {
+			private PlacesResultSet resultSet;
+
+			@Override
+			void prepare() {
+				resultSet = copy(sourceSet);
+			}
+
+			@Override
+			void run() {
+				resultSet.sortByDistance(center);
+				assertTrue(resultSet.getLatitude(0) <= resultSet.getLatitude(resultSet.size() - 1));
+			}
+		});
+	}
+
+	public void testFilterByRating() {
+		final ArrayList<PlacesList> source = createList();
+		measure("Filter ArrayList<PlacesList> by rating", new Task() {
+			private ArrayList<PlacesList> list;
+
+			@Override
+			void prepare() {
+				list = new ArrayList<PlacesList>(source);
+			}
+
+			@Override
+			void run() {
+				Iterator<PlacesList> iter = list.iterator();
+				while (iter.hasNext()) {
+					if (iter.next().getRating() < 4.0) {
+						iter.remove();
+					}
+				}
+				assertFalse(list.isEmpty());
+			}
+		});
+		final PlacesResultSet sourceSet = new PlacesResultSet(source);
+		measure("Filter PlacesResultSet by rating", new Task() {
+			private PlacesResultSet resultSet;
+
+			@Override
+			void prepare() {
+				resultSet = copy(sourceSet);
+			}
+
+			@Override
+			void run() {
+				resultSet.filterByRating(4.0);
+				assertTrue(resultSet.size() > 0);
+			}
+		});
+	}
+
+	// Places to the north of the center, the farther the place the higher its latitude
+	private ArrayList<PlacesList> createList() {
+		Random random = new Random(42);
+		ArrayList<PlacesList> places = new ArrayList<PlacesList>(PLACES);
+		for (int i = 0; i < PLACES; i++) {
+			PlacesList place = new PlacesList();
+			place.setPlaceID(new String("ChIJ"+Integer.toHexString(0x10000000 + i)+"rVvm2GuEmsRkSeH1mqbDZ0"));
+			place.setName(new String("Restaurant Chain "+random.nextInt(DISTINCT_NAMES)));
+			place.setAddress(new String((i + 1)+" Harris Street, Pyrmont"));
+			place.setOpenNow(new String(random.nextBoolean() ? "true" : "false"));
+			place.setRating(1.0 + random.nextInt(9) * 0.5);
+			Location location = new Location("");
+			location.setLatitude(LAT + random.nextDouble() * 0.2);
+			location.setLongitude(LNG + (random.nextDouble() - 0.5) * 0.01);
+			place.setLocation(location);
+			places.add(place);
+		}
+		return places;
+	}
+
+	// Heap retained by the places held in the container, the source list is dropped for the result set
+	private long getRetainedHeap(boolean asResultSet) {
+		long before = getUsedHeap();
+		Object holder = createList();
+		if (asResultSet) {
+			holder = new PlacesResultSet((ArrayList<PlacesList>) holder);
+		}
+		long after = getUsedHeap();
+		assertNotNull(holder);
+		return after - before;
+	}
+
+	private static long getUsedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			System.runFinalization();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private PlacesResultSet copy(PlacesResultSet resultSet) {
+		PlacesResultSet copy = new PlacesResultSet(resultSet.size());
+		for (int i = 0; i < resultSet.size(); i++) {
+			copy.add(resultSet.getPlaceID(i), resultSet.getName(i), resultSet.getAddress(i), resultSet.getOpenNow(i), 
+					resultSet.getLatitude(i), resultSet.getLongitude(i), resultSet.getRating(i));
+		}
+		return copy;
+	}
+
+	private double getDistance(PlacesList place) {
+		Location location = place.getLocation();
+		return GeoHash.getDistance(LAT, LNG, location.getLatitude(), location.getLongitude());
+	}
+
+	private static double sumRatings(ArrayList<PlacesList> places) {
+		double sum = 0;
+		for (PlacesList place : places) {
+			sum += place.getRating() + place.getLocation().getLatitude();
+		}
+		return sum;
+	}
+
+	// Log the median time & allocation of the task, its preparation is not measured
+	private static void measure(String name, Task task) {
+		long[] times = new long[RUNS];
+		long[] allocations = new long[RUNS];
+		Debug.startAllocCounting();
+		try {
+			for (int i = -WARMUP_RUNS; i < RUNS; i++) {
+				task.prepare();
+				Debug.resetThreadAllocSize();
+				long start = System.nanoTime();
+				task.run();
+				long time = (System.nanoTime() - start) / 1000;
+				long allocated = Debug.getThreadAllocSize();
+				// The first runs only warm up the code paths
+				if (i >= 0) {
+					times[i] = time;
+					allocations[i] = allocated;
+				}
+			}
+		} finally {
+			Debug.stopAllocCounting();
+		}
+		Log.i(TAG,name+": median "+median(times)+" us, "+median(allocations)+" bytes allocated");
+	}
+
+	// Measured operation, prepare gives each run its own copy of the places to sort or filter
+	private abstract static class Task {
+		void prepare() {
+		}
+
+		abstract void run();
+	}
+
+	private static long median(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}
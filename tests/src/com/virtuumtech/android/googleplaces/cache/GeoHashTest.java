@@ -0,0 +1,153 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * GeoHashTest checks the geohash cells of the locations & the cells covering the circles, including the 
+ * circles crossing the antimeridian & having a pole.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class GeoHashTest extends TestCase {
+
+	private static final double EARTH_RADIUS = 6371000;
+
+	public void testEncodeKnownLocations() {
+		assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+		assertEquals("s", GeoHash.encode(0, 0, 1));
+		assertEquals("0", GeoHash.encode(-90, -180, 1));
+		assertEquals("zzzzzz", GeoHash.encode(90, 179.9999999, 6));
+	}
+
+	public void testEncodePrefixIsParentCell() {
+		String hash = GeoHash.encode(9.925201, 78.119774, 12);
+		for (int precision = 1; precision < 12; precision++) {
+			assertEquals(hash.substring(0, precision), GeoHash.encode(9.925201, 78.119774, precision));
+		}
+	}
+
+	public void testEncodeNormalizesLongitude() {
+		assertEquals(GeoHash.encode(10, -180, 6), GeoHash.encode(10, 180, 6));
+		assertEquals(GeoHash.encode(10, -170, 6), GeoHash.encode(10, 190, 6));
+		assertEquals(GeoHash.encode(10, 170, 6), GeoHash.encode(10, -190, 6));
+	}
+
+	public void testBoundsContainLocation() {
+		double[][] locations = {{57.64911, 10.40744}, {-33.8688, 151.2093}, {0, 179.9999}, {0, -180}, 
+				{89.9999, 45}, {-89.9999, -45}, {90, 0}, {-90, 0}};
+		for (double[] location : locations) {
+			for (int precision = 1; precision <= 9; precision++) {
+				double[] bounds = GeoHash.getBounds(GeoHash.encode(location[0], location[1], precision));
+				assertTrue(location[0] >= bounds[0] && location[0] <= bounds[2]);
+				assertTrue(location[1] >= bounds[1] && location[1] <= bounds[3]);
+				assertEquals(GeoHash.getCellHeight(precision), bounds[2] - bounds[0], 1e-9);
+				assertEquals(GeoHash.getCellWidth(precision), bounds[3] - bounds[1], 1e-9);
+			}
+		}
+	}
+
+	public void testBoundsOfWorldEdges() {
+		double[] bounds = GeoHash.getBounds("0");
+		assertEquals(-90.0, bounds[0]);
+		assertEquals(-180.0, bounds[1]);
+		bounds = GeoHash.getBounds("zzzzzz");
+		assertEquals(90.0, bounds[2]);
+		assertEquals(180.0, bounds[3]);
+	}
+
+	public void testBoundsRejectInvalidHash() {
+		try {
+			GeoHash.getBounds("u4pa");
+			fail("'a' is not a geohash character");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	public void testCoveringCellsOfSmallCircle() {
+		List<String> cells = GeoHash.getCoveringCells(9.925201, 78.119774, 100, 6);
+		assertTrue(cells.contains(GeoHash.encode(9.925201, 78.119774, 6)));
+		assertTrue("Cells "+cells, cells.size() <= 4);
+		assertCovers(9.925201, 78.119774, 100, 6);
+	}
+
+	public void testCoveringCellsHaveNoFarCell() {
+		double radius = 3000;
+		List<String> cells = GeoHash.getCoveringCells(48.8566, 2.3522, radius, 6);
+		for (String cell : cells) {
+			double[] bounds = GeoHash.getBounds(cell);
+			double lat = Math.max(bounds[0], Math.min(48.8566, bounds[2]));
+			double lng = Math.max(bounds[1], Math.min(2.3522, bounds[3]));
+			assertTrue(cell, GeoHash.getDistance(48.8566, 2.3522, lat, lng) <= radius);
+		}
+		assertCovers(48.8566, 2.3522, radius, 6);
+	}
+
+	public void testCoveringCellsAcrossAntimeridian() {
+		List<String> cells = GeoHash.getCoveringCells(0, 179.999, 2000, 6);
+		assertTrue(cells.contains(GeoHash.encode(0, 179.999, 6)));
+		assertTrue(cells.contains(GeoHash.encode(0, -179.999, 6)));
+		assertCovers(0, 179.999, 2000, 6);
+		assertCovers(-16.5, -179.995, 5000, 6);
+	}
+
+	public void testCoveringCellsAroundNorthPole() {
+		List<String> cells = GeoHash.getCoveringCells(89.99, 0, 5000, 5);
+		assertTrue(cells.contains(GeoHash.encode(89.999, 120, 5)));
+		assertTrue(cells.contains(GeoHash.encode(89.999, -120, 5)));
+		assertTrue(cells.contains(GeoHash.encode(89.999, 180, 5)));
+		assertCovers(89.99, 0, 5000, 5);
+	}
+
+	public void testCoveringCellsAroundSouthPole() {
+		List<String> cells = GeoHash.getCoveringCells(-89.99, 90, 5000, 5);
+		assertTrue(cells.contains(GeoHash.encode(-89.999, -90, 5)));
+		assertTrue(cells.contains(GeoHash.encode(-90, 0, 5)));
+		assertCovers(-89.99, 90, 5000, 5);
+	}
+
+	public void testCoveringCellsNearPoleWithoutPole() {
+		assertCovers(88.5, 30, 20000, 5);
+		assertCovers(-88.5, -150, 20000, 5);
+	}
+
+	public void testDistance() {
+		// One degree of latitude is about 111 km
+		assertEquals(111195, GeoHash.getDistance(0, 0, 1, 0), 100);
+		assertEquals(GeoHash.getDistance(0, 179.999, 0, -179.999), GeoHash.getDistance(0, -0.001, 0, 0.001), 1e-6);
+		assertEquals(0, GeoHash.getDistance(89.9, 0, 89.9, 360), 1e-6);
+	}
+
+	// Every location within the circle must be in one of the covering cells
+	private static void assertCovers(double lat, double lng, double radius, int precision) {
+		List<String> cells = GeoHash.getCoveringCells(lat, lng, radius, precision);
+		for (int bearing = 0; bearing < 360; bearing += 5) {
+			for (double fraction = 0; fraction <= 1.0; fraction += 0.125) {
+				double[] location = getDestination(lat, lng, Math.toRadians(bearing), radius * fraction);
+				if (GeoHash.getDistance(lat, lng, location[0], location[1]) > radius) {
+					continue;
+				}
+				String cell = GeoHash.encode(location[0], location[1], precision);
+				assertTrue("Cell "+cell+" of "+location[0]+","+location[1]+" is not covered", cells.contains(cell));
+			}
+		}
+	}
+
+	// Location at the distance & bearing from the start on the sphere
+	private static double[] getDestination(double lat, double lng, double bearing, double distance) {
+		double d = distance / EARTH_RADIUS;
+		double lat1 = Math.toRadians(lat);
+		double lat2 = Math.asin(Math.sin(lat1) * Math.cos(d) + Math.cos(lat1) * Math.sin(d) * Math.cos(bearing));
+		double lng2 = Math.toRadians(lng) + Math.atan2(Math.sin(bearing) * Math.sin(d) * Math.cos(lat1), 
+				Math.cos(d) - Math.sin(lat1) * Math.sin(lat2));
+		return new double[] {Math.toDegrees(lat2), Math.toDegrees(lng2)};
+	}
+}
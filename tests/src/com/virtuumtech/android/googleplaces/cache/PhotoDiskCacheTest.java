@@ -0,0 +1,104 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PhotoDiskCacheTest checks that an open cached photo can be read after it is evicted, 
+ * & that the evicted photo is not returned again.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class PhotoDiskCacheTest extends TestCase {
+
+	private static final String URL = "https://maps.googleapis.com/maps/api/place/photo?maxwidth=400&key=KEY&photoreference=";
+
+	private File directory;
+	private PhotoDiskCache cache;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("photos", "");
+		directory.delete();
+		cache = new PhotoDiskCache(directory);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+		super.tearDown();
+	}
+
+	public void testGetReturnsPutPhoto() throws IOException {
+		byte[] photo = photo(1000, 1);
+		cache.put(URL + "a", new ByteArrayInputStream(photo)).close();
+		FileInputStream cached = cache.get(URL + "a");
+		assertNotNull(cached);
+		assertTrue(Arrays.equals(photo, readFully(cached)));
+		assertNull(cache.get(URL + "b"));
+	}
+
+	public void testOpenPhotoIsReadableAfterEviction() throws IOException {
+		byte[] photo = photo(1000, 2);
+		cache.put(URL + "a", new ByteArrayInputStream(photo)).close();
+		FileInputStream cached = cache.get(URL + "a");
+		assertNotNull(cached);
+
+		// Evict every photo while the stream is open
+		cache.setMaxSize(0);
+		assertEquals(1, cache.getEvictionCount());
+		assertNull(cache.get(URL + "a"));
+		assertTrue(Arrays.equals(photo, readFully(cached)));
+	}
+
+	public void testPutReturnsPhotoLargerThanCache() throws IOException {
+		cache.setMaxSize(500);
+		byte[] photo = photo(1000, 3);
+		FileInputStream cached = cache.put(URL + "a", new ByteArrayInputStream(photo));
+		assertEquals(1, cache.getEvictionCount());
+		assertTrue(Arrays.equals(photo, readFully(cached)));
+	}
+
+	private static byte[] photo(int length, int seed) {
+		byte[] photo = new byte[length];
+		for (int i = 0; i < length; i++) {
+			photo[i] = (byte) (i * seed);
+		}
+		return photo;
+	}
+
+	// Read the stream till end & close it
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[256];
+			int len;
+			while ((len = in.read(buffer)) != -1) {
+				out.write(buffer, 0, len);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+}
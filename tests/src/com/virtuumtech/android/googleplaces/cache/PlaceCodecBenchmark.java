@@ -0,0 +1,129 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PlaceCodecBenchmark measures the encoding & decoding of the place details & of a search page of 20 places, 
+ * as done for each details & search response stored in or read from DiskCache. The medians of the time & of 
+ * the bytes allocated by the thread are logged with the size of the encoded data, with the tag of the benchmark.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.virtuumtech.android.googleplaces.PlaceDetails;
+import com.virtuumtech.android.googleplaces.PlacesList;
+
+import android.location.Location;
+import android.os.Debug;
+import android.util.Log;
+import junit.framework.TestCase;
+
+public class PlaceCodecBenchmark extends TestCase {
+
+	private static final String TAG = "PlaceCodecBenchmark";
+	private static final int RESULTS = 20;
+	private static final int RUNS = 1000;
+	private static final int WARMUP_RUNS = 500;
+
+	private PlaceDetails details;
+	private ArrayList<PlacesList> places;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		details = new PlaceDetails();
+		details.setPlaceID("ChIJh2nkYYTFADsRA2co5RxiNPE");
+		details.setName("Meenakshi Amman Temple");
+		details.setAddress("Madurai Main, Madurai, Tamil Nadu 625001, India");
+		details.setPhone("+91 452 234 4360");
+		details.setWeb("http://www.maduraimeenakshi.org/");
+		details.setGoogleURL("https://maps.google.com/?cid=17381924546584766211");
+		details.setWikiURL("https://en.wikipedia.org/wiki/Meenakshi_Amman_Temple");
+		details.setWikiDesc("Meenakshi Temple is a historic Hindu temple located on the southern bank of the Vaigai River "
+				+"in the temple city of Madurai, Tamil Nadu, India. It is dedicated to Meenakshi, a form of Parvati, "
+				+"and her consort, Sundareswarar, a form of Shiva. The temple forms the heart and lifeline of the "
+				+"2,500-year-old city of Madurai and is a significant symbol for the Tamil people.");
+		details.setRating(4.7);
+		details.setOpenNow("true");
+		details.setOpenTime("\"Monday: 5:00 AM \u2013 9:30 PM\", \"Tuesday: 5:00 AM \u2013 9:30 PM\", "
+				+"\"Wednesday: 5:00 AM \u2013 9:30 PM\", \"Thursday: 5:00 AM \u2013 9:30 PM\", "
+				+"\"Friday: 5:00 AM \u2013 9:30 PM\", \"Saturday: 5:00 AM \u2013 9:30 PM\", \"Sunday: 5:00 AM \u2013 9:30 PM\"");
+		details.setLocation(location(9.919524, 78.119385));
+		for (int i = 0; i < 10; i++) {
+			details.addPhotoRef("CmRaAAAAqWQ9A0b5mYb4mXc5VbkM3Nfp6Zf4mNtGQhUe2ZNmIrLUGuwKrIFcDy3Z0nEd8Rk5sHf2m4Sgq2Nq5GZ6"
+					+"xkl6pH1MqZt2p4vQ-ez4ZgfYH0VXoqX9Tk_h0cJ1f8uN9Q2PnE8xKu3jWZ1w"+i);
+		}
+
+		places = new ArrayList<PlacesList>();
+		for (int i = 0; i < RESULTS; i++) {
+			PlacesList place = new PlacesList();
+			place.setPlaceID("ChIJ"+i+"rVvm2GuEmsRkSeH1mqbDZ0");
+			place.setName("Restaurant Number "+i);
+			place.setOpenNow(i % 2 == 0 ? "true" : "false");
+			place.setAddress((i + 1)+" Harris Street, Pyrmont");
+			place.setRating(3.5 + (i % 3) * 0.5);
+			place.setLocation(location(-33.86 + i * 0.001, 151.19 + i * 0.001));
+			places.add(place);
+		}
+	}
+
+	public void testEncodeAndDecode() throws IOException {
+		final byte[] encodedDetails = PlaceCodec.encodePlaceDetails(details);
+		final byte[] encodedPage = PlaceCodec.encodeSearchPage("OK", "", places);
+		Log.i(TAG,"Place details: "+encodedDetails.length+" bytes, search page of "+RESULTS+" places: "
+				+encodedPage.length+" bytes");
+
+		Debug.startAllocCounting();
+		try {
+			for (int mode = 0; mode < 4; mode++) {
+				long[] times = new long[RUNS];
+				long[] allocations = new long[RUNS];
+				for (int i = -WARMUP_RUNS; i < RUNS; i++) {
+					Debug.resetThreadAllocSize();
+					long start = System.nanoTime();
+					if (mode == 0) {
+						PlaceCodec.encodePlaceDetails(details);
+					} else if (mode == 1) {
+						PlaceCodec.decodePlaceDetails(encodedDetails);
+					} else if (mode == 2) {
+						PlaceCodec.encodeSearchPage("OK", "", places);
+					} else {
+						PlaceCodec.decodeSearchPage(encodedPage);
+					}
+					long time = (System.nanoTime() - start) / 1000;
+					long allocated = Debug.getThreadAllocSize();
+					// The first runs only warm up the code paths
+					if (i >= 0) {
+						times[i] = time;
+						allocations[i] = allocated;
+					}
+				}
+				String name = mode == 0 ? "Encode place details" : mode == 1 ? "Decode place details" 
+						: mode == 2 ? "Encode search page" : "Decode search page";
+				Log.i(TAG,name+": median "+median(times)+" us, "+median(allocations)+" bytes allocated");
+			}
+		} finally {
+			Debug.stopAllocCounting();
+		}
+	}
+
+	private static Location location(double lat, double lng) {
+		Location location = new Location("");
+		location.setLatitude(lat);
+		location.setLongitude(lng);
+		return location;
+	}
+
+	private static long median(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PlaceCodecTest checks that the place details & search pages are read back as written, including the null 
+ * fields, the photos & the strings longer than 64 KB, and that the data of other versions or truncated data 
+ * fails with IOException.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.virtuumtech.android.googleplaces.PlaceDetails;
+import com.virtuumtech.android.googleplaces.PlacesList;
+
+import android.location.Location;
+import junit.framework.TestCase;
+
+public class PlaceCodecTest extends TestCase {
+
+	public void testPlaceDetailsRoundTrip() throws IOException {
+		PlaceDetails details = createDetails();
+
+		assertDetailsEquals(details, PlaceCodec.decodePlaceDetails(PlaceCodec.encodePlaceDetails(details)));
+	}
+
+	public void testPlaceDetailsWithNullFields() throws IOException {
+		PlaceDetails details = new PlaceDetails();
+		details.setPlaceID("ChIJh2nkYYTFADsRA2co5RxiNPE");
+		details.setName(null);
+		details.setAddress(null);
+		details.setPhone(null);
+		details.setWeb(null);
+		details.setGoogleURL(null);
+		details.setWikiURL(null);
+		details.setWikiDesc(null);
+		details.setOpenNow(null);
+		details.setOpenTime(null);
+		details.setLocation(null);
+
+		PlaceDetails decoded = PlaceCodec.decodePlaceDetails(PlaceCodec.encodePlaceDetails(details));
+		assertDetailsEquals(details, decoded);
+		assertNull(decoded.getName());
+		assertNull(decoded.getWikiDesc());
+		assertNull(decoded.getLocation());
+		assertEquals(0, decoded.getPhotosCount());
+	}
+
+	public void testPlaceDetailsWithEmptyStrings() throws IOException {
+		PlaceDetails details = new PlaceDetails();
+
+		PlaceDetails decoded = PlaceCodec.decodePlaceDetails(PlaceCodec.encodePlaceDetails(details));
+		assertDetailsEquals(details, decoded);
+		assertEquals("", decoded.getName());
+	}
+
+	public void testStringsLongerThan64KB() throws IOException {
+		StringBuilder wikiDesc = new StringBuilder();
+		while (wikiDesc.length() < 100000) {
+			// Two, three & four byte characters of UTF-8
+			wikiDesc.append("Meenakshi Amman Temple, Madurai \u00e9 \u0bae\u0bc0\u0ba9\u0bbe\u0b9f\u0bcd\u0b9a\u0bbf \ud83d\ude00. ");
+		}
+		PlaceDetails details = createDetails();
+		details.setWikiDesc(wikiDesc.toString());
+
+		byte[] data = PlaceCodec.encodePlaceDetails(details);
+		assertTrue(data.length > 100000);
+		assertEquals(wikiDesc.toString(), PlaceCodec.decodePlaceDetails(data).getWikiDesc());
+	}
+
+	public void testSearchPageRoundTrip() throws IOException {
+		ArrayList<PlacesList> places = new ArrayList<PlacesList>();
+		for (int i = 0; i < 20; i++) {
+			PlacesList place = new PlacesList();
+			place.setPlaceID("ChIJ"+i+"rVvm2GuEmsRkSeH1mqbDZ0");
+			place.setName("Restaurant Number "+i);
+			place.setOpenNow(i % 2 == 0 ? "true" : "");
+			place.setAddress(i == 5 ? null : (i + 1)+" Harris Street, Pyrmont");
+			place.setRating(3.5 + (i % 3) * 0.5);
+			place.setLocation(i == 7 ? null : location(-33.86 + i * 0.001, 151.19 + i * 0.001));
+			places.add(place);
+		}
+
+		SearchPage page = PlaceCodec.decodeSearchPage(PlaceCodec.encodeSearchPage("OK", null, places));
+		assertEquals("OK", page.getStatus());
+		assertNull(page.getNextPageToken());
+		assertEquals(places.size(), page.getPlaces().size());
+		for (int i = 0; i < places.size(); i++) {
+			PlacesList expected = places.get(i);
+			PlacesList actual = page.getPlaces().get(i);
+			assertEquals(expected.getPlaceID(), actual.getPlaceID());
+			assertEquals(expected.getName(), actual.getName());
+			assertEquals(expected.getOpenNow(), actual.getOpenNow());
+			assertEquals(expected.getAddress(), actual.getAddress());
+			assertEquals(expected.getRating(), actual.getRating());
+			assertLocationEquals(expected.getLocation(), actual.getLocation());
+		}
+	}
+
+	public void testEmptySearchPage() throws IOException {
+		SearchPage page = PlaceCodec.decodeSearchPage(
+				PlaceCodec.encodeSearchPage("ZERO_RESULTS", "", new ArrayList<PlacesList>()));
+
+		assertEquals("ZERO_RESULTS", page.getStatus());
+		assertEquals("", page.getNextPageToken());
+		assertTrue(page.getPlaces().isEmpty());
+	}
+
+	public void testOtherVersionIsRejected() {
+		byte[] data = PlaceCodec.encodePlaceDetails(createDetails());
+		// Version 1 wrote the strings with writeUTF
+		data[0] = 1;
+		assertDecodeFails(data);
+		data[0] = 3;
+		assertDecodeFails(data);
+	}
+
+	public void testTruncatedDataIsRejected() {
+		byte[] details = PlaceCodec.encodePlaceDetails(createDetails());
+		for (int length = 0; length < details.length; length++) {
+			assertDecodeFails(Arrays.copyOf(details, length));
+		}
+		byte[] page = PlaceCodec.encodeSearchPage("OK", "token", Arrays.asList(new PlacesList(), new PlacesList()));
+		for (int length = 0; length < page.length; length++) {
+			try {
+				PlaceCodec.decodeSearchPage(Arrays.copyOf(page, length));
+				fail("Decoded "+length+" of "+page.length+" bytes");
+			} catch (IOException e) {
+				// Expected
+			}
+		}
+	}
+
+	public void testCorruptLengthIsRejected() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(PlaceCodec.encodePlaceDetails(new PlaceDetails())[0]);
+		out.writeInt(Integer.MAX_VALUE);
+		out.write(new byte[100]);
+		assertDecodeFails(bytes.toByteArray());
+
+		bytes.reset();
+		out.writeByte(PlaceCodec.encodePlaceDetails(new PlaceDetails())[0]);
+		out.writeInt(-2);
+		assertDecodeFails(bytes.toByteArray());
+	}
+
+	private static PlaceDetails createDetails() {
+		PlaceDetails details = new PlaceDetails();
+		details.setPlaceID("ChIJh2nkYYTFADsRA2co5RxiNPE");
+		details.setName("Meenakshi Amman Temple");
+		details.setAddress("Madurai Main, Madurai, Tamil Nadu 625001, India");
+		details.setPhone("+91 452 234 4360");
+		details.setWeb("http://www.maduraimeenakshi.org/");
+		details.setGoogleURL("https://maps.google.com/?cid=17381924546584766211");
+		details.setWikiURL("https://en.wikipedia.org/wiki/Meenakshi_Amman_Temple");
+		details.setWikiDesc("Meenakshi Temple is a historic Hindu temple located on the southern bank of the Vaigai River.");
+		details.setRating(4.7);
+		details.setOpenNow("true");
+		details.setOpenTime("\"Monday: 5:00 AM \u2013 9:30 PM\",\"Tuesday: 5:00 AM \u2013 9:30 PM\"");
+		details.setLocation(location(9.919524, 78.119385));
+		for (int i = 0; i < 10; i++) {
+			details.addPhotoRef("CmRaAAAAqWQ9A0b5mYb4mXc5VbkM3Nfp6Zf4mNtGQhUe2ZNmIrLUGuwKrIFcDy3Z0nEd8Rk5sHf2m4Sgq2Nq5GZ6"+i);
+		}
+		return details;
+	}
+
+	private static Location location(double lat, double lng) {
+		Location location = new Location("");
+		location.setLatitude(lat);
+		location.setLongitude(lng);
+		return location;
+	}
+
+	private static void assertDecodeFails(byte[] data) {
+		try {
+			PlaceCodec.decodePlaceDetails(data);
+			fail("Decoded invalid data of "+data.length+" bytes");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	private static void assertDetailsEquals(PlaceDetails expected, PlaceDetails actual) {
+		assertEquals(expected.getPlaceID(), actual.getPlaceID());
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getAddress(), actual.getAddress());
+		assertEquals(expected.getPhone(), actual.getPhone());
+		assertEquals(expected.getWeb(), actual.getWeb());
+		assertEquals(expected.getGoogleURL(), actual.getGoogleURL());
+		assertEquals(expected.getWikiURL(), actual.getWikiURL());
+		assertEquals(expected.getWikiDesc(), actual.getWikiDesc());
+		assertEquals(expected.getRating(), actual.getRating());
+		assertEquals(expected.getOpenNow(), actual.getOpenNow());
+		assertEquals(expected.getOpenTime(), actual.getOpenTime());
+		assertLocationEquals(expected.getLocation(), actual.getLocation());
+		assertEquals(expected.getPhotosCount(), actual.getPhotosCount());
+		for (int i = 0; i < expected.getPhotosCount(); i++) {
+			assertEquals(expected.getPhotoRef(i), actual.getPhotoRef(i));
+		}
+	}
+
+	private static void assertLocationEquals(Location expected, Location actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.getLatitude(), actual.getLatitude());
+		assertEquals(expected.getLongitude(), actual.getLongitude());
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * PlaceIndexTest checks the radius & nearest queries, the coverage of the searches & the eviction of the 
+ * least recently used places.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.virtuumtech.android.googleplaces.PlacesList;
+
+import android.location.Location;
+import junit.framework.TestCase;
+
+public class PlaceIndexTest extends TestCase {
+
+	// Meters per degree of latitude as used by GeoHash
+	private static final double METERS_PER_DEGREE = 111320.0;
+	private static final double LAT = 9.925201;
+	private static final double LNG = 78.119774;
+
+	private PlaceIndex placeIndex;
+	private long searchTimeToLive;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		placeIndex = new PlaceIndex(100);
+		searchTimeToLive = ResponseCache.getInstance().getTimeToLive(ResponseCache.ENDPOINT_SEARCH);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ResponseCache.getInstance().setTimeToLive(ResponseCache.ENDPOINT_SEARCH, searchTimeToLive);
+		super.tearDown();
+	}
+
+	public void testQueryReturnsPlacesWithinRadiusNearestFirst() {
+		placeIndex.add(Arrays.asList(place("far", 900), place("near", 100), place("out", 1500), place("mid", 500)), null);
+
+		assertEquals(Arrays.asList("near", "mid", "far"), ids(placeIndex.query(location(LAT, LNG), 1000, null)));
+		assertEquals(Arrays.asList("near"), ids(placeIndex.query(location(LAT, LNG), 200, null)));
+		assertTrue(placeIndex.query(location(LAT + 1, LNG), 1000, null).isEmpty());
+	}
+
+	public void testQueryOfLargeCircleScansAllPlaces() {
+		placeIndex.add(Arrays.asList(place("a", 10000), place("b", 30000)), null);
+
+		assertEquals(Arrays.asList("a", "b"), ids(placeIndex.query(location(LAT, LNG), PlaceIndex.MAX_RADIUS, null)));
+	}
+
+	public void testQueryFiltersTypes() {
+		placeIndex.add(Arrays.asList(place("cafe", 100)), "cafe");
+		placeIndex.add(Arrays.asList(place("barOrCafe", 200)), "cafe|bar");
+		placeIndex.add(Arrays.asList(place("any", 300)), null);
+
+		assertEquals(Arrays.asList("cafe"), ids(placeIndex.query(location(LAT, LNG), 1000, "cafe")));
+		// A place of "bar|cafe" search may be either, hence it is returned only for both types
+		assertTrue(placeIndex.query(location(LAT, LNG), 1000, "bar").isEmpty());
+		assertEquals(Arrays.asList("cafe", "barOrCafe"), ids(placeIndex.query(location(LAT, LNG), 1000, "bar|cafe")));
+		assertEquals(3, placeIndex.query(location(LAT, LNG), 1000, null).size());
+	}
+
+	public void testQueryAcrossAntimeridian() {
+		placeIndex.add(Arrays.asList(placeAt("east", 0, 179.998), placeAt("west", 0, -179.995)), null);
+
+		assertEquals(Arrays.asList("east", "west"), ids(placeIndex.query(location(0, 180), 1000, null)));
+		assertEquals(Arrays.asList("west", "east"), ids(placeIndex.query(location(0, -179.996), 1000, null)));
+	}
+
+	public void testQueryAroundPole() {
+		placeIndex.add(Arrays.asList(placeAt("a", 89.995, 0), placeAt("b", 89.995, 180), placeAt("c", 89.9, 90)), null);
+
+		assertEquals(2, placeIndex.query(location(89.999, -90), 2000, null).size());
+	}
+
+	public void testMovedPlaceIsFoundAtNewLocation() {
+		placeIndex.add(Arrays.asList(place("moved", 100)), null);
+		placeIndex.add(Arrays.asList(placeAt("moved", LAT + 1, LNG)), null);
+
+		assertEquals(1, placeIndex.size());
+		assertTrue(placeIndex.query(location(LAT, LNG), 1000, null).isEmpty());
+		assertEquals(1, placeIndex.query(location(LAT + 1, LNG), 1000, null).size());
+	}
+
+	public void testPlacesWithoutLocationAreIgnored() {
+		PlacesList place = new PlacesList();
+		place.setPlaceID("nowhere");
+		placeIndex.add(Arrays.asList(place), null);
+
+		assertEquals(0, placeIndex.size());
+	}
+
+	public void testNearestGrowsTheCircle() {
+		placeIndex.add(Arrays.asList(place("a", 100), place("b", 3000), place("c", 20000), place("d", 40000)), null);
+
+		assertEquals(Arrays.asList("a", "b"), ids(placeIndex.nearest(location(LAT, LNG), 2, null)));
+		assertEquals(Arrays.asList("a", "b", "c", "d"), ids(placeIndex.nearest(location(LAT, LNG), 10, null)));
+	}
+
+	public void testCoverageOfInnerCircle() {
+		placeIndex.addCoverage(location(LAT, LNG), 1000, null);
+
+		assertTrue(placeIndex.isCovered(location(LAT, LNG), 1000, null));
+		assertTrue(placeIndex.isCovered(location(LAT + 300 / METERS_PER_DEGREE, LNG), 500, null));
+		assertFalse(placeIndex.isCovered(location(LAT + 800 / METERS_PER_DEGREE, LNG), 500, null));
+		assertFalse(placeIndex.isCovered(location(LAT, LNG), 1500, null));
+		assertEquals(2, placeIndex.getCoveredCount());
+		assertEquals(2, placeIndex.getNotCoveredCount());
+	}
+
+	public void testCoverageMatchesTypes() {
+		placeIndex.addCoverage(location(LAT, LNG), 1000, "cafe|bar");
+
+		assertTrue(placeIndex.isCovered(location(LAT, LNG), 500, "bar|cafe"));
+		assertFalse(placeIndex.isCovered(location(LAT, LNG), 500, "cafe"));
+		assertFalse(placeIndex.isCovered(location(LAT, LNG), 500, null));
+	}
+
+	public void testCoverageExpires() {
+		placeIndex.addCoverage(location(LAT, LNG), 1000, null);
+		ResponseCache.getInstance().setTimeToLive(ResponseCache.ENDPOINT_SEARCH, 0);
+
+		assertFalse(placeIndex.isCovered(location(LAT, LNG), 500, null));
+		ResponseCache.getInstance().setTimeToLive(ResponseCache.ENDPOINT_SEARCH, searchTimeToLive);
+		assertFalse("Expired coverage is removed", placeIndex.isCovered(location(LAT, LNG), 500, null));
+	}
+
+	public void testEvictsLeastRecentlyUsed() {
+		placeIndex.setMaxEntries(3);
+		placeIndex.add(Arrays.asList(place("a", 100), place("b", 200), place("c", 300)), null);
+		placeIndex.add(Arrays.asList(place("a", 100)), null);
+		placeIndex.add(Arrays.asList(place("d", 400)), null);
+
+		assertEquals(3, placeIndex.size());
+		assertEquals(1, placeIndex.getEvictionCount());
+		assertEquals(Arrays.asList("a", "c", "d"), ids(placeIndex.query(location(LAT, LNG), 1000, null)));
+	}
+
+	public void testSetMaxEntriesTrims() {
+		placeIndex.add(Arrays.asList(place("a", 100), place("b", 200), place("c", 300)), null);
+		placeIndex.setMaxEntries(1);
+
+		assertEquals(1, placeIndex.size());
+		assertEquals(2, placeIndex.getEvictionCount());
+		assertEquals(Arrays.asList("c"), ids(placeIndex.query(location(LAT, LNG), 1000, null)));
+	}
+
+	public void testEvictionRemovesCoverageOfThePlace() {
+		placeIndex.setMaxEntries(2);
+		placeIndex.add(Arrays.asList(place("a", 100)), null);
+		placeIndex.addCoverage(location(LAT, LNG), 500, null);
+		placeIndex.addCoverage(location(LAT + 1, LNG), 500, null);
+		placeIndex.add(Arrays.asList(place("b", 5000), place("c", 6000)), null);
+
+		assertFalse(placeIndex.isCovered(location(LAT, LNG), 500, null));
+		assertTrue("Coverage without the evicted place is kept", placeIndex.isCovered(location(LAT + 1, LNG), 500, null));
+	}
+
+	public void testClear() {
+		placeIndex.add(Arrays.asList(place("a", 100)), null);
+		placeIndex.addCoverage(location(LAT, LNG), 500, null);
+		placeIndex.clear();
+
+		assertEquals(0, placeIndex.size());
+		assertFalse(placeIndex.isCovered(location(LAT, LNG), 500, null));
+	}
+
+	// Place at the distance in meters north of the test location
+	private static PlacesList place(String id, double meters) {
+		return placeAt(id, LAT + meters / METERS_PER_DEGREE, LNG);
+	}
+
+	private static PlacesList placeAt(String id, double lat, double lng) {
+		PlacesList place = new PlacesList();
+		place.setPlaceID(id);
+		place.setName(id);
+		place.setLocation(location(lat, lng));
+		return place;
+	}
+
+	private static Location location(double lat, double lng) {
+		Location location = new Location("");
+		location.setLatitude(lat);
+		location.setLongitude(lng);
+		return location;
+	}
+
+	private static List<String> ids(List<PlacesList> places) {
+		List<String> ids = new ArrayList<String>();
+		for (PlacesList place : places) {
+			ids.add(place.getPlaceID());
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * FaultInjectingTransport is the HttpTransport for tests which answers the requests from a script of faults. 
+ * Each request takes the next fault, an IOException or an HTTP status, the requests after the script get 
+ * the successful response. The time of each request is recorded to check the backoff between the attempts.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import android.os.SystemClock;
+
+public class FaultInjectingTransport implements HttpTransport {
+
+	private final LinkedList<Object> faults = new LinkedList<Object>();
+	private final ArrayList<Long> requestTimes = new ArrayList<Long>();
+	private byte[] body;
+
+	/**
+	 * Constructor for FaultInjectingTransport
+	 * @param body - Body of the successful response
+	 */
+	public FaultInjectingTransport(String body) {
+		setBody(body);
+	}
+
+	/**
+	 * Set the body of the successful response
+	 * @param body
+	 */
+	public synchronized void setBody(String body) {
+		try {
+			this.body = body.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Fail the next request with the exception
+	 * @param e
+	 * @return This transport
+	 */
+	public synchronized FaultInjectingTransport thenThrow(IOException e) {
+		faults.add(e);
+		return this;
+	}
+
+	/**
+	 * Answer the next request with the HTTP status and an empty body
+	 * @param statusCode
+	 * @return This transport
+	 */
+	public synchronized FaultInjectingTransport thenStatus(int statusCode) {
+		faults.add(Integer.valueOf(statusCode));
+		return this;
+	}
+
+	/**
+	 * Returns the number of requests executed
+	 * @return
+	 */
+	public synchronized int getRequestCount() {
+		return requestTimes.size();
+	}
+
+	/**
+	 * Returns the elapsed realtime of each request in milliseconds
+	 * @return
+	 */
+	public synchronized List<Long> getRequestTimes() {
+		return new ArrayList<Long>(requestTimes);
+	}
+
+	@Override
+	public HttpResponse execute(String url, Map<String, String> headers) throws IOException {
+		Object fault;
+		byte[] response;
+		synchronized (this) {
+			requestTimes.add(SystemClock.elapsedRealtime());
+			fault = faults.poll();
+			response = body;
+		}
+		if (fault instanceof IOException) {
+			throw (IOException) fault;
+		}
+		if (fault instanceof Integer) {
+			return new HttpResponse((Integer) fault, null, new ByteArrayInputStream(new byte[0]), null);
+		}
+		return new HttpResponse(200, null, new ByteArrayInputStream(response), null);
+	}
+}
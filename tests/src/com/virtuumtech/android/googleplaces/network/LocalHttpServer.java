@@ -0,0 +1,156 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * LocalHttpServer is a minimal HTTP/1.1 server on the loopback interface, used by the tests & benchmarks 
+ * as the stand-in of the Google Places web API. Each response has the same body, the connections are kept 
+ * alive unless the request asks to close them. The number of accepted connections shows whether the 
+ * client reused its connections.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LocalHttpServer {
+
+	private final ServerSocket serverSocket;
+	private final byte[] body;
+	private final AtomicInteger connectionCount = new AtomicInteger();
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private volatile boolean closed;
+
+	/**
+	 * Constructor for LocalHttpServer, the server listens on a free port of the loopback interface
+	 * @param body - Body of each response
+	 * @throws IOException
+	 */
+	public LocalHttpServer(byte[] body) throws IOException {
+		this.body = body;
+		serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+	}
+
+	/**
+	 * Start accepting the connections
+	 */
+	public void start() {
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!closed) {
+					try {
+						final Socket socket = serverSocket.accept();
+						connectionCount.incrementAndGet();
+						Thread handler = new Thread(new Runnable() {
+							@Override
+							public void run() {
+								serve(socket);
+							}
+						}, "LocalHttpServer-connection");
+						handler.setDaemon(true);
+						handler.start();
+					} catch (IOException e) {
+						// Closed
+					}
+				}
+			}
+		}, "LocalHttpServer");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Returns the URL of the path on this server
+	 * @param path - Path starting with /
+	 * @return
+	 */
+	public String getUrl(String path) {
+		return "http://127.0.0.1:"+serverSocket.getLocalPort()+path;
+	}
+
+	/**
+	 * Returns the number of connections accepted
+	 * @return
+	 */
+	public int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	/**
+	 * Returns the number of requests served
+	 * @return
+	 */
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Stop the server
+	 */
+	public void close() {
+		closed = true;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// Ignored
+		}
+	}
+
+	// Serve the requests of the connection till the client or the request closes it
+	private void serve(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+			OutputStream output = socket.getOutputStream();
+			while (true) {
+				String requestLine = reader.readLine();
+				if (requestLine == null || requestLine.isEmpty()) {
+					break;
+				}
+				boolean close = false;
+				String line;
+				while ((line = reader.readLine()) != null && !line.isEmpty()) {
+					String header = line.toLowerCase(Locale.US);
+					if (header.startsWith("connection:") && header.contains("close")) {
+						close = true;
+					}
+				}
+				requestCount.incrementAndGet();
+				String head = "HTTP/1.1 200 OK\r\n"
+						+ "Content-Type: application/json; charset=UTF-8\r\n"
+						+ "Content-Length: "+body.length+"\r\n"
+						+ "Connection: "+(close ? "close" : "keep-alive")+"\r\n\r\n";
+				// One write per response, else the delayed ACK of the client stalls the body
+				byte[] headBytes = head.getBytes("ISO-8859-1");
+				byte[] response = Arrays.copyOf(headBytes, headBytes.length + body.length);
+				System.arraycopy(body, 0, response, headBytes.length, body.length);
+				output.write(response);
+				output.flush();
+				if (close) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			// Client closed the connection
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Ignored
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * RetryPolicyTest checks the bounds of the backoff delay & which failures are retried.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+import junit.framework.TestCase;
+
+public class RetryPolicyTest extends TestCase {
+
+	private static final String URL = "https://maps.googleapis.com/maps/api/place/nearbysearch/json?location=1,2&key=KEY";
+
+	private RetryPolicy retryPolicy;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		retryPolicy = new RetryPolicy();
+		retryPolicy.setDelay(100, 1000);
+	}
+
+	public void testDelayIsWithinExponentialBound() {
+		for (int attempt = 1; attempt <= 8; attempt++) {
+			long bound = Math.min(1000, 100L << (attempt - 1));
+			for (int i = 0; i < 200; i++) {
+				long delay = retryPolicy.getDelay(URL, attempt);
+				assertTrue("Delay "+delay+" of attempt "+attempt, delay >= 0 && delay <= bound);
+			}
+		}
+	}
+
+	public void testPageTokenDelayWaitsForToken() {
+		for (int i = 0; i < 200; i++) {
+			assertTrue(retryPolicy.getDelay(URL+"&pagetoken=TOKEN", 1) >= 2000);
+		}
+	}
+
+	public void testRetryableFailures() {
+		assertTrue(retryPolicy.shouldRetry(URL, 1, new EOFException()));
+		assertTrue(retryPolicy.shouldRetry(URL, 1, new SocketTimeoutException()));
+		assertTrue(retryPolicy.shouldRetry(URL, 1, new HttpStatusException(503)));
+		assertTrue(retryPolicy.shouldRetry(URL, 1, new HttpStatusException(429)));
+	}
+
+	public void testNonRetryableFailures() {
+		assertFalse(retryPolicy.shouldRetry(URL, 1, new HttpStatusException(400)));
+		assertFalse(retryPolicy.shouldRetry(URL, 1, new UnknownHostException()));
+		assertFalse(retryPolicy.shouldRetry(URL, 1, new InterruptedIOException()));
+		assertFalse(retryPolicy.shouldRetry(URL, 1, new RateLimitException("Rate limit")));
+		assertFalse(retryPolicy.shouldRetry(URL, 1, new ResponseFormatException("Malformed", new IOException())));
+	}
+
+	public void testAttemptsAreLimited() {
+		retryPolicy.setMaxAttempts(2);
+		assertTrue(retryPolicy.shouldRetry(URL, 1, new EOFException()));
+		assertFalse(retryPolicy.shouldRetry(URL, 2, new EOFException()));
+	}
+}
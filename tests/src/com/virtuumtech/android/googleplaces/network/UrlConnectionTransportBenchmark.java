@@ -0,0 +1,102 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * UrlConnectionTransportBenchmark compares the latency of cold requests, each on a new connection, with 
+ * the warm requests reusing the pooled keep-alive connection. The server is LocalHttpServer on the loopback 
+ * interface, it speaks plain HTTP as the test project has no certificate for a local TLS server. On the 
+ * network the warm requests also save the TLS handshake, hence the measured gain is the lower bound. 
+ * The medians are logged with the tag of the benchmark.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import android.util.Log;
+
+public class UrlConnectionTransportBenchmark extends TestCase {
+
+	private static final String TAG = "UrlConnectionTransportBenchmark";
+	private static final int REQUESTS = 200;
+	private static final int WARMUP_REQUESTS = 20;
+
+	private LocalHttpServer server;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		StringBuilder body = new StringBuilder("{\"status\":\"OK\",\"results\":[");
+		for (int i = 0; i < 20; i++) {
+			body.append(i == 0 ? "" : ",").append("{\"place_id\":\"place").append(i).append("\",\"name\":\"Place ").append(i).append("\"}");
+		}
+		body.append("]}");
+		server = new LocalHttpServer(body.toString().getBytes("UTF-8"));
+		server.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.close();
+		super.tearDown();
+	}
+
+	public void testColdAndWarmLatency() throws IOException {
+		UrlConnectionTransport transport = new UrlConnectionTransport();
+		transport.setCompression(false);
+		String url = server.getUrl("/maps/api/place/nearbysearch/json");
+		Map<String, String> close = Collections.singletonMap("Connection", "close");
+
+		// Warm up the code paths, not measured
+		measure(transport, url, close, WARMUP_REQUESTS);
+
+		int connections = server.getConnectionCount();
+		long[] cold = measure(transport, url, close, REQUESTS);
+		int coldConnections = server.getConnectionCount() - connections;
+
+		connections = server.getConnectionCount();
+		long[] warm = measure(transport, url, null, REQUESTS);
+		int warmConnections = server.getConnectionCount() - connections;
+
+		Log.i(TAG,"Cold: median "+median(cold)+" us, "+coldConnections+" connections for "+REQUESTS+" requests");
+		Log.i(TAG,"Warm: median "+median(warm)+" us, "+warmConnections+" connections for "+REQUESTS+" requests");
+		assertEquals(REQUESTS, coldConnections);
+		assertTrue("Warm requests should reuse the connection, "+warmConnections+" connections", warmConnections <= 1);
+	}
+
+	// Run the requests one after another, returns the latency of each in microseconds
+	private long[] measure(HttpTransport transport, String url, Map<String, String> headers, int count) throws IOException {
+		long[] latencies = new long[count];
+		byte[] buffer = new byte[4096];
+		for (int i = 0; i < count; i++) {
+			long start = System.nanoTime();
+			HttpResponse response = transport.execute(url, headers);
+			try {
+				InputStream body = response.getInputStream();
+				while (body.read(buffer) != -1) {
+					// Drain the body so that the connection can be reused
+				}
+			} finally {
+				response.close();
+			}
+			latencies[i] = (System.nanoTime() - start) / 1000;
+		}
+		return latencies;
+	}
+
+	private static long median(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}
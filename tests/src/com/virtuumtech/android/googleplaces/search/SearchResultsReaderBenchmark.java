@@ -0,0 +1,180 @@
+/**
+ * Copyright 2015 Virtuum Technologies. All Rights Reserved.
+ */
+
+/**
+ * SearchResultsReaderBenchmark compares the streaming SearchResultsReader with the former parsing of the 
+ * search response, which read the whole body in to a String & walked the org.json tree. The streaming 
+ * reader is measured with & without the copy of the body for the response cache. The payload is a 
+ * synthetic nearby search page of 20 results with the fields the server sends, not a recorded response. 
+ * The medians of the parse time & of the bytes allocated by the thread are logged with the tag of the benchmark.
+ * 
+ * @author  
+ * @version 1.0
+ */
+
+package com.virtuumtech.android.googleplaces.search;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.virtuumtech.android.googleplaces.PlacesList;
+import com.virtuumtech.android.googleplaces.network.TeeInputStream;
+
+import android.location.Location;
+import android.os.Debug;
+import android.util.Log;
+
+public class SearchResultsReaderBenchmark extends TestCase {
+
+	private static final String TAG = "SearchResultsReaderBenchmark";
+	private static final int RESULTS = 20;
+	private static final int RUNS = 500;
+	private static final int WARMUP_RUNS = 200;
+
+	private byte[] payload;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		StringBuilder body = new StringBuilder("{\"html_attributions\":[],\"next_page_token\":\"");
+		for (int i = 0; i < 8; i++) {
+			body.append("CpQCAgEAAFxg8o-eU7_uKn7Yqjana-HQIx1hr5BrT4zBaEko29ANsXtp9mrqN0yrKWhf-y2PUpHRLQb1GT-mtxNcXou8TwkXhi1Jbk");
+		}
+		body.append("\",\"results\":[");
+		for (int i = 0; i < RESULTS; i++) {
+			body.append(i == 0 ? "" : ",").append("{\"geometry\":{\"location\":{\"lat\":").append(-33.86 + i * 0.001)
+				.append(",\"lng\":").append(151.19 + i * 0.001).append("},\"viewport\":{\"northeast\":{\"lat\":-33.85,\"lng\":151.21},")
+				.append("\"southwest\":{\"lat\":-33.87,\"lng\":151.18}}},")
+				.append("\"icon\":\"https://maps.gstatic.com/mapfiles/place_api/icons/restaurant-71.png\",")
+				.append("\"id\":\"").append(Integer.toHexString(0x5a3f0000 + i)).append("c0dfa1b3e2f4d5c6b7a8\",")
+				.append("\"name\":\"Restaurant Number ").append(i).append("\",")
+				.append("\"opening_hours\":{\"open_now\":").append(i % 2 == 0).append(",\"weekday_text\":[]},")
+				.append("\"photos\":[{\"height\":1365,\"html_attributions\":[\"<a href=\\\"https://maps.google.com/maps/contrib/")
+				.append(100000 + i).append("\\\">A Photographer</a>\"],\"photo_reference\":\"CmRaAAAA")
+				.append("qWQ9A0b5mYb4mXc5VbkM3Nfp6Zf4mNtGQhUe2ZNmIrLUGuwKrIFcDy3Z0nEd8Rk5sHf2m4Sgq2Nq5GZ6xkl6pH1Mq").append(i)
+				.append("\",\"width\":2048}],")
+				.append("\"place_id\":\"ChIJ").append(i).append("rVvm2GuEmsRkSeH1mqbDZ0\",")
+				.append("\"price_level\":2,\"rating\":").append(3.5 + (i % 3) * 0.5).append(",")
+				.append("\"reference\":\"CmRSAAAA").append(i).append("Zt2p4vQ-ez4ZgfYH0VXoqX9Tk_h0cJ1f8uN9Q2PnE8xKu3jWZ1w\",")
+				.append("\"scope\":\"GOOGLE\",\"types\":[\"restaurant\",\"food\",\"point_of_interest\",\"establishment\"],")
+				.append("\"vicinity\":\"").append(i + 1).append(" Harris Street, Pyrmont\"}");
+		}
+		body.append("],\"status\":\"OK\"}");
+		payload = body.toString().getBytes("UTF-8");
+	}
+
+	public void testParseTimeAndAllocation() throws IOException, JSONException {
+		Log.i(TAG,"Payload: "+payload.length+" bytes, "+RESULTS+" results");
+		assertEquals(RESULTS, streaming(false).size());
+		assertEquals(RESULTS, streaming(true).size());
+		assertEquals(RESULTS, tree().size());
+		assertEquals(streaming(false).toString(), tree().toString());
+
+		Debug.startAllocCounting();
+		try {
+			for (int mode = 0; mode < 3; mode++) {
+				long[] times = new long[RUNS];
+				long[] allocations = new long[RUNS];
+				for (int i = -WARMUP_RUNS; i < RUNS; i++) {
+					Debug.resetThreadAllocSize();
+					long start = System.nanoTime();
+					if (mode == 0) {
+						streaming(false);
+					} else if (mode == 1) {
+						streaming(true);
+					} else {
+						tree();
+					}
+					long time = (System.nanoTime() - start) / 1000;
+					long allocated = Debug.getThreadAllocSize();
+					// The first runs only warm up the code paths
+					if (i >= 0) {
+						times[i] = time;
+						allocations[i] = allocated;
+					}
+				}
+				String name = mode == 0 ? "Streaming" : mode == 1 ? "Streaming with body copy" : "String & org.json";
+				Log.i(TAG,name+": median "+median(times)+" us, "+median(allocations)+" bytes allocated");
+			}
+		} finally {
+			Debug.stopAllocCounting();
+		}
+	}
+
+	// Parse with SearchResultsReader, optionally keeping the body as NetworkFetcher does for the cache
+	private ArrayList<PlacesList> streaming(boolean copyBody) throws IOException {
+		InputStream in = new ByteArrayInputStream(payload);
+		ByteArrayOutputStream copy = null;
+		if (copyBody) {
+			copy = new ByteArrayOutputStream();
+			in = new TeeInputStream(in, copy);
+		}
+		ArrayList<PlacesList> places = new SearchResultsReader().read(in);
+		if (copy != null) {
+			copy.toByteArray();
+		}
+		return places;
+	}
+
+	// Parse as before the streaming reader, whole body as String & then the org.json tree
+	private ArrayList<PlacesList> tree() throws IOException, JSONException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(payload)));
+		StringBuffer data = new StringBuffer("");
+		String line;
+		while ((line = reader.readLine()) != null) {
+			data.append(line);
+		}
+		reader.close();
+
+		ArrayList<PlacesList> arrayPOI = new ArrayList<PlacesList>();
+		JSONObject jsonFile = new JSONObject(data.toString());
+		jsonFile.optString("next_page_token", "");
+		jsonFile.optString("status");
+		if (jsonFile.has("results")) {
+			JSONArray jsonArray = jsonFile.getJSONArray("results");
+			for (int i = 0; i < jsonArray.length(); i++) {
+				JSONObject jsonObj = jsonArray.getJSONObject(i);
+				PlacesList place = new PlacesList();
+				place.setPlaceID(jsonObj.optString("place_id"));
+				place.setName(jsonObj.optString("name",""));
+				place.setRating(jsonObj.optDouble("rating", 0.0));
+				if (jsonObj.has("vicinity")) {
+					place.setAddress(jsonObj.optString("vicinity",""));
+				}
+				if (jsonObj.has("formatted_address")) {
+					place.setAddress(jsonObj.optString("formatted_address",""));
+				}
+				if (jsonObj.has("opening_hours")) {
+					place.setOpenNow(jsonObj.getJSONObject("opening_hours").optString("open_now",""));
+				} else {
+					place.setOpenNow("");
+				}
+				Location loc = new Location("");
+				loc.setLatitude(jsonObj.getJSONObject("geometry").getJSONObject("location").optDouble("lat"));
+				loc.setLongitude(jsonObj.getJSONObject("geometry").getJSONObject("location").optDouble("lng"));
+				place.setLocation(loc);
+				arrayPOI.add(place);
+			}
+		}
+		return arrayPOI;
+	}
+
+	private static long median(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}